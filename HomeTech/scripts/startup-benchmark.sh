@@ -0,0 +1,109 @@
+#!/usr/bin/env bash
+# Đo time-to-first-request: từ lúc chạy JVM đến khi BENCH_URL trả 200 lần đầu.
+#
+# Dùng: scripts/startup-benchmark.sh [baseline|fast] [số lần chạy, mặc định 5]
+#   baseline: java -jar target/HomeTech-*.jar            (mvn package)
+#   fast:     jar đã giải nén + AppCDS + Spring AOT       (mvn -Pfast-startup package)
+#
+# Biến môi trường:
+#   BENCH_URL      endpoint công khai để gọi (mặc định http://localhost:8080/api/categories)
+#   BENCH_TIMEOUT  số giây chờ tối đa mỗi lần (mặc định 180)
+#   BENCH_HISTORY  file CSV ghi thêm kết quả để theo dõi qua các lần build (mặc định benchmarks/startup.csv)
+#   JAVA_OPTS      tham số JVM thêm cho cả hai chế độ (vd. -Xmx512m)
+#   APP_ARGS       tham số Spring (vd. --spring.datasource.url=...); mặc định tắt migration khi khởi động
+#                  vì node mới chạy sau lệnh migrate
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+MODE="${1:-baseline}"
+RUNS="${2:-5}"
+BENCH_URL="${BENCH_URL:-http://localhost:8080/api/categories}"
+BENCH_TIMEOUT="${BENCH_TIMEOUT:-180}"
+BENCH_HISTORY="${BENCH_HISTORY:-benchmarks/startup.csv}"
+JAVA_OPTS="${JAVA_OPTS:-}"
+APP_ARGS="${APP_ARGS:---schema.migration.mode=off}"
+
+case "$MODE" in
+  baseline)
+    JAR="$(ls target/HomeTech-*.jar 2>/dev/null | grep -v '\.original$' | head -n 1 || true)"
+    [ -n "$JAR" ] || { echo "Không thấy target/HomeTech-*.jar, chạy: mvn package" >&2; exit 1; }
+    CMD=(java $JAVA_OPTS -jar "$JAR" $APP_ARGS)
+    ;;
+  fast)
+    JAR="$(ls target/fast-startup/HomeTech-*.jar 2>/dev/null | head -n 1 || true)"
+    [ -n "$JAR" ] && [ -f target/fast-startup/application.jsa ] \
+      || { echo "Không thấy target/fast-startup, chạy: mvn -Pfast-startup package" >&2; exit 1; }
+    CMD=(java -XX:SharedArchiveFile=target/fast-startup/application.jsa -Dspring.aot.enabled=true $JAVA_OPTS -jar "$JAR" $APP_ARGS)
+    ;;
+  *)
+    echo "Chế độ không hợp lệ: $MODE (baseline|fast)" >&2
+    exit 1
+    ;;
+esac
+
+now_ms() { echo $(( $(date +%s%N) / 1000000 )); }
+
+LOG="$(mktemp -t hometech-startup.XXXXXX)"
+PID=""
+cleanup() {
+  if [ -n "$PID" ] && kill -0 "$PID" 2>/dev/null; then
+    kill "$PID" 2>/dev/null || true
+    wait "$PID" 2>/dev/null || true
+  fi
+  rm -f "$LOG"
+}
+trap cleanup EXIT
+
+if curl -s -o /dev/null "$BENCH_URL"; then
+  echo "Đã có tiến trình trả lời tại $BENCH_URL, tắt nó trước khi đo" >&2
+  exit 1
+fi
+
+TIMES=()
+for run in $(seq 1 "$RUNS"); do
+  START="$(now_ms)"
+  "${CMD[@]}" >"$LOG" 2>&1 &
+  PID=$!
+
+  READY=""
+  while [ $(( $(now_ms) - START )) -lt $(( BENCH_TIMEOUT * 1000 )) ]; do
+    if ! kill -0 "$PID" 2>/dev/null; then
+      echo "Ứng dụng dừng trước khi sẵn sàng (lần $run), log:" >&2
+      tail -n 40 "$LOG" >&2
+      exit 1
+    fi
+    if [ "$(curl -s -o /dev/null -w '%{http_code}' "$BENCH_URL" || true)" = "200" ]; then
+      READY="$(now_ms)"
+      break
+    fi
+    sleep 0.05
+  done
+  [ -n "$READY" ] || { echo "Quá ${BENCH_TIMEOUT}s chưa trả 200 (lần $run)" >&2; exit 1; }
+
+  ELAPSED=$(( READY - START ))
+  TIMES+=("$ELAPSED")
+  # Thời gian Spring tự báo (chưa gồm request đầu tiên) để so sánh
+  STARTED="$(grep -o 'Started HomeTechApplication in [0-9.]* seconds' "$LOG" | grep -o '[0-9.]*' | head -n 1 || true)"
+  echo "[$MODE] lần $run: ${ELAPSED} ms đến request đầu tiên (Spring báo ${STARTED:-?} s)"
+
+  kill "$PID"
+  wait "$PID" 2>/dev/null || true
+  PID=""
+done
+
+SORTED=($(printf '%s\n' "${TIMES[@]}" | sort -n))
+COUNT=${#SORTED[@]}
+MIN=${SORTED[0]}
+MAX=${SORTED[$((COUNT - 1))]}
+MEDIAN=${SORTED[$((COUNT / 2))]}
+echo "[$MODE] $COUNT lần: trung vị ${MEDIAN} ms, nhanh nhất ${MIN} ms, chậm nhất ${MAX} ms"
+
+mkdir -p "$(dirname "$BENCH_HISTORY")"
+if [ ! -f "$BENCH_HISTORY" ]; then
+  echo "timestamp,commit,mode,runs,median_ms,min_ms,max_ms,java" >"$BENCH_HISTORY"
+fi
+COMMIT="$(git rev-parse --short HEAD 2>/dev/null || echo unknown)"
+JAVA_VERSION="$(java -version 2>&1 | head -n 1 | tr -d ',"')"
+echo "$(date -u +%Y-%m-%dT%H:%M:%SZ),$COMMIT,$MODE,$COUNT,$MEDIAN,$MIN,$MAX,$JAVA_VERSION" >>"$BENCH_HISTORY"
+echo "Đã ghi vào $BENCH_HISTORY"
@@ -1,16 +1,25 @@
 package com.hometech.hometech;
 
+import com.hometech.hometech.config.SchemaMigrationCommand;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.Arrays;
 
 @SpringBootApplication
 @EntityScan("com.hometech.hometech.model")
 @EnableJpaRepositories("com.hometech.hometech.Repository")
+@EnableScheduling
 public class HomeTechApplication {
 
 	public static void main(String[] args) {
+		// Chạy migration rồi thoát, dùng trước khi deploy: java -jar HomeTech.jar migrate
+		if (args.length > 0 && "migrate".equals(args[0])) {
+			System.exit(SchemaMigrationCommand.run(Arrays.copyOfRange(args, 1, args.length)));
+		}
 		SpringApplication.run(HomeTechApplication.class, args);
 	}
 
@@ -1,9 +1,14 @@
 package com.hometech.hometech.Repository;
 
+import com.hometech.hometech.enums.RoleType;
 import com.hometech.hometech.model.Account;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -13,5 +18,35 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
     Optional<Account> findByVerificationToken(String verificationToken);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
-}
 
+    // Thông tin nhận diện tối thiểu của tài khoản, không nạp User (ảnh đại diện LONGBLOB)
+    interface IdentityView {
+        Long getAccountId();
+        String getUsername();
+        String getEmail();
+        String getPassword();
+        RoleType getRole();
+        boolean isEnabled();
+        boolean isEmailVerified();
+        Long getUserId();
+        Long getCustomerId();
+        Long getAdminId();
+    }
+
+    // Một truy vấn cho cả username lẫn email (dùng 2 unique index username/email);
+    // trùng cả hai thì ưu tiên tài khoản khớp username
+    @Query("SELECT a.id AS accountId, a.username AS username, a.email AS email, a.password AS password, " +
+            "a.role AS role, a.enabled AS enabled, a.emailVerified AS emailVerified, " +
+            "u.id AS userId, c.id AS customerId, ad.id AS adminId " +
+            "FROM Account a LEFT JOIN a.user u " +
+            "LEFT JOIN Customer c ON c.id = u.id " +
+            "LEFT JOIN Admin ad ON ad.id = u.id " +
+            "WHERE a.username = :login OR a.email = :login " +
+            "ORDER BY CASE WHEN a.username = :login THEN 0 ELSE 1 END")
+    List<IdentityView> findIdentityByLogin(@Param("login") String login);
+
+    // Email của một nhóm user (tập người nhận đã lọc theo phân khúc), bỏ tài khoản không có email
+    @Query("SELECT a.email FROM Account a WHERE a.user.id IN :userIds " +
+            "AND a.email IS NOT NULL AND a.email <> ''")
+    List<String> findEmailsByUserIds(@Param("userIds") Collection<Long> userIds);
+}
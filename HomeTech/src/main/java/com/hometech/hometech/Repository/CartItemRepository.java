@@ -2,12 +2,58 @@ package com.hometech.hometech.Repository;
 
 import com.hometech.hometech.model.CartItem;
 import com.hometech.hometech.model.Cart;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     @EntityGraph(attributePaths = {"product", "variant"})
     List<CartItem> findByCart(Cart cart);
+
+    // Một dòng giỏ theo (cart, product, variant) — dùng unique key uk_cart_item_line
+    @EntityGraph(attributePaths = {"product", "variant"})
+    @Query("select ci from CartItem ci left join ci.variant v " +
+            "where ci.cart.id = :cartId and ci.product.id = :productId " +
+            "and ((:variantId is null and v is null) or v.id = :variantId)")
+    Optional<CartItem> findLine(@Param("cartId") Long cartId,
+                                @Param("productId") Long productId,
+                                @Param("variantId") Long variantId);
+
+    // Như findLine nhưng đọc bản mới nhất và khóa dòng; không join product/variant để không khóa theo các dòng đó
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select ci from CartItem ci " +
+            "where ci.cart.id = :cartId and ci.product.id = :productId " +
+            "and ((:variantId is null and ci.variant is null) or ci.variant.id = :variantId)")
+    Optional<CartItem> findLineForUpdate(@Param("cartId") Long cartId,
+                                         @Param("productId") Long productId,
+                                         @Param("variantId") Long variantId);
+
+    /**
+     * Thêm dòng giỏ mới. Tồn kho được kiểm tra ngay trong câu lệnh: chỉ INSERT khi sản phẩm còn hiển thị
+     * và đủ hàng. Trả về 0 nếu sản phẩm/biến thể không hợp lệ hoặc không đủ hàng.
+     * Nơi gọi giữ khóa giỏ ({@link CartRepository#lockById}) và đã kiểm tra dòng chưa tồn tại.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO cart_item (cart_id, product_id, variant_id, quantity)
+            SELECT :cartId, p.id, v.id, :quantity
+            FROM product p
+            LEFT JOIN product_variant v ON v.id = :variantId AND v.product_id = p.id
+            WHERE p.id = :productId
+              AND p.hidden = 0
+              AND (:variantId IS NULL OR v.id IS NOT NULL)
+              AND :quantity > 0
+              AND :quantity <= CASE WHEN :variantId IS NULL THEN p.stock ELSE v.stock END
+            """, nativeQuery = true)
+    int insertLine(@Param("cartId") Long cartId,
+                   @Param("productId") Long productId,
+                   @Param("variantId") Long variantId,
+                   @Param("quantity") int quantity);
 }
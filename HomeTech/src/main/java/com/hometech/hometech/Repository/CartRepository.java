@@ -1,8 +1,18 @@
 package com.hometech.hometech.Repository;
 
 import com.hometech.hometech.model.Cart;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
 
 public interface CartRepository extends JpaRepository<Cart, Long> {
 
+    // Khóa giỏ tới hết transaction: các lần thêm dòng mới vào cùng một giỏ chạy lần lượt
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Cart c where c.id = :id")
+    Optional<Cart> lockById(@Param("id") Long id);
 }
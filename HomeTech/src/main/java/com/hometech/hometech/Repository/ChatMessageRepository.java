@@ -1,13 +1,16 @@
 package com.hometech.hometech.Repository;
 
+import com.hometech.hometech.dto.ChatMessagePayload;
 import com.hometech.hometech.enums.SenderType;
 import com.hometech.hometech.model.ChatMessage;
 import com.hometech.hometech.model.Conversation;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
@@ -20,6 +23,40 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     @Query("update ChatMessage m set m.read = true where m.conversation = :conversation and m.senderType = :senderType and m.read = false")
     void markAsReadForConversationAndSenderType(@Param("conversation") Conversation conversation,
                                                 @Param("senderType") SenderType senderType);
-}
-
 
+    // ===== Lịch sử chat không đọc cột file_data (dùng index conversation_id, sent_at, id) =====
+
+    @Query("select new com.hometech.hometech.dto.ChatMessagePayload(" +
+            "m.id, m.senderType, m.senderId, m.content, m.sentAt, m.fileName, m.fileContentType) " +
+            "from ChatMessage m where m.conversation.id = :conversationId " +
+            "order by m.sentAt asc, m.id asc")
+    List<ChatMessagePayload> findPayloadsByConversationId(@Param("conversationId") Long conversationId);
+
+    @Query("select new com.hometech.hometech.dto.ChatMessagePayload(" +
+            "m.id, m.senderType, m.senderId, m.content, m.sentAt, m.fileName, m.fileContentType) " +
+            "from ChatMessage m where m.conversation.id = :conversationId " +
+            "order by m.sentAt desc, m.id desc")
+    List<ChatMessagePayload> findLatestPayloads(@Param("conversationId") Long conversationId,
+                                                Pageable pageable);
+
+    @Query("select new com.hometech.hometech.dto.ChatMessagePayload(" +
+            "m.id, m.senderType, m.senderId, m.content, m.sentAt, m.fileName, m.fileContentType) " +
+            "from ChatMessage m where m.conversation.id = :conversationId " +
+            "and (m.sentAt < :before or (m.sentAt = :before and m.id < :beforeId)) " +
+            "order by m.sentAt desc, m.id desc")
+    List<ChatMessagePayload> findPayloadsBefore(@Param("conversationId") Long conversationId,
+                                                @Param("before") LocalDateTime before,
+                                                @Param("beforeId") Long beforeId,
+                                                Pageable pageable);
+
+    @Query("select new com.hometech.hometech.dto.ChatMessagePayload(" +
+            "m.id, m.senderType, m.senderId, m.content, m.sentAt, m.fileName, m.fileContentType) " +
+            "from ChatMessage m where m.conversation.id = :conversationId and m.id > :sinceId " +
+            "order by m.id asc")
+    List<ChatMessagePayload> findPayloadsSince(@Param("conversationId") Long conversationId,
+                                               @Param("sinceId") Long sinceId,
+                                               Pageable pageable);
+
+    // Dùng khi dọn file đính kèm không còn tin nhắn nào trỏ tới
+    boolean existsByFilePath(String filePath);
+}
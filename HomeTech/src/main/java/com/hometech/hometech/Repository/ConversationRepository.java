@@ -1,14 +1,60 @@
 package com.hometech.hometech.Repository;
 
+import com.hometech.hometech.dto.ConversationSummary;
 import com.hometech.hometech.model.Conversation;
 import com.hometech.hometech.model.Customer;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface ConversationRepository extends JpaRepository<Conversation, Long> {
 
     Optional<Conversation> findByCustomer(Customer customer);
-}
 
+    // ===== Inbox admin: một query duy nhất, không lazy-load customer =====
+
+    @Query("select new com.hometech.hometech.dto.ConversationSummary(" +
+            "c.id, cu.id, cu.fullName, c.lastMessagePreview, c.lastMessageAt, c.unreadForAdmin) " +
+            "from Conversation c left join c.customer cu " +
+            "order by c.lastMessageAt desc, c.id desc")
+    List<ConversationSummary> findInbox(Pageable pageable);
+
+    @Query("select new com.hometech.hometech.dto.ConversationSummary(" +
+            "c.id, cu.id, cu.fullName, c.lastMessagePreview, c.lastMessageAt, c.unreadForAdmin) " +
+            "from Conversation c left join c.customer cu " +
+            "where c.lastMessageAt < :before or (c.lastMessageAt = :before and c.id < :beforeId) " +
+            "order by c.lastMessageAt desc, c.id desc")
+    List<ConversationSummary> findInboxBefore(@Param("before") LocalDateTime before,
+                                              @Param("beforeId") Long beforeId,
+                                              Pageable pageable);
+
+    // ===== Cập nhật nguyên tử các bộ đếm denormalized =====
 
+    @Modifying
+    @Query("update Conversation c set c.lastMessagePreview = :preview, c.lastMessageAt = :sentAt, " +
+            "c.updatedAt = :sentAt, c.unreadForAdmin = c.unreadForAdmin + 1 where c.id = :id")
+    int recordCustomerMessage(@Param("id") Long id,
+                              @Param("preview") String preview,
+                              @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Query("update Conversation c set c.lastMessagePreview = :preview, c.lastMessageAt = :sentAt, " +
+            "c.updatedAt = :sentAt, c.unreadForCustomer = c.unreadForCustomer + 1 where c.id = :id")
+    int recordAdminMessage(@Param("id") Long id,
+                           @Param("preview") String preview,
+                           @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Query("update Conversation c set c.unreadForCustomer = 0 where c.id = :id")
+    int resetUnreadForCustomer(@Param("id") Long id);
+
+    @Modifying
+    @Query("update Conversation c set c.unreadForAdmin = 0 where c.id = :id")
+    int resetUnreadForAdmin(@Param("id") Long id);
+}
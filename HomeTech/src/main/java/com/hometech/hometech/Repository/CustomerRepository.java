@@ -2,8 +2,12 @@ package com.hometech.hometech.Repository;
 
 import com.hometech.hometech.model.Account;
 import com.hometech.hometech.model.Customer;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +16,36 @@ public interface CustomerRepository extends JpaRepository<Customer, Long> {
     Optional<Customer> findById(Long id);
     Optional<Customer> findByAccount(Account account);
     Optional<Customer> findByAccount_Username(String username);
+
+    // Điều kiện phân khúc khách hàng; tham số null = không lọc theo tiêu chí đó
+    String SEGMENT_FILTER = "a.role = com.hometech.hometech.enums.RoleType.USER AND a.enabled = true " +
+            "AND (:minLoyaltyPoints IS NULL OR c.loyaltyPoints >= :minLoyaltyPoints) " +
+            "AND (:purchasedCategoryId IS NULL OR EXISTS (SELECT oi.id FROM OrderItem oi JOIN oi.order o " +
+            "WHERE o.customer = c AND o.createdAt >= :purchasedSince " +
+            "AND o.status <> com.hometech.hometech.enums.OrderStatus.CANCELLED " +
+            "AND oi.product.category.id = :purchasedCategoryId)) " +
+            "AND (:favoriteCategoryId IS NULL OR EXISTS (SELECT f.id FROM Favorite f " +
+            "WHERE f.customer = c AND f.product.category.id = :favoriteCategoryId)) " +
+            "AND (:cartAbandoned = false OR (EXISTS (SELECT ci.id FROM CartItem ci WHERE ci.cart.customer = c) " +
+            "AND NOT EXISTS (SELECT o2.id FROM Order o2 WHERE o2.customer = c AND o2.createdAt >= :noOrderSince)))";
+
+    // Chỉ lấy id, phân trang keyset theo id để quét tập lớn mà không OFFSET
+    @Query("SELECT c.id FROM Customer c JOIN c.account a WHERE c.id > :afterId AND " + SEGMENT_FILTER +
+            " ORDER BY c.id")
+    List<Long> findSegmentIdsAfter(@Param("afterId") long afterId,
+                                   @Param("minLoyaltyPoints") Integer minLoyaltyPoints,
+                                   @Param("purchasedCategoryId") Long purchasedCategoryId,
+                                   @Param("purchasedSince") LocalDateTime purchasedSince,
+                                   @Param("favoriteCategoryId") Long favoriteCategoryId,
+                                   @Param("cartAbandoned") boolean cartAbandoned,
+                                   @Param("noOrderSince") LocalDateTime noOrderSince,
+                                   Pageable pageable);
+
+    @Query("SELECT COUNT(c) FROM Customer c JOIN c.account a WHERE " + SEGMENT_FILTER)
+    long countSegment(@Param("minLoyaltyPoints") Integer minLoyaltyPoints,
+                      @Param("purchasedCategoryId") Long purchasedCategoryId,
+                      @Param("purchasedSince") LocalDateTime purchasedSince,
+                      @Param("favoriteCategoryId") Long favoriteCategoryId,
+                      @Param("cartAbandoned") boolean cartAbandoned,
+                      @Param("noOrderSince") LocalDateTime noOrderSince);
 }
@@ -0,0 +1,7 @@
+package com.hometech.hometech.Repository;
+
+import com.hometech.hometech.model.EmailCampaign;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface EmailCampaignRepository extends JpaRepository<EmailCampaign, Long> {
+}
@@ -0,0 +1,59 @@
+package com.hometech.hometech.Repository;
+
+import com.hometech.hometech.enums.EmailOutboxStatus;
+import com.hometech.hometech.model.EmailOutboxMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    long countByState(EmailOutboxStatus state);
+
+    // Email tới hạn gửi (kể cả SENDING quá hạn giữ do worker chết giữa chừng); email giao dịch đi trước
+    @Query("select m.id from EmailOutboxMessage m " +
+            "where m.state in (com.hometech.hometech.enums.EmailOutboxStatus.PENDING, " +
+            "com.hometech.hometech.enums.EmailOutboxStatus.SENDING) " +
+            "and m.nextAttemptAt <= :now order by m.priority, m.nextAttemptAt, m.id")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    @Query("select m from EmailOutboxMessage m left join fetch m.campaign where m.id = :id")
+    Optional<EmailOutboxMessage> findWithCampaign(@Param("id") Long id);
+
+    // Chỉ một worker giành được email; nextAttemptAt được dùng làm hạn giữ
+    @Transactional
+    @Modifying
+    @Query("update EmailOutboxMessage m set m.state = com.hometech.hometech.enums.EmailOutboxStatus.SENDING, " +
+            "m.nextAttemptAt = :leaseUntil, m.attempts = m.attempts + 1 " +
+            "where m.id = :id and m.nextAttemptAt <= :now " +
+            "and m.state in (com.hometech.hometech.enums.EmailOutboxStatus.PENDING, " +
+            "com.hometech.hometech.enums.EmailOutboxStatus.SENDING)")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query("update EmailOutboxMessage m set m.state = com.hometech.hometech.enums.EmailOutboxStatus.SENT, " +
+            "m.sentAt = :now, m.lastError = null " +
+            "where m.id = :id and m.state = com.hometech.hometech.enums.EmailOutboxStatus.SENDING")
+    int markSent(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update EmailOutboxMessage m set m.state = :state, m.nextAttemptAt = :nextAttemptAt, m.lastError = :error " +
+            "where m.id = :id and m.state = com.hometech.hometech.enums.EmailOutboxStatus.SENDING")
+    int markAttemptFailed(@Param("id") Long id,
+                          @Param("state") EmailOutboxStatus state,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                          @Param("error") String error);
+
+    // [state, count] của một campaign
+    @Query("select m.state, count(m) from EmailOutboxMessage m where m.campaign.id = :campaignId group by m.state")
+    List<Object[]> countByStateForCampaign(@Param("campaignId") Long campaignId);
+}
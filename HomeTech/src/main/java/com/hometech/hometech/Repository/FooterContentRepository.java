@@ -2,10 +2,20 @@ package com.hometech.hometech.Repository;
 
 import com.hometech.hometech.model.FooterContent;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 public interface FooterContentRepository extends JpaRepository<FooterContent, Long> {
     Optional<FooterContent> findFirstByActiveTrueOrderByUpdatedAtDesc();
-}
 
+    // Chỉ giữ một footer đang hoạt động: tắt các footer còn lại bằng một câu UPDATE
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE FooterContent f SET f.active = false, f.updatedAt = :now WHERE f.active = true AND f.id <> :activeId")
+    int deactivateOthers(@Param("activeId") Long activeId, @Param("now") LocalDateTime now);
+}
@@ -3,11 +3,14 @@ package com.hometech.hometech.Repository;
 import com.hometech.hometech.enums.OrderStatus;
 import com.hometech.hometech.model.Customer;
 import com.hometech.hometech.model.Order;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,4 +30,17 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query("SELECT o FROM Order o WHERE o.id = :id")
     Optional<Order> findByIdWithRelations(@Param("id") Long id);
 
+    // Id đơn theo keyset, rồi nạp đơn kèm item theo lô (fetch collection không phân trang được trong SQL)
+    @Query("SELECT o.id FROM Order o WHERE o.id > :afterId ORDER BY o.id")
+    List<Long> findIdsAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"items", "items.product", "items.variant"})
+    @Query("SELECT o FROM Order o WHERE o.id IN :ids ORDER BY o.id")
+    List<Order> findWithItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Chuyển trạng thái có điều kiện, trả về 0 nếu đơn đã ở trạng thái khác
+    @Modifying
+    @Query("update Order o set o.status = :to where o.id = :id and o.status = :from")
+    int transitionStatus(@Param("id") Long id, @Param("from") OrderStatus from, @Param("to") OrderStatus to);
+
 }
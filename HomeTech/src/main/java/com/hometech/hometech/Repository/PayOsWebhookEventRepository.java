@@ -0,0 +1,53 @@
+package com.hometech.hometech.Repository;
+
+import com.hometech.hometech.enums.WebhookEventStatus;
+import com.hometech.hometech.model.PayOsWebhookEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface PayOsWebhookEventRepository extends JpaRepository<PayOsWebhookEvent, Long> {
+
+    Optional<PayOsWebhookEvent> findByOrderCodeAndReference(Long orderCode, String reference);
+
+    long countByState(WebhookEventStatus state);
+
+    // Sự kiện tới hạn xử lý: PENDING tới lượt thử, hoặc PROCESSING đã quá hạn giữ (tiến trình xử lý trước bị chết)
+    @Query("select e.id from PayOsWebhookEvent e " +
+            "where e.state in (com.hometech.hometech.enums.WebhookEventStatus.PENDING, " +
+            "com.hometech.hometech.enums.WebhookEventStatus.PROCESSING) " +
+            "and e.nextAttemptAt <= :now order by e.nextAttemptAt, e.id")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Chỉ một tiến trình giành được sự kiện; nextAttemptAt được dùng làm hạn giữ
+    @Transactional
+    @Modifying
+    @Query("update PayOsWebhookEvent e set e.state = com.hometech.hometech.enums.WebhookEventStatus.PROCESSING, " +
+            "e.nextAttemptAt = :leaseUntil, e.attempts = e.attempts + 1 " +
+            "where e.id = :id and e.nextAttemptAt <= :now " +
+            "and e.state in (com.hometech.hometech.enums.WebhookEventStatus.PENDING, " +
+            "com.hometech.hometech.enums.WebhookEventStatus.PROCESSING)")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Modifying
+    @Query("update PayOsWebhookEvent e set e.state = com.hometech.hometech.enums.WebhookEventStatus.PROCESSED, " +
+            "e.processedAt = :now, e.lastError = :note " +
+            "where e.id = :id and e.state = com.hometech.hometech.enums.WebhookEventStatus.PROCESSING")
+    int markProcessed(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("note") String note);
+
+    @Transactional
+    @Modifying
+    @Query("update PayOsWebhookEvent e set e.state = :state, e.nextAttemptAt = :nextAttemptAt, e.lastError = :error " +
+            "where e.id = :id and e.state = com.hometech.hometech.enums.WebhookEventStatus.PROCESSING")
+    int markAttemptFailed(@Param("id") Long id,
+                          @Param("state") WebhookEventStatus state,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                          @Param("error") String error);
+}
@@ -2,11 +2,41 @@ package com.hometech.hometech.Repository;
 
 import com.hometech.hometech.model.Order;
 import com.hometech.hometech.model.Payment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
     Optional<Payment> findByOrder(Order order);
     Optional<Payment> findByTxnRef(String txnRef);
+
+    // Compare-and-set: chỉ chuyển trạng thái nếu payment vẫn đang ở trạng thái đã đọc
+    @Modifying
+    @Query("update Payment p set p.status = :newStatus, p.transactionStatus = :transactionStatus, " +
+            "p.transactionNo = coalesce(:transactionNo, p.transactionNo), p.payDate = coalesce(:payDate, p.payDate) " +
+            "where p.id = :id and (p.status = :expectedStatus or (:expectedStatus is null and p.status is null))")
+    int transitionStatus(@Param("id") Long id,
+                         @Param("expectedStatus") String expectedStatus,
+                         @Param("newStatus") String newStatus,
+                         @Param("transactionStatus") String transactionStatus,
+                         @Param("transactionNo") String transactionNo,
+                         @Param("payDate") String payDate);
+
+    // Payment online còn chờ thanh toán của đơn tạo trước cutoff; phân trang keyset theo id (id tăng theo thời gian tạo)
+    @Query("select p from Payment p join fetch p.order o " +
+            "where p.method in :methods and p.status in :statuses " +
+            "and o.status = com.hometech.hometech.enums.OrderStatus.WAITING_CONFIRMATION " +
+            "and o.createdAt < :cutoff and p.id > :afterId order by p.id")
+    List<Payment> findStaleAwaiting(@Param("methods") Collection<String> methods,
+                                    @Param("statuses") Collection<String> statuses,
+                                    @Param("cutoff") LocalDateTime cutoff,
+                                    @Param("afterId") Long afterId,
+                                    Pageable pageable);
 }
@@ -0,0 +1,61 @@
+package com.hometech.hometech.Repository;
+
+import com.hometech.hometech.model.ProductRating;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ProductRatingRepository extends JpaRepository<ProductRating, Long> {
+
+    /**
+     * Cộng dồn tại DB (không đọc-sửa-ghi) để hai đánh giá đồng thời không ghi đè nhau. Chưa có dòng tổng hợp
+     * thì chính câu lệnh này tạo dòng, tính từ bảng review (đã gồm thay đổi của transaction hiện tại);
+     * hai transaction cùng tạo thì transaction sau vướng khóa chính và rơi vào nhánh cộng dồn.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO product_rating (product_id, rating_count, rating_sum, star1, star2, star3, star4, star5, updated_at) " +
+            "SELECT :productId, COUNT(*), COALESCE(SUM(r.rating), 0), " +
+            "COALESCE(SUM(CASE WHEN r.rating = 1 THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN r.rating = 2 THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN r.rating = 3 THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN r.rating = 4 THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN r.rating = 5 THEN 1 ELSE 0 END), 0), :now " +
+            "FROM review r WHERE r.product_id = :productId AND r.hidden = false AND r.rating BETWEEN 1 AND 5 " +
+            "ON DUPLICATE KEY UPDATE rating_count = rating_count + :count, rating_sum = rating_sum + :sum, " +
+            "star1 = star1 + :s1, star2 = star2 + :s2, star3 = star3 + :s3, star4 = star4 + :s4, star5 = star5 + :s5, " +
+            "updated_at = :now",
+            nativeQuery = true)
+    int applyDelta(@Param("productId") Long productId,
+                   @Param("count") long count,
+                   @Param("sum") long sum,
+                   @Param("s1") long s1,
+                   @Param("s2") long s2,
+                   @Param("s3") long s3,
+                   @Param("s4") long s4,
+                   @Param("s5") long s5,
+                   @Param("now") LocalDateTime now);
+
+    // Tạo dòng rỗng (đã khóa trong transaction hiện tại) cho sản phẩm chưa có, để tính lại giữ khóa được mọi dòng
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO product_rating (product_id, rating_count, rating_sum, star1, star2, star3, star4, star5) " +
+            "SELECT p.id, 0, 0, 0, 0, 0, 0, 0 FROM product p WHERE p.id IN :productIds",
+            nativeQuery = true)
+    int insertMissing(@Param("productIds") List<Long> productIds);
+
+    // Khóa dòng tổng hợp tới hết transaction: cộng dồn đồng thời phải chờ, không bị ghi đè bởi số tính lại
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM ProductRating r WHERE r.productId IN :productIds")
+    List<ProductRating> lockAll(@Param("productIds") List<Long> productIds);
+
+    // [productId, rating, count] của các đánh giá đang hiển thị thuộc các sản phẩm cho trước
+    @Query("SELECT r.product.id, r.rating, COUNT(r) FROM Review r " +
+            "WHERE r.hidden = false AND r.rating BETWEEN 1 AND 5 AND r.product.id IN :productIds " +
+            "GROUP BY r.product.id, r.rating")
+    List<Object[]> countVisibleByProductAndRating(@Param("productIds") List<Long> productIds);
+}
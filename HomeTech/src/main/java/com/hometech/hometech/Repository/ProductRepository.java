@@ -2,13 +2,16 @@ package com.hometech.hometech.Repository;
 
 import com.hometech.hometech.model.Category;
 import com.hometech.hometech.model.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -48,4 +51,48 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
 
     // Sắp xếp theo ngày tạo (createdAt)
     List<Product> findAllByOrderByCreatedAtDesc(); // mới nhất
+
+    // Sản phẩm mới nhất đang bán, giới hạn số lượng (trang chủ)
+    List<Product> findByHiddenFalseOrderByCreatedAtDesc(Pageable pageable);
+
+    // Id sản phẩm theo keyset (dùng cho job tính lại)
+    @Query("SELECT p.id FROM Product p WHERE p.id > :afterId ORDER BY p.id")
+    List<Long> findIdsAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    // Trang sản phẩm theo keyset id khi stream danh sách lớn; includeHidden = false chỉ lấy sản phẩm đang bán
+    @Query("SELECT p FROM Product p WHERE p.id > :afterId AND (:includeHidden = true OR p.hidden = false) ORDER BY p.id")
+    List<Product> findPageAfter(@Param("afterId") long afterId,
+                                @Param("includeHidden") boolean includeHidden,
+                                Pageable pageable);
+
+    // (id, id danh mục, hidden) của sản phẩm cho CategoryDirectory
+    @Query("SELECT p.id, c.id, p.hidden FROM Product p LEFT JOIN p.category c WHERE p.id > :afterId ORDER BY p.id")
+    List<Object[]> findCategoryStatesAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    @Query("SELECT p.id, c.id, p.hidden FROM Product p LEFT JOIN p.category c WHERE p.id IN :ids")
+    List<Object[]> findCategoryStates(@Param("ids") Collection<Long> ids);
+
+    // Bộ lọc kiểm duyệt hàng loạt; tham số null = không lọc, keyword đã ở dạng '%từ khóa%' chữ thường
+    String MODERATION_FILTER = "(:categoryId IS NULL OR p.category.id = :categoryId) " +
+            "AND (:keyword IS NULL OR LOWER(p.name) LIKE :keyword) " +
+            "AND (:outOfStock IS NULL OR (:outOfStock = true AND p.stock <= 0) OR (:outOfStock = false AND p.stock > 0)) " +
+            "AND (:hidden IS NULL OR p.hidden = :hidden)";
+
+    @Query("SELECT p.id FROM Product p WHERE p.id > :afterId AND " + MODERATION_FILTER + " ORDER BY p.id")
+    List<Long> findModerationIdsAfter(@Param("afterId") long afterId,
+                                      @Param("categoryId") Long categoryId,
+                                      @Param("keyword") String keyword,
+                                      @Param("outOfStock") Boolean outOfStock,
+                                      @Param("hidden") Boolean hidden,
+                                      Pageable pageable);
+
+    @Query("SELECT COUNT(p) FROM Product p WHERE " + MODERATION_FILTER)
+    long countForModeration(@Param("categoryId") Long categoryId,
+                            @Param("keyword") String keyword,
+                            @Param("outOfStock") Boolean outOfStock,
+                            @Param("hidden") Boolean hidden);
+
+    @Modifying
+    @Query("UPDATE Product p SET p.hidden = :hidden WHERE p.id IN :ids AND p.hidden <> :hidden")
+    int updateHidden(@Param("ids") Collection<Long> ids, @Param("hidden") boolean hidden);
 }
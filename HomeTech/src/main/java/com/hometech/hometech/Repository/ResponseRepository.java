@@ -2,10 +2,17 @@ package com.hometech.hometech.Repository;
 
 import com.hometech.hometech.model.Response;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.Optional;
 
 public interface ResponseRepository extends JpaRepository<Response, Integer> {
     Optional<Response> findByReviewId(Long reviewId);
 
+    @Modifying
+    @Query("DELETE FROM Response r WHERE r.review.id IN :reviewIds")
+    int deleteByReviewIds(@Param("reviewIds") Collection<Long> reviewIds);
 }
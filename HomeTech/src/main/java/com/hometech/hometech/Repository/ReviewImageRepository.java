@@ -0,0 +1,44 @@
+package com.hometech.hometech.Repository;
+
+import com.hometech.hometech.model.ReviewImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface ReviewImageRepository extends JpaRepository<ReviewImage, Long> {
+
+    // Thông tin ảnh, không nạp cột LONGBLOB
+    interface ImageRef {
+        Long getId();
+        Long getReviewId();
+        String getFilePath();
+        String getFileHash();
+        String getContentType();
+    }
+
+    @Query("SELECT i.id AS id, i.review.id AS reviewId, i.filePath AS filePath, " +
+            "i.fileHash AS fileHash, i.contentType AS contentType " +
+            "FROM ReviewImage i WHERE i.review.id IN :reviewIds ORDER BY i.id")
+    List<ImageRef> findRefsByReviewIds(@Param("reviewIds") Collection<Long> reviewIds);
+
+    @Query("SELECT i.id AS id, i.review.id AS reviewId, i.filePath AS filePath, " +
+            "i.fileHash AS fileHash, i.contentType AS contentType " +
+            "FROM ReviewImage i WHERE i.id = :id AND i.review.hidden = false")
+    Optional<ImageRef> findVisibleRef(@Param("id") Long id);
+
+    // Dùng khi dọn file ảnh: file còn ảnh nào trỏ tới thì giữ (nội dung trùng dùng chung một file)
+    boolean existsByFilePath(String filePath);
+
+    // Ảnh cũ lưu trong DB
+    @Query("SELECT i.imageData FROM ReviewImage i WHERE i.id = :id")
+    byte[] findLegacyData(@Param("id") Long id);
+
+    @Modifying
+    @Query("DELETE FROM ReviewImage i WHERE i.review.id IN :reviewIds")
+    int deleteByReviewIds(@Param("reviewIds") Collection<Long> reviewIds);
+}
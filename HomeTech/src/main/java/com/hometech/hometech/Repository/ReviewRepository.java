@@ -3,10 +3,14 @@ package com.hometech.hometech.Repository;
 import com.hometech.hometech.model.Review;
 import com.hometech.hometech.model.Product;
 import com.hometech.hometech.model.Customer;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,13 +24,93 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
     // 🟢 Lấy tất cả đánh giá chưa ẩn (hiển thị cho người dùng)
     List<Review> findByProductAndHiddenFalse(Product product);
 
+    // Trang đánh giá theo keyset id khi stream toàn bộ đánh giá cho admin
+    @Query("SELECT r FROM Review r WHERE r.id > :afterId ORDER BY r.id")
+    List<Review> findPageAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    // Một dòng trong feed đánh giá, không nạp Product/Customer
+    interface FeedRow {
+        Long getId();
+        int getRating();
+        String getContent();
+        LocalDateTime getCreatedAt();
+        LocalDateTime getUpdatedAt();
+        String getCustomerName();
+    }
+
+    String FEED_SELECT = "SELECT r.id AS id, r.rating AS rating, r.content AS content, r.createdAt AS createdAt, " +
+            "r.updatedAt AS updatedAt, c.fullName AS customerName " +
+            "FROM Review r LEFT JOIN r.customer c WHERE r.product.id = :productId AND r.hidden = false ";
+
+    // Mới nhất: keyset theo id giảm dần
+    @Query(FEED_SELECT + "AND r.id < :beforeId ORDER BY r.id DESC")
+    List<FeedRow> findFeedNewest(@Param("productId") Long productId,
+                                 @Param("beforeId") long beforeId,
+                                 Pageable pageable);
+
+    @Query(FEED_SELECT + "AND (r.rating < :rating OR (r.rating = :rating AND r.id < :beforeId)) " +
+            "ORDER BY r.rating DESC, r.id DESC")
+    List<FeedRow> findFeedHighest(@Param("productId") Long productId,
+                                  @Param("rating") int rating,
+                                  @Param("beforeId") long beforeId,
+                                  Pageable pageable);
+
+    @Query(FEED_SELECT + "AND (r.rating > :rating OR (r.rating = :rating AND r.id < :beforeId)) " +
+            "ORDER BY r.rating ASC, r.id DESC")
+    List<FeedRow> findFeedLowest(@Param("productId") Long productId,
+                                 @Param("rating") int rating,
+                                 @Param("beforeId") long beforeId,
+                                 Pageable pageable);
+
+    @Query(FEED_SELECT + "AND r.id < :beforeId AND EXISTS (SELECT i.id FROM ReviewImage i WHERE i.review = r) " +
+            "ORDER BY r.id DESC")
+    List<FeedRow> findFeedWithPhotos(@Param("productId") Long productId,
+                                     @Param("beforeId") long beforeId,
+                                     Pageable pageable);
+
 
 
 //    // 🟢 Tính trung bình rating chỉ trên các đánh giá không bị ẩn
 //    @Query("SELECT AVG(r.rating) FROM Review r WHERE r.product = :product AND r.hidden = false")
 //    Double getAverageRatingByProduct(@Param("product") Product product);
-    @Query("SELECT AVG(r.rating) FROM Review r WHERE r.product.id = :productId AND r.hidden = true")
-    Optional<Double> getAverageRating(@Param("productId") long productId);
 
+    // Bộ lọc kiểm duyệt hàng loạt; tham số null = không lọc, keyword đã ở dạng '%từ khóa%' chữ thường
+    String MODERATION_FILTER = "(:productId IS NULL OR r.product.id = :productId) " +
+            "AND (:customerId IS NULL OR r.customer.id = :customerId) " +
+            "AND (:maxRating IS NULL OR r.rating <= :maxRating) " +
+            "AND (:keyword IS NULL OR LOWER(r.content) LIKE :keyword) " +
+            "AND (:createdFrom IS NULL OR r.createdAt >= :createdFrom) " +
+            "AND (:createdTo IS NULL OR r.createdAt < :createdTo) " +
+            "AND (:hidden IS NULL OR r.hidden = :hidden)";
+
+    @Query("SELECT r.id FROM Review r WHERE r.id > :afterId AND " + MODERATION_FILTER + " ORDER BY r.id")
+    List<Long> findModerationIdsAfter(@Param("afterId") long afterId,
+                                      @Param("productId") Long productId,
+                                      @Param("customerId") Long customerId,
+                                      @Param("maxRating") Integer maxRating,
+                                      @Param("keyword") String keyword,
+                                      @Param("createdFrom") LocalDateTime createdFrom,
+                                      @Param("createdTo") LocalDateTime createdTo,
+                                      @Param("hidden") Boolean hidden,
+                                      Pageable pageable);
+
+    @Query("SELECT COUNT(r) FROM Review r WHERE " + MODERATION_FILTER)
+    long countForModeration(@Param("productId") Long productId,
+                            @Param("customerId") Long customerId,
+                            @Param("maxRating") Integer maxRating,
+                            @Param("keyword") String keyword,
+                            @Param("createdFrom") LocalDateTime createdFrom,
+                            @Param("createdTo") LocalDateTime createdTo,
+                            @Param("hidden") Boolean hidden);
+
+    @Query("SELECT DISTINCT r.product.id FROM Review r WHERE r.id IN :ids")
+    List<Long> findProductIdsByReviewIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE Review r SET r.hidden = :hidden WHERE r.id IN :ids AND r.hidden <> :hidden")
+    int updateHidden(@Param("ids") Collection<Long> ids, @Param("hidden") boolean hidden);
 
+    @Modifying
+    @Query("DELETE FROM Review r WHERE r.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,27 @@
+package com.hometech.hometech.Repository;
+
+import com.hometech.hometech.model.VoucherRedemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface VoucherRedemptionRepository extends JpaRepository<VoucherRedemption, Long> {
+
+    long countByVoucherIdAndCustomerIdAndReleasedFalse(Long voucherId, Long customerId);
+
+    List<VoucherRedemption> findByOrderIdAndReleasedFalse(Long orderId);
+
+    @Modifying
+    @Query("update VoucherRedemption r set r.orderId = :orderId where r.id = :id")
+    int attachOrder(@Param("id") Long id, @Param("orderId") Long orderId);
+
+    // Chỉ một luồng chuyển được released false -> true, tránh hoàn lượt hai lần
+    @Modifying
+    @Query("update VoucherRedemption r set r.released = true, r.releasedAt = :now " +
+            "where r.id = :id and r.released = false")
+    int markReleased(@Param("id") Long id, @Param("now") LocalDateTime now);
+}
@@ -2,9 +2,24 @@ package com.hometech.hometech.Repository;
 
 import com.hometech.hometech.model.Voucher;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
 public interface VoucherRepository extends JpaRepository<Voucher, Long> {
+    // Mã luôn được lưu ở dạng chuẩn hóa (VoucherRulesCache.normalizeCode, dòng cũ sửa bởi migration 9):
+    // truyền mã đã chuẩn hóa để so khớp thẳng trên unique index của cột code
     Optional<Voucher> findByCode(String code);
-}
\ No newline at end of file
+
+    // Tăng lượt dùng có điều kiện trong một câu lệnh: trả về 0 nếu đã hết lượt
+    @Modifying
+    @Query("update Voucher v set v.usedCount = coalesce(v.usedCount, 0) + 1 " +
+            "where v.id = :id and (v.usageLimit is null or coalesce(v.usedCount, 0) < v.usageLimit)")
+    int tryIncrementUsage(@Param("id") Long id);
+
+    @Modifying
+    @Query("update Voucher v set v.usedCount = v.usedCount - 1 where v.id = :id and v.usedCount > 0")
+    int decrementUsage(@Param("id") Long id);
+}
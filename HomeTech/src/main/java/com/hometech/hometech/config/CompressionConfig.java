@@ -0,0 +1,32 @@
+package com.hometech.hometech.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+// Nén gzip response dạng text/JSON khi client hỗ trợ và body lớn hơn ngưỡng
+@Configuration
+public class CompressionConfig {
+
+    // Tomcat chỉ có gzip; response có ETag mạnh không được nén nên HttpCacheInterceptor dùng ETag yếu (W/"...")
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> compressionCustomizer(
+            @Value("${http.compression.enabled:true}") boolean enabled,
+            @Value("${http.compression.min-response-size:2048}") long minResponseSize) {
+        return factory -> {
+            Compression compression = new Compression();
+            compression.setEnabled(enabled);
+            // Body nhỏ nén không lợi: header gzip và CPU tốn hơn số byte tiết kiệm được
+            compression.setMinResponseSize(DataSize.ofBytes(minResponseSize));
+            compression.setMimeTypes(new String[]{
+                    "application/json", "text/html", "text/css", "text/plain",
+                    "text/javascript", "application/javascript", "image/svg+xml"
+            });
+            factory.setCompression(compression);
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package com.hometech.hometech.config;
+
+import com.hometech.hometech.service.CatalogVersions;
+import com.hometech.hometech.service.SiteContentSnapshot;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * ETag và Cache-Control cho các API GET công khai của catalog (sản phẩm, danh mục, banner, footer).
+ *
+ * <p>ETag lấy từ phiên bản dữ liệu ({@link CatalogVersions}, {@link SiteContentSnapshot}) chứ không băm body,
+ * nên request có {@code If-None-Match} trùng được trả 304 ngay tại đây, không gọi service, không truy vấn DB.
+ * Phiên bản được đọc trước khi controller chạy: dữ liệu đổi trong lúc đó thì body mới hơn ETag và lần sau client
+ * nhận lại bản đầy đủ, không bao giờ ngược lại. Phiên bản dùng chung qua DB nên mọi node cho cùng ETag.
+ * ETag là loại yếu ({@code W/"..."}) vì Tomcat không nén gzip response mang ETag mạnh; bản nén và bản gốc
+ * cùng nội dung nên so sánh yếu của If-None-Match vẫn đúng.
+ */
+@Component
+public class HttpCacheInterceptor implements HandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpCacheInterceptor.class);
+
+    private record Rule(PathPattern pattern, Function<PathPattern.PathMatchInfo, String> version, CacheControl cacheControl) {
+    }
+
+    private final CatalogVersions catalogVersions;
+    private final List<Rule> rules;
+
+    private final LongAdder tagged = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    public HttpCacheInterceptor(CatalogVersions catalogVersions,
+                                SiteContentSnapshot siteContentSnapshot,
+                                @Value("${http.cache.catalog-max-age-seconds:30}") long catalogMaxAgeSeconds) {
+        this.catalogVersions = catalogVersions;
+
+        // Catalog: cho phép CDN/trình duyệt giữ ngắn hạn; banner/footer đổi theo lịch nên luôn hỏi lại (304 rất rẻ)
+        CacheControl catalog = CacheControl.maxAge(catalogMaxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+        CacheControl siteContent = CacheControl.noCache().cachePublic();
+        Function<PathPattern.PathMatchInfo, String> catalogTag = match -> catalogVersions.catalogTag();
+        Function<PathPattern.PathMatchInfo, String> productTag =
+                match -> catalogVersions.productTag(Long.parseLong(match.getUriVariables().get("id")));
+        Function<PathPattern.PathMatchInfo, String> siteContentTag = match -> "s" + siteContentSnapshot.version();
+
+        // /last-7-days không có ở đây: kết quả đổi theo thời gian dù không ai sửa dữ liệu
+        PathPatternParser parser = PathPatternParser.defaultInstance;
+        this.rules = List.of(
+                new Rule(parser.parse("/api/products/{id:\\d+}"), productTag, catalog),
+                new Rule(parser.parse("/api/products/{id:\\d+}/variants"), productTag, catalog),
+                new Rule(parser.parse("/api/products"), catalogTag, catalog),
+                new Rule(parser.parse("/api/products/search"), catalogTag, catalog),
+                new Rule(parser.parse("/api/products/sort/**"), catalogTag, catalog),
+                new Rule(parser.parse("/api/products/newest"), catalogTag, catalog),
+                new Rule(parser.parse("/api/products/top-selling"), catalogTag, catalog),
+                new Rule(parser.parse("/api/products/category/**"), catalogTag, catalog),
+                new Rule(parser.parse("/api/categories/**"), catalogTag, catalog),
+                new Rule(parser.parse("/api/content/banners"), siteContentTag, siteContent),
+                new Rule(parser.parse("/api/content/sliders"), siteContentTag, siteContent),
+                new Rule(parser.parse("/api/content/footer"), siteContentTag, siteContent)
+        );
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request,
+                             HttpServletResponse response,
+                             Object handler) {
+        if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
+            return true;
+        }
+        PathContainer path = PathContainer.parsePath(request.getRequestURI().substring(request.getContextPath().length()));
+        for (Rule rule : rules) {
+            PathPattern.PathMatchInfo match = rule.pattern().matchAndExtract(path);
+            if (match != null) {
+                return apply(rule, match, request, response);
+            }
+        }
+        return true;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tagged", tagged.sum());
+        stats.put("notModified", notModified.sum());
+        stats.putAll(catalogVersions.getStats());
+        return stats;
+    }
+
+    private boolean apply(Rule rule, PathPattern.PathMatchInfo match, HttpServletRequest request, HttpServletResponse response) {
+        String version;
+        try {
+            version = rule.version().apply(match);
+        } catch (RuntimeException e) {
+            // Không lấy được phiên bản (vd. lỗi DB khi tải lại banner): trả bình thường, không gắn ETag
+            log.warn("Skipping ETag for {}: {}", request.getRequestURI(), e.getMessage());
+            return true;
+        }
+        tagged.increment();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, rule.cacheControl().getHeaderValue());
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        // Tự đặt header ETag; trùng If-None-Match thì set 304 và dừng tại đây
+        if (new ServletWebRequest(request, response).checkNotModified("W/\"" + version + "\"")) {
+            notModified.increment();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,15 @@
+package com.hometech.hometech.config;
+
+/**
+ * Một bước thay đổi schema có số phiên bản, chạy đúng một lần rồi được ghi vào bảng {@code schema_migration}.
+ *
+ * <p>Bước trả về {@code false} khi chưa chạy được (vd. bảng đích chưa được Hibernate tạo vì migration chạy
+ * trước lần deploy đầu): không được ghi nhận và sẽ chạy lại ở lần migrate sau.
+ */
+public record SchemaMigration(int version, String description, Step step) {
+
+    @FunctionalInterface
+    public interface Step {
+        boolean apply(SchemaMigrator.Context context) throws Exception;
+    }
+}
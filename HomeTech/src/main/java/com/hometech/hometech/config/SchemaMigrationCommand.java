@@ -0,0 +1,39 @@
+package com.hometech.hometech.config;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Lệnh migrate chạy riêng trước khi deploy: {@code java -jar HomeTech.jar migrate [--spring.datasource...]}.
+ *
+ * <p>Chỉ dựng DataSource và {@link SchemaMigrator} (không JPA, web, security) nên chạy nhanh; mã thoát 0 khi mọi
+ * bước thành công. Các instance mới sau đó có thể chạy với {@code schema.migration.mode=validate}.
+ * Bước cần bảng do Hibernate tạo mà bảng chưa có sẽ được hoãn và chạy ở lần khởi động ứng dụng tiếp theo.
+ * Không đánh dấu @Configuration để component scan của ứng dụng chính không nạp class này.
+ */
+@ImportAutoConfiguration(DataSourceAutoConfiguration.class)
+@Import({SchemaMigrations.class, SchemaMigrator.class})
+public class SchemaMigrationCommand {
+
+    public static int run(String[] args) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SchemaMigrationCommand.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                // Gọi migrate() trực tiếp bên dưới để lấy kết quả, không chạy lần nữa trong @PostConstruct
+                .properties("schema.migration.mode=off")
+                .run(args)) {
+            SchemaMigrator.Result result = context.getBean(SchemaMigrator.class).migrate();
+            System.out.printf("Applied %s, deferred %s%n", result.applied(), result.deferred());
+            if (!result.success()) {
+                System.err.printf("Migration V%d failed: %s%n", result.failedVersion(), result.error());
+                return 1;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.hometech.hometech.config;
+
+import com.hometech.hometech.enums.OrderStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Danh sách migration của HomeTech (trước đây OrderSchemaFixer kiểm tra lại tất cả ở mỗi lần khởi động).
+ * Thêm bước mới ở cuối với số phiên bản lớn hơn; không sửa hay đánh số lại bước đã phát hành.
+ * Các bước vẫn tự kiểm tra trạng thái hiện có nên chạy an toàn trên database đã được sửa tay/bởi bản cũ.
+ */
+@Component
+public class SchemaMigrations {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrations.class);
+
+    public List<SchemaMigration> all() {
+        return List.of(
+                new SchemaMigration(1, "orders.payment_method hỗ trợ VNPAY", this::paymentMethodSupportsVnPay),
+                new SchemaMigration(2, "order_addresses -> order_info, thêm email", this::orderInfoSnapshot),
+                new SchemaMigration(3, "orders lưu mã voucher và số tiền giảm", this::orderDiscountSnapshot),
+                new SchemaMigration(4, "điền dữ liệu inbox cho conversation cũ", this::backfillConversationInbox),
+                new SchemaMigration(5, "unique key cho dòng giỏ hàng", this::cartItemLineUnique),
+                new SchemaMigration(6, "voucher_redemption cho đơn cũ", this::backfillVoucherRedemptions),
+                new SchemaMigration(7, "review_image.image_data cho phép NULL", this::reviewImageDataNullable),
+                new SchemaMigration(8, "conversation chưa có tin nhắn lấy last_message_at = created_at",
+                        this::conversationLastMessageAtNotNull),
+                new SchemaMigration(9, "mã voucher cũ về dạng chuẩn hóa trim + chữ hoa", this::normalizeVoucherCodes)
+        );
+    }
+
+    private boolean paymentMethodSupportsVnPay(SchemaMigrator.Context context) {
+        if (!context.tableExists("orders")) {
+            return false;
+        }
+        String columnType = context.jdbc().queryForObject(
+                """
+                        SELECT COLUMN_TYPE
+                        FROM information_schema.COLUMNS
+                        WHERE TABLE_SCHEMA = DATABASE()
+                          AND TABLE_NAME = 'orders'
+                          AND COLUMN_NAME = 'payment_method'
+                        """,
+                String.class
+        );
+
+        if (columnType != null
+                && columnType.startsWith("enum(")
+                && !columnType.contains("VNPAY")) {
+            log.info("Updating orders.payment_method enum to include VNPAY");
+            context.jdbc().execute(
+                    "ALTER TABLE orders " +
+                            "MODIFY payment_method ENUM('COD','MOMO','CARD','VNPAY') " +
+                            "DEFAULT 'COD'"
+            );
+        }
+        return true;
+    }
+
+    private boolean orderInfoSnapshot(SchemaMigrator.Context context) {
+        boolean orderInfoExists = context.tableExists("order_info");
+        boolean orderAddressesExists = context.tableExists("order_addresses");
+
+        if (!orderInfoExists && orderAddressesExists) {
+            log.info("Renaming table order_addresses to order_info");
+            context.jdbc().execute("RENAME TABLE order_addresses TO order_info");
+            orderInfoExists = true;
+        }
+        if (!orderInfoExists || !context.tableExists("orders")) {
+            return false;
+        }
+        context.addColumnIfMissing("order_info", "email", "VARCHAR(255)");
+
+        if (!context.columnExists("orders", "order_info_id") && context.columnExists("orders", "order_address_id")) {
+            log.info("Renaming orders.order_address_id to orders.order_info_id");
+            context.jdbc().execute("ALTER TABLE orders CHANGE order_address_id order_info_id BIGINT");
+        }
+        return true;
+    }
+
+    private boolean orderDiscountSnapshot(SchemaMigrator.Context context) {
+        if (!context.tableExists("orders")) {
+            return false;
+        }
+        context.addColumnIfMissing("orders", "voucher_code_snapshot", "VARCHAR(255)");
+        context.addColumnIfMissing("orders", "discount_amount", "DOUBLE DEFAULT 0");
+        return true;
+    }
+
+    /**
+     * Điền preview / lastMessageAt / bộ đếm chưa đọc cho các cuộc trò chuyện có từ trước
+     * khi Conversation lưu dữ liệu inbox denormalized. Chỉ chạm vào các dòng chưa có preview,
+     * theo từng khoảng id để không khóa cả bảng conversation một lúc.
+     */
+    private boolean backfillConversationInbox(SchemaMigrator.Context context) {
+        if (!context.columnExists("conversation", "last_message_preview") || !context.tableExists("chat_message")) {
+            return false;
+        }
+        int updated = context.updateInChunks("conversation",
+                """
+                        UPDATE conversation c
+                        JOIN (
+                            SELECT m.conversation_id,
+                                   MAX(m.sent_at) AS last_sent_at,
+                                   SUM(CASE WHEN m.sender_type = 'ADMIN' AND (m.is_read = 0 OR m.is_read IS NULL)
+                                            THEN 1 ELSE 0 END) AS unread_customer,
+                                   SUM(CASE WHEN m.sender_type = 'CUSTOMER' AND (m.is_read = 0 OR m.is_read IS NULL)
+                                            THEN 1 ELSE 0 END) AS unread_admin
+                            FROM chat_message m
+                            WHERE m.conversation_id > ? AND m.conversation_id <= ?
+                            GROUP BY m.conversation_id
+                        ) s ON s.conversation_id = c.id
+                        SET c.last_message_at = s.last_sent_at,
+                            c.unread_for_customer = s.unread_customer,
+                            c.unread_for_admin = s.unread_admin,
+                            c.last_message_preview = (
+                                SELECT LEFT(lm.content, 120) FROM chat_message lm
+                                WHERE lm.conversation_id = c.id
+                                ORDER BY lm.sent_at DESC, lm.id DESC
+                                LIMIT 1
+                            )
+                        WHERE c.last_message_preview IS NULL
+                        """
+        );
+        if (updated > 0) {
+            log.info("Backfilled inbox data for {} conversations", updated);
+        }
+        return true;
+    }
+
+    // Inbox phân trang keyset theo (last_message_at, id): dòng NULL không bao giờ lọt vào trang sau
+    private boolean conversationLastMessageAtNotNull(SchemaMigrator.Context context) {
+        if (!context.columnExists("conversation", "last_message_at")) {
+            return false;
+        }
+        int updated = context.updateInChunks("conversation",
+                "UPDATE conversation SET last_message_at = COALESCE(created_at, updated_at, CURRENT_TIMESTAMP) " +
+                        "WHERE last_message_at IS NULL AND id > ? AND id <= ?");
+        if (updated > 0) {
+            log.info("Set last_message_at for {} conversations without messages", updated);
+        }
+        return true;
+    }
+
+    /**
+     * Một giỏ chỉ có một dòng cho mỗi (product, variant). variant_id có thể NULL nên unique key
+     * dùng cột sinh variant_key = COALESCE(variant_id, 0). Các dòng trùng có sẵn được gộp số lượng.
+     */
+    private boolean cartItemLineUnique(SchemaMigrator.Context context) {
+        if (!context.tableExists("cart_item")) {
+            return false;
+        }
+        if (context.indexExists("cart_item", "uk_cart_item_line")) {
+            return true;
+        }
+
+        int merged = context.jdbc().update(
+                """
+                        UPDATE cart_item k
+                        JOIN (
+                            SELECT MIN(id) AS keep_id, SUM(quantity) AS total
+                            FROM cart_item
+                            GROUP BY cart_id, product_id, COALESCE(variant_id, 0)
+                            HAVING COUNT(*) > 1
+                        ) d ON d.keep_id = k.id
+                        SET k.quantity = d.total
+                        """
+        );
+        if (merged > 0) {
+            int removed = context.jdbc().update(
+                    """
+                            DELETE c FROM cart_item c
+                            JOIN cart_item k
+                              ON k.cart_id = c.cart_id
+                             AND k.product_id = c.product_id
+                             AND COALESCE(k.variant_id, 0) = COALESCE(c.variant_id, 0)
+                             AND k.id < c.id
+                            """
+            );
+            log.info("Merged {} duplicated cart lines ({} rows removed)", merged, removed);
+        }
+
+        context.addColumnIfMissing("cart_item", "variant_key", "BIGINT AS (COALESCE(variant_id, 0)) STORED");
+        log.info("Adding unique key cart_item(cart_id, product_id, variant_key)");
+        context.jdbc().execute("ALTER TABLE cart_item ADD UNIQUE KEY uk_cart_item_line (cart_id, product_id, variant_key)");
+        return true;
+    }
+
+    /**
+     * Tạo bản ghi voucher_redemption cho các đơn cũ đang dùng voucher (chưa hủy),
+     * để hủy đơn cũ cũng hoàn được lượt và giới hạn theo khách tính cả lịch sử.
+     * Chèn theo từng khoảng id đơn hàng để không giữ khóa trên orders quá lâu.
+     */
+    private boolean backfillVoucherRedemptions(SchemaMigrator.Context context) {
+        if (!context.tableExists("voucher_redemption") || !context.tableExists("orders")) {
+            return false;
+        }
+        int inserted = context.updateInChunks("orders",
+                """
+                        INSERT INTO voucher_redemption (voucher_id, customer_id, order_id, released, redeemed_at)
+                        SELECT o.voucher_id, o.customer_id, o.id, 0, o.created_at
+                        FROM orders o
+                        LEFT JOIN voucher_redemption r ON r.order_id = o.id
+                        WHERE o.voucher_id IS NOT NULL
+                          AND o.status <> ?
+                          AND r.id IS NULL
+                          AND o.id > ? AND o.id <= ?
+                        """,
+                OrderStatus.CANCELLED.ordinal()
+        );
+        if (inserted > 0) {
+            log.info("Backfilled {} voucher redemptions from existing orders", inserted);
+        }
+        return true;
+    }
+
+    /**
+     * Tra voucher so khớp thẳng {@code code = ?} trên unique index, nên mã cũ lưu chữ thường/có khoảng trắng
+     * được đổi sang dạng chuẩn hóa như VoucherRulesCache.normalizeCode. So sánh BINARY vì collation mặc định
+     * không phân biệt hoa/thường. Mã mà sau chuẩn hóa trùng với dòng khác thì giữ nguyên và ghi log để admin sửa tay.
+     */
+    private boolean normalizeVoucherCodes(SchemaMigrator.Context context) {
+        if (!context.tableExists("voucher")) {
+            return false;
+        }
+        int updated = context.updateInChunks("voucher",
+                """
+                        UPDATE voucher v
+                        LEFT JOIN voucher o
+                          ON o.id <> v.id
+                         AND UPPER(TRIM(o.code)) = UPPER(TRIM(v.code))
+                        SET v.code = UPPER(TRIM(v.code))
+                        WHERE BINARY v.code <> BINARY UPPER(TRIM(v.code))
+                          AND o.id IS NULL
+                          AND v.id > ? AND v.id <= ?
+                        """
+        );
+        if (updated > 0) {
+            log.info("Normalized {} voucher codes", updated);
+        }
+        List<String> conflicts = context.jdbc().queryForList(
+                "SELECT code FROM voucher WHERE BINARY code <> BINARY UPPER(TRIM(code))", String.class);
+        if (!conflicts.isEmpty()) {
+            log.warn("Voucher codes not normalized because they collide with another voucher: {}", conflicts);
+        }
+        return true;
+    }
+
+    /**
+     * Ảnh đánh giá mới lưu trên đĩa (file_path) nên review_image.image_data phải cho phép NULL;
+     * ddl-auto=update không tự bỏ NOT NULL của cột có sẵn.
+     */
+    private boolean reviewImageDataNullable(SchemaMigrator.Context context) {
+        if (!context.tableExists("review_image")) {
+            return false;
+        }
+        String nullable = context.jdbc().queryForObject(
+                """
+                        SELECT IS_NULLABLE
+                        FROM information_schema.COLUMNS
+                        WHERE TABLE_SCHEMA = DATABASE()
+                          AND TABLE_NAME = 'review_image'
+                          AND COLUMN_NAME = 'image_data'
+                        """,
+                String.class
+        );
+        if ("NO".equals(nullable)) {
+            log.info("Allowing NULL in review_image.image_data");
+            context.jdbc().execute("ALTER TABLE review_image MODIFY image_data LONGBLOB NULL");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,328 @@
+package com.hometech.hometech.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chạy các {@link SchemaMigration} chưa áp dụng theo thứ tự phiên bản và ghi lại vào bảng {@code schema_migration}.
+ *
+ * <p>Khi khởi động chỉ đọc danh sách phiên bản đã chạy (một câu SELECT); các bước đã áp dụng không còn truy vấn
+ * information_schema hay ALTER TABLE nữa. Chế độ theo {@code schema.migration.mode}:
+ * <ul>
+ *   <li>{@code apply} (mặc định): chạy bước còn thiếu khi khởi động, sau khi Hibernate (ddl-auto=update) xong;</li>
+ *   <li>{@code validate}: chỉ cảnh báo nếu còn bước chưa chạy, dùng khi migration chạy riêng trước deploy
+ *       bằng {@code java -jar HomeTech.jar migrate} ({@link SchemaMigrationCommand});</li>
+ *   <li>{@code off}: bỏ qua hoàn toàn.</li>
+ * </ul>
+ * Bước lỗi không được ghi nhận và chặn các bước sau trong lần chạy đó; ứng dụng vẫn khởi động như trước đây.
+ * Trên MySQL các instance khởi động cùng lúc xếp hàng qua {@code GET_LOCK} nên mỗi bước chỉ chạy một lần.
+ */
+@Component
+public class SchemaMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+    private static final String LOCK_NAME = "hometech_schema_migration";
+
+    public enum Mode { APPLY, VALIDATE, OFF }
+
+    public record Result(List<Integer> applied, List<Integer> deferred, Integer failedVersion, String error) {
+        public boolean success() {
+            return failedVersion == null;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final SchemaMigrations schemaMigrations;
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+    private final Mode mode;
+    private final int chunkSize;
+    private final long chunkPauseMillis;
+    private final int lockTimeoutSeconds;
+
+    private volatile Result lastResult;
+    private volatile long startupMillis = -1;
+
+    public SchemaMigrator(DataSource dataSource,
+                          SchemaMigrations schemaMigrations,
+                          ObjectProvider<EntityManagerFactory> entityManagerFactory,
+                          @Value("${schema.migration.mode:apply}") String mode,
+                          @Value("${schema.migration.chunk-size:1000}") int chunkSize,
+                          @Value("${schema.migration.chunk-pause-ms:0}") long chunkPauseMillis,
+                          @Value("${schema.migration.lock-timeout-seconds:60}") int lockTimeoutSeconds) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.schemaMigrations = schemaMigrations;
+        this.entityManagerFactory = entityManagerFactory;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.chunkSize = Math.max(1, chunkSize);
+        this.chunkPauseMillis = Math.max(0, chunkPauseMillis);
+        this.lockTimeoutSeconds = lockTimeoutSeconds;
+    }
+
+    @PostConstruct
+    public void migrateOnStartup() {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        // Bảng mới do Hibernate tạo phải có trước khi chạy backfill; lệnh migrate riêng không có JPA
+        entityManagerFactory.getIfAvailable();
+        long started = System.nanoTime();
+        try {
+            if (mode == Mode.VALIDATE) {
+                List<Integer> pending = pending().stream().map(SchemaMigration::version).toList();
+                if (!pending.isEmpty()) {
+                    log.warn("Schema migrations pending {}: run 'java -jar HomeTech.jar migrate' before deploying", pending);
+                }
+                return;
+            }
+            Result result = migrate();
+            if (!result.success()) {
+                log.warn("Schema migration V{} failed: {}", result.failedVersion(), result.error());
+            }
+        } catch (Exception ex) {
+            log.warn("Could not check schema migrations: {}", ex.getMessage());
+        } finally {
+            startupMillis = (System.nanoTime() - started) / 1_000_000;
+        }
+    }
+
+    /**
+     * Chạy các bước chưa áp dụng. Bước trả về false (chưa sẵn sàng) được bỏ qua và thử lại lần sau,
+     * bước lỗi dừng lần chạy này.
+     */
+    public Result migrate() {
+        ensureHistoryTable();
+        List<Integer> applied = new ArrayList<>();
+        List<Integer> deferred = new ArrayList<>();
+        Integer failedVersion = null;
+        String error = null;
+
+        try (Connection lockConnection = acquireLock()) {
+            // Đọc lại sau khi có khóa: instance khác có thể vừa chạy xong
+            Set<Integer> done = appliedVersions();
+            Context context = new Context();
+            for (SchemaMigration migration : sorted()) {
+                if (done.contains(migration.version())) {
+                    continue;
+                }
+                long started = System.nanoTime();
+                try {
+                    if (!migration.step().apply(context)) {
+                        deferred.add(migration.version());
+                        log.info("Schema migration V{} ({}) deferred: target table not ready", migration.version(), migration.description());
+                        continue;
+                    }
+                } catch (Exception ex) {
+                    failedVersion = migration.version();
+                    error = ex.getMessage();
+                    break;
+                }
+                long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+                jdbcTemplate.update(
+                        "INSERT INTO schema_migration (version, description, applied_at, execution_ms) VALUES (?, ?, ?, ?)",
+                        migration.version(), migration.description(), Timestamp.valueOf(LocalDateTime.now()), elapsedMillis);
+                applied.add(migration.version());
+                log.info("Applied schema migration V{} ({}) in {} ms", migration.version(), migration.description(), elapsedMillis);
+            }
+            releaseLock(lockConnection);
+        } catch (SQLException ex) {
+            throw new RuntimeException("Không lấy được khóa migration: " + ex.getMessage(), ex);
+        }
+
+        Result result = new Result(applied, deferred, failedVersion, error);
+        lastResult = result;
+        return result;
+    }
+
+    public List<SchemaMigration> pending() {
+        ensureHistoryTable();
+        Set<Integer> done = appliedVersions();
+        return sorted().stream().filter(migration -> !done.contains(migration.version())).toList();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode.name().toLowerCase(Locale.ROOT));
+        stats.put("startupMillis", startupMillis);
+        List<SchemaMigration> migrations = sorted();
+        stats.put("latestVersion", migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version());
+        Result result = lastResult;
+        if (result != null) {
+            stats.put("applied", result.applied());
+            stats.put("deferred", result.deferred());
+            stats.put("failedVersion", result.failedVersion());
+            stats.put("error", result.error());
+        }
+        return stats;
+    }
+
+    private List<SchemaMigration> sorted() {
+        return schemaMigrations.all().stream()
+                .sorted(Comparator.comparingInt(SchemaMigration::version))
+                .toList();
+    }
+
+    private void ensureHistoryTable() {
+        jdbcTemplate.execute(
+                """
+                        CREATE TABLE IF NOT EXISTS schema_migration (
+                            version INT NOT NULL PRIMARY KEY,
+                            description VARCHAR(255) NOT NULL,
+                            applied_at TIMESTAMP NOT NULL,
+                            execution_ms BIGINT NOT NULL
+                        )
+                        """
+        );
+    }
+
+    private Set<Integer> appliedVersions() {
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT version FROM schema_migration", Integer.class));
+    }
+
+    /**
+     * GET_LOCK của MySQL gắn với session nên giữ riêng một connection đến khi xong.
+     * Database khác (H2 trong test) không có khóa này: trả về null.
+     */
+    private Connection acquireLock() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        String product = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+        if (!product.contains("mysql") && !product.contains("mariadb")) {
+            connection.close();
+            return null;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.setInt(2, lockTimeoutSeconds);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    connection.close();
+                    throw new SQLException("timeout after " + lockTimeoutSeconds + "s");
+                }
+            }
+        }
+        return connection;
+    }
+
+    private void releaseLock(Connection connection) throws SQLException {
+        if (connection == null) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.execute();
+        }
+    }
+
+    /** Công cụ cho các bước migration: JdbcTemplate, kiểm tra schema và cập nhật theo lô. */
+    public class Context {
+
+        public JdbcTemplate jdbc() {
+            return jdbcTemplate;
+        }
+
+        public boolean tableExists(String tableName) {
+            Integer count = jdbcTemplate.queryForObject(
+                    """
+                            SELECT COUNT(*)
+                            FROM information_schema.tables
+                            WHERE table_schema = DATABASE()
+                              AND table_name = ?
+                            """,
+                    Integer.class,
+                    tableName
+            );
+            return count != null && count > 0;
+        }
+
+        public boolean columnExists(String tableName, String columnName) {
+            Integer count = jdbcTemplate.queryForObject(
+                    """
+                            SELECT COUNT(*)
+                            FROM information_schema.COLUMNS
+                            WHERE TABLE_SCHEMA = DATABASE()
+                              AND TABLE_NAME = ?
+                              AND COLUMN_NAME = ?
+                            """,
+                    Integer.class,
+                    tableName,
+                    columnName
+            );
+            return count != null && count > 0;
+        }
+
+        public boolean indexExists(String tableName, String indexName) {
+            Integer count = jdbcTemplate.queryForObject(
+                    """
+                            SELECT COUNT(*)
+                            FROM information_schema.STATISTICS
+                            WHERE TABLE_SCHEMA = DATABASE()
+                              AND TABLE_NAME = ?
+                              AND INDEX_NAME = ?
+                            """,
+                    Integer.class,
+                    tableName,
+                    indexName
+            );
+            return count != null && count > 0;
+        }
+
+        public void addColumnIfMissing(String tableName, String columnName, String definition) {
+            if (!columnExists(tableName, columnName)) {
+                log.info("Adding column {}.{} ({})", tableName, columnName, definition);
+                jdbcTemplate.execute(String.format("ALTER TABLE %s ADD COLUMN %s %s", tableName, columnName, definition));
+            }
+        }
+
+        /**
+         * Chạy {@code sql} lần lượt trên từng khoảng id ({@code id > ? AND id <= ?}, hai tham số cuối) của
+         * {@code table}, mỗi lô một câu lệnh tự commit: khóa dòng chỉ giữ trong một lô và bảng vẫn phục vụ
+         * ghi/đọc trong lúc backfill. {@code schema.migration.chunk-pause-ms} giãn cách các lô để giảm tải.
+         */
+        public int updateInChunks(String table, String sql, Object... leadingArgs) {
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table, Long.class);
+            if (maxId == null) {
+                return 0;
+            }
+            int total = 0;
+            Object[] args = new Object[leadingArgs.length + 2];
+            System.arraycopy(leadingArgs, 0, args, 0, leadingArgs.length);
+            for (long from = 0; from < maxId; from += chunkSize) {
+                args[leadingArgs.length] = from;
+                args[leadingArgs.length + 1] = from + chunkSize;
+                total += jdbcTemplate.update(sql, args);
+                if (chunkPauseMillis > 0) {
+                    try {
+                        Thread.sleep(chunkPauseMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("Migration bị ngắt giữa chừng", e);
+                    }
+                }
+            }
+            return total;
+        }
+    }
+}
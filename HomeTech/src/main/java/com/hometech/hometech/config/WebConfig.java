@@ -13,11 +13,14 @@ public class WebConfig implements WebMvcConfigurer {
 
     private final SessionInterceptor sessionInterceptor;
     private final PaymentMethodConverter paymentMethodConverter;
+    private final HttpCacheInterceptor httpCacheInterceptor;
 
     public WebConfig(SessionInterceptor sessionInterceptor,
-                     PaymentMethodConverter paymentMethodConverter) {
+                     PaymentMethodConverter paymentMethodConverter,
+                     HttpCacheInterceptor httpCacheInterceptor) {
         this.sessionInterceptor = sessionInterceptor;
         this.paymentMethodConverter = paymentMethodConverter;
+        this.httpCacheInterceptor = httpCacheInterceptor;
     }
 
     @Override
@@ -31,6 +34,9 @@ public class WebConfig implements WebMvcConfigurer {
                         "/payment/**",
                         "/css/**", "/js/**", "/images/**"
                 );
+        // ETag/Cache-Control cho API công khai của catalog; trả 304 trước khi vào controller
+        registry.addInterceptor(httpCacheInterceptor)
+                .addPathPatterns("/api/products/**", "/api/categories/**", "/api/content/**");
     }
 
     @Override
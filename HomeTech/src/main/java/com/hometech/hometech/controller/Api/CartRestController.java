@@ -64,7 +64,7 @@ public class CartRestController {
             @RequestParam(required = false) Long variantId) {
         try {
             CartItem added = service.addProduct(userId, productId, quantity, variantId);
-            return buildResponse(true, "Thêm sản phẩm vào giỏ thành công", added, null, HttpStatus.OK);
+            return buildResponse(true, "Thêm sản phẩm vào giỏ thành công", new CartItemDTO(added), null, HttpStatus.OK);
         } catch (RuntimeException e) {
             return buildResponse(false, e.getMessage(), null, e.getMessage(), HttpStatus.BAD_REQUEST);
         }
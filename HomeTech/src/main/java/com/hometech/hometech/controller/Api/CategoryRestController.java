@@ -4,7 +4,9 @@ import com.hometech.hometech.model.Category;
 import com.hometech.hometech.model.CategoryAttribute;
 import com.hometech.hometech.model.Product;
 import com.hometech.hometech.service.CategoryAttributeService;
+import com.hometech.hometech.service.CategoryDirectory;
 import com.hometech.hometech.service.CategoryService;
+import com.hometech.hometech.service.HomePageService;
 import com.hometech.hometech.service.NotifyService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -19,13 +21,16 @@ public class CategoryRestController {
     private final CategoryService categoryService;
     private final CategoryAttributeService categoryAttributeService;
     private final NotifyService notifyService;
+    private final HomePageService homePageService;
 
     public CategoryRestController(CategoryService categoryService,
                                   CategoryAttributeService categoryAttributeService,
-                                  NotifyService notifyService) {
+                                  NotifyService notifyService,
+                                  HomePageService homePageService) {
         this.categoryService = categoryService;
         this.categoryAttributeService = categoryAttributeService;
         this.notifyService = notifyService;
+        this.homePageService = homePageService;
     }
 
     // ---- TEMPLATE RESPONSE ----
@@ -44,14 +49,14 @@ public class CategoryRestController {
     // 🟢 Lấy tất cả danh mục
     @GetMapping
     public ResponseEntity<Map<String, Object>> getAllCategories() {
-        List<Category> categories = categoryService.getAll();
+        List<CategoryDirectory.CategoryView> categories = categoryService.getAll();
         return buildResponse(true, "Lấy danh sách danh mục thành công", categories, null, HttpStatus.OK);
     }
 
     // 🟢 Lấy danh mục theo ID
     @GetMapping("/{id}")
     public ResponseEntity<Map<String, Object>> getCategoryById(@PathVariable int id) {
-        Category category = categoryService.getById(id);
+        CategoryDirectory.CategoryView category = categoryService.getView(id);
 
         if (category == null)
             return buildResponse(false, "Không tìm thấy danh mục", null, "Category not found", HttpStatus.NOT_FOUND);
@@ -62,7 +67,7 @@ public class CategoryRestController {
     // 🟢 Lấy danh mục theo tên
     @GetMapping("/name/{categoryName}")
     public ResponseEntity<Map<String, Object>> getCategoryByName(@PathVariable String categoryName) {
-        Category category = categoryService.getByName(categoryName);
+        CategoryDirectory.CategoryView category = categoryService.getByName(categoryName);
 
         if (category == null)
             return buildResponse(false, "Không tìm thấy danh mục", null, "Category not found", HttpStatus.NOT_FOUND);
@@ -101,19 +106,16 @@ public class CategoryRestController {
     // 🟢 Lấy thông tin danh mục tổng hợp
     @GetMapping("/{categoryId}/info")
     public ResponseEntity<Map<String, Object>> getCategoryInfo(@PathVariable int categoryId) {
-        Category category = categoryService.getById(categoryId);
+        CategoryDirectory.CategoryView category = categoryService.getView(categoryId);
 
         if (category == null)
             return buildResponse(false, "Không tìm thấy danh mục", null,
                     "Category not found", HttpStatus.NOT_FOUND);
 
-        long totalProducts = categoryService.countProductsInCategory(categoryId);
-        long activeProducts = categoryService.countActiveProductsInCategory(categoryId);
-
         Map<String, Object> info = new HashMap<>();
         info.put("category", category);
-        info.put("totalProducts", totalProducts);
-        info.put("activeProducts", activeProducts);
+        info.put("totalProducts", category.totalProducts());
+        info.put("activeProducts", category.activeProducts());
 
         return buildResponse(true, "Lấy thông tin danh mục thành công", info, null, HttpStatus.OK);
     }
@@ -124,7 +126,8 @@ public class CategoryRestController {
     @GetMapping("/{categoryId}/attributes")
     public ResponseEntity<Map<String, Object>> getCategoryAttributes(@PathVariable Long categoryId) {
         try {
-            List<CategoryAttribute> attributes = categoryAttributeService.getByCategoryId(categoryId);
+            CategoryDirectory.CategoryView category = categoryService.getView(categoryId);
+            List<CategoryDirectory.AttributeView> attributes = category == null ? List.of() : category.attributes();
             return buildResponse(true, "Lấy thuộc tính danh mục thành công", attributes, null, HttpStatus.OK);
         } catch (Exception e) {
             return buildResponse(false, "Không thể lấy thuộc tính danh mục", null,
@@ -144,6 +147,7 @@ public class CategoryRestController {
                         "Attribute name is required", HttpStatus.BAD_REQUEST);
             }
             CategoryAttribute created = categoryAttributeService.createForCategory(categoryId, attribute);
+            homePageService.invalidate();
             return buildResponse(true, "Thêm thuộc tính danh mục thành công", created, null, HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return buildResponse(false, e.getMessage(), null, e.getMessage(), HttpStatus.BAD_REQUEST);
@@ -161,6 +165,7 @@ public class CategoryRestController {
     ) {
         try {
             CategoryAttribute updated = categoryAttributeService.updateAttribute(id, attribute);
+            homePageService.invalidate();
             return buildResponse(true, "Cập nhật thuộc tính danh mục thành công", updated, null, HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return buildResponse(false, e.getMessage(), null, e.getMessage(), HttpStatus.NOT_FOUND);
@@ -175,6 +180,7 @@ public class CategoryRestController {
     public ResponseEntity<Map<String, Object>> deleteCategoryAttribute(@PathVariable Long id) {
         try {
             categoryAttributeService.deleteAttribute(id);
+            homePageService.invalidate();
             return buildResponse(true, "Xóa thuộc tính danh mục thành công", null, null, HttpStatus.OK);
         } catch (Exception e) {
             return buildResponse(false, "Không thể xóa thuộc tính danh mục", null,
@@ -193,6 +199,7 @@ public class CategoryRestController {
             }
             
             categoryService.save(category);
+            homePageService.invalidate();
             try {
                 notifyService.notifyAdmins(
                         String.format("Danh mục \"%s\" đã được tạo", category.getName()),
@@ -223,6 +230,7 @@ public class CategoryRestController {
 
         category.setId(id);
         categoryService.save(category);
+        homePageService.invalidate();
         try {
             notifyService.notifyAdmins(
                     String.format("Danh mục \"%s\" đã được cập nhật", category.getName()),
@@ -244,6 +252,7 @@ public class CategoryRestController {
                     "Category not found", HttpStatus.NOT_FOUND);
 
         categoryService.delete(id);
+        homePageService.invalidate();
         try {
             notifyService.notifyAdmins(
                     String.format("Danh mục \"%s\" đã bị xóa", category.getName()),
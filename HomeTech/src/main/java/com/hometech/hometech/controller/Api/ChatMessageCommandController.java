@@ -1,10 +1,16 @@
 package com.hometech.hometech.controller.Api;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -21,9 +27,12 @@ import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.hometech.hometech.dto.ChatHistoryPage;
 import com.hometech.hometech.dto.ChatMessagePayload;
+import com.hometech.hometech.dto.ConversationSummary;
 import com.hometech.hometech.enums.SenderType;
 import com.hometech.hometech.model.ChatMessage;
+import com.hometech.hometech.service.ChatAttachmentStorage;
 import com.hometech.hometech.service.ChatIdentityService;
 import com.hometech.hometech.service.ConversationService;
 
@@ -34,13 +43,16 @@ public class ChatMessageCommandController {
     private final ChatIdentityService chatIdentityService;
     private final ConversationService conversationService;
     private final SimpMessagingTemplate messagingTemplate;
+    private final ChatAttachmentStorage chatAttachmentStorage;
 
     public ChatMessageCommandController(ChatIdentityService chatIdentityService,
                                         ConversationService conversationService,
-                                        SimpMessagingTemplate messagingTemplate) {
+                                        SimpMessagingTemplate messagingTemplate,
+                                        ChatAttachmentStorage chatAttachmentStorage) {
         this.chatIdentityService = chatIdentityService;
         this.conversationService = conversationService;
         this.messagingTemplate = messagingTemplate;
+        this.chatAttachmentStorage = chatAttachmentStorage;
     }
 
     @GetMapping("/conversations/me")
@@ -72,22 +84,8 @@ public class ChatMessageCommandController {
                 throw new RuntimeException("Chỉ admin mới có thể xem danh sách cuộc trò chuyện");
             }
 
-            List<Map<String, Object>> items = conversationService.getAllConversations()
-                    .stream()
-                    .map(c -> {
-                        Map<String, Object> dto = new HashMap<>();
-                        dto.put("id", c.getId());
-                        if (c.getCustomer() != null) {
-                            dto.put("userId", c.getCustomer().getId());
-                            dto.put("username", c.getCustomer().getFullName());
-                        } else {
-                            dto.put("userId", null);
-                            dto.put("username", "Khách hàng");
-                        }
-                        dto.put("lastMessageAt", c.getLastMessageAt());
-                        return dto;
-                    })
-                    .collect(Collectors.toList());
+            // Một query duy nhất, đã sắp xếp theo tin nhắn mới nhất, kèm preview + số tin chưa đọc
+            List<ConversationSummary> items = conversationService.getAdminInbox();
 
             return ResponseEntity.ok(items);
         } catch (RuntimeException e) {
@@ -98,6 +96,44 @@ public class ChatMessageCommandController {
         }
     }
 
+    @GetMapping("/conversations/admin/inbox")
+    public ResponseEntity<?> getAdminInbox(@RequestParam(value = "before", required = false)
+                                           @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+                                           @RequestParam(value = "beforeId", required = false) Long beforeId,
+                                           @RequestParam(value = "limit", required = false) Integer limit,
+                                           @AuthenticationPrincipal UserDetails userDetails) {
+        try {
+            ChatIdentityService.ChatIdentity identity = chatIdentityService.resolve(userDetails);
+            if (!identity.isAdmin()) {
+                throw new RuntimeException("Chỉ admin mới có thể xem danh sách cuộc trò chuyện");
+            }
+            return ResponseEntity.ok(conversationService.getAdminInboxPage(before, beforeId, limit));
+        } catch (RuntimeException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
+    @PostMapping("/conversations/{id}/mark-read")
+    public ResponseEntity<?> markAsReadForAdmin(@PathVariable Long id,
+                                                @AuthenticationPrincipal UserDetails userDetails) {
+        try {
+            ChatIdentityService.ChatIdentity identity = chatIdentityService.resolve(userDetails);
+            if (!identity.isAdmin()) {
+                throw new RuntimeException("Chỉ admin mới có thể đánh dấu đã đọc cuộc trò chuyện này");
+            }
+            conversationService.markMessagesAsReadForAdmin(id);
+            return ResponseEntity.ok(Map.of("success", true));
+        } catch (RuntimeException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
     @GetMapping("/conversations/{id}/messages")
     public ResponseEntity<?> getMessages(@PathVariable Long id,
                                          @AuthenticationPrincipal UserDetails userDetails) {
@@ -107,21 +143,8 @@ public class ChatMessageCommandController {
             if (identity.isCustomer()) {
                 conversationService.getConversationForCustomer(id, identity.getCustomer().getId());
             }
-            List<ChatMessage> messages = conversationService.getMessages(id);
-
-            List<ChatMessagePayload> payloads = messages.stream().map(m -> {
-                ChatMessagePayload p = new ChatMessagePayload();
-                p.setId(m.getId());
-                p.setSenderType(m.getSenderType().name());
-                p.setSenderId(m.getSenderId());
-                p.setContent(m.getContent());
-                p.setSentAt(m.getSentAt());
-
-                p.setHasFile(m.getFileData() != null);
-                p.setFileName(m.getFileName());
-                p.setFileContentType(m.getFileContentType());
-                return p;
-            }).collect(Collectors.toList());
+            // Chỉ đọc metadata, không kéo file_data của từng tin nhắn lên heap
+            List<ChatMessagePayload> payloads = conversationService.getMessagePayloads(id);
 
             return ResponseEntity.ok(payloads);
         } catch (RuntimeException e) {
@@ -132,6 +155,33 @@ public class ChatMessageCommandController {
         }
     }
 
+    @GetMapping("/conversations/{id}/history")
+    public ResponseEntity<?> getMessageHistory(@PathVariable Long id,
+                                               @RequestParam(value = "before", required = false)
+                                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+                                               @RequestParam(value = "beforeId", required = false) Long beforeId,
+                                               @RequestParam(value = "since", required = false) Long since,
+                                               @RequestParam(value = "limit", required = false) Integer limit,
+                                               @AuthenticationPrincipal UserDetails userDetails) {
+        try {
+            ChatIdentityService.ChatIdentity identity = chatIdentityService.resolve(userDetails);
+            if (identity.isCustomer()) {
+                conversationService.getConversationForCustomer(id, identity.getCustomer().getId());
+            }
+
+            ChatHistoryPage page = since != null
+                    ? conversationService.getMessagesSince(id, since, limit)
+                    : conversationService.getMessageHistory(id, before, beforeId, limit);
+
+            return ResponseEntity.ok(page);
+        } catch (RuntimeException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        }
+    }
+
     @GetMapping("/unread-count")
     public ResponseEntity<?> getUnreadCount(@AuthenticationPrincipal UserDetails userDetails) {
         try {
@@ -225,24 +275,30 @@ public class ChatMessageCommandController {
                 throw new RuntimeException("Không xác định được người gửi");
             }
 
-            // 2. GỌI ĐÚNG METHOD TRONG ConversationService
+            // 2. Stream file xuống đĩa (tính hash + giới hạn dung lượng) trước, ngoài transaction DB
+            ChatAttachmentStorage.StoredAttachment attachment = chatAttachmentStorage.store(file);
+
+            // 3. Transaction ngắn: chỉ insert metadata tin nhắn
             ChatMessage savedMessage = conversationService.sendMessage(
                     conversationId,
                     senderType,
                     senderId,
                     content,
-                    file
+                    attachment
             );
 
-            // 3. Build payload realtime
+            // 4. Build payload realtime
             ChatMessagePayload payload = new ChatMessagePayload();
             payload.setId(savedMessage.getId());
             payload.setSenderType(savedMessage.getSenderType().name());
             payload.setSenderId(savedMessage.getSenderId());
             payload.setContent(savedMessage.getContent());
             payload.setSentAt(savedMessage.getSentAt());
+            payload.setHasFile(savedMessage.getFileName() != null);
+            payload.setFileName(savedMessage.getFileName());
+            payload.setFileContentType(savedMessage.getFileContentType());
 
-            // 4. Gửi WebSocket
+            // 5. Gửi WebSocket
             messagingTemplate.convertAndSend(
                     "/topic/conversations/" + conversationId,
                     payload
@@ -258,7 +314,7 @@ public class ChatMessageCommandController {
         }
     }
     @GetMapping("/messages/{id}/file")
-    public ResponseEntity<byte[]> downloadFile(
+    public ResponseEntity<?> downloadFile(
             @PathVariable Long id,
             @AuthenticationPrincipal UserDetails userDetails
     ) {
@@ -277,20 +333,35 @@ public class ChatMessageCommandController {
             }
         }
 
-        // 4. Không có file
+        MediaType contentType = message.getFileContentType() != null
+                ? MediaType.parseMediaType(message.getFileContentType())
+                : MediaType.APPLICATION_OCTET_STREAM;
+        String disposition = "inline; filename=\"" + message.getFileName() + "\"";
+
+        // 4. File mới: stream trực tiếp từ đĩa, không nạp cả file vào heap
+        if (message.getFilePath() != null) {
+            Path path = chatAttachmentStorage.resolve(message.getFilePath());
+            if (!Files.exists(path)) {
+                return ResponseEntity.notFound().build();
+            }
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .contentType(contentType)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, disposition);
+            if (message.getFileHash() != null) {
+                // Nội dung bất biến theo hash -> cho phép cache lâu ở client
+                builder.eTag("\"" + message.getFileHash() + "\"")
+                        .cacheControl(CacheControl.maxAge(Duration.ofDays(30)).cachePrivate());
+            }
+            return builder.body(new FileSystemResource(path));
+        }
+
+        // 5. File cũ còn lưu trong LONGBLOB
         if (message.getFileData() == null) {
             return ResponseEntity.notFound().build();
         }
-
-        // 5. Trả file từ LONGBLOB
         return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(message.getFileContentType()))
-                .header(
-                        HttpHeaders.CONTENT_DISPOSITION,
-                        "inline; filename=\"" + message.getFileName() + "\""
-                )
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition)
                 .body(message.getFileData());
     }
 }
-
-
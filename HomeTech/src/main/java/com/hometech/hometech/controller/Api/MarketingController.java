@@ -1,16 +1,18 @@
 package com.hometech.hometech.controller.Api;
 
-import com.hometech.hometech.Repository.AccountRepository;
-import com.hometech.hometech.enums.RoleType;
-import com.hometech.hometech.model.Account;
+import com.hometech.hometech.service.AccountIdentityService;
+import com.hometech.hometech.service.AudienceService;
 import com.hometech.hometech.service.MarketingService;
 import lombok.Data;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -18,22 +20,26 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Map;
 
+// Chỉ admin dùng: tạo ở request đầu tiên thay vì lúc khởi động
+@Lazy
 @RestController
 @RequestMapping("/api/admin/marketing")
 public class MarketingController {
 
     private final MarketingService marketingService;
-    private final AccountRepository accountRepository;
+    private final AccountIdentityService accountIdentityService;
 
-    public MarketingController(MarketingService marketingService, AccountRepository accountRepository) {
+    public MarketingController(MarketingService marketingService, AccountIdentityService accountIdentityService) {
         this.marketingService = marketingService;
-        this.accountRepository = accountRepository;
+        this.accountIdentityService = accountIdentityService;
     }
 
     
     public static class MarketingEmailRequest {
         private String subject;
         private String content;
+        // Phân khúc khách nhận; bỏ trống = mọi khách hàng đang hoạt động
+        private AudienceService.Segment segment;
         public String getSubject() {
             return subject;
         }
@@ -46,20 +52,24 @@ public class MarketingController {
         public void setContent(String content) {
             this.content = content;
         }
+        public AudienceService.Segment getSegment() {
+            return segment;
+        }
+        public void setSegment(AudienceService.Segment segment) {
+            this.segment = segment;
+        }
     }
 
-    private Account resolveAccount(Authentication authentication) {
+    private AccountIdentityService.AccountIdentity resolveAccount(Authentication authentication) {
         if (authentication != null && authentication.isAuthenticated()) {
             String name = authentication.getName();
-            Account account = accountRepository.findByUsername(name)
-                    .or(() -> accountRepository.findByEmail(name))
-                    .orElse(null);
+            AccountIdentityService.AccountIdentity account = accountIdentityService.resolve(name);
             if (account == null && authentication instanceof OAuth2AuthenticationToken oAuth) {
                 Object principal = oAuth.getPrincipal();
                 if (principal instanceof OAuth2User oAuthUser) {
                     Object emailAttr = oAuthUser.getAttributes().get("email");
                     if (emailAttr != null) {
-                        account = accountRepository.findByEmail(String.valueOf(emailAttr)).orElse(null);
+                        account = accountIdentityService.resolve(String.valueOf(emailAttr));
                     }
                 }
             }
@@ -70,8 +80,8 @@ public class MarketingController {
 
     private boolean isCurrentUserAdmin() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        Account account = resolveAccount(authentication);
-        return account != null && RoleType.ADMIN.equals(account.getRole());
+        AccountIdentityService.AccountIdentity account = resolveAccount(authentication);
+        return account != null && account.isAdmin();
     }
 
     @PostMapping("/email")
@@ -90,17 +100,59 @@ public class MarketingController {
             ));
         }
 
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         MarketingService.BroadcastResult result = marketingService.broadcastEmailToCustomers(
                 request.getSubject().trim(),
-                request.getContent().trim()
+                request.getContent().trim(),
+                authentication != null ? authentication.getName() : null,
+                request.getSegment()
         );
 
+        // Email được gửi nền; "sent" giữ cho giao diện cũ = số email đã xếp hàng
         return ResponseEntity.ok(Map.of(
                 "success", true,
+                "campaignId", result.campaignId(),
                 "eligible", result.eligible(),
-                "sent", result.sent(),
-                "failed", result.failedCount()
+                "queued", result.queued(),
+                "sent", result.queued(),
+                "failed", 0
         ));
     }
-}
 
+    // Xem trước số khách hàng thuộc phân khúc trước khi gửi
+    @PostMapping("/segments/preview")
+    public ResponseEntity<Map<String, Object>> previewSegment(@RequestBody(required = false) AudienceService.Segment segment) {
+        if (!isCurrentUserAdmin()) {
+            return ResponseEntity.status(403).body(Map.of(
+                    "success", false,
+                    "message", "Bạn không có quyền thực hiện hành động này"
+            ));
+        }
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "size", marketingService.previewSegment(segment)
+        ));
+    }
+
+    // Tiến độ gửi của một campaign
+    @GetMapping("/campaigns/{id}")
+    public ResponseEntity<Map<String, Object>> getCampaignProgress(@PathVariable Long id) {
+        if (!isCurrentUserAdmin()) {
+            return ResponseEntity.status(403).body(Map.of(
+                    "success", false,
+                    "message", "Bạn không có quyền thực hiện hành động này"
+            ));
+        }
+        try {
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "data", marketingService.getCampaignProgress(id)
+            ));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(404).body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()
+            ));
+        }
+    }
+}
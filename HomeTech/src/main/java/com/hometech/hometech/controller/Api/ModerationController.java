@@ -0,0 +1,101 @@
+package com.hometech.hometech.controller.Api;
+
+import com.hometech.hometech.service.BulkModerationService;
+import lombok.Data;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Kiểm duyệt hàng loạt cho admin: ẩn/hiện/xóa theo danh sách id hoặc theo bộ lọc
+@RestController
+@RequestMapping("/api/admin/moderation")
+public class ModerationController {
+
+    private final BulkModerationService bulkModerationService;
+
+    public ModerationController(BulkModerationService bulkModerationService) {
+        this.bulkModerationService = bulkModerationService;
+    }
+
+    @Data
+    public static class ReviewModerationRequest {
+        private String action;
+        private List<Long> ids;
+        // Chỉ dùng khi không truyền ids
+        private BulkModerationService.ReviewFilter filter;
+    }
+
+    @Data
+    public static class ProductModerationRequest {
+        private String action;
+        private List<Long> ids;
+        // Chỉ dùng khi không truyền ids
+        private BulkModerationService.ProductFilter filter;
+    }
+
+    private ResponseEntity<Map<String, Object>> buildResponse(
+            boolean success,
+            String message,
+            Object data,
+            HttpStatus status
+    ) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("success", success);
+        payload.put("message", message);
+        payload.put("data", data);
+        return ResponseEntity.status(status).body(payload);
+    }
+
+    @PostMapping("/reviews")
+    public ResponseEntity<Map<String, Object>> moderateReviews(@RequestBody ReviewModerationRequest request) {
+        try {
+            BulkModerationService.Action action = BulkModerationService.Action.parse(String.valueOf(request.getAction()));
+            return jobResponse(bulkModerationService.moderateReviews(action, request.getIds(), request.getFilter()));
+        } catch (RuntimeException e) {
+            return buildResponse(false, e.getMessage(), null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @PostMapping("/products")
+    public ResponseEntity<Map<String, Object>> moderateProducts(@RequestBody ProductModerationRequest request) {
+        try {
+            BulkModerationService.Action action = BulkModerationService.Action.parse(String.valueOf(request.getAction()));
+            return jobResponse(bulkModerationService.moderateProducts(action, request.getIds(), request.getFilter()));
+        } catch (RuntimeException e) {
+            return buildResponse(false, e.getMessage(), null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // Tiến độ một job (processed/total) cho các job chạy nền
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId) {
+        try {
+            return buildResponse(true, "Lấy trạng thái job thành công", bulkModerationService.getJob(jobId), HttpStatus.OK);
+        } catch (RuntimeException e) {
+            return buildResponse(false, e.getMessage(), null, HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> listJobs() {
+        return buildResponse(true, "Lấy danh sách job thành công", bulkModerationService.listJobs(), HttpStatus.OK);
+    }
+
+    // Job nhỏ đã xong ngay trong request (200); job lớn đang chạy nền (202)
+    private ResponseEntity<Map<String, Object>> jobResponse(BulkModerationService.JobStatus job) {
+        return switch (job.state()) {
+            case RUNNING -> buildResponse(true, "Đã nhận job, đang xử lý", job, HttpStatus.ACCEPTED);
+            case COMPLETED -> buildResponse(true, "Đã xử lý " + job.affected() + "/" + job.total(), job, HttpStatus.OK);
+            case FAILED -> buildResponse(false, "Job dừng giữa chừng: " + job.error(), job, HttpStatus.INTERNAL_SERVER_ERROR);
+        };
+    }
+}
@@ -1,11 +1,8 @@
 package com.hometech.hometech.controller.Api;
 
-import com.hometech.hometech.Repository.AccountRepository;
-import com.hometech.hometech.Repository.UserRepository;
-import com.hometech.hometech.enums.RoleType;
-import com.hometech.hometech.model.Account;
 import com.hometech.hometech.model.Notify;
-import com.hometech.hometech.model.User;
+import com.hometech.hometech.service.AccountIdentityService;
+import com.hometech.hometech.service.AudienceService;
 import com.hometech.hometech.service.NotifyService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -30,17 +27,14 @@ public class NotificationController {
 
     private final SimpMessagingTemplate messagingTemplate;
     private final NotifyService notifyService;
-    private final AccountRepository accountRepository;
-    private final UserRepository userRepository;
+    private final AccountIdentityService accountIdentityService;
 
     public NotificationController(SimpMessagingTemplate messagingTemplate,
                                  NotifyService notifyService,
-                                 AccountRepository accountRepository,
-                                 UserRepository userRepository) {
+                                 AccountIdentityService accountIdentityService) {
         this.messagingTemplate = messagingTemplate;
         this.notifyService = notifyService;
-        this.accountRepository = accountRepository;
-        this.userRepository = userRepository;
+        this.accountIdentityService = accountIdentityService;
     }
 
     @Data
@@ -78,22 +72,22 @@ public class NotificationController {
         private String message;
         private String type;
         private Long relatedId;
+        // Phân khúc khách nhận; bỏ trống = mọi khách hàng đang hoạt động
+        private AudienceService.Segment segment;
     }
 
-    private Account resolveAccount(Authentication authentication) {
+    private AccountIdentityService.AccountIdentity resolveAccount(Authentication authentication) {
         System.out.println("🔍 getCurrentAccount - Authentication: " + (authentication != null ? authentication.getName() : "null"));
         if (authentication != null && authentication.isAuthenticated()) {
             String name = authentication.getName();
-            Account account = accountRepository.findByUsername(name)
-                    .or(() -> accountRepository.findByEmail(name))
-                    .orElse(null);
+            AccountIdentityService.AccountIdentity account = accountIdentityService.resolve(name);
             if (account == null && authentication instanceof OAuth2AuthenticationToken oAuth) {
                 Object principal = oAuth.getPrincipal();
                 if (principal instanceof OAuth2User) {
                     Object emailAttr = ((OAuth2User) principal).getAttributes().get("email");
                     System.out.println("🔍 OAuth2 email: " + emailAttr);
                     if (emailAttr != null) {
-                        account = accountRepository.findByEmail(String.valueOf(emailAttr)).orElse(null);
+                        account = accountIdentityService.resolve(String.valueOf(emailAttr));
                     }
                 }
             }
@@ -106,26 +100,25 @@ public class NotificationController {
         return null;
     }
 
-    private Account getCurrentAccount() {
+    private AccountIdentityService.AccountIdentity getCurrentAccount() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         return resolveAccount(authentication);
     }
 
     private Long getCurrentUserId() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        Account account = resolveAccount(authentication);
+        AccountIdentityService.AccountIdentity account = resolveAccount(authentication);
         if (account == null) {
             return null;
         }
-        User user = userRepository.findByAccount(account);
-        Long userId = user != null ? user.getId() : null;
+        Long userId = account.userId();
         System.out.println("✅ Current user ID: " + userId);
         return userId;
     }
 
     private boolean isCurrentUserAdmin() {
-        Account account = getCurrentAccount();
-        return account != null && RoleType.ADMIN.equals(account.getRole());
+        AccountIdentityService.AccountIdentity account = getCurrentAccount();
+        return account != null && account.isAdmin();
     }
 
     // STOMP entrypoint for app messages
@@ -166,7 +159,8 @@ public class NotificationController {
         }
 
         String type = StringUtils.hasText(request.getType()) ? request.getType().trim() : "MARKETING";
-        long sent = notifyService.broadcastToCustomers(request.getMessage().trim(), type, request.getRelatedId());
+        long sent = notifyService.broadcastToCustomers(request.getMessage().trim(), type, request.getRelatedId(),
+                request.getSegment());
 
         return ResponseEntity.ok(Map.of(
                 "success", true,
@@ -1,15 +1,18 @@
 package com.hometech.hometech.controller.Api;
 
+import com.hometech.hometech.dto.ApiResponse;
 import com.hometech.hometech.dto.PreviewOrderResponse;
 import com.hometech.hometech.enums.OrderStatus;
 import com.hometech.hometech.enums.PaymentMethod;
 import com.hometech.hometech.model.Order;
+import com.hometech.hometech.service.JsonListStreamer;
 import com.hometech.hometech.service.OrderService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -18,27 +21,24 @@ import java.util.Map;
 public class OrderRestController {
 
     private final OrderService orderService;
+    private final JsonListStreamer jsonListStreamer;
 
-    public OrderRestController(OrderService orderService) {
+    public OrderRestController(OrderService orderService, JsonListStreamer jsonListStreamer) {
         this.orderService = orderService;
+        this.jsonListStreamer = jsonListStreamer;
     }
 
     // ==================================================================
     // 🔥 Hàm buildResponse — Y CHANG CartRestController
     // ==================================================================
-    private ResponseEntity<Map<String, Object>> buildResponse(
+    private ResponseEntity<ApiResponse<Object>> buildResponse(
             boolean success,
             String message,
             Object data,
             String error,
             HttpStatus status
     ) {
-        Map<String, Object> res = new HashMap<>();
-        res.put("success", success);
-        res.put("message", message);
-        res.put("data", data);
-        res.put("error", error);
-        return ResponseEntity.status(status).body(res);
+        return ResponseEntity.status(status).body(new ApiResponse<>(success, message, data, error));
     }
 
     // ==================================================================
@@ -59,7 +59,7 @@ public class OrderRestController {
         }
     }
     @PostMapping("/create/{userId}")
-    public ResponseEntity<Map<String, Object>> createOrder(
+    public ResponseEntity<ApiResponse<Object>> createOrder(
             @PathVariable Long userId,
             @RequestParam(required = false) String voucherCode,
             @RequestParam(required = false) PaymentMethod paymentMethod,
@@ -84,7 +84,7 @@ public class OrderRestController {
 
 
     @GetMapping("/user/{userId}")
-    public ResponseEntity<Map<String, Object>> getOrdersByUserId(@PathVariable Long userId) {
+    public ResponseEntity<ApiResponse<Object>> getOrdersByUserId(@PathVariable Long userId) {
         try {
             List<Order> orders = orderService.getOrdersByUserId(userId);
             return buildResponse(true, "Danh sách đơn hàng của user", orders, null, HttpStatus.OK);
@@ -94,7 +94,7 @@ public class OrderRestController {
     }
 
     @GetMapping("/user/{userId}/status/{status}")
-    public ResponseEntity<Map<String, Object>> getOrdersByUserIdAndStatus(
+    public ResponseEntity<ApiResponse<Object>> getOrdersByUserIdAndStatus(
             @PathVariable Long userId,
             @PathVariable OrderStatus status) {
         try {
@@ -109,20 +109,21 @@ public class OrderRestController {
         }
     }
 
+    // Toàn bộ đơn (kèm item) được ghi ra theo từng lô, không nạp hết vào bộ nhớ
     @GetMapping("/admin/all")
-    public ResponseEntity<Map<String, Object>> getAllOrders() {
-        List<Order> orders = orderService.getAllOrders();
-        return buildResponse(true, "Danh sách tất cả đơn hàng (admin)", orders, null, HttpStatus.OK);
+    public void getAllOrders(HttpServletResponse response) throws IOException {
+        jsonListStreamer.write(response, "Danh sách tất cả đơn hàng (admin)", true,
+                orderService::getPageAfter, Order::getId);
     }
 
     @GetMapping("/admin/status/{status}")
-    public ResponseEntity<Map<String, Object>> getOrdersByStatus(@PathVariable OrderStatus status) {
+    public ResponseEntity<ApiResponse<Object>> getOrdersByStatus(@PathVariable OrderStatus status) {
         List<Order> orders = orderService.getOrdersByStatus(status);
         return buildResponse(true, "Danh sách đơn hàng theo trạng thái " + status, orders, null, HttpStatus.OK);
     }
 
     @GetMapping("/{orderId}")
-    public ResponseEntity<Map<String, Object>> getOrderById(@PathVariable int orderId) {
+    public ResponseEntity<ApiResponse<Object>> getOrderById(@PathVariable int orderId) {
         Order order = orderService.getOrderById(orderId);
 
         if (order == null) {
@@ -137,7 +138,7 @@ public class OrderRestController {
     }
 
     @PutMapping("/{orderId}/status")
-    public ResponseEntity<Map<String, Object>> updateOrderStatus(
+    public ResponseEntity<ApiResponse<Object>> updateOrderStatus(
             @PathVariable int orderId,
             @RequestParam OrderStatus newStatus) {
         try {
@@ -153,12 +154,12 @@ public class OrderRestController {
     }
 
     @GetMapping("/statuses")
-    public ResponseEntity<Map<String, Object>> getAllOrderStatuses() {
+    public ResponseEntity<ApiResponse<Object>> getAllOrderStatuses() {
         return buildResponse(true, "Danh sách trạng thái đơn hàng", OrderStatus.values(), null, HttpStatus.OK);
     }
 
     @GetMapping("/{orderId}/can-cancel")
-    public ResponseEntity<Map<String, Object>> canCancelOrder(@PathVariable int orderId) {
+    public ResponseEntity<ApiResponse<Object>> canCancelOrder(@PathVariable int orderId) {
         boolean canCancel = orderService.canCancelOrder(orderId);
         return buildResponse(true,
                 "Kiểm tra khả năng hủy đơn hàng #" + orderId,
@@ -168,7 +169,7 @@ public class OrderRestController {
     }
 
     @PutMapping("/{orderId}/cancel/user/{userId}")
-    public ResponseEntity<Map<String, Object>> cancelOrderByUser(
+    public ResponseEntity<ApiResponse<Object>> cancelOrderByUser(
             @PathVariable int orderId,
             @PathVariable Long userId) {
 
@@ -185,7 +186,7 @@ public class OrderRestController {
     }
 
     @PutMapping("/{orderId}/cancel/admin")
-    public ResponseEntity<Map<String, Object>> cancelOrderByAdmin(@PathVariable int orderId) {
+    public ResponseEntity<ApiResponse<Object>> cancelOrderByAdmin(@PathVariable int orderId) {
         try {
             Order order = orderService.cancelOrderByAdmin(orderId);
             return buildResponse(true,
@@ -199,7 +200,7 @@ public class OrderRestController {
     }
 
     @GetMapping("/my-expenses")
-    public ResponseEntity<Map<String, Object>> getMyExpenses(
+    public ResponseEntity<ApiResponse<Object>> getMyExpenses(
             @RequestParam Long userId,
             @RequestParam String startDate,
             @RequestParam String endDate,
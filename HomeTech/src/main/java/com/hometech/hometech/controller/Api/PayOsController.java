@@ -7,6 +7,7 @@ import com.hometech.hometech.model.Payment;
 import com.hometech.hometech.model.Order;
 import com.hometech.hometech.Repository.PaymentRepository;
 import com.hometech.hometech.service.PayOsService;
+import com.hometech.hometech.service.PayOsWebhookInbox;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -22,16 +23,19 @@ public class PayOsController {
     private final OrderRepository orderRepository;
     private final PayOsService payOsService;
     private final PaymentRepository paymentRepository;
+    private final PayOsWebhookInbox payOsWebhookInbox;
 
     @Value("${frontend.base-url:http://localhost:5173}")
     private String frontendBaseUrl;
 
     public PayOsController(OrderRepository orderRepository,
                            PayOsService payOsService,
-                           PaymentRepository paymentRepository) {
+                           PaymentRepository paymentRepository,
+                           PayOsWebhookInbox payOsWebhookInbox) {
         this.orderRepository = orderRepository;
         this.payOsService = payOsService;
         this.paymentRepository = paymentRepository;
+        this.payOsWebhookInbox = payOsWebhookInbox;
     }
 
     @PostMapping("/create")
@@ -105,19 +109,24 @@ public class PayOsController {
         return ResponseEntity.ok(result);
     }
 
+    // Chỉ xác thực chữ ký và ghi vào inbox rồi trả lời ngay; xử lý thực hiện bất đồng bộ trong PayOsWebhookInbox
     @PostMapping("/webhook")
-    public ResponseEntity<?> handleWebhook(@RequestBody com.hometech.hometech.dto.PayOsWebhookPayload payload) {
+    public ResponseEntity<?> handleWebhook(@RequestBody String rawBody) {
         try {
-            if (payOsService.verifyWebhookSignature(payload)) {
-                payOsService.handleWebhook(payload);
-                return ResponseEntity.ok(Map.of("success", true));
-            } else {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                        .body(Map.of("success", false, "message", "Invalid signature"));
+            PayOsWebhookInbox.Receipt receipt = payOsWebhookInbox.accept(rawBody);
+            switch (receipt) {
+                case INVALID_SIGNATURE:
+                    return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                            .body(Map.of("success", false, "message", "Invalid signature"));
+                case MALFORMED:
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                            .body(Map.of("success", false, "message", "Invalid payload"));
+                default:
+                    return ResponseEntity.ok(Map.of("success", true, "duplicate", receipt == PayOsWebhookInbox.Receipt.DUPLICATE));
             }
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("success", false, "message", e.getMessage()));
         }
     }
-}
\ No newline at end of file
+}
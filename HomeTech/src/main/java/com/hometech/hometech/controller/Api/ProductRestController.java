@@ -1,5 +1,6 @@
 package com.hometech.hometech.controller.Api;
 
+import com.hometech.hometech.dto.ApiResponse;
 import com.hometech.hometech.dto.ProductImageDTO;
 import com.hometech.hometech.model.Category;
 import com.hometech.hometech.model.Product;
@@ -7,15 +8,20 @@ import com.hometech.hometech.model.ProductAttributeValue;
 import com.hometech.hometech.model.ProductImage;
 import com.hometech.hometech.model.ProductVariant;
 import com.hometech.hometech.Repository.ProductVariantRepository;
+import com.hometech.hometech.service.CategoryDirectory;
 import com.hometech.hometech.service.CategoryService;
+import com.hometech.hometech.service.HomePageService;
+import com.hometech.hometech.service.JsonListStreamer;
 import com.hometech.hometech.service.NotifyService;
 import com.hometech.hometech.service.ProductImageService;
 import com.hometech.hometech.service.ProductService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.util.*;
 
 @RestController
@@ -27,51 +33,52 @@ public class ProductRestController {
     private final ProductImageService productImageService;
     private final NotifyService notifyService;
     private final ProductVariantRepository productVariantRepository;
+    private final HomePageService homePageService;
+    private final JsonListStreamer jsonListStreamer;
 
     public ProductRestController(ProductService productService,
                                  CategoryService categoryService,
                                  ProductImageService productImageService,
                                  NotifyService notifyService,
-                                 ProductVariantRepository productVariantRepository) {
+                                 ProductVariantRepository productVariantRepository,
+                                 HomePageService homePageService,
+                                 JsonListStreamer jsonListStreamer) {
         this.productService = productService;
         this.categoryService = categoryService;
         this.productImageService = productImageService;
         this.notifyService = notifyService;
         this.productVariantRepository = productVariantRepository;
+        this.homePageService = homePageService;
+        this.jsonListStreamer = jsonListStreamer;
     }
 
-    private ResponseEntity<Map<String, Object>> buildResponse(
+    private ResponseEntity<ApiResponse<Object>> buildResponse(
             boolean success,
             String message,
             Object data,
             String error,
             HttpStatus status
     ) {
-        Map<String, Object> res = new HashMap<>();
-        res.put("success", success);
-        res.put("message", message);
-        res.put("data", data);
-        res.put("error", error);
-        return ResponseEntity.status(status).body(res);
+        return ResponseEntity.status(status).body(new ApiResponse<>(success, message, data, error));
     }
 
-    // 🟢 Lấy tất cả sản phẩm (active) cho người dùng
+    // 🟢 Lấy tất cả sản phẩm (active) cho người dùng, ghi ra theo từng lô
     @GetMapping
-    public ResponseEntity<Map<String, Object>> getAllProducts() {
-        List<Product> products = productService.getAllActive();
-        return buildResponse(true, "Lấy danh sách sản phẩm đang hiển thị", products, null, HttpStatus.OK);
+    public void getAllProducts(HttpServletResponse response) throws IOException {
+        jsonListStreamer.write(response, "Lấy danh sách sản phẩm đang hiển thị", true,
+                (afterId, limit) -> productService.getPageAfter(afterId, false, limit), Product::getId);
     }
 
     // 🟣 Lấy tất cả sản phẩm (bao gồm hidden) cho quản trị
     @GetMapping("/all")
-    public ResponseEntity<Map<String, Object>> getAllProductsForAdmin() {
-        List<Product> products = productService.getAll();
-        return buildResponse(true, "Lấy tất cả sản phẩm thành công", products, null, HttpStatus.OK);
+    public void getAllProductsForAdmin(HttpServletResponse response) throws IOException {
+        jsonListStreamer.write(response, "Lấy tất cả sản phẩm thành công", true,
+                (afterId, limit) -> productService.getPageAfter(afterId, true, limit), Product::getId);
     }
 
     // 🟢 Lấy sản phẩm theo ID
     @GetMapping("/{id}")
-    public ResponseEntity<Map<String, Object>> getProductById(@PathVariable long id) {
+    public ResponseEntity<ApiResponse<Object>> getProductById(@PathVariable long id) {
         Product product = productService.getById(id);
 
         if (product == null) {
@@ -81,10 +88,11 @@ public class ProductRestController {
         return buildResponse(true, "Lấy sản phẩm thành công", product, null, HttpStatus.OK);
     }
     @PutMapping("/{id}/toggle")
-    public ResponseEntity<Map<String, Object>> toggleProduct(@PathVariable long id) {
+    public ResponseEntity<ApiResponse<Object>> toggleProduct(@PathVariable long id) {
         Product toggled = productService.toggleHidden(id);
         if (toggled == null)
             return buildResponse(false, "Không tìm thấy sản phẩm", null, "Product not found", HttpStatus.NOT_FOUND);
+        homePageService.invalidate();
 
         boolean hidden = toggled.isHidden();
         try {
@@ -101,21 +109,21 @@ public class ProductRestController {
     }
     // 🟢 Lấy sản phẩm theo ID danh mục
     @GetMapping("/category/{categoryId}")
-    public ResponseEntity<Map<String, Object>> getProductsByCategoryId(@PathVariable int categoryId) {
+    public ResponseEntity<ApiResponse<Object>> getProductsByCategoryId(@PathVariable int categoryId) {
         List<Product> list = productService.getProductsByCategoryId(categoryId);
         return buildResponse(true, "Lấy sản phẩm theo danh mục thành công", list, null, HttpStatus.OK);
     }
 
     // 🟢 Lấy sản phẩm đang active theo danh mục
     @GetMapping("/category/{categoryId}/active")
-    public ResponseEntity<Map<String, Object>> getActiveProductsByCategoryId(@PathVariable long categoryId) {
+    public ResponseEntity<ApiResponse<Object>> getActiveProductsByCategoryId(@PathVariable long categoryId) {
         List<Product> list = productService.getActiveProductsByCategoryId(categoryId);
         return buildResponse(true, "Lấy sản phẩm active theo danh mục thành công", list, null, HttpStatus.OK);
     }
 
     // 🟢 Tạo sản phẩm mới
     @PostMapping
-    public ResponseEntity<Map<String, Object>> createProduct(@RequestBody Product product) {
+    public ResponseEntity<ApiResponse<Object>> createProduct(@RequestBody Product product) {
 
         // Kiểm tra category
         if (product.getCategory() != null && product.getCategory().getId() != null) {
@@ -130,6 +138,7 @@ public class ProductRestController {
         }
 
         Product saved = productService.save(product);
+        homePageService.invalidate();
 
         try {
             notifyService.notifyAdmins(
@@ -145,7 +154,7 @@ public class ProductRestController {
 
     // 🟢 Cập nhật sản phẩm
     @PutMapping("/{id}")
-    public ResponseEntity<Map<String, Object>> updateProduct(@PathVariable long id, @RequestBody Product product) {
+    public ResponseEntity<ApiResponse<Object>> updateProduct(@PathVariable long id, @RequestBody Product product) {
 
         Product existing = productService.getById(id);
 
@@ -197,6 +206,7 @@ public class ProductRestController {
 
         // Save existing (giữ nguyên images cũ)
         Product updated = productService.save(existing);
+        homePageService.invalidate();
 
         try {
             notifyService.notifyAdmins(
@@ -212,74 +222,71 @@ public class ProductRestController {
 
     // 🟢 Lấy thông tin danh mục và thống kê
     @GetMapping("/category/{categoryId}/info")
-    public ResponseEntity<Map<String, Object>> getCategoryInfo(@PathVariable long categoryId) {
+    public ResponseEntity<ApiResponse<Object>> getCategoryInfo(@PathVariable long categoryId) {
 
-        Category category = categoryService.getById(categoryId);
+        CategoryDirectory.CategoryView category = categoryService.getView(categoryId);
 
         if (category == null) {
             return buildResponse(false, "Không tìm thấy danh mục", null, "Category not found", HttpStatus.NOT_FOUND);
         }
 
-        long total = categoryService.countProductsInCategory(categoryId);
-        long active = categoryService.countActiveProductsInCategory(categoryId);
-
         Map<String, Object> info = Map.of(
                 "category", category,
-                "totalProducts", total,
-                "activeProducts", active
+                "totalProducts", category.totalProducts(),
+                "activeProducts", category.activeProducts()
         );
 
         return buildResponse(true, "Lấy thông tin danh mục thành công", info, null, HttpStatus.OK);
     }
     @GetMapping("/search")
-    public ResponseEntity<Map<String, Object>> search(@RequestParam String keyword) {
+    public ResponseEntity<ApiResponse<Object>> search(@RequestParam String keyword) {
         return buildResponse(true, "Tìm kiếm thành công",
                 productService.searchByName(keyword), null, HttpStatus.OK);
     }
     @GetMapping("/sort/price/asc")
-    public ResponseEntity<Map<String, Object>> sortPriceAsc() {
+    public ResponseEntity<ApiResponse<Object>> sortPriceAsc() {
         return buildResponse(true, "Sắp xếp theo giá tăng dần",
                 productService.sortByPriceAsc(), null, HttpStatus.OK);
     }
     @GetMapping("/sort/price/desc")
-    public ResponseEntity<Map<String, Object>> sortPriceDesc() {
+    public ResponseEntity<ApiResponse<Object>> sortPriceDesc() {
         return buildResponse(true, "Sắp xếp theo giá giảm dần",
                 productService.sortByPriceDesc(), null, HttpStatus.OK);
     }
 
     @GetMapping("/sort/sold/asc")
-    public ResponseEntity<Map<String, Object>> sortSoldAsc() {
+    public ResponseEntity<ApiResponse<Object>> sortSoldAsc() {
         return buildResponse(true, "Sắp xếp theo lượt bán tăng",
                 productService.sortBySoldAsc(), null, HttpStatus.OK);
     }
 
     @GetMapping("/sort/sold/desc")
-    public ResponseEntity<Map<String, Object>> sortSoldDesc() {
+    public ResponseEntity<ApiResponse<Object>> sortSoldDesc() {
         return buildResponse(true, "Sắp xếp theo lượt bán giảm",
                 productService.sortBySoldDesc(), null, HttpStatus.OK);
     }
 
     @GetMapping("/newest")
-    public ResponseEntity<Map<String, Object>> getNewest() {
+    public ResponseEntity<ApiResponse<Object>> getNewest() {
         return buildResponse(true, "Lấy sản phẩm mới nhất",
                 productService.sortByNewest(), null, HttpStatus.OK);
     }
 
     @GetMapping("/top-selling")
-    public ResponseEntity<Map<String, Object>> getTopSelling() {
+    public ResponseEntity<ApiResponse<Object>> getTopSelling() {
         return buildResponse(true, "Top 10 bán chạy",
                 productService.getTop10BestSellingProducts(), null, HttpStatus.OK);
     }
 
     @GetMapping("/last-7-days")
-    public ResponseEntity<Map<String, Object>> getLast7Days() {
+    public ResponseEntity<ApiResponse<Object>> getLast7Days() {
         return buildResponse(true, "Sản phẩm trong 7 ngày gần đây",
                 productService.getProductsAddedInLast7Days(), null, HttpStatus.OK);
     }
 
 //    IMAGE
     @PostMapping("/{productId}/images")
-    public ResponseEntity<Map<String, Object>> uploadImages(
+    public ResponseEntity<ApiResponse<Object>> uploadImages(
             @PathVariable Long productId,
             @RequestParam("files") MultipartFile[] files)
     {
@@ -300,7 +307,7 @@ public class ProductRestController {
 
 
     @GetMapping("/{productId}/images")
-    public ResponseEntity<Map<String, Object>> getImages(@PathVariable Long productId) {
+    public ResponseEntity<ApiResponse<Object>> getImages(@PathVariable Long productId) {
         List<ProductImage> images = productImageService.getImages(productId);
         // Convert ProductImage to DTO với base64 string
         List<ProductImageDTO> imageDTOs = images.stream()
@@ -310,7 +317,7 @@ public class ProductRestController {
     }
 
     @DeleteMapping("/images/{imageId}")
-    public ResponseEntity<Map<String, Object>> deleteImage(@PathVariable Long imageId) {
+    public ResponseEntity<ApiResponse<Object>> deleteImage(@PathVariable Long imageId) {
         try {
             productImageService.deleteImage(imageId);
             return buildResponse(true, "Xóa ảnh thành công", null, null, HttpStatus.OK);
@@ -320,7 +327,7 @@ public class ProductRestController {
     }
 
     @PutMapping("/images/{imageId}/display-order")
-    public ResponseEntity<Map<String, Object>> updateImageDisplayOrder(
+    public ResponseEntity<ApiResponse<Object>> updateImageDisplayOrder(
             @PathVariable Long imageId,
             @RequestBody Map<String, Integer> request) {
         try {
@@ -337,7 +344,7 @@ public class ProductRestController {
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Map<String, Object>> deleteProduct(@PathVariable long id) {
+    public ResponseEntity<ApiResponse<Object>> deleteProduct(@PathVariable long id) {
         Product product = productService.getById(id);
         if (product == null) {
             return buildResponse(false, "Không tìm thấy sản phẩm", null, "Product not found", HttpStatus.NOT_FOUND);
@@ -347,6 +354,7 @@ public class ProductRestController {
         if (!deleted) {
             return buildResponse(false, "Không thể xóa sản phẩm", null, "Delete failed", HttpStatus.BAD_REQUEST);
         }
+        homePageService.invalidate();
 
         try {
             notifyService.notifyAdmins(
@@ -362,7 +370,7 @@ public class ProductRestController {
 
     // 🟢 Lấy danh sách biến thể của sản phẩm
     @GetMapping("/{productId}/variants")
-    public ResponseEntity<Map<String, Object>> getProductVariants(@PathVariable Long productId) {
+    public ResponseEntity<ApiResponse<Object>> getProductVariants(@PathVariable Long productId) {
         List<ProductVariant> variants = productVariantRepository.findByProduct_Id(productId);
         return buildResponse(true, "Lấy danh sách biến thể thành công", variants, null, HttpStatus.OK);
     }
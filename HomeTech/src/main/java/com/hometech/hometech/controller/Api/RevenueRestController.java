@@ -1,6 +1,7 @@
 package com.hometech.hometech.controller.Api;
 
 import com.hometech.hometech.service.RevenueService;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -12,6 +13,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+// Chỉ admin dùng: tạo ở request đầu tiên thay vì lúc khởi động
+@Lazy
 @RestController
 @RequestMapping("/api/revenue")
 @PreAuthorize("hasRole('ADMIN')")
@@ -1,13 +1,26 @@
 package com.hometech.hometech.controller.Api;
 
+import com.hometech.hometech.Repository.ReviewImageRepository;
 import com.hometech.hometech.model.Review;
 import com.hometech.hometech.model.Response;
+import com.hometech.hometech.service.JsonListStreamer;
+import com.hometech.hometech.service.ProductRatingService;
 import com.hometech.hometech.service.ReviewService;
 import com.hometech.hometech.service.ResponseService;
+import com.hometech.hometech.service.ReviewImageStorage;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 
 @RestController
@@ -16,10 +29,17 @@ public class ReviewRestController {
 
     private final ReviewService reviewService;
     private final ResponseService responseService;
+    private final ReviewImageStorage reviewImageStorage;
+    private final JsonListStreamer jsonListStreamer;
 
-    public ReviewRestController(ReviewService reviewService, ResponseService responseService) {
+    public ReviewRestController(ReviewService reviewService,
+                                ResponseService responseService,
+                                ReviewImageStorage reviewImageStorage,
+                                JsonListStreamer jsonListStreamer) {
         this.reviewService = reviewService;
         this.responseService = responseService;
+        this.reviewImageStorage = reviewImageStorage;
+        this.jsonListStreamer = jsonListStreamer;
     }
 
     private ResponseEntity<Map<String, Object>> buildResponse(
@@ -35,16 +55,18 @@ public class ReviewRestController {
     // ==============================
     // 1. Tạo hoặc sửa review
     // ==============================
-    @PostMapping
+    // Ảnh gửi dạng multipart (part "images"), được stream xuống đĩa trước khi mở transaction
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<Map<String, Object>> createOrUpdateReview(
             @RequestParam long productId,
             @RequestParam long customerId,
             @RequestParam int rating,
             @RequestParam String content,
-            @RequestBody(required = false) List<String> base64Images
+            @RequestPart(value = "images", required = false) List<MultipartFile> images
     ) {
         try {
-            Review review = reviewService.addOrUpdateReview(productId, customerId, rating, content, base64Images);
+            List<ReviewImageStorage.StoredImage> storedImages = reviewImageStorage.storeAll(images);
+            Review review = reviewService.addOrUpdateReview(productId, customerId, rating, content, storedImages);
             return buildResponse(true, "Đánh giá đã được tạo/cập nhật", review, HttpStatus.OK);
         } catch (Exception e) {
             return buildResponse(false, e.getMessage(), null, HttpStatus.BAD_REQUEST);
@@ -80,6 +102,61 @@ public class ReviewRestController {
         }
     }
 
+    // ==============================
+    // 3b. Feed đánh giá phân trang: sort = newest | highest | lowest | with_photos
+    // ==============================
+    @GetMapping("/product/{productId}/feed")
+    public ResponseEntity<Map<String, Object>> getReviewFeed(
+            @PathVariable long productId,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        try {
+            ReviewService.FeedPage page = reviewService.getFeed(productId, ReviewService.FeedSort.parse(sort), cursor, limit);
+            return buildResponse(true, "Feed đánh giá", page, HttpStatus.OK);
+        } catch (Exception e) {
+            return buildResponse(false, e.getMessage(), null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    // ==============================
+    // 3c. Ảnh đánh giá (chỉ phục vụ qua URL)
+    // ==============================
+    @GetMapping("/images/{imageId}")
+    public ResponseEntity<?> getReviewImage(@PathVariable long imageId) {
+        ReviewImageRepository.ImageRef image = reviewService.getVisibleImage(imageId);
+        if (image == null) {
+            return ResponseEntity.notFound().build();
+        }
+        MediaType contentType = image.getContentType() != null
+                ? MediaType.parseMediaType(image.getContentType())
+                : MediaType.IMAGE_JPEG;
+
+        // Ảnh mới: stream từ đĩa, nội dung bất biến theo hash -> cache lâu
+        if (image.getFilePath() != null) {
+            Path path = reviewImageStorage.resolve(image.getFilePath());
+            if (!Files.exists(path)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok()
+                    .contentType(contentType)
+                    .eTag("\"" + image.getFileHash() + "\"")
+                    .cacheControl(CacheControl.maxAge(Duration.ofDays(30)).cachePublic())
+                    .body(new FileSystemResource(path));
+        }
+
+        // Ảnh cũ còn lưu trong LONGBLOB
+        byte[] data = reviewService.getLegacyImageData(imageId);
+        if (data == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(1)).cachePublic())
+                .body(data);
+    }
+
     // ==============================
     // 4. Admin ẩn đánh giá
     // ==============================
@@ -95,7 +172,7 @@ public class ReviewRestController {
     @PutMapping("/{reviewId}/show")
     public ResponseEntity<Map<String, Object>> showReview(@PathVariable long reviewId) {
         try {
-            reviewService.hideReview(reviewId);
+            reviewService.showReview(reviewId);
             return buildResponse(true, "Đánh giá đã được hiển thị", null, HttpStatus.OK);
         } catch (Exception e) {
             return buildResponse(false, e.getMessage(), null, HttpStatus.BAD_REQUEST);
@@ -115,6 +192,19 @@ public class ReviewRestController {
         }
     }
 
+    // ==============================
+    // 5b. Số sao của nhiều sản phẩm (trang danh sách), VD ?productIds=1,2,3
+    // ==============================
+    @GetMapping("/ratings")
+    public ResponseEntity<Map<String, Object>> getRatings(@RequestParam List<Long> productIds) {
+        try {
+            Map<Long, ProductRatingService.RatingSummary> ratings = reviewService.getRatings(new LinkedHashSet<>(productIds));
+            return buildResponse(true, "Rating theo sản phẩm", ratings, HttpStatus.OK);
+        } catch (Exception e) {
+            return buildResponse(false, e.getMessage(), null, HttpStatus.BAD_REQUEST);
+        }
+    }
+
     // ==============================
     // 6. Admin phản hồi review
     // ==============================
@@ -167,13 +257,10 @@ public class ReviewRestController {
     // ==============================
     // 11. Lấy tất cả đánh giá (cho admin)
     // ==============================
+    // Ghi ra theo từng lô; lỗi giữa chừng chỉ còn cắt ngang body vì status 200 đã được gửi
     @GetMapping("/all")
-    public ResponseEntity<Map<String, Object>> getAllReviews() {
-        try {
-            List<Review> reviews = reviewService.getAllReviews();
-            return buildResponse(true, "Danh sách tất cả đánh giá", reviews, HttpStatus.OK);
-        } catch (Exception e) {
-            return buildResponse(false, e.getMessage(), null, HttpStatus.BAD_REQUEST);
-        }
+    public void getAllReviews(HttpServletResponse response) throws IOException {
+        jsonListStreamer.write(response, "Danh sách tất cả đánh giá", false,
+                reviewService::getPageAfter, Review::getId);
     }
 }
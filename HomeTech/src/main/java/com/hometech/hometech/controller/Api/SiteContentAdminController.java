@@ -5,6 +5,7 @@ import com.hometech.hometech.model.Banner;
 import com.hometech.hometech.model.FooterContent;
 import com.hometech.hometech.service.BannerService;
 import com.hometech.hometech.service.FooterContentService;
+import com.hometech.hometech.service.HomePageService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
@@ -20,11 +21,14 @@ public class SiteContentAdminController {
 
     private final BannerService bannerService;
     private final FooterContentService footerContentService;
+    private final HomePageService homePageService;
 
     public SiteContentAdminController(BannerService bannerService,
-                                      FooterContentService footerContentService) {
+                                      FooterContentService footerContentService,
+                                      HomePageService homePageService) {
         this.bannerService = bannerService;
         this.footerContentService = footerContentService;
+        this.homePageService = homePageService;
     }
 
     private ResponseEntity<Map<String, Object>> buildResponse(
@@ -60,6 +64,7 @@ public class SiteContentAdminController {
     public ResponseEntity<Map<String, Object>> createBanner(@RequestBody Banner banner) {
         try {
             Banner saved = bannerService.create(banner);
+            homePageService.invalidate();
             return buildResponse(true, "Tạo banner/slider thành công", saved, HttpStatus.CREATED);
         } catch (IllegalArgumentException e) {
             return buildResponse(false, e.getMessage(), null, HttpStatus.BAD_REQUEST);
@@ -73,6 +78,7 @@ public class SiteContentAdminController {
             if (updated == null) {
                 return buildResponse(false, "Không tìm thấy banner", null, HttpStatus.NOT_FOUND);
             }
+            homePageService.invalidate();
             return buildResponse(true, "Cập nhật banner/slider thành công", updated, HttpStatus.OK);
         } catch (IllegalArgumentException e) {
             return buildResponse(false, e.getMessage(), null, HttpStatus.BAD_REQUEST);
@@ -88,6 +94,7 @@ public class SiteContentAdminController {
         }
         boolean targetState = active != null ? active : !existing.isActive();
         Banner updated = bannerService.toggleActive(id, targetState);
+        homePageService.invalidate();
         return buildResponse(true, "Cập nhật trạng thái banner thành công", updated, HttpStatus.OK);
     }
 
@@ -98,6 +105,7 @@ public class SiteContentAdminController {
             return buildResponse(false, "Không tìm thấy banner", null, HttpStatus.NOT_FOUND);
         }
         bannerService.delete(id);
+        homePageService.invalidate();
         return buildResponse(true, "Xóa banner/slider thành công", null, HttpStatus.OK);
     }
 
@@ -110,6 +118,7 @@ public class SiteContentAdminController {
     @PutMapping("/footer")
     public ResponseEntity<Map<String, Object>> updateFooter(@RequestBody FooterContent footerContent) {
         FooterContent saved = footerContentService.upsert(footerContent);
+        homePageService.invalidate();
         return buildResponse(true, "Cập nhật footer thành công", saved, HttpStatus.OK);
     }
 
@@ -5,7 +5,11 @@ import com.hometech.hometech.model.Banner;
 import com.hometech.hometech.model.FooterContent;
 import com.hometech.hometech.service.BannerService;
 import com.hometech.hometech.service.FooterContentService;
+import com.hometech.hometech.service.HomePageService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -23,11 +27,14 @@ public class SiteContentController {
 
     private final BannerService bannerService;
     private final FooterContentService footerContentService;
+    private final HomePageService homePageService;
 
     public SiteContentController(BannerService bannerService,
-                                 FooterContentService footerContentService) {
+                                 FooterContentService footerContentService,
+                                 HomePageService homePageService) {
         this.bannerService = bannerService;
         this.footerContentService = footerContentService;
+        this.homePageService = homePageService;
     }
 
     private ResponseEntity<Map<String, Object>> buildResponse(
@@ -62,6 +69,23 @@ public class SiteContentController {
         return buildResponse(true, "Lấy thông tin footer thành công", footer, HttpStatus.OK);
     }
 
+    // Toàn bộ dữ liệu trang chủ trong một request (banner, slider, footer, danh mục, sản phẩm nổi bật).
+    // ETag là mã băm của bản đang cache: trùng If-None-Match thì Spring trả 304 không kèm body
+    @GetMapping("/home")
+    public ResponseEntity<?> getHomePage() {
+        try {
+            HomePageService.Page page = homePageService.getPage();
+            return ResponseEntity.ok()
+                    .eTag(page.etag())
+                    .cacheControl(CacheControl.noCache().cachePublic())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(page.body());
+        } catch (RuntimeException e) {
+            return buildResponse(false, e.getMessage(), null, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
     private BannerType resolveType(String type, BannerType defaultType) {
         if (!StringUtils.hasText(type)) {
             return defaultType;
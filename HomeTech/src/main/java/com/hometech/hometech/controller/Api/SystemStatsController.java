@@ -0,0 +1,102 @@
+package com.hometech.hometech.controller.Api;
+
+import com.hometech.hometech.config.HttpCacheInterceptor;
+import com.hometech.hometech.config.SchemaMigrator;
+import com.hometech.hometech.service.EmailOutboxWorker;
+import com.hometech.hometech.service.GoogleVerifierService;
+import com.hometech.hometech.service.HomePageService;
+import com.hometech.hometech.service.OutboundGatewayRegistry;
+import com.hometech.hometech.service.PaymentReconciliationService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Số liệu vận hành cho admin
+@RestController
+@RequestMapping("/api/admin/system")
+public class SystemStatsController {
+
+    private final OutboundGatewayRegistry outboundGatewayRegistry;
+    private final PaymentReconciliationService paymentReconciliationService;
+    private final GoogleVerifierService googleVerifierService;
+    private final EmailOutboxWorker emailOutboxWorker;
+    private final HomePageService homePageService;
+    private final HttpCacheInterceptor httpCacheInterceptor;
+    private final SchemaMigrator schemaMigrator;
+
+    public SystemStatsController(OutboundGatewayRegistry outboundGatewayRegistry,
+                                 PaymentReconciliationService paymentReconciliationService,
+                                 GoogleVerifierService googleVerifierService,
+                                 EmailOutboxWorker emailOutboxWorker,
+                                 HomePageService homePageService,
+                                 HttpCacheInterceptor httpCacheInterceptor,
+                                 SchemaMigrator schemaMigrator) {
+        this.outboundGatewayRegistry = outboundGatewayRegistry;
+        this.paymentReconciliationService = paymentReconciliationService;
+        this.googleVerifierService = googleVerifierService;
+        this.emailOutboxWorker = emailOutboxWorker;
+        this.homePageService = homePageService;
+        this.httpCacheInterceptor = httpCacheInterceptor;
+        this.schemaMigrator = schemaMigrator;
+    }
+
+    private ResponseEntity<Map<String, Object>> buildResponse(
+            boolean success,
+            String message,
+            Object data,
+            HttpStatus status
+    ) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("success", success);
+        payload.put("message", message);
+        payload.put("data", data);
+        return ResponseEntity.status(status).body(payload);
+    }
+
+    // Độ trễ, lỗi, trạng thái circuit breaker của các cổng gọi ra ngoài (PayOS, Google)
+    @GetMapping("/outbound")
+    public ResponseEntity<Map<String, Object>> getOutboundStats() {
+        return buildResponse(true, "Lấy số liệu cổng gọi ngoài thành công", outboundGatewayRegistry.getStats(), HttpStatus.OK);
+    }
+
+    // Kết quả job đối soát đơn chờ thanh toán: số đơn đã hủy, số lượng hàng được hoàn kho
+    @GetMapping("/payment-reconciliation")
+    public ResponseEntity<Map<String, Object>> getPaymentReconciliationStats() {
+        return buildResponse(true, "Lấy số liệu đối soát thanh toán thành công", paymentReconciliationService.getStats(), HttpStatus.OK);
+    }
+
+    // Cache public key Google dùng cho đăng nhập Google: số key, lần tải gần nhất, số lần tải lại
+    @GetMapping("/google-jwks")
+    public ResponseEntity<Map<String, Object>> getGoogleJwksStats() {
+        return buildResponse(true, "Lấy số liệu cache key Google thành công", googleVerifierService.getStats(), HttpStatus.OK);
+    }
+
+    // Hàng đợi email: số email chờ gửi, đã gửi, thử lại, số kết nối SMTP đã mở
+    @GetMapping("/email-outbox")
+    public ResponseEntity<Map<String, Object>> getEmailOutboxStats() {
+        return buildResponse(true, "Lấy số liệu hàng đợi email thành công", emailOutboxWorker.getStats(), HttpStatus.OK);
+    }
+
+    // Cache trang chủ: số lần trúng cache, số lần dựng lại, thời gian dựng gần nhất
+    @GetMapping("/home-cache")
+    public ResponseEntity<Map<String, Object>> getHomeCacheStats() {
+        return buildResponse(true, "Lấy số liệu cache trang chủ thành công", homePageService.getStats(), HttpStatus.OK);
+    }
+
+    // ETag của API công khai: số response đã gắn ETag, số lần trả 304, phiên bản hiện tại của catalog
+    @GetMapping("/http-cache")
+    public ResponseEntity<Map<String, Object>> getHttpCacheStats() {
+        return buildResponse(true, "Lấy số liệu cache HTTP thành công", httpCacheInterceptor.getStats(), HttpStatus.OK);
+    }
+
+    // Migration schema: chế độ, thời gian kiểm tra lúc khởi động, các bước vừa chạy/hoãn/lỗi
+    @GetMapping("/schema-migrations")
+    public ResponseEntity<Map<String, Object>> getSchemaMigrationStats() {
+        return buildResponse(true, "Lấy số liệu migration thành công", schemaMigrator.getStats(), HttpStatus.OK);
+    }
+}
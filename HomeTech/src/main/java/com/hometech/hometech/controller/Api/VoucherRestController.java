@@ -1,5 +1,6 @@
 package com.hometech.hometech.controller.Api;
 
+import com.hometech.hometech.dto.ApplicableVoucherDTO;
 import com.hometech.hometech.model.Voucher;
 import com.hometech.hometech.service.VoucherService;
 import org.springframework.http.HttpStatus;
@@ -42,6 +43,16 @@ public class VoucherRestController {
         return buildResponse(true, "Danh sách voucher", vouchers, null, HttpStatus.OK);
     }
 
+    // Danh sách voucher áp dụng được cho tổng tiền giỏ hàng (sắp theo mức giảm giảm dần)
+    @GetMapping("/applicable")
+    public ResponseEntity<Map<String, Object>> getApplicable(@RequestParam double total) {
+        if (total < 0) {
+            return buildResponse(false, "Tổng tiền không hợp lệ", null, "Invalid total", HttpStatus.BAD_REQUEST);
+        }
+        List<ApplicableVoucherDTO> vouchers = voucherService.getApplicableVouchers(total);
+        return buildResponse(true, "Danh sách voucher áp dụng được", vouchers, null, HttpStatus.OK);
+    }
+
     @PostMapping
     public ResponseEntity<Map<String, Object>> create(@RequestBody Voucher voucher) {
         try {
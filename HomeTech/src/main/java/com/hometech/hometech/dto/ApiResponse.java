@@ -0,0 +1,8 @@
+package com.hometech.hometech.dto;
+
+/**
+ * Body chung {success, message, data, error} của các API REST.
+ * Thay cho {@code HashMap} tạo mới ở mỗi response: Jackson ghi record bằng serializer đã cache sẵn theo kiểu.
+ */
+public record ApiResponse<T>(boolean success, String message, T data, String error) {
+}
@@ -0,0 +1,22 @@
+package com.hometech.hometech.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApplicableVoucherDTO {
+    private Long id;
+    private String code;
+    private Double discountPercent;
+    private Double discountAmount;
+    private long minOrderValue;
+    private LocalDateTime endDate;
+    // Số tiền được giảm và tổng sau giảm, tính trên tổng tiền client gửi lên
+    private long discount;
+    private long finalTotal;
+}
@@ -0,0 +1,44 @@
+package com.hometech.hometech.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class ChatHistoryPage {
+    private final List<ChatMessagePayload> items;
+    private final boolean hasMore;
+    private final LocalDateTime nextBefore;
+    private final Long nextBeforeId;
+    private final Long latestId;
+
+    public ChatHistoryPage(List<ChatMessagePayload> items, boolean hasMore,
+                           LocalDateTime nextBefore, Long nextBeforeId, Long latestId) {
+        this.items = items;
+        this.hasMore = hasMore;
+        this.nextBefore = nextBefore;
+        this.nextBeforeId = nextBeforeId;
+        this.latestId = latestId;
+    }
+
+    // Tin nhắn theo thứ tự thời gian tăng dần (cũ -> mới)
+    public List<ChatMessagePayload> getItems() {
+        return items;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    // Cursor để tải trang cũ hơn: truyền lại qua ?before=...&beforeId=...
+    public LocalDateTime getNextBefore() {
+        return nextBefore;
+    }
+
+    public Long getNextBeforeId() {
+        return nextBeforeId;
+    }
+
+    // Id lớn nhất client đang có, dùng cho ?since=... khi reconnect
+    public Long getLatestId() {
+        return latestId;
+    }
+}
@@ -11,6 +11,23 @@ public class ChatMessagePayload {
     private String fileName;
     private String fileContentType;
 
+    public ChatMessagePayload() {
+    }
+
+    // Dùng cho JPQL constructor expression: chỉ lấy metadata file, không đọc cột file_data
+    public ChatMessagePayload(Long id, com.hometech.hometech.enums.SenderType senderType, Long senderId,
+                              String content, java.time.LocalDateTime sentAt,
+                              String fileName, String fileContentType) {
+        this.id = id;
+        this.senderType = senderType != null ? senderType.name() : null;
+        this.senderId = senderId;
+        this.content = content;
+        this.sentAt = sentAt;
+        this.hasFile = fileName != null;
+        this.fileName = fileName;
+        this.fileContentType = fileContentType;
+    }
+
     public boolean isHasFile() {
         return hasFile;
     }
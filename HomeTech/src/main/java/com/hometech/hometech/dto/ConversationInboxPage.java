@@ -0,0 +1,37 @@
+package com.hometech.hometech.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class ConversationInboxPage {
+    private final List<ConversationSummary> items;
+    private final boolean hasMore;
+    private final LocalDateTime nextBefore;
+    private final Long nextBeforeId;
+
+    public ConversationInboxPage(List<ConversationSummary> items, boolean hasMore,
+                                 LocalDateTime nextBefore, Long nextBeforeId) {
+        this.items = items;
+        this.hasMore = hasMore;
+        this.nextBefore = nextBefore;
+        this.nextBeforeId = nextBeforeId;
+    }
+
+    // Cuộc trò chuyện theo tin nhắn mới nhất giảm dần
+    public List<ConversationSummary> getItems() {
+        return items;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    // Cursor để tải trang tiếp theo: truyền lại qua ?before=...&beforeId=...
+    public LocalDateTime getNextBefore() {
+        return nextBefore;
+    }
+
+    public Long getNextBeforeId() {
+        return nextBeforeId;
+    }
+}
@@ -0,0 +1,47 @@
+package com.hometech.hometech.dto;
+
+import java.time.LocalDateTime;
+
+public class ConversationSummary {
+    private final Long id;
+    private final Long userId;
+    private final String username;
+    private final String lastMessagePreview;
+    private final LocalDateTime lastMessageAt;
+    private final int unreadCount;
+
+    // Dùng cho JPQL constructor expression trong ConversationRepository
+    public ConversationSummary(Long id, Long userId, String username, String lastMessagePreview,
+                               LocalDateTime lastMessageAt, int unreadCount) {
+        this.id = id;
+        this.userId = userId;
+        this.username = username != null ? username : "Khách hàng";
+        this.lastMessagePreview = lastMessagePreview;
+        this.lastMessageAt = lastMessageAt;
+        this.unreadCount = unreadCount;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getLastMessagePreview() {
+        return lastMessagePreview;
+    }
+
+    public LocalDateTime getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+}
@@ -0,0 +1,8 @@
+package com.hometech.hometech.enums;
+
+public enum EmailOutboxStatus {
+    PENDING,
+    SENDING,
+    SENT,
+    FAILED
+}
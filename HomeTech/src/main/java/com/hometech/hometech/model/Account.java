@@ -143,8 +143,11 @@ public class Account {
     private LocalDateTime updatedAt;
     // ======================================
 
+    // User.account trỏ ngược lại: bỏ khỏi equals/hashCode/toString của Lombok để không đệ quy vô hạn
     @OneToOne
     @JoinColumn(name = "user_id")
     @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private User user;
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 
+// Unique key uk_cart_item_line (cart_id, product_id, variant_key) được tạo bởi migration V5 (SchemaMigrations)
 @Entity
 @Data
 @NoArgsConstructor
@@ -0,0 +1,31 @@
+package com.hometech.hometech.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Phiên bản dùng chung giữa các node của một phần dữ liệu công khai ("products", "categories", "site-content",
+ * "product:{id}"). Chỉ được tăng, mỗi node đọc lại các dòng mới đổi để tính ETag giống nhau trên mọi node.
+ */
+@Entity
+@Table(name = "catalog_version", indexes = @Index(name = "idx_catalog_version_updated", columnList = "updated_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogVersion {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(nullable = false)
+    private long version;
+
+    // Giờ của DB lúc tăng, không dùng giờ của node để tránh lệch đồng hồ
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -2,6 +2,7 @@ package com.hometech.hometech.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.hometech.hometech.service.CatalogChangeListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -10,6 +11,7 @@ import lombok.NoArgsConstructor;
 import java.util.List;
 
 @Entity
+@EntityListeners(CatalogChangeListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
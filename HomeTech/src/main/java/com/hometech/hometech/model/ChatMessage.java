@@ -10,6 +10,11 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = {
+        // Phân trang lịch sử chat theo cursor (sent_at, id) trong một cuộc trò chuyện
+        @Index(name = "idx_chat_message_conv_sent_id", columnList = "conversation_id, sent_at, id"),
+        @Index(name = "idx_chat_message_file_hash", columnList = "file_hash")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -31,10 +36,22 @@ public class ChatMessage {
 
     @Column(nullable = false, length = 1000)
     private String content;
+    // Chỉ còn dùng để đọc các file cũ; file mới lưu trên đĩa qua ChatAttachmentStorage
     @Lob
     @Column(name = "file_data", columnDefinition = "LONGBLOB")
+    @JsonIgnore
     private byte[] fileData;
 
+    // Đường dẫn tương đối trong thư mục lưu file chat (đặt tên theo SHA-256 nội dung)
+    @Column(name = "file_path", length = 255)
+    private String filePath;
+
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    @Column(name = "file_hash", length = 64)
+    private String fileHash;
+
     @Column(name = "file_name")
     private String fileName;
 
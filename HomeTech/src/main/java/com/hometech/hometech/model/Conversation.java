@@ -9,6 +9,10 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
+@Table(indexes = {
+        // Inbox admin: sắp xếp + phân trang keyset theo (last_message_at, id)
+        @Index(name = "idx_conversation_last_message", columnList = "last_message_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -34,10 +38,26 @@ public class Conversation {
     private LocalDateTime updatedAt;
     private LocalDateTime lastMessageAt;
 
+    // ===== Dữ liệu denormalized cho inbox, cập nhật trong ConversationService =====
+    @Column(name = "last_message_preview", length = 255)
+    private String lastMessagePreview;
+
+    // Số tin khách gửi mà admin chưa đọc
+    @Column(name = "unread_for_admin", nullable = false)
+    private int unreadForAdmin = 0;
+
+    // Số tin admin gửi mà khách chưa đọc
+    @Column(name = "unread_for_customer", nullable = false)
+    private int unreadForCustomer = 0;
+
     @PrePersist
     public void prePersist() {
         createdAt = LocalDateTime.now();
         updatedAt = createdAt;
+        // Chưa có tin nhắn: xếp theo lúc tạo. Inbox phân trang keyset trên cột này, NULL sẽ bị bỏ sót
+        if (lastMessageAt == null) {
+            lastMessageAt = createdAt;
+        }
     }
 
     @PreUpdate
@@ -0,0 +1,37 @@
+package com.hometech.hometech.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một đợt gửi email marketing. Nội dung lưu một lần ở đây,
+ * từng người nhận là một dòng {@link EmailOutboxMessage} trỏ về campaign.
+ */
+@Entity
+@Table(name = "email_campaign")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailCampaign {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(columnDefinition = "MEDIUMTEXT", nullable = false)
+    private String content;
+
+    @Column(nullable = false)
+    private int recipientCount;
+
+    private String createdBy;
+
+    private LocalDateTime createdAt;
+}
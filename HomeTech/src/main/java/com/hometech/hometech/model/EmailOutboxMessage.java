@@ -0,0 +1,69 @@
+package com.hometech.hometech.model;
+
+import com.hometech.hometech.enums.EmailOutboxStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox email: mỗi email cần gửi là một dòng, ghi cùng transaction với nghiệp vụ tạo ra nó
+ * (đăng ký, quên mật khẩu, campaign). Worker gửi bất đồng bộ và cập nhật trạng thái.
+ */
+@Entity
+@Table(name = "email_outbox",
+        indexes = {
+                @Index(name = "idx_email_outbox_due", columnList = "state, next_attempt_at"),
+                @Index(name = "idx_email_outbox_campaign", columnList = "campaign_id, state")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailOutboxMessage {
+
+    // Email giao dịch được gửi trước email marketing
+    public static final int PRIORITY_TRANSACTIONAL = 0;
+    public static final int PRIORITY_MARKETING = 10;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    // Với email marketing subject/body nằm ở campaign
+    private String subject;
+
+    @Column(columnDefinition = "MEDIUMTEXT")
+    private String body;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "campaign_id")
+    private EmailCampaign campaign;
+
+    // VERIFICATION, PASSWORD_RESET, MARKETING
+    @Column(nullable = false, length = 32)
+    private String kind;
+
+    @Column(nullable = false)
+    private int priority = PRIORITY_TRANSACTIONAL;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private EmailOutboxStatus state = EmailOutboxStatus.PENDING;
+
+    @Column(nullable = false)
+    private int attempts = 0;
+
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 512)
+    private String lastError;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime sentAt;
+}
@@ -11,7 +11,10 @@ import java.util.List;
 @Entity
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_status_created", columnList = "status, created_at"),
+        @Index(name = "idx_orders_customer_created", columnList = "customer_id, created_at")
+})
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 
 public class Order {
@@ -0,0 +1,58 @@
+package com.hometech.hometech.model;
+
+import com.hometech.hometech.enums.WebhookEventStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Inbox webhook PayOS: mỗi lần PayOS gọi webhook được lưu nguyên văn một lần duy nhất
+ * theo (orderCode, reference), sau đó mới được xử lý bất đồng bộ.
+ * PayOS gửi lại cùng một giao dịch -> vướng unique key, không xử lý lần hai.
+ */
+@Entity
+@Table(name = "payos_webhook_event",
+        uniqueConstraints = @UniqueConstraint(name = "uk_payos_webhook_event", columnNames = {"order_code", "reference"}),
+        indexes = @Index(name = "idx_payos_webhook_event_due", columnList = "state, next_attempt_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PayOsWebhookEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "order_code", nullable = false)
+    private Long orderCode;
+
+    // Mã tham chiếu giao dịch của PayOS; thiếu thì dùng paymentLinkId:status
+    @Column(nullable = false, length = 128)
+    private String reference;
+
+    // Trạng thái thanh toán PayOS báo về (PAID, CANCELLED, ...)
+    @Column(length = 32)
+    private String paymentStatus;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private WebhookEventStatus state = WebhookEventStatus.PENDING;
+
+    @Column(nullable = false)
+    private int attempts = 0;
+
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 512)
+    private String lastError;
+
+    private LocalDateTime receivedAt;
+    private LocalDateTime processedAt;
+}
@@ -7,6 +7,11 @@ import lombok.*;
 import java.util.Date;
 
 @Entity
+@Table(name = "payment", indexes = {
+        @Index(name = "idx_payment_txn_ref", columnList = "txn_ref"),
+        // Job đối soát quét payment đang chờ theo trạng thái/phương thức
+        @Index(name = "idx_payment_status_method", columnList = "status, method")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
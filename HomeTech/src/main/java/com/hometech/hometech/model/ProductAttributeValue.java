@@ -1,12 +1,14 @@
 package com.hometech.hometech.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.hometech.hometech.service.CatalogChangeListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
+@EntityListeners(CatalogChangeListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
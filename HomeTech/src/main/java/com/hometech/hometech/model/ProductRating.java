@@ -0,0 +1,53 @@
+package com.hometech.hometech.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tổng hợp đánh giá đang hiển thị của một sản phẩm: số lượt, tổng số sao và phân bố 1–5 sao.
+ * Được cộng/trừ trong cùng transaction với thao tác trên {@link Review}, nên trang danh sách
+ * đọc được số sao mà không phải AVG/COUNT trên bảng review.
+ * Không đặt khóa ngoại tới product để xóa sản phẩm không bị vướng.
+ */
+@Entity
+@Table(name = "product_rating")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductRating {
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(nullable = false)
+    private long ratingCount;
+
+    @Column(nullable = false)
+    private long ratingSum;
+
+    @Column(name = "star1", nullable = false)
+    private long star1;
+
+    @Column(name = "star2", nullable = false)
+    private long star2;
+
+    @Column(name = "star3", nullable = false)
+    private long star3;
+
+    @Column(name = "star4", nullable = false)
+    private long star4;
+
+    @Column(name = "star5", nullable = false)
+    private long star5;
+
+    private LocalDateTime updatedAt;
+
+    public ProductRating(Long productId) {
+        this.productId = productId;
+    }
+}
@@ -10,6 +10,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Table(indexes = {
+        // Feed đánh giá theo sản phẩm: mới nhất / theo số sao, phân trang keyset theo id
+        @Index(name = "idx_review_product_visible_id", columnList = "product_id, hidden, id"),
+        @Index(name = "idx_review_product_rating_id", columnList = "product_id, hidden, rating, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -37,11 +37,24 @@ public class ReviewImage {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    // 🖼️ Dùng BLOB để lưu dữ liệu nhị phân của ảnh (thay vì URL)
+    // Chỉ còn dùng để đọc ảnh cũ; ảnh mới lưu trên đĩa qua ReviewImageStorage
     @Lob
-    @Column(columnDefinition = "LONGBLOB", nullable = false)
+    @Column(columnDefinition = "LONGBLOB")
     private byte[] imageData;
 
+    // Đường dẫn tương đối trong thư mục ảnh đánh giá (đặt tên theo SHA-256 nội dung)
+    @Column(name = "file_path", length = 255)
+    private String filePath;
+
+    @Column(name = "file_hash", length = 64)
+    private String fileHash;
+
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    @Column(name = "content_type", length = 64)
+    private String contentType;
+
     // 🔗 Mối quan hệ nhiều ảnh thuộc 1 review
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "review_id", nullable = false)
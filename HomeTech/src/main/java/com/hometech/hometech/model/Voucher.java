@@ -75,6 +75,14 @@ public class Voucher {
         this.usageLimit = usageLimit;
     }
 
+    public Integer getPerCustomerLimit() {
+        return perCustomerLimit;
+    }
+
+    public void setPerCustomerLimit(Integer perCustomerLimit) {
+        this.perCustomerLimit = perCustomerLimit;
+    }
+
     public Integer getUsedCount() {
         return usedCount;
     }
@@ -119,6 +127,9 @@ public class Voucher {
     // Số lần được dùng tổng cộng
     private Integer usageLimit;
 
+    // Số lần tối đa mỗi khách được dùng (null = không giới hạn)
+    private Integer perCustomerLimit;
+
     // Số lần đã dùng (tự tăng sau khi Order dùng voucher)
     private Integer usedCount = 0;
 
@@ -0,0 +1,43 @@
+package com.hometech.hometech.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một lượt dùng voucher của khách hàng. Dùng để giới hạn số lượt theo từng khách
+ * và để hoàn lại lượt dùng khi đơn bị hủy.
+ */
+@Entity
+@Table(name = "voucher_redemption", indexes = {
+        @Index(name = "idx_voucher_redemption_customer", columnList = "voucher_id, customer_id, released"),
+        @Index(name = "idx_voucher_redemption_order", columnList = "order_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VoucherRedemption {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "voucher_id", nullable = false)
+    private Long voucherId;
+
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    // Gắn sau khi đơn hàng được lưu
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(nullable = false)
+    private boolean released = false;
+
+    private LocalDateTime redeemedAt;
+    private LocalDateTime releasedAt;
+}
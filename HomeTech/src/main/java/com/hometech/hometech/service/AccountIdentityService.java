@@ -0,0 +1,144 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.AccountRepository;
+import com.hometech.hometech.enums.RoleType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tra cứu tài khoản theo username hoặc email cho xác thực (JWT filter, đăng nhập), chat, thông báo, hồ sơ.
+ *
+ * <p>Mỗi lần tra cứu chỉ một truy vấn (username OR email, không nạp User), kết quả được cache ngắn hạn
+ * ({@code identity.cache.ttl-seconds}) theo account id. Mọi chỗ đổi email, mật khẩu, quyền, trạng thái
+ * kích hoạt phải gọi {@link #invalidate(Long)}; trong transaction thì xóa lại lần nữa sau commit
+ * để request song song không nạp lại dữ liệu cũ vào cache.
+ */
+@Service
+public class AccountIdentityService {
+
+    public record AccountIdentity(Long accountId, String username, String email, String passwordHash,
+                                  RoleType role, boolean enabled, boolean emailVerified,
+                                  Long userId, Long customerId, Long adminId) {
+
+        public boolean isAdmin() {
+            return role == RoleType.ADMIN;
+        }
+
+        boolean matches(String login) {
+            return login.equals(username) || login.equals(email);
+        }
+    }
+
+    private record Entry(AccountIdentity identity, long expiresAtMillis) {
+    }
+
+    private final AccountRepository accountRepository;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final Map<Long, Entry> byAccountId = new ConcurrentHashMap<>();
+    private final Map<String, Long> accountIdByLogin = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public AccountIdentityService(AccountRepository accountRepository,
+                                  @Value("${identity.cache.ttl-seconds:60}") long ttlSeconds,
+                                  @Value("${identity.cache.max-entries:10000}") int maxEntries) {
+        this.accountRepository = accountRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxEntries = maxEntries;
+    }
+
+    // Trả về null nếu không có tài khoản nào khớp username/email
+    public AccountIdentity resolve(String login) {
+        if (login == null || login.isBlank()) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        Long accountId = accountIdByLogin.get(login);
+        if (accountId != null) {
+            Entry entry = byAccountId.get(accountId);
+            // Email/username có thể đã đổi từ lúc cache -> kiểm tra lại login còn khớp
+            if (entry != null && entry.expiresAtMillis() > now && entry.identity().matches(login)) {
+                hits.increment();
+                return entry.identity();
+            }
+        }
+
+        misses.increment();
+        List<AccountRepository.IdentityView> rows = accountRepository.findIdentityByLogin(login);
+        if (rows.isEmpty()) {
+            accountIdByLogin.remove(login);
+            return null;
+        }
+        AccountIdentity identity = toIdentity(rows.get(0));
+        store(login, identity, now);
+        return identity;
+    }
+
+    public AccountIdentity require(String login) {
+        AccountIdentity identity = resolve(login);
+        if (identity == null) {
+            throw new RuntimeException("Tài khoản không tồn tại");
+        }
+        return identity;
+    }
+
+    public void invalidate(Long accountId) {
+        if (accountId == null) {
+            return;
+        }
+        evict(accountId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(accountId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long accountId) {
+        invalidations.increment();
+        byAccountId.remove(accountId);
+        accountIdByLogin.values().removeIf(accountId::equals);
+    }
+
+    private void store(String login, AccountIdentity identity, long now) {
+        if (byAccountId.size() >= maxEntries) {
+            // Cache nhỏ, chỉ để gom các lần tra cứu dồn dập trong vài giây -> hết chỗ thì làm mới toàn bộ
+            byAccountId.clear();
+            accountIdByLogin.clear();
+        }
+        byAccountId.put(identity.accountId(), new Entry(identity, now + ttlMillis));
+        accountIdByLogin.put(login, identity.accountId());
+    }
+
+    private static AccountIdentity toIdentity(AccountRepository.IdentityView view) {
+        return new AccountIdentity(view.getAccountId(), view.getUsername(), view.getEmail(), view.getPassword(),
+                view.getRole(), view.isEnabled(), view.isEmailVerified(),
+                view.getUserId(), view.getCustomerId(), view.getAdminId());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", byAccountId.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        return stats;
+    }
+}
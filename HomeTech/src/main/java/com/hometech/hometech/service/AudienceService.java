@@ -0,0 +1,158 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.AccountRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tính tập khách hàng nhận marketing theo phân khúc (đã mua trong danh mục, bỏ quên giỏ hàng,
+ * yêu thích danh mục, điểm tích lũy) bằng truy vấn SQL phân trang keyset chỉ lấy id.
+ *
+ * <p>Kết quả là mảng {@code long[]} user id dùng chung cho email ({@link MarketingService}) và thông báo
+ * trong app ({@link NotifyService}); được giữ {@code marketing.segment.cache-ttl-seconds} giây để lần
+ * xem trước rồi gửi ngay sau đó không phải quét lại.
+ */
+@Service
+public class AudienceService {
+
+    private static final int MAX_CACHED_SEGMENTS = 32;
+    private static final int EMAIL_LOOKUP_CHUNK = 1000;
+
+    private final CustomerRepository customerRepository;
+    private final AccountRepository accountRepository;
+    private final int pageSize;
+    private final long cacheTtlSeconds;
+    private final Map<Segment, RecipientList> cache = new ConcurrentHashMap<>();
+
+    public AudienceService(CustomerRepository customerRepository,
+                           AccountRepository accountRepository,
+                           @Value("${marketing.segment.page-size:1000}") int pageSize,
+                           @Value("${marketing.segment.cache-ttl-seconds:120}") long cacheTtlSeconds) {
+        this.customerRepository = customerRepository;
+        this.accountRepository = accountRepository;
+        this.pageSize = pageSize;
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+
+    /**
+     * Tiêu chí phân khúc, các tiêu chí kết hợp bằng AND; để trống (null) = không lọc theo tiêu chí đó.
+     *
+     * @param purchasedCategoryId mua sản phẩm thuộc danh mục này (đơn không bị hủy)
+     * @param purchasedWithinDays trong bao nhiêu ngày gần đây, mặc định 90
+     * @param favoriteCategoryId  có sản phẩm yêu thích thuộc danh mục này
+     * @param cartAbandonedDays   giỏ hàng còn sản phẩm nhưng không đặt đơn nào trong số ngày này
+     * @param minLoyaltyPoints    điểm tích lũy tối thiểu
+     */
+    public record Segment(Long purchasedCategoryId,
+                          Integer purchasedWithinDays,
+                          Long favoriteCategoryId,
+                          Integer cartAbandonedDays,
+                          Integer minLoyaltyPoints) {
+
+        public static final Segment ALL_CUSTOMERS = new Segment(null, null, null, null, null);
+
+        // Dạng chuẩn để hai yêu cầu cùng ý nghĩa dùng chung cache
+        Segment normalized() {
+            Integer withinDays = null;
+            if (purchasedCategoryId != null) {
+                withinDays = purchasedWithinDays != null && purchasedWithinDays > 0 ? purchasedWithinDays : 90;
+            }
+            Integer abandonedDays = cartAbandonedDays != null && cartAbandonedDays > 0 ? cartAbandonedDays : null;
+            return new Segment(purchasedCategoryId, withinDays, favoriteCategoryId, abandonedDays, minLoyaltyPoints);
+        }
+    }
+
+    /**
+     * Danh sách user id (tăng dần) của một phân khúc tại thời điểm {@code computedAt}.
+     */
+    public record RecipientList(Segment segment, long[] userIds, LocalDateTime computedAt) {
+        public int size() {
+            return userIds.length;
+        }
+    }
+
+    public RecipientList materialize(Segment segment) {
+        Segment key = (segment != null ? segment : Segment.ALL_CUSTOMERS).normalized();
+        LocalDateTime now = LocalDateTime.now();
+        RecipientList cached = cache.get(key);
+        if (cached != null && cached.computedAt().plusSeconds(cacheTtlSeconds).isAfter(now)) {
+            return cached;
+        }
+
+        long[] ids = new long[Math.max(16, pageSize)];
+        int size = 0;
+        long afterId = 0;
+        LocalDateTime purchasedSince = purchasedSince(key, now);
+        LocalDateTime noOrderSince = noOrderSince(key, now);
+        while (true) {
+            List<Long> page = customerRepository.findSegmentIdsAfter(afterId,
+                    key.minLoyaltyPoints(), key.purchasedCategoryId(), purchasedSince,
+                    key.favoriteCategoryId(), key.cartAbandonedDays() != null, noOrderSince,
+                    PageRequest.of(0, pageSize));
+            if (page.isEmpty()) {
+                break;
+            }
+            if (size + page.size() > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, size + page.size()));
+            }
+            for (Long id : page) {
+                ids[size++] = id;
+            }
+            afterId = page.get(page.size() - 1);
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+
+        RecipientList result = new RecipientList(key, Arrays.copyOf(ids, size), now);
+        if (cache.size() >= MAX_CACHED_SEGMENTS) {
+            cache.values().removeIf(list -> !list.computedAt().plusSeconds(cacheTtlSeconds).isAfter(now));
+            if (cache.size() >= MAX_CACHED_SEGMENTS) {
+                cache.clear();
+            }
+        }
+        cache.put(key, result);
+        return result;
+    }
+
+    // Số khách trong phân khúc: lấy từ danh sách vừa tính nếu còn hạn, không thì một câu COUNT
+    public long preview(Segment segment) {
+        Segment key = (segment != null ? segment : Segment.ALL_CUSTOMERS).normalized();
+        LocalDateTime now = LocalDateTime.now();
+        RecipientList cached = cache.get(key);
+        if (cached != null && cached.computedAt().plusSeconds(cacheTtlSeconds).isAfter(now)) {
+            return cached.size();
+        }
+        return customerRepository.countSegment(key.minLoyaltyPoints(), key.purchasedCategoryId(),
+                purchasedSince(key, now), key.favoriteCategoryId(), key.cartAbandonedDays() != null,
+                noOrderSince(key, now));
+    }
+
+    // Email tương ứng với danh sách, tra theo từng lô id
+    public List<String> resolveEmails(RecipientList recipients) {
+        long[] userIds = recipients.userIds();
+        List<String> emails = new ArrayList<>(userIds.length);
+        for (int from = 0; from < userIds.length; from += EMAIL_LOOKUP_CHUNK) {
+            int to = Math.min(userIds.length, from + EMAIL_LOOKUP_CHUNK);
+            emails.addAll(accountRepository.findEmailsByUserIds(Arrays.stream(userIds, from, to).boxed().toList()));
+        }
+        return emails;
+    }
+
+    private static LocalDateTime purchasedSince(Segment segment, LocalDateTime now) {
+        return segment.purchasedWithinDays() != null ? now.minusDays(segment.purchasedWithinDays()) : now;
+    }
+
+    private static LocalDateTime noOrderSince(Segment segment, LocalDateTime now) {
+        return segment.cartAbandonedDays() != null ? now.minusDays(segment.cartAbandonedDays()) : now;
+    }
+}
@@ -33,6 +33,7 @@ public class AuthService {
     private final UserRepository userRepository;
     private final AdminRepository adminRepository;
     private final GoogleVerifierService googleVerifierService;
+    private final AccountIdentityService accountIdentityService;
 
     public AuthService(AccountRepository accountRepository,
                        TokenForgetPasswordRepository tokenForgetPasswordRepository,
@@ -43,7 +44,8 @@ public class AuthService {
                        CustomUserDetailsService userDetailsService,
                        UserRepository userRepository,
                        AdminRepository adminRepository,
-                       GoogleVerifierService googleVerifierService) {
+                       GoogleVerifierService googleVerifierService,
+                       AccountIdentityService accountIdentityService) {
         this.accountRepository = accountRepository;
         this.tokenForgetPasswordRepository = tokenForgetPasswordRepository;
         this.passwordEncoder = passwordEncoder;
@@ -54,6 +56,7 @@ public class AuthService {
         this.userRepository = userRepository;
         this.adminRepository = adminRepository;
         this.googleVerifierService = googleVerifierService;
+        this.accountIdentityService = accountIdentityService;
     }
 
     // === ĐĂNG KÝ USER (Customer) ===
@@ -164,6 +167,7 @@ public class AuthService {
         account.setVerificationTokenExpiry(null);
         account.setUpdatedAt(LocalDateTime.now());
         accountRepository.save(account);
+        accountIdentityService.invalidate(account.getId());
 
         return "Xác thực email thành công! Bạn có thể đăng nhập.";
     }
@@ -175,25 +179,24 @@ public class AuthService {
                     new UsernamePasswordAuthenticationToken(usernameOrEmail, password)
             );
 
-            Account account = accountRepository.findByUsername(usernameOrEmail)
-                    .or(() -> accountRepository.findByEmail(usernameOrEmail))
-                    .orElseThrow(() -> new RuntimeException("Tài khoản không tồn tại"));
+            // authenticate() vừa tra cứu tài khoản -> lần này lấy từ cache
+            AccountIdentityService.AccountIdentity account = accountIdentityService.require(usernameOrEmail);
 
-            if (!account.isEnabled()) {
+            if (!account.enabled()) {
                 throw new RuntimeException("Tài khoản chưa được kích hoạt.");
             }
-            if (!account.isEmailVerified()) {
+            if (!account.emailVerified()) {
                 throw new RuntimeException("Email chưa được xác thực.");
             }
 
-            UserDetails userDetails = userDetailsService.loadUserByUsername(account.getUsername());
+            UserDetails userDetails = userDetailsService.loadUserByUsername(account.username());
             String accessToken = jwtService.generateToken(userDetails);
             String refreshToken = jwtService.generateRefreshToken(userDetails);
 
             return new AuthResponse(
                     accessToken, refreshToken,
-                    account.getUsername(), account.getEmail(),
-                    account.getRole().name(), "Đăng nhập thành công"
+                    account.username(), account.email(),
+                    account.role().name(), "Đăng nhập thành công"
             );
 
         } catch (Exception e) {
@@ -208,16 +211,13 @@ public class AuthService {
             throw new RuntimeException("Bạn không có quyền truy cập trang quản trị.");
         }
         response.setMessage("Đăng nhập admin thành công"); // BÂY GIỜ HỢP LỆ
-        
-        // Lấy adminId
-        Account account = accountRepository.findByUsername(usernameOrEmail)
-                .or(() -> accountRepository.findByEmail(usernameOrEmail))
-                .orElse(null);
-        if (account != null && account.getUser() instanceof Admin) {
-            Admin admin = (Admin) account.getUser();
-            response.setAdminId(admin.getId());
+
+        // Lấy adminId (tài khoản vừa được tra cứu khi đăng nhập -> có sẵn trong cache)
+        AccountIdentityService.AccountIdentity account = accountIdentityService.resolve(usernameOrEmail);
+        if (account != null) {
+            response.setAdminId(account.adminId());
         }
-        
+
         return response;
     }
 
@@ -265,6 +265,7 @@ public class AuthService {
         account.setPassword(passwordEncoder.encode(newPassword));
         account.setUpdatedAt(LocalDateTime.now());
         accountRepository.save(account);
+        accountIdentityService.invalidate(account.getId());
 
         resetToken.setUsed(true);
         tokenForgetPasswordRepository.save(resetToken);
@@ -6,7 +6,6 @@ import com.hometech.hometech.model.Banner;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Objects;
 
@@ -14,22 +13,16 @@ import java.util.Objects;
 public class BannerService {
 
     private final BannerRepository bannerRepository;
+    private final SiteContentSnapshot siteContentSnapshot;
 
-    public BannerService(BannerRepository bannerRepository) {
+    public BannerService(BannerRepository bannerRepository, SiteContentSnapshot siteContentSnapshot) {
         this.bannerRepository = bannerRepository;
+        this.siteContentSnapshot = siteContentSnapshot;
     }
 
+    // Banner đang bật và trong khung giờ hiển thị, đọc từ snapshot (không truy vấn DB mỗi request)
     public List<Banner> getActiveBanners(BannerType type) {
-        List<Banner> banners;
-        if (type != null) {
-            banners = bannerRepository.findAllByTypeAndActiveTrueOrderByDisplayOrderAsc(type);
-        } else {
-            banners = bannerRepository.findAllByActiveTrueOrderByDisplayOrderAsc();
-        }
-        LocalDateTime now = LocalDateTime.now();
-        return banners.stream()
-                .filter(banner -> isWithinSchedule(banner, now))
-                .toList();
+        return siteContentSnapshot.getVisibleBanners(type);
     }
 
     public List<Banner> getAll(BannerType type) {
@@ -45,7 +38,9 @@ public class BannerService {
 
     public Banner create(Banner banner) {
         validateBanner(banner);
-        return bannerRepository.save(banner);
+        Banner saved = bannerRepository.save(banner);
+        siteContentSnapshot.invalidate();
+        return saved;
     }
 
     public Banner update(Long id, Banner payload) {
@@ -75,11 +70,14 @@ public class BannerService {
         existing.setEndAt(payload.getEndAt());
 
         validateBanner(existing);
-        return bannerRepository.save(existing);
+        Banner saved = bannerRepository.save(existing);
+        siteContentSnapshot.invalidate();
+        return saved;
     }
 
     public void delete(Long id) {
         bannerRepository.deleteById(id);
+        siteContentSnapshot.invalidate();
     }
 
     public Banner toggleActive(Long id, boolean active) {
@@ -88,20 +86,9 @@ public class BannerService {
             return null;
         }
         banner.setActive(active);
-        return bannerRepository.save(banner);
-    }
-
-    private boolean isWithinSchedule(Banner banner, LocalDateTime now) {
-        if (!banner.isActive()) {
-            return false;
-        }
-        if (banner.getStartAt() != null && banner.getStartAt().isAfter(now)) {
-            return false;
-        }
-        if (banner.getEndAt() != null && banner.getEndAt().isBefore(now)) {
-            return false;
-        }
-        return true;
+        Banner saved = bannerRepository.save(banner);
+        siteContentSnapshot.invalidate();
+        return saved;
     }
 
     private void validateBanner(Banner banner) {
@@ -0,0 +1,384 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.ProductRatingRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.Repository.ResponseRepository;
+import com.hometech.hometech.Repository.ReviewImageRepository;
+import com.hometech.hometech.Repository.ReviewRepository;
+import com.hometech.hometech.model.Product;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Ẩn/hiện/xóa hàng loạt đánh giá và sản phẩm cho admin.
+ *
+ * <p>Danh sách id (hoặc id lấy theo bộ lọc, keyset) được xử lý theo từng lô {@code chunkSize},
+ * mỗi lô là một câu {@code UPDATE/DELETE ... WHERE id IN (...)} trong transaction riêng.
+ * Số sao tổng hợp (và số sản phẩm trong {@link CategoryDirectory}) được cập nhật một lần cho mỗi lô, và admin nhận
+ * đúng một thông báo tóm tắt khi job kết thúc. Job nhỏ chạy ngay trong request; job lớn chạy nền
+ * trên một luồng riêng, tiến độ xem qua {@link #getJob(String)}.
+ */
+@Service
+public class BulkModerationService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkModerationService.class);
+
+    private static final int MAX_IDS = 10_000;
+    private static final int RETAINED_JOBS = 50;
+
+    public enum Target {REVIEW, PRODUCT}
+
+    public enum Action {
+        HIDE, SHOW, DELETE;
+
+        public static Action parse(String value) {
+            try {
+                return Action.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Thao tác không hợp lệ: " + value);
+            }
+        }
+    }
+
+    public enum State {RUNNING, COMPLETED, FAILED}
+
+    public record ReviewFilter(Long productId, Long customerId, Integer maxRating, String keyword,
+                               LocalDateTime createdFrom, LocalDateTime createdTo, Boolean hidden) {
+        boolean isEmpty() {
+            return productId == null && customerId == null && maxRating == null && likePattern(keyword) == null
+                    && createdFrom == null && createdTo == null && hidden == null;
+        }
+    }
+
+    public record ProductFilter(Long categoryId, String keyword, Boolean outOfStock, Boolean hidden) {
+        boolean isEmpty() {
+            return categoryId == null && likePattern(keyword) == null && outOfStock == null && hidden == null;
+        }
+    }
+
+    /**
+     * @param affected số dòng thực sự thay đổi (VD ẩn một đánh giá đã ẩn thì không tính)
+     * @param failed   số id không xử lý được (VD sản phẩm đã có trong đơn hàng nên không xóa được)
+     */
+    public record JobStatus(String id, Target target, Action action, State state,
+                            long total, long processed, long affected, long failed,
+                            LocalDateTime startedAt, LocalDateTime finishedAt, String error) {
+    }
+
+    // Tiến độ được ghi bởi luồng chạy job, đọc bởi request xem trạng thái
+    private static final class Job {
+        final String id = UUID.randomUUID().toString();
+        final Target target;
+        final Action action;
+        final long total;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        volatile State state = State.RUNNING;
+        volatile long processed;
+        volatile long affected;
+        volatile long failed;
+        volatile LocalDateTime finishedAt;
+        volatile String error;
+
+        Job(Target target, Action action, long total) {
+            this.target = target;
+            this.action = action;
+            this.total = total;
+        }
+
+        JobStatus snapshot() {
+            return new JobStatus(id, target, action, state, total, processed, affected, failed,
+                    startedAt, finishedAt, error);
+        }
+    }
+
+    // Nguồn id theo lô: danh sách có sẵn hoặc đọc dần theo bộ lọc
+    private interface IdSource {
+        List<Long> next(long afterId, int limit);
+    }
+
+    private final ReviewRepository reviewRepository;
+    private final ReviewImageRepository reviewImageRepository;
+    private final ResponseRepository responseRepository;
+    private final ProductRepository productRepository;
+    private final ProductRatingRepository ratingRepository;
+    private final ProductRatingService ratingService;
+    private final NotifyService notifyService;
+    private final CategoryDirectory categoryDirectory;
+    private final CatalogVersions catalogVersions;
+    private final HomePageService homePageService;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int inlineMax;
+
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bulk-moderation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BulkModerationService(ReviewRepository reviewRepository,
+                                 ReviewImageRepository reviewImageRepository,
+                                 ResponseRepository responseRepository,
+                                 ProductRepository productRepository,
+                                 ProductRatingRepository ratingRepository,
+                                 ProductRatingService ratingService,
+                                 NotifyService notifyService,
+                                 CategoryDirectory categoryDirectory,
+                                 CatalogVersions catalogVersions,
+                                 HomePageService homePageService,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${moderation.bulk.chunk-size:500}") int chunkSize,
+                                 @Value("${moderation.bulk.inline-max:500}") int inlineMax) {
+        this.reviewRepository = reviewRepository;
+        this.reviewImageRepository = reviewImageRepository;
+        this.responseRepository = responseRepository;
+        this.productRepository = productRepository;
+        this.ratingRepository = ratingRepository;
+        this.ratingService = ratingService;
+        this.notifyService = notifyService;
+        this.categoryDirectory = categoryDirectory;
+        this.catalogVersions = catalogVersions;
+        this.homePageService = homePageService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.inlineMax = inlineMax;
+    }
+
+    public JobStatus moderateReviews(Action action, Collection<Long> ids, ReviewFilter filter) {
+        if (ids != null && !ids.isEmpty()) {
+            List<Long> sorted = sortedIds(ids);
+            return start(Target.REVIEW, action, sorted.size(), listSource(sorted));
+        }
+        if (filter == null || filter.isEmpty()) {
+            throw new RuntimeException("Cần danh sách id hoặc ít nhất một điều kiện lọc");
+        }
+        String keyword = likePattern(filter.keyword());
+        long total = reviewRepository.countForModeration(filter.productId(), filter.customerId(), filter.maxRating(),
+                keyword, filter.createdFrom(), filter.createdTo(), filter.hidden());
+        return start(Target.REVIEW, action, total, (afterId, limit) ->
+                reviewRepository.findModerationIdsAfter(afterId, filter.productId(), filter.customerId(),
+                        filter.maxRating(), keyword, filter.createdFrom(), filter.createdTo(), filter.hidden(),
+                        PageRequest.of(0, limit)));
+    }
+
+    public JobStatus moderateProducts(Action action, Collection<Long> ids, ProductFilter filter) {
+        if (ids != null && !ids.isEmpty()) {
+            List<Long> sorted = sortedIds(ids);
+            return start(Target.PRODUCT, action, sorted.size(), listSource(sorted));
+        }
+        if (filter == null || filter.isEmpty()) {
+            throw new RuntimeException("Cần danh sách id hoặc ít nhất một điều kiện lọc");
+        }
+        String keyword = likePattern(filter.keyword());
+        long total = productRepository.countForModeration(filter.categoryId(), keyword, filter.outOfStock(), filter.hidden());
+        return start(Target.PRODUCT, action, total, (afterId, limit) ->
+                productRepository.findModerationIdsAfter(afterId, filter.categoryId(), keyword,
+                        filter.outOfStock(), filter.hidden(), PageRequest.of(0, limit)));
+    }
+
+    public JobStatus getJob(String jobId) {
+        synchronized (jobs) {
+            Job job = jobs.get(jobId);
+            if (job == null) {
+                throw new RuntimeException("Không tìm thấy job: " + jobId);
+            }
+            return job.snapshot();
+        }
+    }
+
+    // Các job gần nhất, mới nhất trước
+    public List<JobStatus> listJobs() {
+        synchronized (jobs) {
+            return jobs.values().stream()
+                    .map(Job::snapshot)
+                    .sorted(Comparator.comparing(JobStatus::startedAt).reversed())
+                    .toList();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private JobStatus start(Target target, Action action, long total, IdSource source) {
+        if (action == null) {
+            throw new RuntimeException("Thiếu thao tác (HIDE, SHOW hoặc DELETE)");
+        }
+        Job job = new Job(target, action, total);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            // Chỉ giữ lại các job gần nhất, bỏ job cũ đã kết thúc
+            var iterator = jobs.values().iterator();
+            while (jobs.size() > RETAINED_JOBS && iterator.hasNext()) {
+                if (iterator.next().state != State.RUNNING) {
+                    iterator.remove();
+                }
+            }
+        }
+        if (total <= inlineMax) {
+            run(job, source);
+        } else {
+            try {
+                executor.execute(() -> run(job, source));
+            } catch (RejectedExecutionException e) {
+                finish(job, State.FAILED, "Hệ thống đang dừng, không thể chạy job");
+            }
+        }
+        return job.snapshot();
+    }
+
+    private void run(Job job, IdSource source) {
+        try {
+            long afterId = 0;
+            while (true) {
+                List<Long> chunk = source.next(afterId, chunkSize);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                if (job.target == Target.REVIEW) {
+                    job.affected += transactionTemplate.execute(status -> applyToReviews(job.action, chunk));
+                } else {
+                    applyToProducts(job, chunk);
+                }
+                job.processed += chunk.size();
+                afterId = chunk.get(chunk.size() - 1);
+            }
+            finish(job, State.COMPLETED, null);
+        } catch (RuntimeException e) {
+            log.error("Bulk moderation job {} failed after {} ids", job.id, job.processed, e);
+            finish(job, State.FAILED, e.getMessage());
+        }
+    }
+
+    // Một lô đánh giá; tính lại số sao của các sản phẩm liên quan một lần cho cả lô
+    private int applyToReviews(Action action, List<Long> ids) {
+        List<Long> productIds = reviewRepository.findProductIdsByReviewIds(ids);
+        int affected;
+        if (action == Action.DELETE) {
+            reviewImageRepository.deleteByReviewIds(ids);
+            responseRepository.deleteByReviewIds(ids);
+            affected = reviewRepository.deleteByIds(ids);
+        } else {
+            affected = reviewRepository.updateHidden(ids, action == Action.HIDE);
+        }
+        if (affected > 0) {
+            ratingService.recompute(productIds);
+        }
+        return affected;
+    }
+
+    private void applyToProducts(Job job, List<Long> ids) {
+        if (job.action != Action.DELETE) {
+            job.affected += transactionTemplate.execute(status -> {
+                categoryDirectory.productIdsChanged(ids);
+                // UPDATE hàng loạt không qua entity listener nên tự báo đổi phiên bản
+                catalogVersions.productsChanged(ids);
+                return productRepository.updateHidden(ids, job.action == Action.HIDE);
+            });
+            return;
+        }
+        try {
+            job.affected += transactionTemplate.execute(status -> deleteProducts(ids));
+        } catch (RuntimeException e) {
+            // Lô bị lỗi (thường do sản phẩm đã có trong đơn hàng): thử lại từng sản phẩm để không chặn cả lô
+            for (Long id : ids) {
+                try {
+                    job.affected += transactionTemplate.execute(status -> deleteProducts(List.of(id)));
+                } catch (RuntimeException single) {
+                    job.failed++;
+                }
+            }
+        }
+    }
+
+    // Xóa qua entity để cascade sang ảnh, biến thể, thuộc tính và đánh giá của sản phẩm
+    private int deleteProducts(List<Long> ids) {
+        List<Product> products = productRepository.findAllById(ids);
+        productRepository.deleteAll(products);
+        ratingRepository.deleteAllById(ids);
+        productRepository.flush();
+        categoryDirectory.productIdsChanged(ids);
+        return products.size();
+    }
+
+    private void finish(Job job, State state, String error) {
+        job.error = error;
+        job.finishedAt = LocalDateTime.now();
+        job.state = state;
+        if (job.target == Target.PRODUCT && job.affected > 0) {
+            homePageService.invalidate();
+        }
+        notifyService.notifyAdmins(summary(job), "BULK_MODERATION", null);
+    }
+
+    private static String summary(Job job) {
+        String verb = switch (job.action) {
+            case HIDE -> "Ẩn";
+            case SHOW -> "Hiện";
+            case DELETE -> "Xóa";
+        };
+        String what = job.target == Target.REVIEW ? "đánh giá" : "sản phẩm";
+        StringBuilder message = new StringBuilder()
+                .append(verb).append(" hàng loạt ").append(what).append(": ")
+                .append(job.affected).append('/').append(job.total).append(" thay đổi");
+        if (job.failed > 0) {
+            message.append(", ").append(job.failed).append(" lỗi");
+        }
+        if (job.state == State.FAILED) {
+            message.append(" (dừng giữa chừng: ").append(job.error).append(')');
+        }
+        return message.toString();
+    }
+
+    private static List<Long> sortedIds(Collection<Long> ids) {
+        TreeSet<Long> unique = new TreeSet<>();
+        for (Long id : ids) {
+            if (id != null) {
+                unique.add(id);
+            }
+        }
+        if (unique.size() > MAX_IDS) {
+            throw new RuntimeException("Tối đa " + MAX_IDS + " id mỗi lần, hãy dùng bộ lọc");
+        }
+        return new ArrayList<>(unique);
+    }
+
+    // Danh sách đã sắp xếp tăng dần nên lấy lô tiếp theo bằng id lớn hơn afterId
+    private static IdSource listSource(List<Long> sorted) {
+        return (afterId, limit) -> {
+            int position = Collections.binarySearch(sorted, afterId);
+            int from = position >= 0 ? position + 1 : -position - 1;
+            return sorted.subList(from, Math.min(sorted.size(), from + limit));
+        };
+    }
+
+    private static String likePattern(String keyword) {
+        if (keyword == null || keyword.isBlank()) {
+            return null;
+        }
+        return "%" + keyword.trim().toLowerCase(Locale.ROOT) + "%";
+    }
+}
@@ -1,86 +1,102 @@
 package com.hometech.hometech.service;
 
 import com.hometech.hometech.Repository.CartItemRepository;
+import com.hometech.hometech.Repository.CartRepository;
 import com.hometech.hometech.Repository.CustomerRepository;
 import com.hometech.hometech.Repository.ProductRepository;
 import com.hometech.hometech.Repository.ProductVariantRepository;
 import com.hometech.hometech.model.Cart;
 import com.hometech.hometech.model.CartItem;
-import com.hometech.hometech.model.Customer;
 import com.hometech.hometech.model.Product;
 import com.hometech.hometech.model.ProductVariant;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class CartService {
 
     private final CartItemRepository cartRepo;
+    private final CartRepository cartRepository;
     private final ProductRepository productRepo;
     private final CustomerRepository customerRepo;
     private final NotifyService notifyService;
     private final ProductVariantRepository productVariantRepository;
+    private final CartSessionStore cartSessionStore;
 
     public CartService(CartItemRepository cartRepo,
+                       CartRepository cartRepository,
                        ProductRepository productRepo,
                        CustomerRepository customerRepo,
                        NotifyService notifyService,
-                       ProductVariantRepository productVariantRepository) {
+                       ProductVariantRepository productVariantRepository,
+                       CartSessionStore cartSessionStore) {
         this.cartRepo = cartRepo;
+        this.cartRepository = cartRepository;
         this.productRepo = productRepo;
         this.customerRepo = customerRepo;
         this.notifyService = notifyService;
         this.productVariantRepository = productVariantRepository;
-    }
-
-    // Lấy customer theo userId hoặc ném ngoại lệ
-    private Customer getCustomerByUserIdOrThrow(Long userId) {
-        // Customer extends User, nên Customer ID = User ID
-        Optional<Customer> opt = customerRepo.findById(userId);
-        if (opt.isPresent()) {
-            return opt.get();
-        }
-        throw new RuntimeException("Customer not found for userId=" + userId);
+        this.cartSessionStore = cartSessionStore;
     }
 
     // ===== Utility: đảm bảo customer có cart, tạo nếu chưa có =====
-    private void ensureCustomerHasCart(Customer customer) {
-        if (customer.getCart() == null) {
+    private Cart ensureCustomerHasCart(CartSessionStore.CartSession session) {
+        if (session.getCart() == null) {
             Cart newCart = new Cart();
-            newCart.setCustomer(customer);
-            customer.setCart(newCart);
-            // lưu customer để cascade tạo cart (cần đảm bảo Customer entity cascade ALL cho Cart)
-            customerRepo.save(customer);
+            newCart.setCustomer(customerRepo.getReferenceById(session.getCustomerId()));
+            // Customer.cart là phía mappedBy nên phải lưu Cart trực tiếp
+            Cart saved = cartRepository.save(newCart);
+            session.setCart(saved);
+            return saved;
         }
+        return session.getCart();
     }
 
-    // Xóa các item không hợp lệ (sản phẩm ẩn/hết hàng hoặc số lượng <= 0)
-    private List<CartItem> cleanupCartItems(Cart cart) {
-        if (cart == null) {
-            return List.of();
-        }
-
-        List<CartItem> items = new ArrayList<>(cartRepo.findByCart(cart));
-        boolean mutated = false;
+    // Giỏ trong bộ nhớ giữ entity đã detached -> trả về bản sao gắn product/variant mới đọc
+    // trong request hiện tại (tồn kho mới nhất, lazy field vẫn serialize được)
+    private CartItem toView(CartItem line, Product product, ProductVariant variant) {
+        CartItem view = new CartItem();
+        view.setId(line.getId());
+        view.setQuantity(line.getQuantity());
+        view.setCart(line.getCart());
+        view.setProduct(product);
+        view.setVariant(variant);
+        return view;
+    }
 
-        for (CartItem item : items) {
-            Product product = item.getProduct();
-            boolean invalidProduct = (product == null) || product.isHidden() || product.getStock() <= 0;
-            boolean invalidQuantity = item.getQuantity() <= 0;
+    private Product reloadProduct(CartItem line) {
+        if (line.getProduct() == null) {
+            return null;
+        }
+        return productRepo.findById(line.getProduct().getId()).orElse(null);
+    }
 
-            if (invalidProduct || invalidQuantity) {
-                cartRepo.delete(item);
-                mutated = true;
-            }
+    private ProductVariant reloadVariant(CartItem line) {
+        if (line.getVariant() == null) {
+            return null;
         }
+        return productVariantRepository.findById(line.getVariant().getId()).orElse(null);
+    }
 
-        return mutated ? cartRepo.findByCart(cart) : items;
+    private CartItem findOwnedItem(CartSessionStore.CartSession session, long itemId) {
+        // Item không nằm trong giỏ của user: hoặc không tồn tại, hoặc thuộc giỏ khác
+        return session.findItem(itemId).orElseGet(() -> {
+            if (cartRepo.existsById(itemId)) {
+                throw new RuntimeException("Unauthorized: cart item does not belong to this user");
+            }
+            throw new RuntimeException("Cart item not found with id=" + itemId);
+        });
     }
 
     private void validateProductAvailability(Product product) {
@@ -104,26 +120,66 @@ public class CartService {
         return requestedQuantity;
     }
 
+    // Số lượng mới của một dòng đã có: cùng một quy tắc cho dòng trong bộ nhớ và dòng chỉ có trong DB
+    private int checkedLineQuantity(int newQuantity, Product product, ProductVariant variant) {
+        if (variant != null) {
+            if (newQuantity > variant.getStock()) {
+                throw new RuntimeException("Số lượng vượt quá tồn kho của biến thể");
+            }
+            return newQuantity;
+        }
+        return ensureQuantityWithinStock(newQuantity, product);
+    }
+
     // ===== Public APIs =====
 
     // Xem tất cả items (admin)
     public List<CartItem> getAllItems() {
+        cartSessionStore.flushAll();
         return cartRepo.findAll();
     }
 
     // Lấy giỏ hàng theo user (login)
+    // Xóa các item không hợp lệ (sản phẩm ẩn/hết hàng hoặc số lượng <= 0)
     public List<CartItem> getCartItemsByUserId(Long userId) {
-        Customer customer = getCustomerByUserIdOrThrow(userId);
-        if (customer.getCart() == null) return List.of();
-        // findByCart with @EntityGraph will eagerly load product
-        return cleanupCartItems(customer.getCart());
+        return cartSessionStore.withCart(userId, session -> {
+            List<CartItem> lines = session.getItems();
+            if (lines.isEmpty()) {
+                return List.of();
+            }
+
+            // Đọc lại product/variant một lần cho cả giỏ để kiểm tra tồn kho mới nhất
+            Set<Long> productIds = new HashSet<>();
+            Set<Long> variantIds = new HashSet<>();
+            for (CartItem line : lines) {
+                if (line.getProduct() != null) productIds.add(line.getProduct().getId());
+                if (line.getVariant() != null) variantIds.add(line.getVariant().getId());
+            }
+            Map<Long, Product> products = productRepo.findAllById(productIds).stream()
+                    .collect(Collectors.toMap(Product::getId, Function.identity()));
+            Map<Long, ProductVariant> variants = productVariantRepository.findAllById(variantIds).stream()
+                    .collect(Collectors.toMap(ProductVariant::getId, Function.identity()));
+
+            List<CartItem> result = new ArrayList<>();
+            for (CartItem line : lines) {
+                Product product = line.getProduct() != null ? products.get(line.getProduct().getId()) : null;
+                boolean invalidProduct = (product == null) || product.isHidden() || product.getStock() <= 0;
+                boolean invalidQuantity = line.getQuantity() <= 0;
+
+                if (invalidProduct || invalidQuantity) {
+                    session.remove(line);
+                    continue;
+                }
+                ProductVariant variant = line.getVariant() != null ? variants.get(line.getVariant().getId()) : null;
+                result.add(toView(line, product, variant));
+            }
+            return result;
+        });
     }
 
 
     // Thêm sản phẩm vào giỏ của user
     public CartItem addProduct(long userId, long productId, int quantity, Long variantId) {
-        Customer customer = getCustomerByUserIdOrThrow(userId);
-
         Product product = productRepo.findById(productId)
                 .orElseThrow(() -> new RuntimeException("Product not found with id=" + productId));
 
@@ -149,58 +205,48 @@ public class CartService {
             }
         }
 
-        // ensure cart exists
-        ensureCustomerHasCart(customer);
-
-        // tìm item có cùng product id và variant id trong cùng cart
-        List<CartItem> existingItems = cartRepo.findByCart(customer.getCart());
         final ProductVariant finalVariant = variant;
-        Optional<CartItem> existingItem = existingItems.stream()
-                .filter(item -> {
-                    if (item.getProduct() == null || !Objects.equals(item.getProduct().getId(), productId)) {
-                        return false;
-                    }
-                    // So sánh variant: cả hai đều null hoặc cả hai đều có cùng id
-                    Long itemVariantId = item.getVariant() != null ? item.getVariant().getId() : null;
-                    Long requestVariantId = finalVariant != null ? finalVariant.getId() : null;
-                    return Objects.equals(itemVariantId, requestVariantId);
-                })
-                .findFirst();
-
-        CartItem savedItem;
-        if (existingItem.isPresent()) {
-            CartItem item = existingItem.get();
-            int currentQuantity = item.getQuantity();
-            int newQuantity = currentQuantity + quantity;
-            
-            // Kiểm tra stock
-            if (finalVariant != null) {
-                if (newQuantity > finalVariant.getStock()) {
-                    throw new RuntimeException("Số lượng vượt quá tồn kho của biến thể");
-                }
-            } else {
-                newQuantity = ensureQuantityWithinStock(newQuantity, product);
+        CartItem savedItem = cartSessionStore.withCart(userId, session -> {
+            Cart cart = ensureCustomerHasCart(session);
+
+            // tìm item có cùng product id và variant id trong cùng cart
+            Optional<CartItem> existingItem = session.findLine(productId, variantId);
+            if (existingItem.isPresent()) {
+                CartItem item = existingItem.get();
+                int newQuantity = checkedLineQuantity(item.getQuantity() + quantity, product, finalVariant);
+                session.setQuantity(item, newQuantity);
+                return toView(item, product, finalVariant);
             }
-            
-            item.setQuantity(newQuantity);
-            savedItem = cartRepo.save(item);
-        } else {
-            CartItem newItem = new CartItem();
-            newItem.setProduct(product);
-            newItem.setVariant(finalVariant);
-            newItem.setCart(customer.getCart());
-            newItem.setQuantity(quantity);
-            savedItem = cartRepo.save(newItem);
-        }
 
-        try {
-            String productName = product.getName() != null ? product.getName() : "sản phẩm";
-            String variantName = finalVariant != null ? " (" + finalVariant.getName() + ")" : "";
-            String message = String.format("Bạn đã thêm %d x \"%s%s\" vào giỏ hàng", quantity, productName, variantName);
-            notifyService.createNotification(customer.getId(), message, "CART_ADD", product.getId());
-        } catch (Exception e) {
-            System.err.println("❌ Failed to send cart notification: " + e.getMessage());
-        }
+            // Dòng chưa có trong bộ nhớ nhưng có thể đã được node khác tạo: khóa giỏ để các lần thêm
+            // cùng lúc chạy lần lượt, rồi đọc bản mới nhất của dòng trong DB
+            cartRepository.lockById(cart.getId());
+            Optional<CartItem> storedLine = cartRepo.findLineForUpdate(cart.getId(), productId, variantId);
+            if (storedLine.isPresent()) {
+                CartItem line = storedLine.get();
+                line.setQuantity(checkedLineQuantity(line.getQuantity() + quantity, product, finalVariant));
+                session.addPersisted(line);
+                return toView(line, product, finalVariant);
+            }
+
+            // Dòng mới được ghi ngay để có id trả về cho client
+            int affected = cartRepo.insertLine(cart.getId(), productId, variantId, quantity);
+            if (affected == 0) {
+                throw new RuntimeException(finalVariant != null
+                        ? "Số lượng vượt quá tồn kho của biến thể"
+                        : "Số lượng vượt quá tồn kho");
+            }
+            CartItem inserted = cartRepo.findLine(cart.getId(), productId, variantId)
+                    .orElseThrow(() -> new RuntimeException("Không thể thêm sản phẩm vào giỏ hàng"));
+            session.addPersisted(inserted);
+            return toView(inserted, product, finalVariant);
+        });
+
+        // Lưu thông báo và đẩy WebSocket sau commit trên luồng riêng, không kéo dài transaction giỏ hàng
+        String productName = product.getName() != null ? product.getName() : "sản phẩm";
+        String variantName = finalVariant != null ? " (" + finalVariant.getName() + ")" : "";
+        String message = String.format("Bạn đã thêm %d x \"%s%s\" vào giỏ hàng", quantity, productName, variantName);
+        notifyService.createNotificationAfterCommit(userId, message, "CART_ADD", product.getId());
 
         return savedItem;
     }
@@ -208,68 +254,48 @@ public class CartService {
 
     // Tăng số lượng (user)
     public CartItem increaseQuantity(Long userId, long itemId) {
-        CartItem item = cartRepo.findById(itemId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found with id=" + itemId));
+        return cartSessionStore.withCart(userId, session -> {
+            CartItem item = findOwnedItem(session, itemId);
 
-        Customer customer = getCustomerByUserIdOrThrow(userId);
-
-        if (item.getCart() == null || customer.getCart() == null ||
-                !Objects.equals(item.getCart().getId(), customer.getCart().getId())) {
-            throw new RuntimeException("Unauthorized: cart item does not belong to this user");
-        }
-
-        Product product = item.getProduct();
-        if (product == null) {
-            throw new RuntimeException("Sản phẩm không tồn tại");
-        }
+            Product product = reloadProduct(item);
+            if (product == null) {
+                throw new RuntimeException("Sản phẩm không tồn tại");
+            }
 
-        validateProductAvailability(product);
-        int newQuantity = ensureQuantityWithinStock(item.getQuantity() + 1, product);
-        item.setQuantity(newQuantity);
-        return cartRepo.save(item);
+            validateProductAvailability(product);
+            int newQuantity = ensureQuantityWithinStock(item.getQuantity() + 1, product);
+            session.setQuantity(item, newQuantity);
+            return toView(item, product, reloadVariant(item));
+        });
     }
 
     // Giảm số lượng (user)
     public CartItem decreaseQuantity(Long userId, long itemId) {
-        CartItem item = cartRepo.findById(itemId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found with id=" + itemId));
-
-        Customer customer = getCustomerByUserIdOrThrow(userId);
+        return cartSessionStore.withCart(userId, session -> {
+            CartItem item = findOwnedItem(session, itemId);
 
-        if (item.getCart() == null || customer.getCart() == null ||
-                !Objects.equals(item.getCart().getId(), customer.getCart().getId())) {
-            throw new RuntimeException("Unauthorized: cart item does not belong to this user");
-        }
-
-        Product product = item.getProduct();
-        if (product == null || product.isHidden() || product.getStock() <= 0) {
-            cartRepo.delete(item);
-            throw new RuntimeException("Sản phẩm không còn khả dụng");
-        }
+            Product product = reloadProduct(item);
+            if (product == null || product.isHidden() || product.getStock() <= 0) {
+                session.remove(item);
+                throw new RuntimeException("Sản phẩm không còn khả dụng");
+            }
 
-        if (item.getQuantity() > 1) {
-            item.setQuantity(item.getQuantity() - 1);
-            return cartRepo.save(item);
-        } else {
-            cartRepo.deleteById(itemId);
-            return null;
-        }
+            if (item.getQuantity() > 1) {
+                session.setQuantity(item, item.getQuantity() - 1);
+                return toView(item, product, reloadVariant(item));
+            } else {
+                session.remove(item);
+                return null;
+            }
+        });
     }
 
     // Remove item (user)
     public void removeItem(Long userId, long itemId) {
-        CartItem item = cartRepo.findById(itemId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found with id=" + itemId));
-
-        Customer customer = customerRepo.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Customer not found for userId=" + userId));
-
-        if (item.getCart() == null || customer.getCart() == null ||
-                !Objects.equals(item.getCart().getId(), customer.getCart().getId())) {
-            throw new RuntimeException("Unauthorized: cart item does not belong to this user");
-        }
-
-        cartRepo.deleteById(itemId);
+        cartSessionStore.withCart(userId, session -> {
+            session.remove(findOwnedItem(session, itemId));
+            return null;
+        });
     }
 
 
@@ -0,0 +1,546 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.CartItemRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.model.Cart;
+import com.hometech.hometech.model.CartItem;
+import com.hometech.hometech.model.Customer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Giỏ hàng đang hoạt động được giữ trong bộ nhớ (LRU, giới hạn số giỏ), key = customerId.
+ *
+ * <p>Mỗi thao tác chạy dưới lock riêng của giỏ đó. Dòng mới được INSERT ngay để có id ổn định
+ * cho API; thay đổi số lượng và xoá dòng được gom lại (write-behind) và ghi xuống
+ * {@code cart_item} theo batch bởi {@link #flushDirtyCarts()}.
+ *
+ * <p>Ngữ nghĩa khi crash: tắt máy bình thường sẽ flush hết ({@link #shutdown()}); nếu process
+ * chết đột ngột thì mất tối đa các thay đổi số lượng/xoá trong một chu kỳ flush
+ * ({@code cart.session.flush-interval-ms}). Dòng đã thêm luôn bền vững. Checkout luôn gọi
+ * {@link #flush(Long)} trước khi đọc giỏ nên đơn hàng khớp với giỏ khách đang thấy.
+ *
+ * <p>Flush chạy trong transaction của nơi gọi nếu có (checkout thấy ngay dòng vừa ghi, không mượn thêm kết nối);
+ * transaction đó rollback thì thay đổi được trả lại hàng chờ. Giỏ mới tạo và dòng mới INSERT trong transaction
+ * chỉ được đưa vào bộ nhớ sau khi commit.
+ *
+ * <p>Giỏ bị đẩy khỏi LRU được ghi ngay, ngoài transaction của request đang đẩy nó (request đó là của khách khác).
+ * Ghi lỗi thì giỏ được đưa lại vào bộ nhớ và đánh dấu chờ ghi, không ném lỗi cho request đó.
+ *
+ * <p>{@code cart.session.mode=write-through} ghi xuống DB ngay sau mỗi thao tác (dùng để so sánh
+ * hoặc khi chạy nhiều node không có sticky session).
+ */
+@Service
+public class CartSessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CartSessionStore.class);
+    private static final int FLUSH_CHUNK_SIZE = 200;
+
+    private final CustomerRepository customerRepository;
+    private final CartItemRepository cartItemRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // Tạm ngưng transaction của nơi gọi khi ghi giỏ bị đẩy khỏi LRU
+    private final TransactionTemplate outsideCallerTransaction;
+
+    private final boolean writeBehind;
+    private final int maxCarts;
+    private final long idleTtlMillis;
+
+    // LRU theo thứ tự truy cập, mọi thao tác trên map phải synchronized(sessions)
+    private final LinkedHashMap<Long, CartSession> sessions = new LinkedHashMap<>(256, 0.75f, true);
+    private final Set<Long> dirtyCustomers = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong flushedStatements = new AtomicLong();
+    private final AtomicLong flushBatches = new AtomicLong();
+
+    public CartSessionStore(CustomerRepository customerRepository,
+                            CartItemRepository cartItemRepository,
+                            DataSource dataSource,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${cart.session.mode:write-behind}") String mode,
+                            @Value("${cart.session.max-carts:10000}") int maxCarts,
+                            @Value("${cart.session.idle-ttl-seconds:900}") long idleTtlSeconds) {
+        this.customerRepository = customerRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.outsideCallerTransaction = new TransactionTemplate(transactionManager);
+        this.outsideCallerTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+        this.writeBehind = !"write-through".equalsIgnoreCase(mode);
+        this.maxCarts = Math.max(1, maxCarts);
+        this.idleTtlMillis = idleTtlSeconds * 1000;
+    }
+
+    /**
+     * Chạy {@code action} trên giỏ của customer dưới lock của giỏ.
+     * Giỏ được nạp từ DB ở lần truy cập đầu tiên.
+     */
+    public <T> T withCart(Long customerId, Function<CartSession, T> action) {
+        CartSession session = getOrLoad(customerId);
+        try {
+            session.lock.lock();
+            try {
+                session.lastAccess = System.currentTimeMillis();
+                return action.apply(session);
+            } finally {
+                if (session.hasPendingChanges()) {
+                    dirtyCustomers.add(customerId);
+                }
+                session.lock.unlock();
+            }
+        } finally {
+            // Write-through -> ghi ngay; giỏ vừa bị đẩy khỏi LRU trong lúc đang thao tác -> ghi như giỏ bị đẩy
+            if (!writeBehind) {
+                flushSession(session);
+            } else if (session.evicted) {
+                flushEvicted(session);
+            }
+        }
+    }
+
+    /** Ghi ngay các thay đổi đang chờ của một giỏ (gọi trước checkout / preview). */
+    public void flush(Long customerId) {
+        CartSession session;
+        synchronized (sessions) {
+            session = sessions.get(customerId);
+        }
+        if (session != null) {
+            flushSession(session);
+        }
+    }
+
+    /** Bỏ giỏ khỏi bộ nhớ mà không ghi (dùng sau checkout, khi các dòng đã bị xoá trong DB). */
+    public void discard(Long customerId) {
+        CartSession session;
+        synchronized (sessions) {
+            session = sessions.remove(customerId);
+        }
+        dirtyCustomers.remove(customerId);
+        if (session != null) {
+            session.lock.lock();
+            try {
+                session.evicted = true;
+                session.discarded = true;
+                session.pendingQuantities.clear();
+                session.pendingDeletes.clear();
+            } finally {
+                session.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Flusher write-behind: gom thay đổi của nhiều giỏ vào các batch UPDATE/DELETE,
+     * sau đó giải phóng các giỏ idle quá {@code cart.session.idle-ttl-seconds}.
+     */
+    @Scheduled(fixedDelayString = "${cart.session.flush-interval-ms:2000}")
+    public void flushDirtyCarts() {
+        flushAll();
+        evictIdleSessions();
+    }
+
+    /** Ghi tất cả giỏ đang có thay đổi chờ (dùng cho các truy vấn đọc thẳng bảng cart_item). */
+    public void flushAll() {
+        List<CartSession> batch = new ArrayList<>();
+        for (Long customerId : new ArrayList<>(dirtyCustomers)) {
+            CartSession session;
+            synchronized (sessions) {
+                session = sessions.get(customerId);
+            }
+            if (session == null) {
+                dirtyCustomers.remove(customerId);
+                continue;
+            }
+            batch.add(session);
+            if (batch.size() >= FLUSH_CHUNK_SIZE) {
+                flushSessions(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            flushSessions(batch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flushAll();
+            log.info("Cart session store flushed on shutdown ({} statements total)", flushedStatements.get());
+        } catch (Exception e) {
+            log.error("Could not flush cart sessions on shutdown: {}", e.getMessage());
+        }
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    public int size() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", writeBehind ? "write-behind" : "write-through");
+        stats.put("activeCarts", size());
+        stats.put("dirtyCarts", dirtyCustomers.size());
+        stats.put("flushBatches", flushBatches.get());
+        stats.put("flushedStatements", flushedStatements.get());
+        return stats;
+    }
+
+    // ===== Nạp / đẩy giỏ khỏi bộ nhớ =====
+
+    private CartSession getOrLoad(Long customerId) {
+        synchronized (sessions) {
+            CartSession existing = sessions.get(customerId);
+            if (existing != null) {
+                return existing;
+            }
+        }
+
+        // Đọc DB ngoài lock của map
+        CartSession loaded = load(customerId);
+
+        CartSession evicted = null;
+        synchronized (sessions) {
+            CartSession existing = sessions.get(customerId);
+            if (existing != null) {
+                return existing;
+            }
+            sessions.put(customerId, loaded);
+            if (sessions.size() > maxCarts) {
+                Iterator<Map.Entry<Long, CartSession>> it = sessions.entrySet().iterator();
+                Map.Entry<Long, CartSession> eldest = it.next();
+                it.remove();
+                evicted = eldest.getValue();
+                evicted.evicted = true;
+            }
+        }
+        if (evicted != null && evicted.hasPendingChanges()) {
+            flushEvicted(evicted);
+        }
+        return loaded;
+    }
+
+    // Lỗi đã được xử lý trong flushSessions (giỏ được đưa lại vào bộ nhớ, chờ lần flush sau)
+    private void flushEvicted(CartSession session) {
+        try {
+            outsideCallerTransaction.executeWithoutResult(status -> flushSession(session));
+        } catch (RuntimeException e) {
+            log.warn("Flush of evicted cart {} failed, kept in memory for retry: {}", session.customerId, e.getMessage());
+        }
+    }
+
+    /**
+     * Trả thay đổi chưa ghi được về giỏ và đánh dấu chờ ghi. Giỏ đã bị đẩy khỏi LRU thì được đưa lại vào map;
+     * nếu trong lúc đó khách đã nạp giỏ mới (từ DB cũ) thì thay đổi được chuyển sang giỏ mới.
+     */
+    private void requeue(CartSession session, PendingChanges changes) {
+        if (session.discarded) {
+            // Giỏ đã checkout: các dòng đã bị xóa trong DB, bỏ thay đổi cũ
+            return;
+        }
+        CartSession target = session;
+        if (session.evicted) {
+            synchronized (sessions) {
+                CartSession current = sessions.get(session.customerId);
+                if (current == null) {
+                    session.evicted = false;
+                    sessions.put(session.customerId, session);
+                } else {
+                    target = current;
+                }
+            }
+        }
+        if (target == session) {
+            session.restorePendingChanges(changes);
+        } else {
+            target.absorbPendingChanges(changes);
+        }
+        dirtyCustomers.add(session.customerId);
+    }
+
+    private CartSession load(Long customerId) {
+        Customer customer = customerRepository.findById(customerId)
+                .orElseThrow(() -> new RuntimeException("Customer not found for userId=" + customerId));
+        Cart cart = customer.getCart();
+        List<CartItem> items = cart != null ? cartItemRepository.findByCart(cart) : List.of();
+        return new CartSession(customerId, cart, items);
+    }
+
+    private void evictIdleSessions() {
+        long cutoff = System.currentTimeMillis() - idleTtlMillis;
+        synchronized (sessions) {
+            Iterator<CartSession> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                CartSession session = it.next();
+                if (session.lastAccess < cutoff && !session.hasPendingChanges()) {
+                    session.evicted = true;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    // ===== Ghi xuống DB =====
+
+    private void flushSession(CartSession session) {
+        flushSessions(List.of(session));
+    }
+
+    private void flushSessions(List<CartSession> candidates) {
+        List<CartSession> locked = new ArrayList<>();
+        Map<CartSession, PendingChanges> snapshots = new LinkedHashMap<>();
+        try {
+            for (CartSession session : candidates) {
+                // Flush của một giỏ luôn tuần tự để các UPDATE không bị đảo thứ tự.
+                // tryLock trong batch để tránh deadlock; giỏ đang bận sẽ được flush ở vòng sau.
+                boolean acquired = candidates.size() == 1 ? lockFully(session) : session.flushLock.tryLock();
+                if (!acquired) {
+                    continue;
+                }
+                locked.add(session);
+                PendingChanges changes = session.drainPendingChanges(dirtyCustomers);
+                if (!changes.isEmpty()) {
+                    snapshots.put(session, changes);
+                }
+            }
+            if (snapshots.isEmpty()) {
+                return;
+            }
+
+            try {
+                writeBatch(snapshots.values());
+            } catch (RuntimeException e) {
+                log.warn("Cart write-behind flush failed for {} carts, will retry: {}", snapshots.size(), e.getMessage());
+                snapshots.forEach(this::requeue);
+                throw e;
+            }
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // Đã ghi trong transaction của nơi gọi: transaction đó rollback thì ghi lại ở lần flush sau
+                Map<CartSession, PendingChanges> written = new LinkedHashMap<>(snapshots);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status != STATUS_COMMITTED) {
+                            written.forEach(CartSessionStore.this::requeue);
+                        }
+                    }
+                });
+            }
+        } finally {
+            locked.forEach(s -> s.flushLock.unlock());
+        }
+    }
+
+    private boolean lockFully(CartSession session) {
+        session.flushLock.lock();
+        return true;
+    }
+
+    private void writeBatch(Iterable<PendingChanges> changes) {
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (PendingChanges c : changes) {
+            c.quantities.forEach((itemId, quantity) -> updates.add(new Object[]{quantity, itemId}));
+            c.deletes.forEach(itemId -> deletes.add(new Object[]{itemId}));
+        }
+
+        // Một transaction cho cả batch (hoặc transaction của nơi gọi); bật rewriteBatchedStatements=true
+        // trên JDBC URL MySQL để driver gộp thành một câu lệnh nhiều dòng.
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE cart_item SET quantity = ? WHERE id = ?", updates);
+            }
+            if (!deletes.isEmpty()) {
+                jdbcTemplate.batchUpdate("DELETE FROM cart_item WHERE id = ?", deletes);
+            }
+        });
+        flushBatches.incrementAndGet();
+        flushedStatements.addAndGet(updates.size() + deletes.size());
+    }
+
+    private record PendingChanges(Map<Long, Integer> quantities, Set<Long> deletes) {
+        boolean isEmpty() {
+            return quantities.isEmpty() && deletes.isEmpty();
+        }
+    }
+
+    /**
+     * Trạng thái một giỏ trong bộ nhớ. Chỉ được truy cập bên trong {@link #withCart}.
+     */
+    public static final class CartSession {
+        private final Long customerId;
+        private Cart cart;
+        private final LinkedHashMap<Long, CartItem> items = new LinkedHashMap<>();
+        private final Map<Long, Integer> pendingQuantities = new HashMap<>();
+        private final Set<Long> pendingDeletes = new HashSet<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile boolean evicted;
+        private volatile boolean discarded;
+
+        CartSession(Long customerId, Cart cart, List<CartItem> loadedItems) {
+            this.customerId = customerId;
+            this.cart = cart;
+            for (CartItem item : loadedItems) {
+                items.put(item.getId(), item);
+            }
+        }
+
+        public Long getCustomerId() {
+            return customerId;
+        }
+
+        public Cart getCart() {
+            return cart;
+        }
+
+        // Giỏ vừa lưu; trong transaction thì chỉ nhận sau khi commit
+        public void setCart(Cart cart) {
+            afterCommit(() -> this.cart = cart);
+        }
+
+        public List<CartItem> getItems() {
+            return new ArrayList<>(items.values());
+        }
+
+        public Optional<CartItem> findItem(Long itemId) {
+            return Optional.ofNullable(items.get(itemId));
+        }
+
+        // Tìm dòng theo (productId, variantId) — variantId null nghĩa là không có biến thể
+        public Optional<CartItem> findLine(long productId, Long variantId) {
+            for (CartItem item : items.values()) {
+                if (item.getProduct() == null || !Objects.equals(item.getProduct().getId(), productId)) {
+                    continue;
+                }
+                Long itemVariantId = item.getVariant() != null ? item.getVariant().getId() : null;
+                if (Objects.equals(itemVariantId, variantId)) {
+                    return Optional.of(item);
+                }
+            }
+            return Optional.empty();
+        }
+
+        // Dòng vừa được INSERT (đã có id); trong transaction thì chỉ nhận sau khi commit
+        public void addPersisted(CartItem item) {
+            afterCommit(() -> items.put(item.getId(), item));
+        }
+
+        public void setQuantity(CartItem item, int quantity) {
+            item.setQuantity(quantity);
+            pendingQuantities.put(item.getId(), quantity);
+        }
+
+        public void remove(CartItem item) {
+            Long id = item.getId();
+            items.remove(id);
+            pendingQuantities.remove(id);
+            pendingDeletes.add(id);
+        }
+
+        private void afterCommit(Runnable change) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                change.run();
+                return;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    lock.lock();
+                    try {
+                        change.run();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+        }
+
+        boolean hasPendingChanges() {
+            return !pendingQuantities.isEmpty() || !pendingDeletes.isEmpty();
+        }
+
+        private PendingChanges drainPendingChanges(Set<Long> dirtyCustomers) {
+            lock.lock();
+            try {
+                PendingChanges changes = new PendingChanges(new HashMap<>(pendingQuantities), new HashSet<>(pendingDeletes));
+                pendingQuantities.clear();
+                pendingDeletes.clear();
+                dirtyCustomers.remove(customerId);
+                return changes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void restorePendingChanges(PendingChanges changes) {
+            lock.lock();
+            try {
+                // Giá trị mới hơn (nếu có) được ghi đè trong lúc flush thì giữ nguyên
+                changes.quantities.forEach((id, quantity) -> {
+                    if (!pendingDeletes.contains(id)) {
+                        pendingQuantities.putIfAbsent(id, quantity);
+                    }
+                });
+                pendingDeletes.addAll(changes.deletes);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Thay đổi chưa ghi của bản giỏ cũ (đã bị đẩy khỏi LRU): áp lên các dòng đã nạp lại từ DB
+        private void absorbPendingChanges(PendingChanges changes) {
+            lock.lock();
+            try {
+                changes.quantities.forEach((id, quantity) -> {
+                    CartItem item = items.get(id);
+                    if (item != null && !pendingQuantities.containsKey(id)) {
+                        item.setQuantity(quantity);
+                        pendingQuantities.put(id, quantity);
+                    }
+                });
+                for (Long id : changes.deletes) {
+                    items.remove(id);
+                    pendingQuantities.remove(id);
+                    pendingDeletes.add(id);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
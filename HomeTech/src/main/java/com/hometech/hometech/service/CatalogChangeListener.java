@@ -0,0 +1,46 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.CategoryAttribute;
+import com.hometech.hometech.model.Product;
+import com.hometech.hometech.model.ProductAttributeValue;
+import com.hometech.hometech.model.ProductVariant;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+
+/**
+ * Entity listener báo cho {@link CatalogVersions} mỗi khi sản phẩm, biến thể, thuộc tính hay danh mục được ghi,
+ * kể cả các chỗ lưu thẳng qua repository (trừ hao tồn kho trong OrderService...).
+ *
+ * <p>Hibernate tạo listener qua Spring nên inject được bean; context không có {@link CatalogVersions}
+ * (một số test JPA) thì bỏ qua.
+ */
+public class CatalogChangeListener {
+
+    private final ObjectProvider<CatalogVersions> catalogVersions;
+
+    public CatalogChangeListener(ObjectProvider<CatalogVersions> catalogVersions) {
+        this.catalogVersions = catalogVersions;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void changed(Object entity) {
+        CatalogVersions versions = catalogVersions.getIfAvailable();
+        if (versions == null) {
+            return;
+        }
+        if (entity instanceof Product product) {
+            versions.productChanged(product.getId());
+        } else if (entity instanceof ProductVariant variant) {
+            versions.productChanged(variant.getProduct() == null ? null : variant.getProduct().getId());
+        } else if (entity instanceof ProductAttributeValue value) {
+            versions.productChanged(value.getProduct() == null ? null : value.getProduct().getId());
+        } else if (entity instanceof Category || entity instanceof CategoryAttribute) {
+            versions.categoryChanged();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.hometech.hometech.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phiên bản của dữ liệu công khai (sản phẩm, danh mục, banner/footer, voucher) dùng để tính ETag
+ * và làm mới cache, dùng chung giữa các node.
+ *
+ * <p>Mỗi lần ghi (qua {@link CatalogChangeListener} hoặc gọi trực tiếp sau câu UPDATE hàng loạt) chỉ đánh dấu khóa
+ * cần tăng sau khi transaction commit. {@link #sync()} định kỳ tăng các khóa đó trong bảng {@code catalog_version}
+ * (mỗi câu tự commit, không giữ khóa dòng trong transaction nghiệp vụ) rồi đọc lại các dòng mới đổi do mọi node ghi.
+ * Vì vậy ETag giống nhau trên mọi node và giữ nguyên qua lần khởi động lại; dữ liệu mới có thể mang ETag cũ
+ * tối đa một chu kỳ đồng bộ. Đọc phiên bản chỉ lấy từ bộ nhớ, không truy vấn DB.
+ *
+ * <p>Cache dựng từ cùng dữ liệu (VD {@link CategoryDirectory}) đăng ký {@link Listener} để được báo các thay đổi
+ * đọc được từ DB, kể cả do node khác ghi, trước khi phiên bản mới được dùng cho ETag.
+ */
+@Service
+public class CatalogVersions {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogVersions.class);
+
+    static final String PRODUCTS = "products";
+    static final String CATEGORIES = "categories";
+    static final String SITE_CONTENT = "site-content";
+    static final String VOUCHERS = "vouchers";
+    private static final String PRODUCT_PREFIX = "product:";
+    // Đọc lại các dòng đổi gần mốc cũ một chút, phòng câu tăng của node khác commit sau khi ta đã đọc
+    private static final long POLL_OVERLAP_SECONDS = 5;
+
+    @FunctionalInterface
+    public interface Listener {
+        // productIds: sản phẩm có phiên bản mới; categoriesChanged: danh mục/thuộc tính danh mục đã đổi
+        void catalogChanged(Set<Long> productIds, boolean categoriesChanged);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Phiên bản đã đọc từ DB; khóa chưa có dòng coi là 0
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    // Khóa đã đổi ở node này (đã commit) nhưng chưa ghi vào DB
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Object syncLock = new Object();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // updated_at lớn nhất đã đọc (giờ DB); null: chưa đọc được dòng nào, lần sau đọc từ đầu
+    private LocalDateTime pollCursor;
+
+    private final LongAdder flushedKeys = new LongAdder();
+    private final LongAdder syncFailures = new LongAdder();
+
+    public CatalogVersions(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // Sản phẩm (hoặc biến thể, thuộc tính của nó) đã thêm/sửa/xóa
+    public void productChanged(Long productId) {
+        changed(productId == null ? List.of(PRODUCTS) : List.of(PRODUCTS, PRODUCT_PREFIX + productId));
+    }
+
+    // Dùng sau các câu UPDATE/DELETE hàng loạt không đi qua entity
+    public void productsChanged(Collection<Long> productIds) {
+        List<String> keys = new ArrayList<>(productIds.size() + 1);
+        keys.add(PRODUCTS);
+        for (Long id : productIds) {
+            keys.add(PRODUCT_PREFIX + id);
+        }
+        changed(keys);
+    }
+
+    // Danh mục hoặc thuộc tính của danh mục đã thay đổi
+    public void categoryChanged() {
+        changed(List.of(CATEGORIES));
+    }
+
+    // Banner hoặc footer đã thay đổi
+    public void siteContentChanged() {
+        changed(List.of(SITE_CONTENT));
+    }
+
+    // Voucher đã thêm/sửa/xóa: cache luật voucher trên mọi node nạp lại
+    public void vouchersChanged() {
+        changed(List.of(VOUCHERS));
+    }
+
+    // Danh sách sản phẩm và danh mục: JSON sản phẩm có danh mục, JSON danh mục có số sản phẩm
+    public String catalogTag() {
+        return "c" + version(PRODUCTS) + "." + version(CATEGORIES);
+    }
+
+    // Một sản phẩm: chỉ đổi khi chính sản phẩm đó hoặc danh mục thay đổi
+    public String productTag(long productId) {
+        return "p" + productId + "." + version(PRODUCT_PREFIX + productId) + "." + version(CATEGORIES);
+    }
+
+    public long siteContentVersion() {
+        return version(SITE_CONTENT);
+    }
+
+    public long vouchersVersion() {
+        return version(VOUCHERS);
+    }
+
+    /**
+     * Ghi các khóa đã đổi ở node này rồi đọc phiên bản mới từ DB. Lỗi DB chỉ ghi log, khóa chưa ghi được
+     * giữ lại cho lần sau.
+     */
+    @Scheduled(fixedDelayString = "${catalog.versions.sync-interval-ms:1000}")
+    public void sync() {
+        synchronized (syncLock) {
+            try {
+                flush();
+                poll();
+            } catch (RuntimeException e) {
+                syncFailures.increment();
+                log.warn("Catalog version sync failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("productsVersion", version(PRODUCTS));
+        stats.put("categoriesVersion", version(CATEGORIES));
+        stats.put("siteContentVersion", version(SITE_CONTENT));
+        stats.put("vouchersVersion", version(VOUCHERS));
+        stats.put("trackedKeys", versions.size());
+        stats.put("pendingKeys", pending.size());
+        stats.put("flushedKeys", flushedKeys.sum());
+        stats.put("syncFailures", syncFailures.sum());
+        return stats;
+    }
+
+    private long version(String key) {
+        return versions.getOrDefault(key, 0L);
+    }
+
+    private void changed(List<String> keys) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            pending.addAll(keys);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                pending.addAll(keys);
+            }
+        });
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(pending);
+        // Xóa trước khi ghi: khóa được đánh dấu lại trong lúc ghi sẽ được tăng thêm ở lần sau
+        pending.removeAll(keys);
+        try {
+            for (String key : keys) {
+                increment(key);
+                flushedKeys.increment();
+            }
+        } catch (RuntimeException e) {
+            pending.addAll(keys);
+            throw e;
+        }
+    }
+
+    private void increment(String key) {
+        String update = "UPDATE catalog_version SET version = version + 1, updated_at = LOCALTIMESTAMP(6) WHERE name = ?";
+        if (jdbcTemplate.update(update, key) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO catalog_version (name, version, updated_at) VALUES (?, 1, LOCALTIMESTAMP(6))", key);
+        } catch (DuplicateKeyException e) {
+            // Node khác vừa tạo dòng này
+            jdbcTemplate.update(update, key);
+        }
+    }
+
+    private void poll() {
+        boolean initial = pollCursor == null;
+        LocalDateTime since = initial ? LocalDateTime.of(1970, 1, 1, 0, 0)
+                : pollCursor.minusSeconds(POLL_OVERLAP_SECONDS);
+        Map<String, Long> read = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT name, version, updated_at FROM catalog_version WHERE updated_at >= ?",
+                rs -> {
+                    read.put(rs.getString(1), rs.getLong(2));
+                    LocalDateTime updatedAt = rs.getTimestamp(3).toLocalDateTime();
+                    if (pollCursor == null || updatedAt.isAfter(pollCursor)) {
+                        pollCursor = updatedAt;
+                    }
+                },
+                Timestamp.valueOf(since));
+
+        // Lần đọc đầu: cache vừa dựng từ DB, không cần báo
+        if (!initial) {
+            notifyListeners(read);
+        }
+        read.forEach((key, version) -> versions.merge(key, version, Math::max));
+    }
+
+    private void notifyListeners(Map<String, Long> read) {
+        Set<Long> productIds = new HashSet<>();
+        boolean categoriesChanged = false;
+        for (Map.Entry<String, Long> entry : read.entrySet()) {
+            String key = entry.getKey();
+            if (entry.getValue() <= version(key)) {
+                continue;
+            }
+            if (key.startsWith(PRODUCT_PREFIX)) {
+                productIds.add(Long.parseLong(key.substring(PRODUCT_PREFIX.length())));
+            } else if (key.equals(CATEGORIES)) {
+                categoriesChanged = true;
+            }
+        }
+        if (productIds.isEmpty() && !categoriesChanged) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.catalogChanged(productIds, categoriesChanged);
+            } catch (RuntimeException e) {
+                log.warn("Catalog change listener failed: {}", e.getMessage());
+            }
+        }
+    }
+}
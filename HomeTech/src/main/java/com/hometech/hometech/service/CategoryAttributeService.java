@@ -13,11 +13,14 @@ public class CategoryAttributeService {
 
     private final CategoryAttributeRepository attributeRepository;
     private final CategoryRepository categoryRepository;
+    private final CategoryDirectory categoryDirectory;
 
     public CategoryAttributeService(CategoryAttributeRepository attributeRepository,
-                                    CategoryRepository categoryRepository) {
+                                    CategoryRepository categoryRepository,
+                                    CategoryDirectory categoryDirectory) {
         this.attributeRepository = attributeRepository;
         this.categoryRepository = categoryRepository;
+        this.categoryDirectory = categoryDirectory;
     }
 
     public List<CategoryAttribute> getByCategoryId(Long categoryId) {
@@ -30,7 +33,9 @@ public class CategoryAttributeService {
             throw new IllegalArgumentException("Category not found");
         }
         attribute.setCategory(category);
-        return attributeRepository.save(attribute);
+        CategoryAttribute saved = attributeRepository.save(attribute);
+        categoryDirectory.categoryChanged(categoryId);
+        return saved;
     }
 
     public CategoryAttribute updateAttribute(Long id, CategoryAttribute updated) {
@@ -40,11 +45,19 @@ public class CategoryAttributeService {
         }
         existing.setName(updated.getName());
         existing.setCode(updated.getCode());
-        return attributeRepository.save(existing);
+        CategoryAttribute saved = attributeRepository.save(existing);
+        if (existing.getCategory() != null) {
+            categoryDirectory.categoryChanged(existing.getCategory().getId());
+        }
+        return saved;
     }
 
     public void deleteAttribute(Long id) {
+        CategoryAttribute existing = attributeRepository.findById(id).orElse(null);
         attributeRepository.deleteById(id);
+        if (existing != null && existing.getCategory() != null) {
+            categoryDirectory.categoryChanged(existing.getCategory().getId());
+        }
     }
 }
 
@@ -0,0 +1,352 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.CategoryAttributeRepository;
+import com.hometech.hometech.Repository.CategoryRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.CategoryAttribute;
+import com.hometech.hometech.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Danh mục, thuộc tính và số sản phẩm (tổng / đang bán) giữ sẵn trong bộ nhớ để menu danh mục
+ * và các API thông tin danh mục không phải truy vấn DB.
+ *
+ * <p>Snapshot là bất biến, mỗi thay đổi tạo snapshot mới. Số sản phẩm được cộng/trừ theo trạng thái
+ * (danh mục, hidden) của từng sản phẩm mà directory đang giữ, nên mọi chỗ ghi sản phẩm/danh mục chỉ cần
+ * báo "đã đổi" qua {@link #productChanged(Product)}, {@link #productsChanged(Collection)},
+ * {@link #categoryChanged(Long)}...; trong transaction thì áp dụng sau commit. Thay đổi do node khác ghi được
+ * nhận qua {@link CatalogVersions} (cùng nguồn với ETag): sản phẩm đổi thì đọc lại trạng thái của chúng,
+ * danh mục đổi thì nạp lại toàn bộ. Job {@link #rebuild()} nạp lại toàn bộ hằng đêm để sửa sai lệch nếu
+ * dữ liệu bị sửa ngoài ứng dụng.
+ */
+@Service
+public class CategoryDirectory {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoryDirectory.class);
+
+    private static final int LOAD_PAGE = 1000;
+
+    public record AttributeView(Long id, String name, String code) {
+    }
+
+    public record CategoryView(Long id, String name, boolean hidden, List<AttributeView> attributes,
+                               long totalProducts, long activeProducts) {
+        CategoryView withCounts(long totalProducts, long activeProducts) {
+            return new CategoryView(id, name, hidden, attributes, totalProducts, activeProducts);
+        }
+    }
+
+    private record Snapshot(List<CategoryView> categories, Map<Long, CategoryView> byId,
+                            Map<String, CategoryView> byName) {
+        static Snapshot of(Collection<CategoryView> views) {
+            List<CategoryView> categories = views.stream()
+                    .sorted(Comparator.comparing(CategoryView::id))
+                    .toList();
+            Map<Long, CategoryView> byId = new HashMap<>();
+            Map<String, CategoryView> byName = new HashMap<>();
+            for (CategoryView view : categories) {
+                byId.put(view.id(), view);
+                String key = nameKey(view.name());
+                if (key != null) {
+                    // Trùng tên: giữ danh mục có id nhỏ nhất như cách tìm tuần tự trước đây
+                    byName.putIfAbsent(key, view);
+                }
+            }
+            return new Snapshot(categories, Map.copyOf(byId), Map.copyOf(byName));
+        }
+    }
+
+    private record ProductState(Long categoryId, boolean hidden) {
+    }
+
+    private final CategoryRepository categoryRepository;
+    private final CategoryAttributeRepository attributeRepository;
+    private final ProductRepository productRepository;
+
+    private volatile Snapshot snapshot;
+    // Trạng thái sản phẩm mà số đếm hiện tại đang phản ánh; chỉ đọc/ghi khi giữ lock
+    private final Map<Long, ProductState> products = new HashMap<>();
+    private final Object lock = new Object();
+
+    public CategoryDirectory(CategoryRepository categoryRepository,
+                             CategoryAttributeRepository attributeRepository,
+                             ProductRepository productRepository,
+                             CatalogVersions catalogVersions) {
+        this.categoryRepository = categoryRepository;
+        this.attributeRepository = attributeRepository;
+        this.productRepository = productRepository;
+        catalogVersions.addListener(this::catalogChanged);
+    }
+
+    public List<CategoryView> getAll() {
+        return current().categories();
+    }
+
+    public CategoryView get(long categoryId) {
+        return current().byId().get(categoryId);
+    }
+
+    // Không phân biệt hoa thường, bỏ khoảng trắng đầu/cuối
+    public CategoryView findByName(String name) {
+        String key = nameKey(name);
+        return key == null ? null : current().byName().get(key);
+    }
+
+    // ================== Báo thay đổi ==================
+
+    // Sản phẩm vừa được lưu (entity đang giữ trạng thái mới)
+    public void productChanged(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+        Long productId = product.getId();
+        ProductState state = new ProductState(product.getCategory() != null ? product.getCategory().getId() : null,
+                product.isHidden());
+        afterCommit(() -> applyProducts(Map.of(productId, state), List.of()));
+    }
+
+    public void productsChanged(Collection<Product> changed) {
+        Map<Long, ProductState> states = new HashMap<>();
+        for (Product product : changed) {
+            if (product.getId() != null) {
+                states.put(product.getId(), new ProductState(
+                        product.getCategory() != null ? product.getCategory().getId() : null, product.isHidden()));
+            }
+        }
+        if (!states.isEmpty()) {
+            afterCommit(() -> applyProducts(states, List.of()));
+        }
+    }
+
+    // Sản phẩm bị đổi bằng câu UPDATE/DELETE hàng loạt: đọc lại trạng thái từ DB sau commit
+    public void productIdsChanged(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(productIds);
+        afterCommit(() -> {
+            Map<Long, ProductState> states = new HashMap<>();
+            for (Object[] row : productRepository.findCategoryStates(ids)) {
+                states.put((Long) row[0], new ProductState((Long) row[1], (Boolean) row[2]));
+            }
+            List<Long> removed = ids.stream().filter(id -> !states.containsKey(id)).toList();
+            applyProducts(states, removed);
+        });
+    }
+
+    public void productRemoved(Long productId) {
+        if (productId != null) {
+            afterCommit(() -> applyProducts(Map.of(), List.of(productId)));
+        }
+    }
+
+    // Danh mục hoặc thuộc tính của danh mục vừa thay đổi: nạp lại riêng danh mục đó
+    public void categoryChanged(Long categoryId) {
+        if (categoryId != null) {
+            afterCommit(() -> reloadCategory(categoryId));
+        }
+    }
+
+    // Xóa danh mục cascade xóa luôn sản phẩm thuộc danh mục
+    public void categoryRemoved(Long categoryId) {
+        if (categoryId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            synchronized (lock) {
+                Snapshot current = current();
+                products.values().removeIf(state -> categoryId.equals(state.categoryId()));
+                Map<Long, CategoryView> views = new HashMap<>(current.byId());
+                if (views.remove(categoryId) != null) {
+                    snapshot = Snapshot.of(views.values());
+                }
+            }
+        });
+    }
+
+    // Thay đổi đọc từ catalog_version (mọi node, kể cả node này: áp lại trạng thái giống hệt thì không đổi gì)
+    private void catalogChanged(Set<Long> productIds, boolean categoriesChanged) {
+        if (categoriesChanged) {
+            rebuild();
+        } else {
+            productIdsChanged(productIds);
+        }
+    }
+
+    // ================== Nạp dữ liệu ==================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (snapshot == null) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(cron = "${category.directory.rebuild-cron:0 45 3 * * *}")
+    public void rebuild() {
+        synchronized (lock) {
+            products.clear();
+            long afterId = 0;
+            while (true) {
+                List<Object[]> rows = productRepository.findCategoryStatesAfter(afterId, PageRequest.of(0, LOAD_PAGE));
+                if (rows.isEmpty()) {
+                    break;
+                }
+                for (Object[] row : rows) {
+                    products.put((Long) row[0], new ProductState((Long) row[1], (Boolean) row[2]));
+                }
+                afterId = (Long) rows.get(rows.size() - 1)[0];
+            }
+
+            Map<Long, List<AttributeView>> attributes = new HashMap<>();
+            for (CategoryAttribute attribute : attributeRepository.findAll()) {
+                if (attribute.getCategory() != null) {
+                    attributes.computeIfAbsent(attribute.getCategory().getId(), id -> new ArrayList<>())
+                            .add(new AttributeView(attribute.getId(), attribute.getName(), attribute.getCode()));
+                }
+            }
+            Map<Long, long[]> counts = countProducts();
+            List<CategoryView> views = new ArrayList<>();
+            for (Category category : categoryRepository.findAll()) {
+                long[] count = counts.getOrDefault(category.getId(), new long[2]);
+                views.add(view(category, attributes.getOrDefault(category.getId(), List.of()), count[0], count[1]));
+            }
+            snapshot = Snapshot.of(views);
+            log.info("Loaded category directory: {} categories, {} products", views.size(), products.size());
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            // Được gọi trước ApplicationReadyEvent (hoặc trong test): nạp ngay
+            synchronized (lock) {
+                if (snapshot == null) {
+                    rebuild();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private void reloadCategory(Long categoryId) {
+        synchronized (lock) {
+            Snapshot current = current();
+            Map<Long, CategoryView> views = new HashMap<>(current.byId());
+            Category category = categoryRepository.findById(categoryId).orElse(null);
+            if (category == null) {
+                views.remove(categoryId);
+            } else {
+                List<AttributeView> attributes = attributeRepository.findByCategory_Id(categoryId).stream()
+                        .sorted(Comparator.comparing(CategoryAttribute::getId))
+                        .map(attribute -> new AttributeView(attribute.getId(), attribute.getName(), attribute.getCode()))
+                        .toList();
+                long[] count = countProducts().getOrDefault(categoryId, new long[2]);
+                views.put(categoryId, view(category, attributes, count[0], count[1]));
+            }
+            snapshot = Snapshot.of(views.values());
+        }
+    }
+
+    private void applyProducts(Map<Long, ProductState> updated, Collection<Long> removed) {
+        synchronized (lock) {
+            Snapshot current = current();
+            Map<Long, long[]> deltas = new HashMap<>();
+            updated.forEach((productId, state) -> {
+                ProductState before = products.put(productId, state);
+                if (!Objects.equals(before, state)) {
+                    addDelta(deltas, before, -1);
+                    addDelta(deltas, state, 1);
+                }
+            });
+            for (Long productId : removed) {
+                addDelta(deltas, products.remove(productId), -1);
+            }
+            if (deltas.isEmpty()) {
+                return;
+            }
+            Map<Long, CategoryView> views = new HashMap<>(current.byId());
+            deltas.forEach((categoryId, delta) -> {
+                // Danh mục chưa có trong snapshot sẽ lấy số đếm khi categoryChanged nạp nó
+                views.computeIfPresent(categoryId, (id, view) ->
+                        view.withCounts(view.totalProducts() + delta[0], view.activeProducts() + delta[1]));
+            });
+            snapshot = Snapshot.of(views.values());
+        }
+    }
+
+    private static void addDelta(Map<Long, long[]> deltas, ProductState state, int sign) {
+        if (state == null || state.categoryId() == null) {
+            return;
+        }
+        long[] delta = deltas.computeIfAbsent(state.categoryId(), id -> new long[2]);
+        delta[0] += sign;
+        if (!state.hidden()) {
+            delta[1] += sign;
+        }
+    }
+
+    // {tổng, đang bán} theo danh mục, tính từ trạng thái sản phẩm đang giữ
+    private Map<Long, long[]> countProducts() {
+        Map<Long, long[]> counts = new HashMap<>();
+        for (ProductState state : products.values()) {
+            addDelta(counts, state, 1);
+        }
+        return counts;
+    }
+
+    private static CategoryView view(Category category, List<AttributeView> attributes, long total, long active) {
+        return new CategoryView(category.getId(), category.getName(), category.isHidden(),
+                List.copyOf(attributes), total, active);
+    }
+
+    private static String nameKey(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        // Giống equalsIgnoreCase: so sánh sau khi đưa về cùng một dạng chữ
+        return name.strip().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(action);
+                }
+            });
+        } else {
+            apply(action);
+        }
+    }
+
+    // Dữ liệu đã commit; lỗi cập nhật directory không được làm hỏng request (job rebuild sẽ sửa lại)
+    private static void apply(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            log.warn("Failed to update category directory: {}", e.getMessage());
+        }
+    }
+}
@@ -12,15 +12,23 @@ import java.util.List;
 public class CategoryService {
     private final CategoryRepository categoryRepo;
     private final ProductRepository productRepo;
+    private final CategoryDirectory categoryDirectory;
 
-    public CategoryService(CategoryRepository categoryRepo, ProductRepository productRepo) {
+    public CategoryService(CategoryRepository categoryRepo, ProductRepository productRepo,
+                           CategoryDirectory categoryDirectory) {
         this.categoryRepo = categoryRepo;
         this.productRepo = productRepo;
+        this.categoryDirectory = categoryDirectory;
     }
 
-    // 🔹 Lấy tất cả danh mục
-    public List<Category> getAll() {
-        return categoryRepo.findAll();
+    // 🔹 Lấy tất cả danh mục (menu, đọc từ bộ nhớ, kèm số sản phẩm)
+    public List<CategoryDirectory.CategoryView> getAll() {
+        return categoryDirectory.getAll();
+    }
+
+    // 🔹 Thông tin danh mục đọc từ bộ nhớ (không truy vấn DB)
+    public CategoryDirectory.CategoryView getView(long id) {
+        return categoryDirectory.get(id);
     }
 
     // 🔹 Lấy danh mục theo ID
@@ -41,19 +49,18 @@ public class CategoryService {
         }
 
         categoryRepo.save(category);
+        categoryDirectory.categoryChanged(category.getId());
     }
 
     // 🔹 Xóa danh mục
     public void delete(long id) {
         categoryRepo.deleteById(id);
+        categoryDirectory.categoryRemoved(id);
     }
 
     // 🔹 Lấy danh mục theo tên (không phân biệt hoa thường)
-    public Category getByName(String categoryName) {
-        return categoryRepo.findAll().stream()
-                .filter(c -> c.getName() != null && c.getName().equalsIgnoreCase(categoryName))
-                .findFirst()
-                .orElse(null);
+    public CategoryDirectory.CategoryView getByName(String categoryName) {
+        return categoryDirectory.findByName(categoryName);
     }
 
     // 🔹 Lấy danh sách sản phẩm thuộc danh mục
@@ -76,19 +83,13 @@ public class CategoryService {
 
     // 🔹 Đếm tổng số sản phẩm trong danh mục
     public long countProductsInCategory(long categoryId) {
-        Category category = categoryRepo.findById(categoryId).orElse(null);
-        if (category == null) {
-            return 0;
-        }
-        return productRepo.findByCategory(category).size();
+        CategoryDirectory.CategoryView category = categoryDirectory.get(categoryId);
+        return category == null ? 0 : category.totalProducts();
     }
 
     // 🔹 Đếm số sản phẩm đang hoạt động trong danh mục
     public long countActiveProductsInCategory(long categoryId) {
-        Category category = categoryRepo.findById(categoryId).orElse(null);
-        if (category == null) {
-            return 0;
-        }
-        return productRepo.findByCategoryAndHidden(category, false).size();
+        CategoryDirectory.CategoryView category = categoryDirectory.get(categoryId);
+        return category == null ? 0 : category.activeProducts();
     }
 }
@@ -0,0 +1,85 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.ChatMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Lưu file đính kèm chat vào {@link ContentAddressedStore} riêng: nhận mọi loại file,
+ * giới hạn dung lượng và giữ lại tên file gốc (đã làm sạch) để tải về.
+ * File được ghi trước transaction lưu tin nhắn; gửi tin lỗi để lại file mồ côi, được dọn định kỳ
+ * bởi {@link #deleteOrphans()} khi đã cũ hơn {@code chat.attachment.orphan-min-age-hours}.
+ */
+@Service
+public class ChatAttachmentStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatAttachmentStorage.class);
+
+    private final ContentAddressedStore store;
+    private final ChatMessageRepository chatMessageRepository;
+    private final long maxBytes;
+    private final Duration orphanMinAge;
+
+    public ChatAttachmentStorage(ChatMessageRepository chatMessageRepository,
+                                 @Value("${chat.attachment.dir:data/chat-attachments}") String rootDir,
+                                 @Value("${chat.attachment.max-bytes:10485760}") long maxBytes,
+                                 @Value("${chat.attachment.orphan-min-age-hours:24}") long orphanMinAgeHours) {
+        this.store = new ContentAddressedStore(rootDir,
+                "File đính kèm vượt quá dung lượng cho phép (" + maxBytes / (1024 * 1024) + "MB)",
+                "Lỗi khi lưu file chat",
+                "Đường dẫn file không hợp lệ");
+        this.chatMessageRepository = chatMessageRepository;
+        this.maxBytes = maxBytes;
+        this.orphanMinAge = Duration.ofHours(orphanMinAgeHours);
+    }
+
+    public StoredAttachment store(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        if (file.getSize() > maxBytes) {
+            throw new RuntimeException("File đính kèm vượt quá dung lượng cho phép (" + maxBytes / (1024 * 1024) + "MB)");
+        }
+        ContentAddressedStore.Blob blob = store.write(file, maxBytes);
+        return new StoredAttachment(
+                blob.path(),
+                blob.hash(),
+                blob.size(),
+                sanitizeFileName(file.getOriginalFilename()),
+                file.getContentType() != null ? file.getContentType() : "application/octet-stream"
+        );
+    }
+
+    public Path resolve(String relativePath) {
+        return store.resolve(relativePath);
+    }
+
+    // Xóa file không còn tin nhắn nào trỏ tới (tin nhắn không bị xóa, nên chỉ là file của lần gửi lỗi)
+    @Scheduled(cron = "${chat.attachment.cleanup-cron:0 15 4 * * *}")
+    public int deleteOrphans() {
+        int deleted = store.deleteUnreferenced(orphanMinAge, chatMessageRepository::existsByFilePath);
+        if (deleted > 0) {
+            log.info("Deleted {} orphaned chat attachment files", deleted);
+        }
+        return deleted;
+    }
+
+    private String sanitizeFileName(String originalName) {
+        if (originalName == null || originalName.isBlank()) {
+            return "file";
+        }
+        String name = originalName.substring(Math.max(originalName.lastIndexOf('/'), originalName.lastIndexOf('\\')) + 1);
+        name = name.replaceAll("[\\r\\n\"\\\\]", "_");
+        return name.length() > 200 ? name.substring(name.length() - 200) : name;
+    }
+
+    public record StoredAttachment(String path, String hash, long size, String fileName, String contentType) {
+    }
+}
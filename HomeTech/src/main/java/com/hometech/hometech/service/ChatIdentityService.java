@@ -1,21 +1,26 @@
 package com.hometech.hometech.service;
 
-import com.hometech.hometech.Repository.AccountRepository;
+import com.hometech.hometech.Repository.AdminRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
 import com.hometech.hometech.enums.SenderType;
-import com.hometech.hometech.model.Account;
 import com.hometech.hometech.model.Admin;
 import com.hometech.hometech.model.Customer;
-import com.hometech.hometech.model.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 @Service
 public class ChatIdentityService {
 
-    private final AccountRepository accountRepository;
+    private final AccountIdentityService accountIdentityService;
+    private final CustomerRepository customerRepository;
+    private final AdminRepository adminRepository;
 
-    public ChatIdentityService(AccountRepository accountRepository) {
-        this.accountRepository = accountRepository;
+    public ChatIdentityService(AccountIdentityService accountIdentityService,
+                               CustomerRepository customerRepository,
+                               AdminRepository adminRepository) {
+        this.accountIdentityService = accountIdentityService;
+        this.customerRepository = customerRepository;
+        this.adminRepository = adminRepository;
     }
 
     public ChatIdentity resolve(UserDetails principal) {
@@ -23,15 +28,17 @@ public class ChatIdentityService {
             throw new RuntimeException("Người dùng chưa đăng nhập");
         }
 
-        Account account = accountRepository.findByUsername(principal.getUsername())
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy tài khoản"));
+        AccountIdentityService.AccountIdentity account = accountIdentityService.resolve(principal.getUsername());
+        if (account == null) {
+            throw new RuntimeException("Không tìm thấy tài khoản");
+        }
 
-        User user = account.getUser();
-        if (user instanceof Customer customer) {
-            return ChatIdentity.forCustomer(customer);
+        // Chỉ cần id để gắn quan hệ / so quyền sở hữu -> dùng reference, không nạp cả User
+        if (account.customerId() != null) {
+            return ChatIdentity.forCustomer(customerRepository.getReferenceById(account.customerId()));
         }
-        if (user instanceof Admin admin) {
-            return ChatIdentity.forAdmin(admin);
+        if (account.adminId() != null) {
+            return ChatIdentity.forAdmin(adminRepository.getReferenceById(account.adminId()));
         }
 
         throw new RuntimeException("Tài khoản không được phép sử dụng chat");
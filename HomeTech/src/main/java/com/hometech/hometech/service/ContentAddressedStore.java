@@ -0,0 +1,164 @@
+package com.hometech.hometech.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Kho file content-addressed trên đĩa, dùng chung cho {@link ChatAttachmentStorage} và {@link ReviewImageStorage}.
+ * Nội dung được stream thẳng xuống file tạm trong khi tính SHA-256 và đếm số byte thực đọc được,
+ * sau đó đổi tên thành {@code <2 ký tự đầu>/<sha256>} -> nội dung trùng chỉ lưu một bản.
+ * Không chạy trong transaction DB và không giữ toàn bộ file trên heap.
+ * Giới hạn dung lượng, loại file và thông báo lỗi do lớp dùng kho quyết định.
+ *
+ * <p>File được ghi trước transaction lưu metadata, nên transaction lỗi để lại file không ai tham chiếu;
+ * {@link #deleteUnreferenced} dọn các file đó (và file tạm bỏ dở) khi đã cũ hơn một khoảng chờ.
+ */
+class ContentAddressedStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentAddressedStore.class);
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Path rootDir;
+    private final String tooLargeMessage;
+    private final String writeFailedMessage;
+    private final String invalidPathMessage;
+
+    ContentAddressedStore(String rootDir, String tooLargeMessage, String writeFailedMessage, String invalidPathMessage) {
+        this.rootDir = Paths.get(rootDir).toAbsolutePath().normalize();
+        this.tooLargeMessage = tooLargeMessage;
+        this.writeFailedMessage = writeFailedMessage;
+        this.invalidPathMessage = invalidPathMessage;
+    }
+
+    Blob write(MultipartFile file, long maxBytes) {
+        Path tmp = null;
+        try {
+            Path tmpDir = rootDir.resolve("tmp");
+            Files.createDirectories(tmpDir);
+            tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = file.getInputStream();
+                 OutputStream out = Files.newOutputStream(tmp)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    size += read;
+                    // Client có thể khai báo sai Content-Length, nên chặn theo số byte thực đọc được
+                    if (size > maxBytes) {
+                        throw new RuntimeException(tooLargeMessage);
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String relativePath = hash.substring(0, 2) + "/" + hash;
+            Path target = rootDir.resolve(relativePath);
+            Files.createDirectories(target.getParent());
+
+            if (Files.exists(target)) {
+                // Đã có file cùng nội dung -> dùng lại, bỏ file tạm; cập nhật mtime để lần dọn sau không xóa nhầm
+                Files.deleteIfExists(tmp);
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            } else {
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // Một request khác vừa lưu cùng nội dung
+                    Files.deleteIfExists(tmp);
+                }
+            }
+            tmp = null;
+
+            return new Blob(relativePath, hash, size);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException(writeFailedMessage, e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    log.warn("Could not delete temp upload {}: {}", tmp, e.getMessage());
+                }
+            }
+        }
+    }
+
+    Path resolve(String relativePath) {
+        Path resolved = rootDir.resolve(relativePath).normalize();
+        if (!resolved.startsWith(rootDir)) {
+            throw new RuntimeException(invalidPathMessage);
+        }
+        return resolved;
+    }
+
+    /**
+     * Xóa file cũ hơn {@code minAge} mà {@code isReferenced} (nhận đường dẫn tương đối) báo không còn dùng,
+     * cùng file tạm bỏ dở. mtime được đọc lại ngay trước khi xóa vì upload trùng nội dung cập nhật mtime;
+     * khoảng chờ phải dài hơn thời gian một upload chạy tới lúc commit metadata.
+     */
+    int deleteUnreferenced(Duration minAge, Predicate<String> isReferenced) {
+        if (!Files.isDirectory(rootDir)) {
+            return 0;
+        }
+        Instant cutoff = Instant.now().minus(minAge);
+        int deleted = 0;
+        try (Stream<Path> dirs = Files.list(rootDir)) {
+            for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                boolean tmpDir = dir.getFileName().toString().equals("tmp");
+                List<Path> files;
+                try (Stream<Path> entries = Files.list(dir)) {
+                    files = entries.filter(Files::isRegularFile).toList();
+                }
+                for (Path file : files) {
+                    try {
+                        if (!olderThan(file, cutoff)) {
+                            continue;
+                        }
+                        if (!tmpDir && isReferenced.test(rootDir.relativize(file).toString().replace('\\', '/'))) {
+                            continue;
+                        }
+                        if (olderThan(file, cutoff) && Files.deleteIfExists(file)) {
+                            deleted++;
+                        }
+                    } catch (IOException e) {
+                        // File vừa bị xóa/đổi bởi tiến trình khác: bỏ qua, lần sau xét lại
+                        log.debug("Skipping {} during sweep: {}", file, e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not sweep unreferenced files in {}: {}", rootDir, e.getMessage());
+        }
+        return deleted;
+    }
+
+    private static boolean olderThan(Path file, Instant cutoff) throws IOException {
+        return Files.getLastModifiedTime(file).toInstant().isBefore(cutoff);
+    }
+
+    record Blob(String path, String hash, long size) {
+    }
+}
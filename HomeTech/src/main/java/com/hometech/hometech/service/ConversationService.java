@@ -3,27 +3,34 @@ package com.hometech.hometech.service;
 import com.hometech.hometech.Repository.ChatMessageRepository;
 import com.hometech.hometech.Repository.ConversationRepository;
 import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.dto.ChatHistoryPage;
+import com.hometech.hometech.dto.ChatMessagePayload;
+import com.hometech.hometech.dto.ConversationInboxPage;
+import com.hometech.hometech.dto.ConversationSummary;
 import com.hometech.hometech.enums.SenderType;
 import com.hometech.hometech.model.ChatMessage;
 import com.hometech.hometech.model.Conversation;
 import com.hometech.hometech.model.Customer;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.io.IOException;
-import java.nio.file.Files;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
 
 @Service
 @Transactional
 public class ConversationService {
 
+    private static final int DEFAULT_HISTORY_PAGE_SIZE = 30;
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+    private static final int DEFAULT_INBOX_PAGE_SIZE = 30;
+    private static final int MAX_INBOX_PAGE_SIZE = 100;
+    private static final int PREVIEW_MAX_LENGTH = 120;
+
     private final ConversationRepository conversationRepository;
     private final ChatMessageRepository chatMessageRepository;
     private final CustomerRepository customerRepository;
@@ -57,48 +64,50 @@ public class ConversationService {
         }
         return c;
     }
+    /**
+     * Lưu tin nhắn. File đính kèm (nếu có) phải được ghi xuống đĩa trước bằng
+     * {@link ChatAttachmentStorage#store} ở ngoài transaction; ở đây chỉ lưu metadata.
+     */
     @Transactional
     public ChatMessage sendMessage(
             Long conversationId,
             SenderType senderType,
             Long senderId,
             String content,
-            MultipartFile file
+            ChatAttachmentStorage.StoredAttachment attachment
     ) {
         ChatMessage message = new ChatMessage();
 
         message.setSenderType(senderType);
         message.setSenderId(senderId);
-        message.setContent(content);
+        message.setContent(content != null ? content : "");
         // sentAt & read sẽ set trong @PrePersist
 
-        // 🔥 FIX QUAN TRỌNG NHẤT
         Conversation conversation = conversationRepository
                 .findById(conversationId)
                 .orElseThrow(() -> new RuntimeException("Conversation not found"));
 
         message.setConversation(conversation);
 
-        if (file != null && !file.isEmpty()) {
-            try {
-                String storedName = UUID.randomUUID() + "_" + file.getOriginalFilename();
-
-                Path uploadDir = Paths.get("uploads/chat");
-                Files.createDirectories(uploadDir);
-
-                Path filePath = uploadDir.resolve(storedName);
-                Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        if (attachment != null) {
+            message.setFilePath(attachment.path());
+            message.setFileHash(attachment.hash());
+            message.setFileSize(attachment.size());
+            message.setFileName(attachment.fileName());
+            message.setFileContentType(attachment.contentType());
+        }
 
-                message.setFileData(file.getBytes());
-                message.setFileName(file.getOriginalFilename());
-                message.setFileContentType(file.getContentType());
+        ChatMessage saved = chatMessageRepository.save(message);
 
-            } catch (IOException e) {
-                throw new RuntimeException("Lỗi khi lưu file chat", e);
-            }
+        // Cập nhật preview + bộ đếm chưa đọc trong cùng transaction (UPDATE nguyên tử, không read-modify-write)
+        String preview = buildPreview(saved);
+        if (senderType == SenderType.CUSTOMER) {
+            conversationRepository.recordCustomerMessage(conversationId, preview, saved.getSentAt());
+        } else {
+            conversationRepository.recordAdminMessage(conversationId, preview, saved.getSentAt());
         }
 
-        return chatMessageRepository.save(message);
+        return saved;
     }
 
     @Transactional(readOnly = true)
@@ -106,19 +115,63 @@ public class ConversationService {
         return conversationRepository.findAll();
     }
 
+    // Inbox admin kiểu cũ (một danh sách), đã sắp xếp theo tin nhắn mới nhất; chỉ lấy tối đa một trang lớn nhất,
+    // cần xem thêm thì dùng getAdminInboxPage
+    @Transactional(readOnly = true)
+    public List<ConversationSummary> getAdminInbox() {
+        return conversationRepository.findInbox(PageRequest.of(0, MAX_INBOX_PAGE_SIZE));
+    }
+
+    // Inbox admin phân trang keyset theo (lastMessageAt, id) giảm dần
+    @Transactional(readOnly = true)
+    public ConversationInboxPage getAdminInboxPage(LocalDateTime before, Long beforeId, Integer limit) {
+        int size = (limit == null || limit <= 0) ? DEFAULT_INBOX_PAGE_SIZE : Math.min(limit, MAX_INBOX_PAGE_SIZE);
+        Pageable pageable = PageRequest.of(0, size + 1);
+        List<ConversationSummary> rows = (before != null && beforeId != null)
+                ? conversationRepository.findInboxBefore(before, beforeId, pageable)
+                : conversationRepository.findInbox(pageable);
+
+        boolean hasMore = rows.size() > size;
+        List<ConversationSummary> items = hasMore ? rows.subList(0, size) : rows;
+        ConversationSummary last = items.isEmpty() ? null : items.get(items.size() - 1);
+
+        return new ConversationInboxPage(items, hasMore,
+                hasMore ? last.getLastMessageAt() : null,
+                hasMore ? last.getId() : null);
+    }
+
     @Transactional(readOnly = true)
     public long getUnreadCountForCustomer(Customer customer) {
         Conversation c = getOrCreateConversation(customer);
-        return chatMessageRepository.countByConversationAndSenderTypeAndReadIsFalse(
-                c, SenderType.ADMIN);
+        return c.getUnreadForCustomer();
     }
 
     @Transactional
     public void markMessagesAsReadForCustomer(Customer customer) {
         Conversation c = getOrCreateConversation(customer);
         chatMessageRepository.markAsReadForConversationAndSenderType(c, SenderType.ADMIN);
+        conversationRepository.resetUnreadForCustomer(c.getId());
+    }
+
+    @Transactional
+    public void markMessagesAsReadForAdmin(Long conversationId) {
+        Conversation c = conversationRepository.findById(conversationId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy cuộc trò chuyện"));
+        chatMessageRepository.markAsReadForConversationAndSenderType(c, SenderType.CUSTOMER);
+        conversationRepository.resetUnreadForAdmin(c.getId());
+    }
+
+    private String buildPreview(ChatMessage message) {
+        String content = message.getContent();
+        String text = (content == null || content.isBlank())
+                ? (message.getFileName() != null ? "[Tệp] " + message.getFileName() : "")
+                : content.strip();
+        return text.length() > PREVIEW_MAX_LENGTH
+                ? text.substring(0, PREVIEW_MAX_LENGTH) + "…"
+                : text;
     }
 
+
     @Transactional
     public Conversation getOrCreateConversationByCustomerId(Long customerId) {
         Customer customer = customerRepository.findById(customerId)
@@ -132,6 +185,72 @@ public class ConversationService {
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy cuộc trò chuyện"));
         return chatMessageRepository.findByConversationOrderBySentAtAsc(c);
     }
+    // Danh sách tin nhắn chỉ gồm metadata (không đọc file_data)
+    @Transactional(readOnly = true)
+    public List<ChatMessagePayload> getMessagePayloads(Long conversationId) {
+        ensureConversationExists(conversationId);
+        return chatMessageRepository.findPayloadsByConversationId(conversationId);
+    }
+
+    /**
+     * Trang lịch sử chat lùi dần theo cursor (sentAt, id).
+     * Không truyền cursor -> trang mới nhất. Kết quả trả về theo thứ tự cũ -> mới.
+     */
+    @Transactional(readOnly = true)
+    public ChatHistoryPage getMessageHistory(Long conversationId, LocalDateTime before, Long beforeId, Integer limit) {
+        ensureConversationExists(conversationId);
+        int size = normalizeHistoryLimit(limit);
+        // Lấy dư 1 bản ghi để biết còn trang cũ hơn hay không
+        Pageable pageable = PageRequest.of(0, size + 1);
+        List<ChatMessagePayload> rows = (before != null && beforeId != null)
+                ? chatMessageRepository.findPayloadsBefore(conversationId, before, beforeId, pageable)
+                : chatMessageRepository.findLatestPayloads(conversationId, pageable);
+
+        boolean hasMore = rows.size() > size;
+        List<ChatMessagePayload> page = new ArrayList<>(hasMore ? rows.subList(0, size) : rows);
+        Collections.reverse(page);
+
+        ChatMessagePayload oldest = page.isEmpty() ? null : page.get(0);
+        Long latestId = page.isEmpty() ? null : page.get(page.size() - 1).getId();
+        return new ChatHistoryPage(
+                page,
+                hasMore,
+                hasMore ? oldest.getSentAt() : null,
+                hasMore ? oldest.getId() : null,
+                latestId
+        );
+    }
+
+    /**
+     * Đồng bộ delta khi reconnect: các tin nhắn có id > sinceId, theo thứ tự tăng dần.
+     * hasMore = true nghĩa là còn tin mới hơn, client gọi lại với since = latestId.
+     */
+    @Transactional(readOnly = true)
+    public ChatHistoryPage getMessagesSince(Long conversationId, Long sinceId, Integer limit) {
+        ensureConversationExists(conversationId);
+        int size = normalizeHistoryLimit(limit);
+        List<ChatMessagePayload> rows = chatMessageRepository.findPayloadsSince(
+                conversationId, sinceId, PageRequest.of(0, size + 1));
+
+        boolean hasMore = rows.size() > size;
+        List<ChatMessagePayload> page = hasMore ? new ArrayList<>(rows.subList(0, size)) : rows;
+        Long latestId = page.isEmpty() ? sinceId : page.get(page.size() - 1).getId();
+        return new ChatHistoryPage(page, hasMore, null, null, latestId);
+    }
+
+    private void ensureConversationExists(Long conversationId) {
+        if (conversationId == null || !conversationRepository.existsById(conversationId)) {
+            throw new RuntimeException("Không tìm thấy cuộc trò chuyện");
+        }
+    }
+
+    private int normalizeHistoryLimit(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_HISTORY_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_HISTORY_PAGE_SIZE);
+    }
+
     public ChatMessage getMessageById(Long messageId) {
     return chatMessageRepository.findById(messageId)
             .orElseThrow(() -> new RuntimeException("Không tìm thấy tin nhắn"));
@@ -1,9 +1,5 @@
 package com.hometech.hometech.service;
 
-import com.hometech.hometech.Repository.AccountRepository;
-import com.hometech.hometech.model.Account;
-
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -16,42 +12,38 @@ import java.util.Collections;
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
-    @Autowired
-    private final AccountRepository accountRepository;
+    private final AccountIdentityService accountIdentityService;
 
-    public CustomUserDetailsService(AccountRepository accountRepository) {
-        this.accountRepository = accountRepository;
+    public CustomUserDetailsService(AccountIdentityService accountIdentityService) {
+        this.accountIdentityService = accountIdentityService;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Account account = accountRepository.findByUsername(username)
-                .or(() -> accountRepository.findByEmail(username))
-                .orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng: " + username));
-
-        return User.builder()
-                .username(account.getUsername())
-                .password(account.getPassword())
-                .authorities(Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + account.getRole())))
-                .accountExpired(false)
-                .accountLocked(false)
-                .credentialsExpired(false)
-                .disabled(!account.isEnabled())
-                .build();
+        AccountIdentityService.AccountIdentity identity = accountIdentityService.resolve(username);
+        if (identity == null) {
+            throw new UsernameNotFoundException("Không tìm thấy người dùng: " + username);
+        }
+        return toUserDetails(identity);
     }
 
     public UserDetails loadUserByEmail(String email) throws UsernameNotFoundException {
-        Account account = accountRepository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng với email: " + email));
+        AccountIdentityService.AccountIdentity identity = accountIdentityService.resolve(email);
+        if (identity == null || !email.equals(identity.email())) {
+            throw new UsernameNotFoundException("Không tìm thấy người dùng với email: " + email);
+        }
+        return toUserDetails(identity);
+    }
 
+    private UserDetails toUserDetails(AccountIdentityService.AccountIdentity identity) {
         return User.builder()
-                .username(account.getUsername())
-                .password(account.getPassword())
-                .authorities(Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + account.getRole())))
+                .username(identity.username())
+                .password(identity.passwordHash())
+                .authorities(Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + identity.role())))
                 .accountExpired(false)
                 .accountLocked(false)
                 .credentialsExpired(false)
-                .disabled(!account.isEnabled())
+                .disabled(!identity.enabled())
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.EmailCampaignRepository;
+import com.hometech.hometech.Repository.EmailOutboxRepository;
+import com.hometech.hometech.enums.EmailOutboxStatus;
+import com.hometech.hometech.model.EmailCampaign;
+import com.hometech.hometech.model.EmailOutboxMessage;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ghi email cần gửi vào bảng {@code email_outbox}; {@link EmailOutboxWorker} gửi bất đồng bộ.
+ *
+ * <p>Gọi trong transaction nghiệp vụ (VD đăng ký) thì email chỉ tồn tại khi transaction commit,
+ * và worker được đánh thức ngay sau commit thay vì chờ tới lượt quét kế tiếp.
+ */
+@Service
+public class EmailOutbox {
+
+    private static final int INSERT_CHUNK = 500;
+
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailCampaignRepository campaignRepository;
+    private final EmailOutboxWorker worker;
+
+    public EmailOutbox(EmailOutboxRepository outboxRepository,
+                       EmailCampaignRepository campaignRepository,
+                       EmailOutboxWorker worker) {
+        this.outboxRepository = outboxRepository;
+        this.campaignRepository = campaignRepository;
+        this.worker = worker;
+    }
+
+    @Transactional
+    public EmailOutboxMessage enqueue(String recipient, String subject, String htmlContent, String kind) {
+        EmailOutboxMessage message = newMessage(recipient, kind, EmailOutboxMessage.PRIORITY_TRANSACTIONAL);
+        message.setSubject(subject);
+        message.setBody(htmlContent);
+        EmailOutboxMessage saved = outboxRepository.save(message);
+        wakeWorkerAfterCommit();
+        return saved;
+    }
+
+    // Một campaign = nội dung lưu một lần + mỗi người nhận (đã bỏ trùng) một dòng outbox
+    @Transactional
+    public EmailCampaign createCampaign(String subject, String htmlContent, Collection<String> recipients, String createdBy) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String recipient : recipients) {
+            if (recipient != null && !recipient.isBlank()) {
+                unique.add(recipient.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        EmailCampaign campaign = new EmailCampaign();
+        campaign.setSubject(subject);
+        campaign.setContent(htmlContent);
+        campaign.setRecipientCount(unique.size());
+        campaign.setCreatedBy(createdBy);
+        campaign.setCreatedAt(LocalDateTime.now());
+        campaign = campaignRepository.save(campaign);
+
+        List<EmailOutboxMessage> chunk = new ArrayList<>(INSERT_CHUNK);
+        for (String recipient : unique) {
+            EmailOutboxMessage message = newMessage(recipient, "MARKETING", EmailOutboxMessage.PRIORITY_MARKETING);
+            message.setCampaign(campaign);
+            chunk.add(message);
+            if (chunk.size() == INSERT_CHUNK) {
+                outboxRepository.saveAll(chunk);
+                chunk.clear();
+            }
+        }
+        outboxRepository.saveAll(chunk);
+
+        wakeWorkerAfterCommit();
+        return campaign;
+    }
+
+    public Map<String, Object> getCampaignProgress(Long campaignId) {
+        EmailCampaign campaign = campaignRepository.findById(campaignId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy chiến dịch email"));
+
+        Map<EmailOutboxStatus, Long> byState = new LinkedHashMap<>();
+        for (EmailOutboxStatus state : EmailOutboxStatus.values()) {
+            byState.put(state, 0L);
+        }
+        for (Object[] row : outboxRepository.countByStateForCampaign(campaignId)) {
+            byState.put((EmailOutboxStatus) row[0], (Long) row[1]);
+        }
+
+        long total = campaign.getRecipientCount();
+        long sent = byState.get(EmailOutboxStatus.SENT);
+        long failed = byState.get(EmailOutboxStatus.FAILED);
+
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("campaignId", campaign.getId());
+        progress.put("subject", campaign.getSubject());
+        progress.put("createdAt", campaign.getCreatedAt());
+        progress.put("total", total);
+        progress.put("pending", byState.get(EmailOutboxStatus.PENDING));
+        progress.put("sending", byState.get(EmailOutboxStatus.SENDING));
+        progress.put("sent", sent);
+        progress.put("failed", failed);
+        progress.put("percentDone", total == 0 ? 100 : (sent + failed) * 100 / total);
+        progress.put("completed", sent + failed >= total);
+        return progress;
+    }
+
+    private static EmailOutboxMessage newMessage(String recipient, String kind, int priority) {
+        LocalDateTime now = LocalDateTime.now();
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setRecipient(recipient);
+        message.setKind(kind);
+        message.setPriority(priority);
+        message.setState(EmailOutboxStatus.PENDING);
+        message.setCreatedAt(now);
+        message.setNextAttemptAt(now);
+        return message;
+    }
+
+    private void wakeWorkerAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    worker.wakeUp();
+                }
+            });
+        } else {
+            worker.wakeUp();
+        }
+    }
+}
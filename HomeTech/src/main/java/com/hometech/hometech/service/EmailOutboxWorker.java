@@ -0,0 +1,311 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.EmailOutboxRepository;
+import com.hometech.hometech.enums.EmailOutboxStatus;
+import com.hometech.hometech.model.EmailCampaign;
+import com.hometech.hometech.model.EmailOutboxMessage;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gửi email trong {@code email_outbox}.
+ *
+ * <ul>
+ *   <li>{@code mail.outbox.workers} luồng, mỗi luồng giữ một kết nối SMTP ({@link Transport}) mở và gửi
+ *       nhiều email liên tiếp trên đó; đóng khi hết việc hoặc đã gửi {@code max-messages-per-connection}
+ *       email (nhiều nhà cung cấp giới hạn số thư mỗi phiên).</li>
+ *   <li>Giới hạn tốc độ chung cho mọi luồng ({@code rate-per-second}) theo hạn mức của nhà cung cấp SMTP.</li>
+ *   <li>Mỗi email được giành bằng UPDATE có điều kiện nên không bị gửi hai lần giữa các luồng/instance.
+ *       Lỗi tạm thời thử lại với backoff lũy thừa; địa chỉ bị từ chối vĩnh viễn (5xx) thì FAILED luôn.</li>
+ * </ul>
+ */
+@Service
+public class EmailOutboxWorker {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailOutboxWorker.class);
+
+    private final EmailOutboxRepository outboxRepository;
+    private final JavaMailSenderImpl mailSender;
+    private final String fromEmail;
+    private final int workers;
+    private final int batchSize;
+    private final int maxMessagesPerConnection;
+    private final long permitIntervalNanos;
+    private final int maxAttempts;
+    private final long baseBackoffSeconds;
+    private final long maxBackoffSeconds;
+    private final long leaseSeconds;
+    private final long pollIntervalMillis;
+
+    private final Object signal = new Object();
+    private long nextPermitAt = System.nanoTime();
+    private volatile boolean running;
+    private ExecutorService pool;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+
+    public EmailOutboxWorker(EmailOutboxRepository outboxRepository,
+                             JavaMailSenderImpl mailSender,
+                             @Value("${mail.outbox.from:${spring.mail.username:}}") String fromEmail,
+                             @Value("${mail.outbox.workers:2}") int workers,
+                             @Value("${mail.outbox.batch-size:50}") int batchSize,
+                             @Value("${mail.outbox.max-messages-per-connection:100}") int maxMessagesPerConnection,
+                             @Value("${mail.outbox.rate-per-second:5}") double ratePerSecond,
+                             @Value("${mail.outbox.max-attempts:6}") int maxAttempts,
+                             @Value("${mail.outbox.backoff-seconds:30}") long baseBackoffSeconds,
+                             @Value("${mail.outbox.max-backoff-seconds:3600}") long maxBackoffSeconds,
+                             @Value("${mail.outbox.lease-seconds:300}") long leaseSeconds,
+                             @Value("${mail.outbox.poll-interval-ms:5000}") long pollIntervalMillis) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.fromEmail = fromEmail;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.permitIntervalNanos = ratePerSecond > 0 ? (long) (1_000_000_000L / ratePerSecond) : 0;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffSeconds = baseBackoffSeconds;
+        this.maxBackoffSeconds = maxBackoffSeconds;
+        this.leaseSeconds = leaseSeconds;
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (workers <= 0 || running) {
+            return;
+        }
+        running = true;
+        AtomicInteger counter = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "email-outbox-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            pool.execute(this::runWorker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        wakeUp();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    // Có email mới: đánh thức các luồng đang chờ
+    public void wakeUp() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private void runWorker() {
+        SmtpConnection connection = new SmtpConnection();
+        try {
+            while (running) {
+                int handled = 0;
+                try {
+                    handled = drain(connection, LocalDateTime.now());
+                } catch (Exception e) {
+                    log.warn("Email outbox worker error: {}", e.getMessage());
+                    connection.close();
+                }
+                if (handled == 0) {
+                    // Hết việc: trả kết nối SMTP, chờ tín hiệu hoặc tới lượt quét
+                    connection.close();
+                    synchronized (signal) {
+                        signal.wait(pollIntervalMillis);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connection.close();
+        }
+    }
+
+    // Gửi hết email tới hạn ngay trên luồng gọi, dùng chung một kết nối
+    int drainAll(LocalDateTime now) throws InterruptedException {
+        SmtpConnection connection = new SmtpConnection();
+        try {
+            int total = 0;
+            int handled;
+            while ((handled = drain(connection, now)) > 0) {
+                total += handled;
+            }
+            return total;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private int drain(SmtpConnection connection, LocalDateTime now) throws InterruptedException {
+        List<Long> dueIds = outboxRepository.findDueIds(now, PageRequest.of(0, batchSize));
+        int handled = 0;
+        for (Long id : dueIds) {
+            if (outboxRepository.claim(id, now, now.plusSeconds(leaseSeconds)) == 0) {
+                // Luồng khác đã giành email này
+                continue;
+            }
+            handled++;
+            EmailOutboxMessage message = outboxRepository.findWithCampaign(id).orElse(null);
+            if (message != null) {
+                send(connection, message, now);
+            }
+        }
+        return handled;
+    }
+
+    private void send(SmtpConnection connection, EmailOutboxMessage message, LocalDateTime now) throws InterruptedException {
+        try {
+            MimeMessage mime = toMimeMessage(message);
+            acquirePermit();
+            connection.transport().sendMessage(mime, mime.getAllRecipients());
+            connection.sentOne();
+            outboxRepository.markSent(message.getId(), LocalDateTime.now());
+            sent.increment();
+        } catch (SendFailedException e) {
+            // Server từ chối người nhận; phiên SMTP vẫn dùng tiếp được
+            boolean permanent = e.getInvalidAddresses() != null && e.getInvalidAddresses().length > 0
+                    && (e.getValidSentAddresses() == null || e.getValidSentAddresses().length == 0)
+                    && (e.getValidUnsentAddresses() == null || e.getValidUnsentAddresses().length == 0);
+            onFailure(message, now, e, permanent);
+        } catch (MessagingException e) {
+            // Lỗi kết nối/phiên: mở kết nối mới cho email kế tiếp
+            connection.close();
+            onFailure(message, now, e, false);
+        }
+    }
+
+    private MimeMessage toMimeMessage(EmailOutboxMessage message) throws MessagingException {
+        EmailCampaign campaign = message.getCampaign();
+        MimeMessage mime = new MimeMessage(mailSender.getSession());
+        MimeMessageHelper helper = new MimeMessageHelper(mime, true, "UTF-8");
+        if (StringUtils.hasText(fromEmail)) {
+            helper.setFrom(fromEmail);
+        }
+        helper.setTo(message.getRecipient());
+        helper.setSubject(campaign != null ? campaign.getSubject() : message.getSubject());
+        helper.setText(campaign != null ? campaign.getContent() : message.getBody(), true);
+        mime.saveChanges();
+        return mime;
+    }
+
+    private void onFailure(EmailOutboxMessage message, LocalDateTime now, Exception error, boolean permanent) {
+        // attempts đã được tăng khi claim
+        int attempts = message.getAttempts();
+        String reason = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        if (reason.length() > 500) {
+            reason = reason.substring(0, 500);
+        }
+        if (permanent || attempts >= maxAttempts) {
+            failed.increment();
+            log.warn("Email {} to {} failed after {} attempts: {}", message.getId(), message.getRecipient(), attempts, reason);
+            outboxRepository.markAttemptFailed(message.getId(), EmailOutboxStatus.FAILED, null, reason);
+            return;
+        }
+        retried.increment();
+        long delay = Math.min(maxBackoffSeconds, baseBackoffSeconds << Math.min(attempts - 1, 20));
+        outboxRepository.markAttemptFailed(message.getId(), EmailOutboxStatus.PENDING, now.plusSeconds(delay), reason);
+    }
+
+    // Token bucket đơn giản: các lần gửi cách nhau ít nhất permitIntervalNanos, tính chung mọi luồng
+    private void acquirePermit() throws InterruptedException {
+        if (permitIntervalNanos <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextPermitAt);
+            nextPermitAt = slot + permitIntervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workers);
+        stats.put("running", running);
+        stats.put("pending", outboxRepository.countByState(EmailOutboxStatus.PENDING));
+        stats.put("sending", outboxRepository.countByState(EmailOutboxStatus.SENDING));
+        stats.put("failedTotal", outboxRepository.countByState(EmailOutboxStatus.FAILED));
+        stats.put("sent", sent.sum());
+        stats.put("retried", retried.sum());
+        stats.put("failed", failed.sum());
+        stats.put("connectionsOpened", connectionsOpened.sum());
+        stats.put("ratePerSecond", permitIntervalNanos == 0 ? 0 : 1_000_000_000.0 / permitIntervalNanos);
+        return stats;
+    }
+
+    // Kết nối SMTP của một luồng, mở khi cần và dùng lại cho nhiều email
+    private final class SmtpConnection {
+        private Transport transport;
+        private int sentOnConnection;
+
+        Transport transport() throws MessagingException {
+            if (transport != null && sentOnConnection >= maxMessagesPerConnection) {
+                close();
+            }
+            if (transport == null) {
+                String protocol = mailSender.getProtocol() != null ? mailSender.getProtocol() : "smtp";
+                Transport opened = mailSender.getSession().getTransport(protocol);
+                opened.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+                connectionsOpened.increment();
+                transport = opened;
+                sentOnConnection = 0;
+            }
+            return transport;
+        }
+
+        void sentOne() {
+            sentOnConnection++;
+        }
+
+        void close() {
+            if (transport == null) {
+                return;
+            }
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                log.debug("Closing SMTP connection failed: {}", e.getMessage());
+            }
+            transport = null;
+        }
+    }
+}
@@ -1,30 +1,17 @@
 package com.hometech.hometech.service;
 
 import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+// Soạn nội dung email; việc gửi qua SMTP do EmailOutboxWorker làm bất đồng bộ
 @Service
 public class EmailService {
 
     @Autowired
-    private JavaMailSender mailSender;
-
-    @Value("${spring.mail.username}")
-    private String fromEmail;
+    private EmailOutbox emailOutbox;
 
     public void sendVerificationEmail(String toEmail, String verificationToken) throws MessagingException {
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-        helper.setFrom(fromEmail);
-        helper.setTo(toEmail);
-        helper.setSubject("Xác thực tài khoản HomeTech");
-
         String verificationLink = "http://localhost:8080/api/auth/verify-email?token=" + verificationToken;
 
         String htmlContent = """
@@ -49,18 +36,10 @@ public class EmailService {
             </html>
             """.formatted(verificationLink);
 
-        helper.setText(htmlContent, true);
-        mailSender.send(message);
+        emailOutbox.enqueue(toEmail, "Xác thực tài khoản HomeTech", htmlContent, "VERIFICATION");
     }
 
     public void sendPasswordResetEmail(String toEmail, String resetToken) throws MessagingException {
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-        helper.setFrom(fromEmail);
-        helper.setTo(toEmail);
-        helper.setSubject("Đặt lại mật khẩu HomeTech");
-
         // Link về frontend để user có thể đặt lại mật khẩu
         String resetLink = "http://localhost:5173/reset-password?token=" + resetToken;
 
@@ -87,19 +66,6 @@ public class EmailService {
             </html>
             """.formatted(resetLink);
 
-        helper.setText(htmlContent, true);
-        mailSender.send(message);
-    }
-
-    public void sendMarketingEmail(String toEmail, String subject, String htmlContent) throws MessagingException {
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-        helper.setFrom(fromEmail);
-        helper.setTo(toEmail);
-        helper.setSubject(subject);
-        helper.setText(htmlContent, true);
-
-        mailSender.send(message);
+        emailOutbox.enqueue(toEmail, "Đặt lại mật khẩu HomeTech", htmlContent, "PASSWORD_RESET");
     }
 }
@@ -5,20 +5,25 @@ import com.hometech.hometech.model.FooterContent;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
 public class FooterContentService {
 
     private final FooterContentRepository footerContentRepository;
+    private final SiteContentSnapshot siteContentSnapshot;
 
-    public FooterContentService(FooterContentRepository footerContentRepository) {
+    public FooterContentService(FooterContentRepository footerContentRepository,
+                                SiteContentSnapshot siteContentSnapshot) {
         this.footerContentRepository = footerContentRepository;
+        this.siteContentSnapshot = siteContentSnapshot;
     }
 
+    // Footer đang hoạt động, đọc từ snapshot; chưa có thì tạo footer mặc định
     public FooterContent getActiveFooter() {
-        return footerContentRepository.findFirstByActiveTrueOrderByUpdatedAtDesc()
-                .orElseGet(this::createDefaultFooter);
+        FooterContent footer = siteContentSnapshot.getActiveFooter();
+        return footer != null ? footer : createDefaultFooter();
     }
 
     public FooterContent getById(Long id) {
@@ -61,6 +66,7 @@ public class FooterContentService {
         if (shouldActive) {
             deactivateOthers(saved.getId());
         }
+        siteContentSnapshot.invalidate();
         return saved;
     }
 
@@ -78,6 +84,7 @@ public class FooterContentService {
         footer.setActive(true);
         FooterContent saved = footerContentRepository.save(footer);
         deactivateOthers(saved.getId());
+        siteContentSnapshot.invalidate();
         return saved;
     }
 
@@ -85,12 +92,7 @@ public class FooterContentService {
         if (activeId == null) {
             return;
         }
-        footerContentRepository.findAll().stream()
-                .filter(item -> !item.getId().equals(activeId) && item.isActive())
-                .forEach(item -> {
-                    item.setActive(false);
-                    footerContentRepository.save(item);
-                });
+        footerContentRepository.deactivateOthers(activeId, LocalDateTime.now());
     }
 }
 
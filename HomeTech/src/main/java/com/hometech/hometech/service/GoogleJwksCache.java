@@ -0,0 +1,235 @@
+package com.hometech.hometech.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache public key (JWKS) của Google để verify ID token tại chỗ, không gọi mạng trên đường đăng nhập.
+ *
+ * <ul>
+ *   <li>Thời gian sống lấy từ {@code Cache-Control: max-age} của Google (thiếu thì dùng {@code defaultMaxAge}).</li>
+ *   <li>Refresh-ahead: khi đã dùng hết {@code refreshAheadRatio} thời gian sống, tải lại ở nền
+ *       và vẫn trả key cũ trong lúc chờ.</li>
+ *   <li>Single-flight: nhiều lượt đăng nhập cùng cần tải key chỉ tạo một request tới Google.</li>
+ *   <li>Gặp {@code kid} lạ (Google vừa xoay key) thì tải lại ngay, tối đa một lần mỗi {@code minRefreshInterval}.</li>
+ *   <li>Tải lại thất bại thì giữ bộ key cũ (key của Google còn hiệu lực lâu hơn max-age rất nhiều).</li>
+ * </ul>
+ */
+public class GoogleJwksCache {
+
+    private static final Logger log = LoggerFactory.getLogger(GoogleJwksCache.class);
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+    private record Snapshot(Map<String, PublicKey> keys, Instant fetchedAt, Instant refreshAt, Instant expiresAt) {
+    }
+
+    private final URI jwksUri;
+    private final OutboundGateway gateway;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final Duration defaultMaxAge;
+    private final double refreshAheadRatio;
+    private final Duration minRefreshInterval;
+    private final Executor refresher;
+
+    private volatile Snapshot snapshot;
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder fetchFailures = new LongAdder();
+    private final LongAdder backgroundRefreshes = new LongAdder();
+    private final LongAdder unknownKidRefreshes = new LongAdder();
+
+    public GoogleJwksCache(URI jwksUri, OutboundGateway gateway, ObjectMapper objectMapper, Clock clock,
+                           Duration defaultMaxAge, double refreshAheadRatio, Duration minRefreshInterval) {
+        this(jwksUri, gateway, objectMapper, clock, defaultMaxAge, refreshAheadRatio, minRefreshInterval,
+                Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "google-jwks-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    // Test truyền executor chạy đồng bộ để lượt tải "nền" xong ngay trong lời gọi
+    GoogleJwksCache(URI jwksUri, OutboundGateway gateway, ObjectMapper objectMapper, Clock clock,
+                    Duration defaultMaxAge, double refreshAheadRatio, Duration minRefreshInterval, Executor refresher) {
+        this.jwksUri = jwksUri;
+        this.gateway = gateway;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.defaultMaxAge = defaultMaxAge;
+        this.refreshAheadRatio = refreshAheadRatio;
+        this.minRefreshInterval = minRefreshInterval;
+        this.refresher = refresher;
+    }
+
+    // Trả về public key theo kid, null nếu Google không có key này
+    public PublicKey getKey(String kid) {
+        Snapshot current = snapshot;
+        Instant now = clock.instant();
+
+        if (current == null || !now.isBefore(current.expiresAt())) {
+            // Lần đầu (hoặc refresh-ahead không kịp chạy): phải chờ tải key
+            current = awaitRefresh(current, null);
+        } else if (!now.isBefore(current.refreshAt())) {
+            refreshAsync(backgroundRefreshes);
+        }
+
+        PublicKey key = current.keys().get(kid);
+        if (key == null && !now.isBefore(current.fetchedAt().plus(minRefreshInterval))) {
+            current = awaitRefresh(current, unknownKidRefreshes);
+            key = current.keys().get(kid);
+        }
+        if (key != null) {
+            hits.increment();
+        }
+        return key;
+    }
+
+    // Nạp sẵn key lúc khởi động, không chặn luồng gọi
+    public void prefetch() {
+        refreshAsync(null);
+    }
+
+    public void shutdown() {
+        if (refresher instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private Snapshot awaitRefresh(Snapshot fallback, LongAdder reason) {
+        try {
+            return refreshAsync(reason).join();
+        } catch (CompletionException e) {
+            if (fallback != null) {
+                return fallback;
+            }
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Không tải được public key của Google: " + cause.getMessage(), cause);
+        }
+    }
+
+    // Single-flight: nếu đang có lượt tải thì dùng chung kết quả
+    private CompletableFuture<Snapshot> refreshAsync(LongAdder reason) {
+        CompletableFuture<Snapshot> created = new CompletableFuture<>();
+        CompletableFuture<Snapshot> existing = inFlight.compareAndExchange(null, created);
+        if (existing != null) {
+            return existing;
+        }
+        if (reason != null) {
+            reason.increment();
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    Snapshot fresh = fetch();
+                    snapshot = fresh;
+                    created.complete(fresh);
+                } catch (Throwable e) {
+                    fetchFailures.increment();
+                    log.warn("Could not refresh Google JWKS from {}: {}", jwksUri, e.getMessage());
+                    created.completeExceptionally(e);
+                } finally {
+                    inFlight.compareAndSet(created, null);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.compareAndSet(created, null);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    private Snapshot fetch() throws Exception {
+        fetches.increment();
+        HttpRequest request = HttpRequest.newBuilder(jwksUri)
+                .timeout(gateway.getReadTimeout())
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        HttpResponse<String> response = gateway.execute(
+                () -> gateway.httpClient().send(request, HttpResponse.BodyHandlers.ofString()));
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("JWKS trả về HTTP " + response.statusCode());
+        }
+
+        Map<String, PublicKey> keys = parseKeys(objectMapper.readTree(response.body()));
+        if (keys.isEmpty()) {
+            throw new IllegalStateException("JWKS không có key RSA nào");
+        }
+
+        Duration maxAge = response.headers().firstValue("Cache-Control")
+                .map(GoogleJwksCache::parseMaxAge)
+                .orElse(defaultMaxAge);
+        Instant fetchedAt = clock.instant();
+        return new Snapshot(keys, fetchedAt,
+                fetchedAt.plusMillis((long) (maxAge.toMillis() * refreshAheadRatio)),
+                fetchedAt.plus(maxAge));
+    }
+
+    private Map<String, PublicKey> parseKeys(JsonNode root) throws Exception {
+        Map<String, PublicKey> keys = new HashMap<>();
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        for (JsonNode jwk : root.path("keys")) {
+            if (!"RSA".equals(jwk.path("kty").asText()) || !jwk.hasNonNull("kid")) {
+                continue;
+            }
+            BigInteger modulus = new BigInteger(1, decoder.decode(jwk.path("n").asText()));
+            BigInteger exponent = new BigInteger(1, decoder.decode(jwk.path("e").asText()));
+            keys.put(jwk.get("kid").asText(), keyFactory.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+        }
+        return keys;
+    }
+
+    private static Duration parseMaxAge(String cacheControl) {
+        Matcher matcher = MAX_AGE.matcher(cacheControl);
+        return matcher.find() ? Duration.ofSeconds(Long.parseLong(matcher.group(1))) : null;
+    }
+
+    public Map<String, Object> getStats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("keys", current == null ? 0 : current.keys().size());
+        stats.put("fetchedAt", current == null ? null : current.fetchedAt());
+        stats.put("refreshAt", current == null ? null : current.refreshAt());
+        stats.put("expiresAt", current == null ? null : current.expiresAt());
+        stats.put("hits", hits.sum());
+        stats.put("fetches", fetches.sum());
+        stats.put("fetchFailures", fetchFailures.sum());
+        stats.put("backgroundRefreshes", backgroundRefreshes.sum());
+        stats.put("unknownKidRefreshes", unknownKidRefreshes.sum());
+        return stats;
+    }
+}
@@ -1,31 +1,92 @@
 package com.hometech.hometech.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
-import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.security.PublicKey;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 @Service
 
 public class GoogleVerifierService {
 
-    @Value("${google.clientId}")
-    private String clientId;
+    private static final List<String> ISSUERS = List.of("accounts.google.com", "https://accounts.google.com");
+
+    // Verify chữ ký tại chỗ bằng key trong cache; đường đăng nhập không gọi mạng
+    private final String clientId;
+    private final GoogleJwksCache jwksCache;
+    private final Clock clock;
+    private final long clockSkewSeconds;
+
+    @Autowired
+    public GoogleVerifierService(@Value("${google.clientId}") String clientId,
+                                 @Value("${google.jwks.uri:https://www.googleapis.com/oauth2/v3/certs}") String jwksUri,
+                                 @Value("${google.jwks.default-max-age-seconds:3600}") long defaultMaxAgeSeconds,
+                                 @Value("${google.jwks.refresh-ahead-ratio:0.8}") double refreshAheadRatio,
+                                 @Value("${google.jwks.min-refresh-seconds:30}") long minRefreshSeconds,
+                                 @Value("${google.jwks.clock-skew-seconds:300}") long clockSkewSeconds,
+                                 OutboundGatewayRegistry gatewayRegistry,
+                                 ObjectMapper objectMapper) {
+        this(clientId,
+                new GoogleJwksCache(URI.create(jwksUri), gatewayRegistry.gateway(OutboundGatewayRegistry.GOOGLE),
+                        objectMapper, Clock.systemUTC(), Duration.ofSeconds(defaultMaxAgeSeconds), refreshAheadRatio,
+                        Duration.ofSeconds(minRefreshSeconds)),
+                Clock.systemUTC(),
+                clockSkewSeconds);
+    }
+
+    GoogleVerifierService(String clientId, GoogleJwksCache jwksCache, Clock clock, long clockSkewSeconds) {
+        this.clientId = clientId;
+        this.jwksCache = jwksCache;
+        this.clock = clock;
+        this.clockSkewSeconds = clockSkewSeconds;
+    }
+
+    // Tải key ngay khi app sẵn sàng để lượt đăng nhập đầu tiên không phải chờ
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        jwksCache.prefetch();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jwksCache.shutdown();
+    }
 
     public GoogleIdToken.Payload verifyToken(String idTokenString) throws Exception {
-        GoogleIdTokenVerifier verifier = new GoogleIdTokenVerifier.Builder(
-                GoogleNetHttpTransport.newTrustedTransport(),
-                GsonFactory.getDefaultInstance())
-                .setAudience(Collections.singletonList(clientId))
-                .build();
-
-        GoogleIdToken idToken = verifier.verify(idTokenString);
-        if (idToken != null) {
-            return idToken.getPayload();
-        } else {
+        GoogleIdToken idToken;
+        try {
+            idToken = GoogleIdToken.parse(GsonFactory.getDefaultInstance(), idTokenString);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid ID token.");
+        }
+
+        if (!"RS256".equals(idToken.getHeader().getAlgorithm())) {
             throw new IllegalArgumentException("Invalid ID token.");
         }
+        PublicKey key = jwksCache.getKey(idToken.getHeader().getKeyId());
+        if (key == null
+                || !idToken.verifySignature(key)
+                || !idToken.verifyIssuer(ISSUERS)
+                || !idToken.verifyAudience(Collections.singletonList(clientId))
+                || !idToken.verifyTime(clock.millis(), clockSkewSeconds)) {
+            throw new IllegalArgumentException("Invalid ID token.");
+        }
+        return idToken.getPayload();
+    }
+
+    public Map<String, Object> getStats() {
+        return jwksCache.getStats();
     }
 }
@@ -0,0 +1,231 @@
+package com.hometech.hometech.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hometech.hometech.enums.BannerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Dữ liệu trang chủ (banner, slider, footer, danh mục, sản phẩm bán chạy / mới / trong 7 ngày) trong một response.
+ *
+ * <p>Các phần được tải song song trên virtual thread, mỗi phần trong transaction riêng và chuyển sang JSON
+ * ngay trong transaction đó (tránh lazy loading sau khi đóng session). Payload đã ghép được cache dạng byte
+ * trong {@code home.cache.ttl-seconds}; khi hết hạn chỉ một luồng dựng lại, các request khác vẫn nhận bản cũ.
+ * Thao tác admin làm thay đổi trang chủ gọi {@link #invalidate()}, sau đó request đầu tiên chờ bản mới.
+ */
+@Service
+public class HomePageService {
+
+    private static final Logger log = LoggerFactory.getLogger(HomePageService.class);
+
+    private final BannerService bannerService;
+    private final FooterContentService footerContentService;
+    private final CategoryDirectory categoryDirectory;
+    private final ProductService productService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final long ttlNanos;
+    private final long timeoutMillis;
+    private final int newestLimit;
+
+    // Body kèm ETag yếu (băm một lần lúc dựng, yếu để Tomcat vẫn nén gzip) để controller trả 304 mà không cần so body
+    public record Page(byte[] body, String etag) {
+    }
+
+    private record Cached(Page page, long builtAtNanos) {
+    }
+
+    // Lần dựng đang chạy, gắn với thế hệ dữ liệu lúc bắt đầu
+    private record Build(long generation, CompletableFuture<Cached> result) {
+    }
+
+    private volatile Cached cached;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicReference<Build> inFlight = new AtomicReference<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder buildFailures = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile long lastBuildMillis;
+
+    public HomePageService(BannerService bannerService,
+                           FooterContentService footerContentService,
+                           CategoryDirectory categoryDirectory,
+                           ProductService productService,
+                           ObjectMapper objectMapper,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${home.cache.ttl-seconds:30}") long ttlSeconds,
+                           @Value("${home.build.timeout-ms:3000}") long timeoutMillis,
+                           @Value("${home.newest-limit:12}") int newestLimit) {
+        this.bannerService = bannerService;
+        this.footerContentService = footerContentService;
+        this.categoryDirectory = categoryDirectory;
+        this.productService = productService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.timeoutMillis = timeoutMillis;
+        this.newestLimit = newestLimit;
+    }
+
+    // Body JSON hoàn chỉnh ({success, message, data}) để controller trả thẳng
+    public byte[] getHomePage() {
+        return getPage().body();
+    }
+
+    public Page getPage() {
+        Cached current = cached;
+        if (current != null && System.nanoTime() - current.builtAtNanos() < ttlNanos) {
+            hits.increment();
+            return current.page();
+        }
+        CompletableFuture<Cached> build = startBuild();
+        if (current != null) {
+            // Hết hạn theo TTL: trả bản cũ, lần dựng mới chạy nền
+            staleHits.increment();
+            return current.page();
+        }
+        try {
+            return build.get(timeoutMillis, TimeUnit.MILLISECONDS).page();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Không tải được dữ liệu trang chủ");
+        } catch (ExecutionException | TimeoutException e) {
+            throw new RuntimeException("Không tải được dữ liệu trang chủ");
+        }
+    }
+
+    // Gọi sau khi banner, footer, danh mục hoặc sản phẩm được admin sửa
+    public void invalidate() {
+        invalidations.increment();
+        generation.incrementAndGet();
+        cached = null;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Cached current = cached;
+        stats.put("cached", current != null);
+        stats.put("ageMillis", current == null ? null : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - current.builtAtNanos()));
+        stats.put("sizeBytes", current == null ? 0 : current.page().body().length);
+        stats.put("hits", hits.sum());
+        stats.put("staleHits", staleHits.sum());
+        stats.put("builds", builds.sum());
+        stats.put("buildFailures", buildFailures.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("lastBuildMillis", lastBuildMillis);
+        return stats;
+    }
+
+    // Mỗi thế hệ dữ liệu chỉ có một lần dựng; request đến cùng lúc dùng chung kết quả
+    private CompletableFuture<Cached> startBuild() {
+        while (true) {
+            long currentGeneration = generation.get();
+            Build running = inFlight.get();
+            if (running != null && running.generation() == currentGeneration) {
+                return running.result();
+            }
+            Build build = new Build(currentGeneration, new CompletableFuture<>());
+            if (inFlight.compareAndSet(running, build)) {
+                Thread.ofVirtual().name("home-page-build").start(() -> runBuild(build));
+                return build.result();
+            }
+        }
+    }
+
+    private void runBuild(Build build) {
+        long started = System.nanoTime();
+        try {
+            byte[] body = assemble();
+            Cached built = new Cached(new Page(body, "W/\"" + DigestUtils.md5DigestAsHex(body) + "\""), System.nanoTime());
+            // Bị invalidate trong lúc dựng: vẫn trả cho request đang chờ nhưng không lưu cache
+            if (generation.get() == build.generation()) {
+                cached = built;
+            }
+            builds.increment();
+            lastBuildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            build.result().complete(built);
+        } catch (RuntimeException e) {
+            buildFailures.increment();
+            log.error("Failed to build home page payload", e);
+            build.result().completeExceptionally(e);
+        } finally {
+            inFlight.compareAndSet(build, null);
+        }
+    }
+
+    private byte[] assemble() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<JsonNode> banners = executor.submit(() -> section(() -> bannerService.getActiveBanners(BannerType.BANNER)));
+            Future<JsonNode> sliders = executor.submit(() -> section(() -> bannerService.getActiveBanners(BannerType.SLIDER)));
+            Future<JsonNode> footer = executor.submit(() -> section(footerContentService::getActiveFooter));
+            Future<JsonNode> topSelling = executor.submit(() -> section(productService::getTop10BestSellingProducts));
+            Future<JsonNode> newest = executor.submit(() -> section(() -> productService.getNewestActive(newestLimit)));
+            Future<JsonNode> newThisWeek = executor.submit(() -> section(productService::getProductsAddedInLast7Days));
+
+            ObjectNode data = objectMapper.createObjectNode();
+            // Danh mục đã có sẵn trong bộ nhớ, không cần luồng riêng
+            data.set("categories", objectMapper.valueToTree(categoryDirectory.getAll()));
+            data.set("banners", await(banners, deadline));
+            data.set("sliders", await(sliders, deadline));
+            data.set("footer", await(footer, deadline));
+            data.set("topSelling", await(topSelling, deadline));
+            data.set("newest", await(newest, deadline));
+            data.set("newThisWeek", await(newThisWeek, deadline));
+
+            ObjectNode payload = objectMapper.createObjectNode();
+            payload.put("success", true);
+            payload.put("message", "Lấy dữ liệu trang chủ thành công");
+            payload.set("data", data);
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Không tải được dữ liệu trang chủ", e);
+        } finally {
+            // Một phần lỗi/quá hạn thì hủy các phần còn lại thay vì chờ chúng xong
+            executor.shutdownNow();
+        }
+    }
+
+    private JsonNode section(Supplier<Object> loader) {
+        return transactionTemplate.execute(status -> objectMapper.valueToTree(loader.get()));
+    }
+
+    private static JsonNode await(Future<JsonNode> future, long deadlineNanos) {
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Bị gián đoạn khi tải dữ liệu trang chủ", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Lỗi khi tải dữ liệu trang chủ", e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Quá thời gian tải dữ liệu trang chủ", e);
+        }
+    }
+}
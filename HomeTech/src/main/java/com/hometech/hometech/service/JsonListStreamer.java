@@ -0,0 +1,118 @@
+package com.hometech.hometech.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Ghi danh sách lớn ra response theo từng lô thay vì nạp hết vào một {@code List} rồi mới serialize.
+ *
+ * <p>Body có cùng dạng với {@code buildResponse} của controller ({success, message, data[, error]}), nhưng
+ * {@code data} được ghi thẳng bằng {@link JsonGenerator} lên output stream của servlet: mỗi lô
+ * {@code json.stream.chunk-size} phần tử được đọc theo keyset id trong một transaction chỉ đọc, ghi ra,
+ * rồi xóa khỏi persistence context (kể cả EntityManager của open-in-view). Bộ nhớ giữ lại chỉ còn một lô và
+ * client nhận những byte đầu tiên ngay sau lô đầu.
+ *
+ * <p>Response đã bắt đầu ghi thì không đổi được status: lỗi giữa chừng làm body bị cắt và được log ở tầng trên.
+ * Khi lỗi, generator không được đóng (và không tự đóng mảng/đối tượng JSON), nên body luôn là JSON dở dang
+ * thay vì một danh sách ngắn trông như hợp lệ; nếu chưa byte nào rời buffer thì tầng trên vẫn trả được 500.
+ */
+@Service
+public class JsonListStreamer {
+
+    // Một lô các phần tử có id lớn hơn afterId, sắp theo id tăng dần
+    @FunctionalInterface
+    public interface PageLoader<T> {
+        List<T> load(long afterId, int limit);
+    }
+
+    private final ObjectMapper objectMapper;
+    // Không flush sau mỗi phần tử: để Jackson/Tomcat tự gom buffer
+    private final ObjectWriter itemWriter;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int chunkSize;
+
+    public JsonListStreamer(ObjectMapper objectMapper,
+                            EntityManager entityManager,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${json.stream.chunk-size:200}") int chunkSize) {
+        this.objectMapper = objectMapper;
+        this.itemWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    // withErrorField: controller dùng dạng {success, message, data, error} thì ghi thêm "error": null
+    public <T> void write(HttpServletResponse response,
+                          String message,
+                          boolean withErrorField,
+                          PageLoader<T> loader,
+                          ToLongFunction<T> idOf) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        JsonGenerator generator = objectMapper.getFactory()
+                .createGenerator(response.getOutputStream(), JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        boolean complete = false;
+        try {
+            generator.writeStartObject();
+            generator.writeBooleanField("success", true);
+            generator.writeStringField("message", message);
+            generator.writeArrayFieldStart("data");
+            long afterId = 0;
+            while (afterId >= 0) {
+                long from = afterId;
+                afterId = readOnlyTransaction.execute(status -> writeChunk(generator, loader.load(from, chunkSize), idOf));
+            }
+            generator.writeEndArray();
+            if (withErrorField) {
+                generator.writeNullField("error");
+            }
+            generator.writeEndObject();
+            complete = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            // Chỉ đóng (flush phần còn lại) khi đã ghi đủ body; servlet container tự đóng output stream
+            if (complete) {
+                generator.close();
+            }
+        }
+    }
+
+    // Trả về id cuối của lô, hoặc -1 nếu đây là lô cuối
+    private <T> long writeChunk(JsonGenerator generator, List<T> items, ToLongFunction<T> idOf) {
+        try {
+            for (T item : items) {
+                itemWriter.writeValue(generator, item);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long lastId = items.isEmpty() ? -1 : idOf.applyAsLong(items.get(items.size() - 1));
+        // Lô đã ghi xong: bỏ khỏi persistence context để lô sau không cộng dồn
+        entityManager.clear();
+        return items.size() < chunkSize ? -1 : lastId;
+    }
+}
@@ -1,56 +1,42 @@
 package com.hometech.hometech.service;
 
-import com.hometech.hometech.Repository.UserRepository;
-import com.hometech.hometech.enums.RoleType;
-import com.hometech.hometech.model.User;
-import jakarta.mail.MessagingException;
+import com.hometech.hometech.model.EmailCampaign;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+// Chỉ MarketingController (lazy) dùng nên cũng được tạo khi cần
+@Lazy
 @Service
 public class MarketingService {
 
-    private final UserRepository userRepository;
-    private final EmailService emailService;
+    private final AudienceService audienceService;
+    private final EmailOutbox emailOutbox;
 
-    public MarketingService(UserRepository userRepository, EmailService emailService) {
-        this.userRepository = userRepository;
-        this.emailService = emailService;
+    public MarketingService(AudienceService audienceService, EmailOutbox emailOutbox) {
+        this.audienceService = audienceService;
+        this.emailOutbox = emailOutbox;
     }
 
-    public BroadcastResult broadcastEmailToCustomers(String subject, String htmlContent) {
-        List<User> users = userRepository.findAll();
-        long eligible = 0;
-        long sent = 0;
-        List<String> failed = new ArrayList<>();
-
-        for (User user : users) {
-            if (user == null || user.getAccount() == null) continue;
-            if (!RoleType.USER.equals(user.getAccount().getRole())) continue;
-            if (!user.getAccount().isEnabled()) continue;
-
-            String email = user.getAccount().getEmail();
-            if (email == null || email.isBlank()) continue;
-
-            eligible++;
-            try {
-                emailService.sendMarketingEmail(email, subject, htmlContent);
-                sent++;
-            } catch (MessagingException ex) {
-                failed.add(email);
-                System.err.println("❌ Failed to send marketing email to " + email + ": " + ex.getMessage());
-            }
-        }
-
-        return new BroadcastResult(eligible, sent, failed);
+    // Chỉ ghi campaign + outbox rồi trả về ngay; worker gửi dần theo giới hạn tốc độ SMTP
+    public BroadcastResult broadcastEmailToCustomers(String subject, String htmlContent, String createdBy,
+                                                     AudienceService.Segment segment) {
+        AudienceService.RecipientList audience = audienceService.materialize(segment);
+        List<String> recipients = audienceService.resolveEmails(audience);
+        EmailCampaign campaign = emailOutbox.createCampaign(subject, htmlContent, recipients, createdBy);
+        return new BroadcastResult(campaign.getId(), audience.size(), campaign.getRecipientCount());
     }
 
-    public record BroadcastResult(long eligible, long sent, List<String> failedRecipients) {
-        public long failedCount() {
-            return failedRecipients != null ? failedRecipients.size() : 0;
-        }
+    public long previewSegment(AudienceService.Segment segment) {
+        return audienceService.preview(segment);
+    }
+
+    public Map<String, Object> getCampaignProgress(Long campaignId) {
+        return emailOutbox.getCampaignProgress(campaignId);
     }
-}
 
+    public record BroadcastResult(Long campaignId, long eligible, long queued) {
+    }
+}
@@ -3,18 +3,26 @@ package com.hometech.hometech.service;
 import com.hometech.hometech.Repository.AdminRepository;
 import com.hometech.hometech.Repository.NotifyRepository;
 import com.hometech.hometech.Repository.UserRepository;
-import com.hometech.hometech.enums.RoleType;
 import com.hometech.hometech.model.Admin;
 import com.hometech.hometech.model.Notify;
 import com.hometech.hometech.model.User;
+import jakarta.annotation.PreDestroy;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 public class NotifyService {
@@ -23,15 +31,30 @@ public class NotifyService {
     private final UserRepository userRepository;
     private final SimpMessagingTemplate messagingTemplate;
     private final AdminRepository adminRepository;
+    private final AudienceService audienceService;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final int BROADCAST_CHUNK = 500;
+
+    // Thông báo phụ của thao tác khác (thêm vào giỏ...), chạy sau commit của thao tác đó
+    private final ExecutorService afterCommitSender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notify-after-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public NotifyService(NotifyRepository notifyRepository,
                         UserRepository userRepository,
                         SimpMessagingTemplate messagingTemplate,
-                        AdminRepository adminRepository) {
+                        AdminRepository adminRepository,
+                        AudienceService audienceService,
+                        PlatformTransactionManager transactionManager) {
         this.notifyRepository = notifyRepository;
         this.userRepository = userRepository;
         this.messagingTemplate = messagingTemplate;
         this.adminRepository = adminRepository;
+        this.audienceService = audienceService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
@@ -59,6 +82,26 @@ public class NotifyService {
         return saved;
     }
 
+    /**
+     * Create and send a notification after the current transaction commits, on a background thread.
+     * A rolled back operation sends nothing; a slow or failing notification never delays or rolls back the caller.
+     */
+    public void createNotificationAfterCommit(Long userId, String message, String type, Long relatedId) {
+        Runnable send = () -> {
+            try {
+                createNotification(userId, message, type, relatedId);
+            } catch (Exception e) {
+                System.err.println("❌ Failed to send " + type + " notification: " + e.getMessage());
+            }
+        };
+        runAfterCommit(() -> afterCommitSender.execute(send));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        afterCommitSender.shutdown();
+    }
+
     /**
      * Broadcast a notification to all admins
      */
@@ -84,28 +127,73 @@ public class NotifyService {
      *
      * @return number of users received the notification
      */
-    @Transactional
     public long broadcastToCustomers(String message, String type, Long relatedId) {
-        List<User> users = userRepository.findAll();
-        long sentCount = 0;
+        return broadcastToCustomers(message, type, relatedId, AudienceService.Segment.ALL_CUSTOMERS);
+    }
+
+    /**
+     * Broadcast notification to the active customers matching a marketing segment
+     *
+     * @return number of users received the notification
+     */
+    public long broadcastToCustomers(String message, String type, Long relatedId, AudienceService.Segment segment) {
+        return broadcastToCustomers(message, type, relatedId, audienceService.materialize(segment));
+    }
 
-        for (User user : users) {
-            if (user == null || user.getAccount() == null) continue;
-            boolean isCustomer = RoleType.USER.equals(user.getAccount().getRole());
-            boolean isEnabled = user.getAccount().isEnabled();
-            if (!isCustomer || !isEnabled) continue;
+    /**
+     * Broadcast notification to a pre-computed audience (user ids from {@link AudienceService}).
+     * Each chunk of {@value #BROADCAST_CHUNK} rows is saved in its own transaction, so the persistence context and
+     * the transaction stay small, and is pushed via WebSocket only after that chunk commits. If a chunk fails,
+     * the chunks before it stay saved and sent.
+     *
+     * @return number of users received the notification
+     */
+    public long broadcastToCustomers(String message, String type, Long relatedId, AudienceService.RecipientList recipients) {
+        LocalDateTime now = LocalDateTime.now();
+        long[] userIds = recipients.userIds();
+        long sentCount = 0;
 
-            try {
-                createNotification(user.getId(), message, type, relatedId);
-                sentCount++;
-            } catch (Exception ex) {
-                System.err.println("❌ Failed to notify user #" + user.getId() + ": " + ex.getMessage());
+        for (int from = 0; from < userIds.length; from += BROADCAST_CHUNK) {
+            long[] chunk = Arrays.copyOfRange(userIds, from, Math.min(userIds.length, from + BROADCAST_CHUNK));
+            List<Notify> saved = transactionTemplate.execute(status -> saveChunk(chunk, message, type, relatedId, now));
+            for (Notify notification : saved) {
+                sendRealtimeNotification(notification.getUser().getId(), notification);
             }
+            sentCount += saved.size();
         }
 
         return sentCount;
     }
 
+    private List<Notify> saveChunk(long[] userIds, String message, String type, Long relatedId, LocalDateTime now) {
+        List<Notify> chunk = new ArrayList<>(userIds.length);
+        for (long userId : userIds) {
+            // Chỉ cần khóa ngoại, không nạp User
+            Notify notification = new Notify();
+            notification.setUser(userRepository.getReferenceById(userId));
+            notification.setMessage(message);
+            notification.setType(type);
+            notification.setRelatedId(relatedId);
+            notification.setRead(false);
+            notification.setCreatedAt(now);
+            chunk.add(notification);
+        }
+        return notifyRepository.saveAll(chunk);
+    }
+
+    private static void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     /**
      * Send real-time notification to specific user via WebSocket
      */
@@ -27,10 +27,13 @@ public class OAuth2UserService extends DefaultOAuth2UserService {
 
     private final UserRepository userRepository;
     private final AccountRepository accountRepository;
+    private final AccountIdentityService accountIdentityService;
 
-    public OAuth2UserService(UserRepository userRepository, AccountRepository accountRepository) {
+    public OAuth2UserService(UserRepository userRepository, AccountRepository accountRepository,
+                             AccountIdentityService accountIdentityService) {
         this.userRepository = userRepository;
         this.accountRepository = accountRepository;
+        this.accountIdentityService = accountIdentityService;
     }
 
     @Override
@@ -127,6 +130,7 @@ public class OAuth2UserService extends DefaultOAuth2UserService {
             account.setEmailVerified(true);
             account.setUpdatedAt(LocalDateTime.now());
             accountRepository.save(account);
+            accountIdentityService.invalidate(account.getId());
         }
 
         // ✅ In ra để xác nhận
@@ -4,6 +4,7 @@ import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -12,7 +13,9 @@ import com.hometech.hometech.dto.PreviewOrderResponse;
 import com.hometech.hometech.enums.OrderStatus;
 import com.hometech.hometech.enums.PaymentMethod;
 import com.hometech.hometech.model.*;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class OrderService {
@@ -30,6 +33,11 @@ public class OrderService {
     private final ProductRepository productRepository;
     private final ProductVariantRepository productVariantRepository;
     private final PayOsService payOsService;
+    private final CartSessionStore cartSessionStore;
+    private final VoucherRedemptionService voucherRedemptionService;
+    private final VoucherRulesCache voucherRulesCache;
+    private final PricingEngine pricingEngine;
+    private final CategoryDirectory categoryDirectory;
 
 
     public OrderService(OrderRepository orderRepo, OrderItemRepository orderItemRepo,
@@ -40,7 +48,12 @@ public class OrderService {
                         PaymentRepository paymentRepository,
                         ProductRepository productRepository,
                         ProductVariantRepository productVariantRepository,
-                        PayOsService payOsService) {
+                        PayOsService payOsService,
+                        CartSessionStore cartSessionStore,
+                        VoucherRedemptionService voucherRedemptionService,
+                        VoucherRulesCache voucherRulesCache,
+                        PricingEngine pricingEngine,
+                        CategoryDirectory categoryDirectory) {
         this.orderRepo = orderRepo;
         this.orderItemRepo = orderItemRepo;
         this.cartRepo = cartRepo;
@@ -52,6 +65,11 @@ public class OrderService {
         this.productRepository = productRepository;
         this.productVariantRepository = productVariantRepository;
         this.payOsService = payOsService;
+        this.cartSessionStore = cartSessionStore;
+        this.voucherRedemptionService = voucherRedemptionService;
+        this.voucherRulesCache = voucherRulesCache;
+        this.pricingEngine = pricingEngine;
+        this.categoryDirectory = categoryDirectory;
     }
 
     // 🟢 Tạo đơn hàng từ giỏ hàng của user cụ thể
@@ -84,14 +102,16 @@ public class OrderService {
                 throw new RuntimeException("Customer cart not found");
             }
 
+            // Ghi các thay đổi giỏ còn chờ (write-behind) trước khi đọc giỏ
+            cartSessionStore.flush(customer.getId());
             cartItems = cartRepo.findByCart(customer.getCart());
             if (cartItems.isEmpty()) {
                 throw new RuntimeException("Giỏ hàng trống!");
             }
         }
 
-        // (4) Tính tổng
-        double subtotal = 0;
+        // (4) Tính tổng (VND nguyên, qua PricingEngine)
+        PricingEngine.CartSnapshot pricing = new PricingEngine.CartSnapshot(isBuyNow ? 1 : cartItems.size());
         List<OrderItem> orderItems = new ArrayList<>();
 
         List<Product> productsToUpdate = new ArrayList<>();
@@ -101,18 +121,14 @@ public class OrderService {
             Product product = productRepository.findById(productId)
                     .orElseThrow(() -> new RuntimeException("Sản phẩm không tồn tại."));
 
-            int purchaseQuantity = (quantity != null && quantity > 0) ? quantity : 1;
-            if (purchaseQuantity <= 0) {
-                throw new RuntimeException("Số lượng sản phẩm phải lớn hơn 0");
-            }
+            int purchaseQuantity = buyNowQuantity(quantity);
 
             if (product.getStock() < purchaseQuantity) {
                 throw new RuntimeException(String.format("Sản phẩm %s chỉ còn %d sản phẩm trong kho.",
                         product.getName(), product.getStock()));
             }
 
-            double itemTotal = product.getPrice() * purchaseQuantity;
-            subtotal += itemTotal;
+            pricing.add(product.getPrice(), purchaseQuantity);
 
             OrderItem oi = new OrderItem();
             oi.setProduct(product);
@@ -133,6 +149,7 @@ public class OrderService {
                 Product product = productRepository.findById(c.getProduct().getId())
                         .orElseThrow(() -> new RuntimeException("Sản phẩm trong giỏ không còn tồn tại."));
 
+                checkCartLineQuantity(c);
                 ProductVariant variant = c.getVariant();
                 
                 // Kiểm tra stock: nếu có variant thì kiểm tra stock của variant, nếu không thì kiểm tra stock của product
@@ -150,8 +167,7 @@ public class OrderService {
                     }
                 }
 
-                double itemTotal = product.getPrice() * c.getQuantity();
-                subtotal += itemTotal;
+                pricing.add(product.getPrice(), c.getQuantity());
 
                 OrderItem oi = new OrderItem();
                 oi.setProduct(product);
@@ -180,12 +196,12 @@ public class OrderService {
 
         // (5) Áp dụng voucher nếu có
         Voucher voucher = null;
-        double discount = 0;
-        double finalTotal = subtotal;
+        VoucherRedemption redemption = null;
+        PricingEngine.Discount voucherDiscount = PricingEngine.Discount.NONE;
 
         if (code != null && !code.isBlank()) {
 
-            voucher = voucherRepo.findByCode(code)
+            voucher = voucherRepo.findByCode(VoucherRulesCache.normalizeCode(code))
                     .orElseThrow(() -> new RuntimeException("Voucher không tồn tại"));
 
             // Check status
@@ -196,66 +212,72 @@ public class OrderService {
             if (now.isBefore(voucher.getStartDate()) || now.isAfter(voucher.getEndDate()))
                 throw new RuntimeException("Voucher đã hết hạn");
 
-            if (subtotal < voucher.getMinOrderValue())
-                throw new RuntimeException("Đơn hàng chưa đủ điều kiện áp dụng voucher");
-
-            if (voucher.getUsedCount() >= voucher.getUsageLimit())
-                throw new RuntimeException("Voucher đã đạt số lần sử dụng tối đa");
-
-            // Tính giảm
-            if (voucher.getDiscountPercent() != null)
-                discount += subtotal * (voucher.getDiscountPercent() / 100);
-
-            if (voucher.getDiscountAmount() != null)
-                discount += voucher.getDiscountAmount();
+            voucherDiscount = PricingEngine.Discount.of(voucher.getDiscountPercent(), voucher.getDiscountAmount());
+        }
 
-            // Không vượt tổng
-            discount = Math.min(discount, subtotal);
+        PricingEngine.Quote quote = pricingEngine.quote(pricing, voucherDiscount);
+        long subtotal = quote.subtotal();
+        long discount = quote.discount();
+        long finalTotal = quote.total();
 
-            finalTotal = subtotal - discount;
+        if (voucher != null) {
+            if (voucher.getMinOrderValue() != null && subtotal < PricingEngine.toVnd(voucher.getMinOrderValue()))
+                throw new RuntimeException("Đơn hàng chưa đủ điều kiện áp dụng voucher");
 
-            // Update số lần dùng
-            voucher.setUsedCount(voucher.getUsedCount() + 1);
-            voucherRepo.save(voucher);
+            // Giữ lượt dùng bằng UPDATE có điều kiện (không over-redeem khi checkout song song)
+            redemption = voucherRedemptionService.redeem(voucher, customer.getId());
         }
 
         // (6) Tạo Order
         Order order = new Order();
-        order.setCustomer(customer);
-        order.setOrderInfo(orderInfo);
-        order.setTotalAmount(finalTotal);
-        order.setStatus(OrderStatus.WAITING_CONFIRMATION);
-        order.setCreatedAt(LocalDateTime.now());
-        order.setVoucher(voucher);   // ⬅ ⬅ Gắn voucher vào Order
-        PaymentMethod finalPaymentMethod = paymentMethod != null ? paymentMethod : PaymentMethod.COD;
-        System.out.println("🔍 OrderService.createOrder - setting paymentMethod: " + finalPaymentMethod);
-        System.out.println("🔍 OrderService.createOrder - paymentMethod == PAYOS? " + (finalPaymentMethod == PaymentMethod.PAYOS));
-        order.setPaymentMethod(finalPaymentMethod);
-        order.setItems(orderItems);
-        order.setVoucherCodeSnapshot(voucher != null ? voucher.getCode() : null);
-        order.setDiscountAmount(discount);
-
-        orderItems.forEach(i -> i.setOrder(order));
-
-        // (7) Lưu DB
-        orderRepo.save(order);
-        orderItemRepo.saveAll(orderItems);
-        productRepository.saveAll(productsToUpdate);
-        if (!variantsToUpdate.isEmpty()) {
-            productVariantRepository.saveAll(variantsToUpdate);
-        }
+        try {
+            order.setCustomer(customer);
+            order.setOrderInfo(orderInfo);
+            order.setTotalAmount(finalTotal);
+            order.setStatus(OrderStatus.WAITING_CONFIRMATION);
+            order.setCreatedAt(LocalDateTime.now());
+            order.setVoucher(voucher);   // ⬅ ⬅ Gắn voucher vào Order
+            PaymentMethod finalPaymentMethod = paymentMethod != null ? paymentMethod : PaymentMethod.COD;
+            System.out.println("🔍 OrderService.createOrder - setting paymentMethod: " + finalPaymentMethod);
+            System.out.println("🔍 OrderService.createOrder - paymentMethod == PAYOS? " + (finalPaymentMethod == PaymentMethod.PAYOS));
+            order.setPaymentMethod(finalPaymentMethod);
+            order.setItems(orderItems);
+            order.setVoucherCodeSnapshot(voucher != null ? voucher.getCode() : null);
+            order.setDiscountAmount((double) discount);
+
+            orderItems.forEach(i -> i.setOrder(order));
+
+            // (7) Lưu DB
+            orderRepo.save(order);
+            orderItemRepo.saveAll(orderItems);
+            productRepository.saveAll(productsToUpdate);
+            categoryDirectory.productsChanged(productsToUpdate);
+            if (!variantsToUpdate.isEmpty()) {
+                productVariantRepository.saveAll(variantsToUpdate);
+            }
 
-        Payment payment = order.getPayment();
-        if (payment == null) {
-            payment = new Payment();
+            Payment payment = order.getPayment();
+            if (payment == null) {
+                payment = new Payment();
+            }
+            payment.setOrder(order);
+            payment.setAmount(finalTotal);
+            PaymentMethod method = paymentMethod != null ? paymentMethod : PaymentMethod.COD;
+            payment.setMethod(method.name());
+            payment.setStatus(method == PaymentMethod.COD ? "PENDING" : "AWAITING_PAYMENT");
+            paymentRepository.save(payment);
+            order.setPayment(payment);
+
+            if (redemption != null) {
+                voucherRedemptionService.attachOrder(redemption, order.getId());
+            }
+        } catch (RuntimeException e) {
+            // Tạo đơn thất bại -> trả lại lượt voucher đã giữ
+            if (redemption != null) {
+                voucherRedemptionService.release(redemption);
+            }
+            throw e;
         }
-        payment.setOrder(order);
-        payment.setAmount(finalTotal);
-        PaymentMethod method = paymentMethod != null ? paymentMethod : PaymentMethod.COD;
-        payment.setMethod(method.name());
-        payment.setStatus(method == PaymentMethod.COD ? "PENDING" : "AWAITING_PAYMENT");
-        paymentRepository.save(payment);
-        order.setPayment(payment);
 
         int earnedPoints = (int) (finalTotal / 10_000);
         if (earnedPoints > 0) {
@@ -280,68 +302,87 @@ public class OrderService {
         // (8) Xóa cart sau khi tạo đơn (chỉ áp dụng cho đặt hàng từ giỏ)
         if (!isBuyNow && !cartItems.isEmpty()) {
             cartRepo.deleteAll(cartItems);
+            cartSessionStore.discard(customer.getId());
         }
 
         return order;
     }
 
+    // Mua ngay: không truyền số lượng thì mua 1; số lượng <= 0 bị từ chối (controller trả 400)
+    private static int buyNowQuantity(Integer quantity) {
+        if (quantity == null) {
+            return 1;
+        }
+        if (quantity <= 0) {
+            throw new RuntimeException("Số lượng sản phẩm phải lớn hơn 0");
+        }
+        return quantity;
+    }
+
+    // Dòng giỏ hỏng (số lượng <= 0) báo lỗi nghiệp vụ thay vì để PricingEngine ném IllegalArgumentException
+    private static void checkCartLineQuantity(CartItem item) {
+        if (item.getQuantity() <= 0) {
+            throw new RuntimeException(String.format("Số lượng sản phẩm %s trong giỏ không hợp lệ",
+                    item.getProduct().getName()));
+        }
+    }
+
     public PreviewOrderResponse previewOrder(Long userId, String voucherCode, Long productId, Integer quantity) {
         Customer customer = customerRepo.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy user"));
 
         boolean isBuyNow = productId != null;
 
-        double subtotal;
+        PricingEngine.CartSnapshot pricing = new PricingEngine.CartSnapshot();
 
         if (isBuyNow) {
             Product product = productRepository.findById(productId)
                     .orElseThrow(() -> new RuntimeException("Sản phẩm không tồn tại"));
 
-            int purchaseQuantity = (quantity != null && quantity > 0) ? quantity : 1;
-            if (purchaseQuantity <= 0) {
-                throw new RuntimeException("Số lượng sản phẩm phải lớn hơn 0");
-            }
+            int purchaseQuantity = buyNowQuantity(quantity);
 
             if (product.getStock() < purchaseQuantity) {
                 throw new RuntimeException(String.format("Sản phẩm %s chỉ còn %d sản phẩm trong kho.",
                         product.getName(), product.getStock()));
             }
 
-            subtotal = product.getPrice() * purchaseQuantity;
+            pricing.add(product.getPrice(), purchaseQuantity);
         } else {
+            cartSessionStore.flush(customer.getId());
             List<CartItem> cartItems = cartRepo.findByCart(customer.getCart());
             // if (cartItems.isEmpty()) {
             //     throw new RuntimeException("Giỏ hàng trống");
             // }
 
-            subtotal = cartItems.stream()
-                    .mapToDouble(c -> c.getProduct().getPrice() * c.getQuantity())
-                    .sum();
+            for (CartItem c : cartItems) {
+                checkCartLineQuantity(c);
+                pricing.add(c.getProduct().getPrice(), c.getQuantity());
+            }
         }
 
-        double discount = 0;
+        long subtotal = pricingEngine.quote(pricing).subtotal();
+        long discount = 0;
         boolean voucherValid = false;
         String message = "Không sử dụng voucher";
 
         if (voucherCode != null && !voucherCode.isBlank()) {
-            try {
-                Voucher voucher = voucherRepo.findByCode(voucherCode)
-                        .orElseThrow(() -> new RuntimeException("Voucher không hợp lệ"));
-
-                validateVoucher(voucher, subtotal);
-                discount = calculateDiscount(subtotal, voucher);
-
+            // Luật voucher đọc từ cache, không truy vấn DB
+            VoucherRulesCache.VoucherRule rule = voucherRulesCache.find(voucherCode);
+            String rejectReason = rule == null
+                    ? "Voucher không hợp lệ"
+                    : rule.rejectReason(subtotal, LocalDateTime.now());
+
+            if (rejectReason == null) {
+                discount = rule.discountFor(subtotal);
                 voucherValid = true;
                 message = "Áp dụng voucher thành công";
-
-            } catch (RuntimeException e) {
+            } else {
                 voucherValid = false;
-                message = e.getMessage();
+                message = rejectReason;
             }
         }
 
-        double finalTotal = subtotal - discount;
-        if (finalTotal < 0) finalTotal = 0;
+        long finalTotal = subtotal - discount;
 
         return new PreviewOrderResponse(
                 subtotal,
@@ -351,26 +392,6 @@ public class OrderService {
                 message
         );
     }
-    private void validateVoucher(Voucher voucher, double subtotal) {
-        if (!voucher.isActive()) throw new RuntimeException("Voucher không còn hiệu lực");
-        if (voucher.getUsageLimit() != null &&
-                voucher.getUsedCount() >= voucher.getUsageLimit())
-            throw new RuntimeException("Voucher đã hết lượt sử dụng");
-        if (subtotal < voucher.getMinOrderValue())
-            throw new RuntimeException("Đơn hàng chưa đạt giá trị tối thiểu");
-        if (voucher.getStartDate().isAfter(LocalDateTime.now()) ||
-                voucher.getEndDate().isBefore(LocalDateTime.now()))
-            throw new RuntimeException("Voucher đã hết hạn");
-    }
-    private double calculateDiscount(double subtotal, Voucher voucher) {
-        if (voucher.getDiscountPercent() != null) {
-            return subtotal * voucher.getDiscountPercent() / 100;
-        }
-        if (voucher.getDiscountAmount() != null) {
-            return voucher.getDiscountAmount();
-        }
-        return 0;
-    }
 
 
 
@@ -384,6 +405,10 @@ public class OrderService {
         order.setStatus(newStatus);
         Order savedOrder = orderRepo.save(order);
 
+        if (newStatus == OrderStatus.CANCELLED && oldStatus != OrderStatus.CANCELLED) {
+            voucherRedemptionService.releaseForOrder(orderId);
+        }
+
         // 🔔 Thông báo khi trạng thái thay đổi
         if (oldStatus != newStatus && order.getCustomer() != null ) {
             try {
@@ -427,6 +452,12 @@ public class OrderService {
         return orderRepo.findAll();
     }
 
+    // Một trang đơn (kèm item) theo keyset id, dùng khi stream toàn bộ đơn cho admin
+    public List<Order> getPageAfter(long afterId, int limit) {
+        List<Long> ids = orderRepo.findIdsAfter(afterId, PageRequest.of(0, limit));
+        return ids.isEmpty() ? List.of() : orderRepo.findWithItemsByIdIn(ids);
+    }
+
     public List<Order> getOrdersByUserId(Long userId) {
         Customer customer = customerRepo.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Customer not found"));
@@ -474,6 +505,8 @@ public class OrderService {
 
         // Hoàn trả tồn kho trước khi hủy đơn
         restoreStockFromCancelledOrder(order);
+        // Hoàn lượt dùng voucher (idempotent)
+        voucherRedemptionService.releaseForOrder(order.getId());
 
         // (Đã bỏ hoàn tiền PayOS theo yêu cầu)
 
@@ -504,6 +537,8 @@ public class OrderService {
 
         // Hoàn trả tồn kho trước khi hủy đơn
         restoreStockFromCancelledOrder(order);
+        // Hoàn lượt dùng voucher (idempotent)
+        voucherRedemptionService.releaseForOrder(order.getId());
 
         // (Đã bỏ hoàn tiền PayOS theo yêu cầu)
 
@@ -531,6 +566,43 @@ public class OrderService {
         return savedOrder;
     }
 
+    /**
+     * Hủy đơn thanh toán online quá hạn mà cổng xác nhận chưa thanh toán (job đối soát):
+     * hoàn kho, hoàn lượt voucher, payment -> EXPIRED.
+     * Trạng thái đơn và payment đều được đổi bằng UPDATE có điều kiện nên không hoàn kho hai lần
+     * nếu khách/admin hủy cùng lúc. Trả về số lượng đã hoàn theo productId, null nếu đơn không bị hủy.
+     */
+    @Transactional
+    public Map<Long, Integer> expireAwaitingPayment(long orderId, String expectedPaymentStatus) {
+        Order order = orderRepo.findById(orderId).orElse(null);
+        if (order == null || order.getStatus() != OrderStatus.WAITING_CONFIRMATION || order.getPayment() == null) {
+            return null;
+        }
+        Payment payment = order.getPayment();
+        if (orderRepo.transitionStatus(orderId, OrderStatus.WAITING_CONFIRMATION, OrderStatus.CANCELLED) == 0) {
+            return null;
+        }
+        if (paymentRepository.transitionStatus(payment.getId(), expectedPaymentStatus, "EXPIRED",
+                payment.getTransactionStatus(), null, null) == 0) {
+            // Payment vừa đổi trạng thái (VD webhook báo đã thanh toán) -> rollback cả việc hủy đơn
+            throw new RuntimeException("Payment của đơn #" + orderId + " vừa thay đổi trạng thái");
+        }
+
+        Map<Long, Integer> restored = restoreStockFromCancelledOrder(order);
+        voucherRedemptionService.releaseForOrder(orderId);
+        order.setStatus(OrderStatus.CANCELLED);
+
+        if (order.getCustomer() != null) {
+            try {
+                String message = String.format("Đơn hàng #%d đã bị hủy do quá thời hạn thanh toán", orderId);
+                notifyService.createNotification(order.getCustomer().getId(), message, "ORDER_CANCELLED", orderId);
+            } catch (Exception e) {
+                System.err.println("❌ Failed to send payment expiry notification: " + e.getMessage());
+            }
+        }
+        return restored;
+    }
+
     public Map<OrderStatus, Long> countOrdersByStatusForUser(Long userId) {
         Customer customer = customerRepo.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy khách hàng"));
@@ -639,19 +711,21 @@ public class OrderService {
     /**
      * Hoàn trả tồn kho khi đơn hàng bị hủy
      * Chỉ hoàn trả nếu đơn hàng chưa bị hủy trước đó (tránh hoàn trả 2 lần)
+     * Trả về số lượng đã hoàn theo productId
      */
-    private void restoreStockFromCancelledOrder(Order order) {
-        if (order == null) return;
+    private Map<Long, Integer> restoreStockFromCancelledOrder(Order order) {
+        Map<Long, Integer> restored = new HashMap<>();
+        if (order == null) return restored;
         
         // Chỉ hoàn trả nếu đơn hàng chưa bị hủy (tránh hoàn trả 2 lần)
         if (order.getStatus() == OrderStatus.CANCELLED) {
-            return;
+            return restored;
         }
 
         // Lấy danh sách OrderItem từ đơn hàng
         List<OrderItem> orderItems = order.getItems();
         if (orderItems == null || orderItems.isEmpty()) {
-            return;
+            return restored;
         }
 
         List<Product> productsToUpdate = new ArrayList<>();
@@ -664,6 +738,7 @@ public class OrderService {
             // Hoàn trả số lượng đã trừ
             int quantityToRestore = item.getQuantity();
             product.setStock(product.getStock() + quantityToRestore);
+            restored.merge(product.getId(), quantityToRestore, Integer::sum);
             
             // Nếu tồn kho > 0 sau khi hoàn trả, tự động hiện lại sản phẩm
             // (nếu trước đó bị ẩn do hết hàng)
@@ -684,6 +759,7 @@ public class OrderService {
         // Lưu các sản phẩm đã cập nhật
         if (!productsToUpdate.isEmpty()) {
             productRepository.saveAll(productsToUpdate);
+            categoryDirectory.productsChanged(productsToUpdate);
         }
         
         // Lưu các variant đã cập nhật
@@ -695,5 +771,6 @@ public class OrderService {
         if (!variantsToRestore.isEmpty()) {
             productVariantRepository.saveAll(variantsToRestore);
         }
+        return restored;
     }
 }
@@ -0,0 +1,277 @@
+package com.hometech.hometech.service;
+
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Một cổng gọi ra ngoài (PayOS, Google, ...): HttpClient có pool kết nối keep-alive riêng,
+ * timeout kết nối/đọc, bulkhead giới hạn số lời gọi đồng thời, circuit breaker và số liệu độ trễ/lỗi.
+ *
+ * <p>Mọi lời gọi đi qua {@link #execute(Callable)}. Khi upstream lỗi liên tiếp
+ * {@code failureThreshold} lần, mạch mở trong {@code openDuration}: lời gọi bị từ chối ngay
+ * thay vì giữ thread Tomcat. Hết thời gian mở, một lời gọi thử được cho qua (half-open).
+ * Lỗi 4xx và tham số sai là lỗi của bên gọi, không tính vào circuit breaker.
+ */
+public class OutboundGateway {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Lời gọi bị chặn trước khi tới upstream (mạch đang mở hoặc bulkhead đầy).
+     */
+    public static class UnavailableException extends RuntimeException {
+        public UnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    // Mốc độ trễ (ms) cho histogram
+    private static final long[] LATENCY_BUCKETS_MS = {50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final String name;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final int maxConcurrent;
+    private final Duration acquireTimeout;
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    private final HttpClient httpClient;
+    private final Semaphore bulkhead;
+
+    private final Object stateLock = new Object();
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejectedByBulkhead = new LongAdder();
+    private final LongAdder rejectedByBreaker = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+    private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS_MS.length + 1];
+
+    public OutboundGateway(String name, Duration connectTimeout, Duration readTimeout, int maxConcurrent,
+                           Duration acquireTimeout, int failureThreshold, Duration openDuration) {
+        this.name = name;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConcurrent = maxConcurrent;
+        this.acquireTimeout = acquireTimeout;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.bulkhead = new Semaphore(maxConcurrent, true);
+        // HttpClient của JDK tự giữ pool kết nối keep-alive (và HTTP/2 nếu upstream hỗ trợ)
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+    }
+
+    public <T> T execute(Callable<T> call) {
+        acquirePermission();
+        if (!acquireBulkhead()) {
+            rejectedByBulkhead.increment();
+            releaseTrial();
+            throw new UnavailableException("Dịch vụ " + name + " đang quá tải, vui lòng thử lại sau");
+        }
+
+        calls.increment();
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            onSuccess();
+            return result;
+        } catch (CancellationException e) {
+            // JdkClientHttpRequest hủy request khi quá read timeout; tùy thời điểm, lỗi lọt ra là CancellationException
+            // thay vì HttpTimeoutException. Đưa về cùng một lỗi timeout I/O như RestTemplate vẫn ném.
+            ResourceAccessException timeout = new ResourceAccessException("Quá thời gian chờ " + name,
+                    new HttpTimeoutException("request cancelled after read timeout"));
+            onFailure(timeout);
+            throw timeout;
+        } catch (Exception e) {
+            if (isCallerError(e)) {
+                onSuccess();
+            } else {
+                onFailure(e);
+            }
+            if (e instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("Lỗi gọi " + name + ": " + e.getMessage(), e);
+        } finally {
+            recordLatency((System.nanoTime() - start) / 1_000_000);
+            bulkhead.release();
+        }
+    }
+
+    // Factory cho RestTemplate/RestClient: dùng chung HttpClient (pool) của cổng, kèm timeout đọc
+    public ClientHttpRequestFactory requestFactory() {
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(readTimeout);
+        return factory;
+    }
+
+    public HttpClient httpClient() {
+        return httpClient;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public State getState() {
+        synchronized (stateLock) {
+            if (state == State.OPEN && openElapsed()) {
+                return State.HALF_OPEN;
+            }
+            return state;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long callCount = calls.sum();
+        stats.put("state", getState().name());
+        stats.put("calls", callCount);
+        stats.put("successes", successes.sum());
+        stats.put("failures", failures.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("rejectedByBulkhead", rejectedByBulkhead.sum());
+        stats.put("rejectedByBreaker", rejectedByBreaker.sum());
+        stats.put("inFlight", maxConcurrent - bulkhead.availablePermits());
+        stats.put("avgLatencyMs", callCount == 0 ? 0 : totalLatencyMillis.sum() / callCount);
+        stats.put("maxLatencyMs", maxLatencyMillis.get());
+
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < LATENCY_BUCKETS_MS.length; i++) {
+            histogram.put("<=" + LATENCY_BUCKETS_MS[i] + "ms", latencyBuckets[i].sum());
+        }
+        histogram.put(">" + LATENCY_BUCKETS_MS[LATENCY_BUCKETS_MS.length - 1] + "ms",
+                latencyBuckets[LATENCY_BUCKETS_MS.length].sum());
+        stats.put("latency", histogram);
+
+        stats.put("connectTimeoutMs", connectTimeout.toMillis());
+        stats.put("readTimeoutMs", readTimeout.toMillis());
+        stats.put("maxConcurrent", maxConcurrent);
+        return stats;
+    }
+
+    private void acquirePermission() {
+        synchronized (stateLock) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            if (state == State.OPEN && openElapsed()) {
+                state = State.HALF_OPEN;
+            }
+            // Half-open: chỉ một lời gọi thử tại một thời điểm
+            if (state == State.HALF_OPEN && !trialInFlight) {
+                trialInFlight = true;
+                return;
+            }
+        }
+        rejectedByBreaker.increment();
+        throw new UnavailableException("Dịch vụ " + name + " tạm thời không phản hồi, vui lòng thử lại sau");
+    }
+
+    private boolean acquireBulkhead() {
+        if (acquireTimeout.isZero()) {
+            return bulkhead.tryAcquire();
+        }
+        try {
+            return bulkhead.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void releaseTrial() {
+        synchronized (stateLock) {
+            trialInFlight = false;
+        }
+    }
+
+    private void onSuccess() {
+        successes.increment();
+        synchronized (stateLock) {
+            consecutiveFailures = 0;
+            trialInFlight = false;
+            state = State.CLOSED;
+        }
+    }
+
+    private void onFailure(Exception e) {
+        failures.increment();
+        if (isTimeout(e)) {
+            timeouts.increment();
+        }
+        synchronized (stateLock) {
+            trialInFlight = false;
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                state = State.OPEN;
+                openedAtNanos = System.nanoTime();
+            }
+        }
+    }
+
+    private boolean openElapsed() {
+        return System.nanoTime() - openedAtNanos >= openDuration.toNanos();
+    }
+
+    private void recordLatency(long millis) {
+        totalLatencyMillis.add(millis);
+        maxLatencyMillis.accumulateAndGet(millis, Math::max);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS_MS.length && millis > LATENCY_BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets[bucket].increment();
+    }
+
+    private static boolean isCallerError(Exception e) {
+        return e instanceof HttpClientErrorException || e instanceof IllegalArgumentException;
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        while (e != null) {
+            if (e instanceof HttpTimeoutException || e instanceof SocketTimeoutException) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+package com.hometech.hometech.service;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Quản lý các {@link OutboundGateway} dùng chung, mỗi upstream một cổng.
+ *
+ * <p>Cấu hình theo tên cổng, thiếu thì lấy {@code outbound.default.*}, VD:
+ * <pre>
+ * outbound.payos.read-timeout-ms=8000
+ * outbound.payos.max-concurrent=20
+ * outbound.google.failure-threshold=3
+ * </pre>
+ */
+@Service
+public class OutboundGatewayRegistry {
+
+    public static final String PAYOS = "payos";
+    public static final String GOOGLE = "google";
+
+    private final Environment environment;
+    private final Map<String, OutboundGateway> gateways = new ConcurrentHashMap<>();
+
+    public OutboundGatewayRegistry(Environment environment) {
+        this.environment = environment;
+    }
+
+    public OutboundGateway gateway(String name) {
+        return gateways.computeIfAbsent(name, this::create);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        new TreeMap<>(gateways).forEach((name, gateway) -> stats.put(name, gateway.getStats()));
+        return stats;
+    }
+
+    private OutboundGateway create(String name) {
+        return new OutboundGateway(
+                name,
+                Duration.ofMillis(setting(name, "connect-timeout-ms", 2000)),
+                Duration.ofMillis(setting(name, "read-timeout-ms", 10000)),
+                (int) setting(name, "max-concurrent", 20),
+                Duration.ofMillis(setting(name, "acquire-timeout-ms", 100)),
+                (int) setting(name, "failure-threshold", 5),
+                Duration.ofMillis(setting(name, "open-ms", 30000)));
+    }
+
+    private long setting(String name, String key, long defaultValue) {
+        Long fallback = environment.getProperty("outbound.default." + key, Long.class, defaultValue);
+        return environment.getProperty("outbound." + name + "." + key, Long.class, fallback);
+    }
+}
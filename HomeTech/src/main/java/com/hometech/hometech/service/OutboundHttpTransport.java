@@ -0,0 +1,183 @@
+package com.hometech.hometech.service;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.util.StreamingContent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adapter để thư viện Google API client gọi mạng qua {@link OutboundGateway}:
+ * dùng chung HttpClient (pool keep-alive) của cổng, timeout của cổng và circuit breaker/bulkhead.
+ * Thay cho {@code GoogleNetHttpTransport.newTrustedTransport()} tạo mới mỗi lần verify.
+ */
+public class OutboundHttpTransport extends HttpTransport {
+
+    // Header do HttpClient của JDK tự quản lý, không được đặt thủ công
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("content-length", "host", "connection", "expect", "upgrade");
+
+    private final OutboundGateway gateway;
+
+    public OutboundHttpTransport(OutboundGateway gateway) {
+        this.gateway = gateway;
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        return new Request(method, url);
+    }
+
+    private final class Request extends LowLevelHttpRequest {
+        private final String method;
+        private final String url;
+        private final List<String[]> headers = new ArrayList<>();
+        private Duration readTimeout = gateway.getReadTimeout();
+
+        private Request(String method, String url) {
+            this.method = method;
+            this.url = url;
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                headers.add(new String[]{name, value});
+            }
+        }
+
+        // Không cho thư viện nới timeout vượt quá cấu hình của cổng (mặc định của Google client là 20s)
+        @Override
+        public void setTimeout(int connectTimeout, int readTimeout) {
+            if (readTimeout > 0 && readTimeout < this.readTimeout.toMillis()) {
+                this.readTimeout = Duration.ofMillis(readTimeout);
+            }
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(readTimeout);
+            for (String[] header : headers) {
+                builder.header(header[0], header[1]);
+            }
+            if (getContentType() != null) {
+                builder.header("Content-Type", getContentType());
+            }
+            if (getContentEncoding() != null) {
+                builder.header("Content-Encoding", getContentEncoding());
+            }
+            builder.method(method, bodyPublisher());
+
+            HttpRequest request = builder.build();
+            try {
+                return gateway.execute(() -> {
+                    HttpResponse<InputStream> response = gateway.httpClient()
+                            .send(request, HttpResponse.BodyHandlers.ofInputStream());
+                    if (response.statusCode() >= 500) {
+                        response.body().close();
+                        throw new IOException("HTTP " + response.statusCode() + " từ " + request.uri().getHost());
+                    }
+                    return new Response(response);
+                });
+            } catch (OutboundGateway.UnavailableException e) {
+                throw new IOException(e.getMessage(), e);
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw e;
+            }
+        }
+
+        private HttpRequest.BodyPublisher bodyPublisher() throws IOException {
+            StreamingContent content = getStreamingContent();
+            if (content == null) {
+                return HttpRequest.BodyPublishers.noBody();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            content.writeTo(out);
+            return HttpRequest.BodyPublishers.ofByteArray(out.toByteArray());
+        }
+    }
+
+    private static final class Response extends LowLevelHttpResponse {
+        private final HttpResponse<InputStream> response;
+        private final List<String[]> headers = new ArrayList<>();
+
+        private Response(HttpResponse<InputStream> response) {
+            this.response = response;
+            for (Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+                for (String value : entry.getValue()) {
+                    headers.add(new String[]{entry.getKey(), value});
+                }
+            }
+        }
+
+        @Override
+        public InputStream getContent() {
+            return response.body();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return response.headers().firstValue("Content-Encoding").orElse(null);
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        }
+
+        @Override
+        public String getContentType() {
+            return response.headers().firstValue("Content-Type").orElse(null);
+        }
+
+        @Override
+        public String getStatusLine() {
+            return (response.version() == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1") + " " + response.statusCode();
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getReasonPhrase() {
+            return null;
+        }
+
+        @Override
+        public int getHeaderCount() {
+            return headers.size();
+        }
+
+        @Override
+        public String getHeaderName(int index) {
+            return headers.get(index)[0];
+        }
+
+        @Override
+        public String getHeaderValue(int index) {
+            return headers.get(index)[1];
+        }
+
+        @Override
+        public void disconnect() throws IOException {
+            response.body().close();
+        }
+    }
+}
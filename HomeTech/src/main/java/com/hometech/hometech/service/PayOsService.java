@@ -7,7 +7,6 @@ import com.hometech.hometech.config.HmacUtil;
 import com.hometech.hometech.config.PayOsProperties;
 import com.hometech.hometech.dto.PayOsCreateResponse;
 import com.hometech.hometech.dto.PayOsRefundResponse;
-import com.hometech.hometech.dto.PayOsWebhookPayload;
 import com.hometech.hometech.enums.PaymentMethod;
 import com.hometech.hometech.model.Order;
 import com.hometech.hometech.model.Payment;
@@ -23,32 +22,38 @@ import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
+import java.util.StringJoiner;
 import java.util.TreeMap;
 
 @Service
-public class PayOsService {
+public class PayOsService implements PaymentStatusGateway {
 
     private static final Logger log = LoggerFactory.getLogger(PayOsService.class);
 
     private final PayOsProperties properties;
     private final PaymentRepository paymentRepository;
     private final ObjectMapper objectMapper;
+    private final OutboundGateway gateway;
     private final RestTemplate restTemplate;
 
     public PayOsService(PayOsProperties properties,
                         PaymentRepository paymentRepository,
-                        ObjectMapper objectMapper) {
+                        ObjectMapper objectMapper,
+                        OutboundGatewayRegistry gatewayRegistry) {
         this.properties = properties;
         this.paymentRepository = paymentRepository;
         this.objectMapper = objectMapper;
+        this.gateway = gatewayRegistry.gateway(OutboundGatewayRegistry.PAYOS);
         this.restTemplate = createRestTemplateWithUtf8();
     }
 
+    // Dùng pool kết nối + timeout của cổng "payos" thay cho SimpleClientHttpRequestFactory (không timeout)
     private RestTemplate createRestTemplateWithUtf8() {
-        RestTemplate template = new RestTemplate();
+        RestTemplate template = new RestTemplate(gateway.requestFactory());
         template.getMessageConverters().stream()
                 .filter(converter -> converter instanceof org.springframework.http.converter.StringHttpMessageConverter)
                 .forEach(converter -> {
@@ -130,8 +135,8 @@ public class PayOsService {
 
         try {
             String url = properties.getBaseUrl() + "/v2/payment-requests";
-            ResponseEntity<JsonNode> response = restTemplate.exchange(
-                    url, HttpMethod.POST, new HttpEntity<>(bodyJson, headers), JsonNode.class);
+            ResponseEntity<JsonNode> response = gateway.execute(() -> restTemplate.exchange(
+                    url, HttpMethod.POST, new HttpEntity<>(bodyJson, headers), JsonNode.class));
 
             if (!response.getStatusCode().is2xxSuccessful()) {
                 String errorBody = response.getBody() != null ? response.getBody().toString() : "";
@@ -179,60 +184,96 @@ public class PayOsService {
             String errorMsg = extractMessage(errorBody);
             throw new IllegalStateException("Lỗi gọi PayOS: " + e.getStatusCode() + 
                     (errorMsg != null ? ": " + errorMsg : ""), e);
+        } catch (OutboundGateway.UnavailableException e) {
+            log.warn("PayOS gateway unavailable: {}", e.getMessage());
+            throw new IllegalStateException("PayOS đang tạm thời không phản hồi, vui lòng thử lại sau", e);
         } catch (Exception e) {
             log.error("🔥 Lỗi tạo payment link PayOS", e);
             throw new IllegalStateException("Không thể tạo liên kết thanh toán PayOS", e);
         }
     }
 
-    public boolean verifyWebhookSignature(PayOsWebhookPayload payload) {
-        if (payload == null || payload.getData() == null) {
-            return false;
+    @Override
+    public String method() {
+        return PaymentMethod.PAYOS.name();
+    }
+
+    // GET /v2/payment-requests/{orderCode}: PAID / PENDING / PROCESSING / CANCELLED / EXPIRED
+    @Override
+    public RemoteStatus queryStatus(Payment payment) {
+        if (!StringUtils.hasText(payment.getTxnRef())) {
+            // Chưa từng tạo link thanh toán
+            return RemoteStatus.UNPAID;
+        }
+        try {
+            String url = properties.getPaymentRequestUrl() + "/" + payment.getTxnRef();
+            ResponseEntity<JsonNode> response = gateway.execute(() -> restTemplate.exchange(
+                    url, HttpMethod.GET, new HttpEntity<>(buildHeadersForCreate(null)), JsonNode.class));
+            JsonNode root = response.getBody();
+            if (root == null || !"00".equals(root.path("code").asText(""))) {
+                log.warn("PayOS status lookup for orderCode {} returned {}", payment.getTxnRef(), root);
+                return RemoteStatus.UNKNOWN;
+            }
+            String status = root.path("data").path("status").asText("").toUpperCase(Locale.ROOT);
+            return switch (status) {
+                case "PAID" -> RemoteStatus.PAID;
+                case "PENDING", "PROCESSING", "CANCELLED", "EXPIRED", "FAILED" -> RemoteStatus.UNPAID;
+                default -> RemoteStatus.UNKNOWN;
+            };
+        } catch (Exception e) {
+            log.warn("PayOS status lookup for orderCode {} failed: {}", payment.getTxnRef(), e.getMessage());
+            return RemoteStatus.UNKNOWN;
         }
-        Map<String, Object> dataMap = objectMapper.convertValue(payload.getData(), Map.class);
-        String checksumData = buildChecksumData(dataMap);
-        String calculatedSignature = HmacUtil.hmacSHA256(properties.getChecksumKey(), checksumData);
-        return calculatedSignature.equals(payload.getSignature());
     }
 
-    public void handleWebhook(PayOsWebhookPayload payload) {
-        if (payload == null || payload.getData() == null || payload.getData().getOrderCode() == null) {
+    // Hủy link để khách không thanh toán được sau khi đơn đã bị hủy; PayOS từ chối nếu link đã thanh toán
+    @Override
+    public void cancelPayment(Payment payment) {
+        if (!StringUtils.hasText(payment.getTxnRef())) {
             return;
         }
-        String orderCode = String.valueOf(payload.getData().getOrderCode());
-        Optional<Payment> paymentOpt = paymentRepository.findByTxnRef(orderCode);
-        if (paymentOpt.isEmpty()) {
-            log.warn("PayOS webhook: payment with orderCode {} not found", orderCode);
-            return;
+        try {
+            String url = properties.getPaymentRequestUrl() + "/" + payment.getTxnRef() + "/cancel";
+            Map<String, Object> body = Map.of("cancellationReason", "Quá thời hạn thanh toán");
+            gateway.execute(() -> restTemplate.exchange(
+                    url, HttpMethod.POST, new HttpEntity<>(toJson(body), buildHeadersForCreate(null)), JsonNode.class));
+        } catch (Exception e) {
+            log.warn("PayOS cancel for orderCode {} failed: {}", payment.getTxnRef(), e.getMessage());
+        }
+    }
+
+    // Chữ ký được tính trên đúng object "data" PayOS gửi lên (không đi qua DTO để không lệch trường)
+    public boolean verifyWebhookSignature(JsonNode root) {
+        if (root == null || !root.hasNonNull("data") || !root.hasNonNull("signature")) {
+            return false;
         }
+        String checksumData = buildWebhookChecksumData(root.get("data"));
+        String calculatedSignature = HmacUtil.hmacSHA256(properties.getChecksumKey(), checksumData);
+        return MessageDigest.isEqual(
+                calculatedSignature.getBytes(StandardCharsets.UTF_8),
+                root.get("signature").asText().getBytes(StandardCharsets.UTF_8));
+    }
 
-        Payment payment = paymentOpt.get();
-        String status = payload.getData().getStatus();
-
-        boolean isSuccessStatus = status != null && (
-                "PAID".equalsIgnoreCase(status) ||
-                "SUCCESS".equalsIgnoreCase(status) ||
-                "SUCCEEDED".equalsIgnoreCase(status) ||
-                "COMPLETED".equalsIgnoreCase(status)
-        );
-
-        if (isSuccessStatus) {
-            payment.setStatus("SUCCESS");
-        } else if ("CANCELLED".equalsIgnoreCase(status) || "REFUNDED".equalsIgnoreCase(status)) {
-            payment.setStatus("REFUNDED");
-        } else {
-            payment.setStatus(status != null ? status.toUpperCase() : "UNKNOWN");
+    // Theo tài liệu PayOS: sắp xếp key tăng dần, giá trị null -> chuỗi rỗng, object/mảng -> JSON
+    public static String buildWebhookChecksumData(JsonNode data) {
+        TreeMap<String, String> sorted = new TreeMap<>();
+        for (Map.Entry<String, JsonNode> entry : data.properties()) {
+            sorted.put(entry.getKey(), webhookValue(entry.getValue()));
         }
+        StringJoiner joiner = new StringJoiner("&");
+        sorted.forEach((key, value) -> joiner.add(key + "=" + value));
+        return joiner.toString();
+    }
 
-        payment.setTransactionStatus(status);
-        // Lưu paymentRequestId (ưu tiên) hoặc fallback paymentLinkId để dùng cho refund
-        String paymentRequestId = payload.getData().getPaymentRequestId();
-        if (!StringUtils.hasText(paymentRequestId)) {
-            paymentRequestId = payload.getData().getPaymentLinkId();
+    private static String webhookValue(JsonNode value) {
+        if (value == null || value.isNull() || value.isMissingNode()) {
+            return "";
+        }
+        if (value.isValueNode()) {
+            String text = value.asText();
+            return "null".equals(text) || "undefined".equals(text) ? "" : text;
         }
-        payment.setTransactionNo(paymentRequestId);
-        payment.setCheckoutUrl(payload.getData().getCheckoutUrl());
-        paymentRepository.save(payment);
+        return value.toString();
     }
 
     // Refund PayOS đã được gỡ bỏ theo yêu cầu
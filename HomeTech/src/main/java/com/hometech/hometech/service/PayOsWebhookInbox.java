@@ -0,0 +1,306 @@
+package com.hometech.hometech.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hometech.hometech.Repository.OrderRepository;
+import com.hometech.hometech.Repository.PayOsWebhookEventRepository;
+import com.hometech.hometech.Repository.PaymentRepository;
+import com.hometech.hometech.enums.OrderStatus;
+import com.hometech.hometech.enums.WebhookEventStatus;
+import com.hometech.hometech.model.Order;
+import com.hometech.hometech.model.PayOsWebhookEvent;
+import com.hometech.hometech.model.Payment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Inbox cho webhook PayOS.
+ *
+ * <p>{@link #accept(String)} chỉ kiểm tra chữ ký và ghi nguyên văn sự kiện vào bảng
+ * {@code payos_webhook_event} (unique theo orderCode + reference) rồi trả lời PayOS ngay.
+ * PayOS gửi lại do timeout sẽ vướng unique key và được báo là trùng, không xử lý lại.
+ *
+ * <p>{@link #processDue()} chạy định kỳ, giành từng sự kiện bằng UPDATE có điều kiện, áp dụng
+ * chuyển trạng thái Payment/Order bằng compare-and-set và đánh dấu PROCESSED trong cùng transaction.
+ * Lỗi (VD payment chưa kịp lưu) được thử lại với backoff lũy thừa, quá số lần thì chuyển FAILED.
+ */
+@Service
+public class PayOsWebhookInbox {
+
+    private static final Logger log = LoggerFactory.getLogger(PayOsWebhookInbox.class);
+
+    public enum Receipt {
+        ACCEPTED,
+        DUPLICATE,
+        INVALID_SIGNATURE,
+        MALFORMED
+    }
+
+    private final PayOsWebhookEventRepository eventRepository;
+    private final PaymentRepository paymentRepository;
+    private final OrderRepository orderRepository;
+    private final PayOsService payOsService;
+    private final NotifyService notifyService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long baseBackoffSeconds;
+    private final long maxBackoffSeconds;
+    private final long leaseSeconds;
+
+    public PayOsWebhookInbox(PayOsWebhookEventRepository eventRepository,
+                             PaymentRepository paymentRepository,
+                             OrderRepository orderRepository,
+                             PayOsService payOsService,
+                             NotifyService notifyService,
+                             ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${payos.webhook.batch-size:50}") int batchSize,
+                             @Value("${payos.webhook.max-attempts:8}") int maxAttempts,
+                             @Value("${payos.webhook.backoff-seconds:5}") long baseBackoffSeconds,
+                             @Value("${payos.webhook.max-backoff-seconds:1800}") long maxBackoffSeconds,
+                             @Value("${payos.webhook.lease-seconds:60}") long leaseSeconds) {
+        this.eventRepository = eventRepository;
+        this.paymentRepository = paymentRepository;
+        this.orderRepository = orderRepository;
+        this.payOsService = payOsService;
+        this.notifyService = notifyService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffSeconds = baseBackoffSeconds;
+        this.maxBackoffSeconds = maxBackoffSeconds;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    // Gọi từ controller: không đọc payment/order, chỉ một câu INSERT
+    public Receipt accept(String rawBody) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(rawBody);
+        } catch (Exception e) {
+            return Receipt.MALFORMED;
+        }
+        if (root == null || !root.hasNonNull("data")) {
+            return Receipt.MALFORMED;
+        }
+        if (!payOsService.verifyWebhookSignature(root)) {
+            return Receipt.INVALID_SIGNATURE;
+        }
+
+        JsonNode data = root.get("data");
+        if (!data.hasNonNull("orderCode") || !data.get("orderCode").canConvertToLong()) {
+            return Receipt.MALFORMED;
+        }
+        long orderCode = data.get("orderCode").asLong();
+        String paymentStatus = resolvePaymentStatus(root, data);
+        String reference = resolveReference(data, paymentStatus);
+
+        if (eventRepository.findByOrderCodeAndReference(orderCode, reference).isPresent()) {
+            return Receipt.DUPLICATE;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        PayOsWebhookEvent event = new PayOsWebhookEvent();
+        event.setOrderCode(orderCode);
+        event.setReference(reference);
+        event.setPaymentStatus(paymentStatus);
+        event.setPayload(rawBody);
+        event.setState(WebhookEventStatus.PENDING);
+        event.setReceivedAt(now);
+        event.setNextAttemptAt(now);
+        try {
+            eventRepository.saveAndFlush(event);
+            return Receipt.ACCEPTED;
+        } catch (DataIntegrityViolationException e) {
+            // Hai lần gửi lại đến cùng lúc: lần sau vướng unique key
+            return Receipt.DUPLICATE;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payos.webhook.poll-interval-ms:1000}")
+    public void processDue() {
+        processDue(LocalDateTime.now());
+    }
+
+    int processDue(LocalDateTime now) {
+        List<Long> dueIds = eventRepository.findDueIds(now, PageRequest.of(0, batchSize));
+        int processed = 0;
+        for (Long id : dueIds) {
+            if (eventRepository.claim(id, now, now.plusSeconds(leaseSeconds)) == 0) {
+                // Tiến trình khác đã giành sự kiện này
+                continue;
+            }
+            if (process(id, now)) {
+                processed++;
+            }
+        }
+        return processed;
+    }
+
+    private boolean process(Long id, LocalDateTime now) {
+        PayOsWebhookEvent event = eventRepository.findById(id).orElse(null);
+        if (event == null) {
+            return false;
+        }
+        try {
+            Transition transition = transactionTemplate.execute(status -> apply(event, now));
+            if (transition != null) {
+                notifyTransition(transition);
+            }
+            return true;
+        } catch (Exception e) {
+            scheduleRetry(event, now, e);
+            return false;
+        }
+    }
+
+    // Chạy trong transaction: chuyển trạng thái + đánh dấu PROCESSED cùng commit hoặc cùng rollback
+    private Transition apply(PayOsWebhookEvent event, LocalDateTime now) {
+        JsonNode data = readData(event.getPayload());
+        Payment payment = paymentRepository.findByTxnRef(String.valueOf(event.getOrderCode()))
+                .orElseThrow(() -> new RuntimeException("Chưa có payment cho orderCode " + event.getOrderCode()));
+
+        String currentStatus = payment.getStatus();
+        String targetStatus = targetPaymentStatus(currentStatus, event.getPaymentStatus());
+        Transition transition = null;
+        String note = null;
+
+        if (targetStatus == null) {
+            note = "Bỏ qua: payment đang " + currentStatus + ", sự kiện " + event.getPaymentStatus();
+        } else if (paymentRepository.transitionStatus(payment.getId(), currentStatus, targetStatus,
+                event.getPaymentStatus(), transactionNo(data), text(data, "transactionDateTime")) == 0) {
+            // Payment vừa bị thay đổi bởi luồng khác -> rollback và thử lại với trạng thái mới
+            throw new RuntimeException("Payment " + payment.getId() + " đã thay đổi trạng thái, thử lại sau");
+        } else if ("SUCCESS".equals(targetStatus) && payment.getOrder() != null) {
+            Order order = payment.getOrder();
+            boolean confirmed = orderRepository.transitionStatus(order.getId(),
+                    OrderStatus.WAITING_CONFIRMATION, OrderStatus.CONFIRMED) == 1;
+            Long customerId = order.getCustomer() != null ? order.getCustomer().getId() : null;
+            transition = new Transition(order.getId(), customerId, confirmed,
+                    order.getStatus() == OrderStatus.CANCELLED);
+        }
+
+        eventRepository.markProcessed(event.getId(), now, note);
+        return transition;
+    }
+
+    /**
+     * Trạng thái payment mới, hoặc null nếu sự kiện không được phép thay đổi payment:
+     * SUCCESS chỉ còn chuyển được sang REFUNDED, REFUNDED là trạng thái cuối,
+     * sự kiện trung gian (PENDING/PROCESSING) đến trễ không ghi đè trạng thái đã chốt.
+     */
+    static String targetPaymentStatus(String currentStatus, String paymentStatus) {
+        String current = currentStatus != null ? currentStatus.toUpperCase(Locale.ROOT) : "";
+        String incoming = paymentStatus != null ? paymentStatus.toUpperCase(Locale.ROOT) : "UNKNOWN";
+        if ("REFUNDED".equals(current)) {
+            return null;
+        }
+
+        String target = switch (incoming) {
+            case "PAID", "SUCCESS", "SUCCEEDED", "COMPLETED" -> "SUCCESS";
+            case "CANCELLED", "REFUNDED" -> "REFUNDED";
+            default -> incoming;
+        };
+
+        if ("SUCCESS".equals(current)) {
+            return "REFUNDED".equals(incoming) ? "REFUNDED" : null;
+        }
+        return target.equals(current) ? null : target;
+    }
+
+    private void scheduleRetry(PayOsWebhookEvent event, LocalDateTime now, Exception error) {
+        // attempts đã được tăng khi claim
+        int attempts = event.getAttempts();
+        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        if (message.length() > 500) {
+            message = message.substring(0, 500);
+        }
+        if (attempts >= maxAttempts) {
+            log.error("PayOS webhook event {} (orderCode {}) failed after {} attempts: {}",
+                    event.getId(), event.getOrderCode(), attempts, message);
+            eventRepository.markAttemptFailed(event.getId(), WebhookEventStatus.FAILED, null, message);
+            return;
+        }
+        long delay = Math.min(maxBackoffSeconds, baseBackoffSeconds << Math.min(attempts - 1, 20));
+        log.warn("PayOS webhook event {} (orderCode {}) attempt {} failed, retrying in {}s: {}",
+                event.getId(), event.getOrderCode(), attempts, delay, message);
+        eventRepository.markAttemptFailed(event.getId(), WebhookEventStatus.PENDING, now.plusSeconds(delay), message);
+    }
+
+    // Gửi sau khi commit; lỗi thông báo không làm sự kiện bị xử lý lại
+    private void notifyTransition(Transition transition) {
+        try {
+            if (transition.orderConfirmed() && transition.customerId() != null) {
+                notifyService.createNotification(transition.customerId(),
+                        String.format("Đơn hàng #%d đã thanh toán thành công và được xác nhận", transition.orderId()),
+                        "ORDER_STATUS", transition.orderId());
+            }
+            if (transition.paidAfterCancel()) {
+                // Khách thanh toán sau khi đơn đã hủy -> admin cần hoàn tiền thủ công
+                notifyService.notifyAdmins(
+                        String.format("Đơn hàng #%d đã hủy nhưng nhận được thanh toán PayOS, cần hoàn tiền", transition.orderId()),
+                        "PAYMENT_AFTER_CANCEL", transition.orderId());
+            }
+        } catch (Exception e) {
+            log.warn("Could not send PayOS payment notification for order {}: {}", transition.orderId(), e.getMessage());
+        }
+    }
+
+    private JsonNode readData(String payload) {
+        try {
+            return objectMapper.readTree(payload).get("data");
+        } catch (Exception e) {
+            throw new RuntimeException("Payload webhook không hợp lệ", e);
+        }
+    }
+
+    // Webhook thanh toán thật của PayOS không có "status", chỉ có code "00" khi thành công
+    private static String resolvePaymentStatus(JsonNode root, JsonNode data) {
+        String status = text(data, "status");
+        if (StringUtils.hasText(status)) {
+            return status.toUpperCase(Locale.ROOT);
+        }
+        String code = StringUtils.hasText(text(data, "code")) ? text(data, "code") : text(root, "code");
+        return "00".equals(code) ? "PAID" : "UNKNOWN";
+    }
+
+    private static String resolveReference(JsonNode data, String paymentStatus) {
+        String reference = text(data, "reference");
+        if (StringUtils.hasText(reference)) {
+            return reference;
+        }
+        String linkId = text(data, "paymentLinkId");
+        return (StringUtils.hasText(linkId) ? linkId : "-") + ":" + paymentStatus;
+    }
+
+    // paymentRequestId (ưu tiên) hoặc paymentLinkId, dùng cho refund
+    private static String transactionNo(JsonNode data) {
+        String paymentRequestId = text(data, "paymentRequestId");
+        return StringUtils.hasText(paymentRequestId) ? paymentRequestId : text(data, "paymentLinkId");
+    }
+
+    private static String text(JsonNode node, String field) {
+        if (node == null || !node.hasNonNull(field)) {
+            return null;
+        }
+        return node.get(field).asText();
+    }
+
+    private record Transition(Long orderId, Long customerId, boolean orderConfirmed, boolean paidAfterCancel) {
+    }
+}
@@ -0,0 +1,203 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.OrderRepository;
+import com.hometech.hometech.Repository.PaymentRepository;
+import com.hometech.hometech.enums.OrderStatus;
+import com.hometech.hometech.model.Payment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đối soát đơn thanh toán online (PayOS, VNPAY) bị treo ở trạng thái chờ thanh toán.
+ *
+ * <p>{@code createOrder} trừ kho ngay khi đặt hàng; nếu khách bỏ dở trang thanh toán, kho bị giữ mãi.
+ * Job quét định kỳ các payment chờ thanh toán của đơn cũ hơn {@code payment.reconcile.ttl-minutes}
+ * (theo lô keyset trên id, có index), hỏi lại cổng thanh toán:
+ * <ul>
+ *   <li>đã thanh toán (webhook bị lỡ) -> payment SUCCESS, đơn CONFIRMED;</li>
+ *   <li>chưa thanh toán -> hủy phiên trên cổng, hỏi lại lần nữa rồi hủy đơn + hoàn kho
+ *       ({@link OrderService#expireAwaitingPayment});</li>
+ *   <li>không xác định -> để lần quét sau.</li>
+ * </ul>
+ */
+@Service
+public class PaymentReconciliationService {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentReconciliationService.class);
+
+    // Payment.status lúc chờ thanh toán: createOrder đặt AWAITING_PAYMENT, tạo URL VNPAY đặt PENDING
+    static final List<String> AWAITING_STATUSES = List.of("AWAITING_PAYMENT", "PENDING");
+
+    private static final int TOP_PRODUCTS = 10;
+
+    private final PaymentRepository paymentRepository;
+    private final OrderRepository orderRepository;
+    private final OrderService orderService;
+    private final Map<String, PaymentStatusGateway> gateways = new HashMap<>();
+    private final TransactionTemplate transactionTemplate;
+    private final long ttlMinutes;
+    private final int batchSize;
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder recoveredPaid = new LongAdder();
+    private final LongAdder undetermined = new LongAdder();
+    private final LongAdder restockedUnits = new LongAdder();
+    private final Map<Long, LongAdder> restockedByProduct = new ConcurrentHashMap<>();
+    private volatile LocalDateTime lastRunAt;
+    private volatile long lastRunMillis;
+
+    public PaymentReconciliationService(PaymentRepository paymentRepository,
+                                        OrderRepository orderRepository,
+                                        OrderService orderService,
+                                        List<PaymentStatusGateway> statusGateways,
+                                        PlatformTransactionManager transactionManager,
+                                        @Value("${payment.reconcile.ttl-minutes:30}") long ttlMinutes,
+                                        @Value("${payment.reconcile.batch-size:100}") int batchSize) {
+        this.paymentRepository = paymentRepository;
+        this.orderRepository = orderRepository;
+        this.orderService = orderService;
+        for (PaymentStatusGateway gateway : statusGateways) {
+            this.gateways.put(gateway.method(), gateway);
+        }
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttlMinutes = ttlMinutes;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.reconcile.interval-ms:60000}",
+            initialDelayString = "${payment.reconcile.initial-delay-ms:60000}")
+    public void reconcile() {
+        reconcile(LocalDateTime.now());
+    }
+
+    // Trả về số đơn đã hủy trong lượt quét
+    public int reconcile(LocalDateTime now) {
+        if (gateways.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        LocalDateTime cutoff = now.minusMinutes(ttlMinutes);
+        long afterId = 0;
+        int expiredThisRun = 0;
+
+        while (true) {
+            List<Payment> batch = paymentRepository.findStaleAwaiting(
+                    gateways.keySet(), AWAITING_STATUSES, cutoff, afterId, PageRequest.of(0, batchSize));
+            for (Payment payment : batch) {
+                afterId = payment.getId();
+                if (reconcileOne(payment)) {
+                    expiredThisRun++;
+                }
+            }
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+
+        runs.increment();
+        lastRunAt = now;
+        lastRunMillis = System.currentTimeMillis() - start;
+        if (expiredThisRun > 0) {
+            log.info("Payment reconciliation cancelled {} unpaid orders older than {} minutes", expiredThisRun, ttlMinutes);
+        }
+        return expiredThisRun;
+    }
+
+    private boolean reconcileOne(Payment payment) {
+        scanned.increment();
+        Long orderId = payment.getOrder().getId();
+        PaymentStatusGateway gateway = gateways.get(payment.getMethod());
+        try {
+            PaymentStatusGateway.RemoteStatus status = gateway.queryStatus(payment);
+            if (status == PaymentStatusGateway.RemoteStatus.UNPAID) {
+                // Khóa phiên thanh toán rồi hỏi lại: khách có thể vừa trả xong đúng lúc quét
+                gateway.cancelPayment(payment);
+                status = gateway.queryStatus(payment);
+            }
+
+            switch (status) {
+                case PAID -> {
+                    if (markPaid(payment, orderId)) {
+                        recoveredPaid.increment();
+                        log.info("Order {} was paid via {} but never confirmed; marked SUCCESS", orderId, payment.getMethod());
+                    }
+                    return false;
+                }
+                case UNPAID -> {
+                    Map<Long, Integer> restocked = orderService.expireAwaitingPayment(orderId, payment.getStatus());
+                    if (restocked == null) {
+                        // Đơn đã được xử lý ở nơi khác (khách/admin hủy, webhook báo đã trả)
+                        return false;
+                    }
+                    expired.increment();
+                    restocked.forEach((productId, quantity) -> {
+                        restockedUnits.add(quantity);
+                        restockedByProduct.computeIfAbsent(productId, id -> new LongAdder()).add(quantity);
+                    });
+                    return true;
+                }
+                default -> {
+                    undetermined.increment();
+                    return false;
+                }
+            }
+        } catch (Exception e) {
+            undetermined.increment();
+            log.warn("Could not reconcile payment {} of order {}: {}", payment.getId(), orderId, e.getMessage());
+            return false;
+        }
+    }
+
+    // Webhook bị lỡ: cùng chuyển trạng thái như PayOsWebhookInbox
+    private boolean markPaid(Payment payment, Long orderId) {
+        Boolean changed = transactionTemplate.execute(tx -> {
+            if (paymentRepository.transitionStatus(payment.getId(), payment.getStatus(), "SUCCESS",
+                    "PAID", null, null) == 0) {
+                return false;
+            }
+            orderRepository.transitionStatus(orderId, OrderStatus.WAITING_CONFIRMATION, OrderStatus.CONFIRMED);
+            return true;
+        });
+        return Boolean.TRUE.equals(changed);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ttlMinutes", ttlMinutes);
+        stats.put("gateways", gateways.keySet());
+        stats.put("runs", runs.sum());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("scanned", scanned.sum());
+        stats.put("expiredOrders", expired.sum());
+        stats.put("recoveredPaid", recoveredPaid.sum());
+        stats.put("undetermined", undetermined.sum());
+        stats.put("restockedUnits", restockedUnits.sum());
+
+        // Sản phẩm được hoàn kho nhiều nhất (thường là hàng hot bị giữ bởi đơn bỏ dở)
+        Map<Long, Long> top = new LinkedHashMap<>();
+        restockedByProduct.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Long, LongAdder> e) -> e.getValue().sum()).reversed())
+                .limit(TOP_PRODUCTS)
+                .forEach(e -> top.put(e.getKey(), e.getValue().sum()));
+        stats.put("topRestockedProducts", top);
+        return stats;
+    }
+}
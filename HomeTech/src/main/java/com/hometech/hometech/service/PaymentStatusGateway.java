@@ -0,0 +1,28 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.model.Payment;
+
+/**
+ * Tra cứu trạng thái giao dịch trên cổng thanh toán, dùng cho job đối soát
+ * {@link PaymentReconciliationService}. Test có thể thay bằng bản giả lập.
+ */
+public interface PaymentStatusGateway {
+
+    enum RemoteStatus {
+        // Cổng xác nhận đã thanh toán
+        PAID,
+        // Cổng xác nhận chưa/không thanh toán (đang chờ, đã hủy, hết hạn, không có giao dịch)
+        UNPAID,
+        // Không xác định được (lỗi mạng, cổng trả lỗi) -> để lần quét sau
+        UNKNOWN
+    }
+
+    // Tên phương thức thanh toán được hỗ trợ, trùng với Payment.method (PAYOS, VNPAY)
+    String method();
+
+    RemoteStatus queryStatus(Payment payment);
+
+    // Hủy phiên thanh toán trên cổng trước khi hủy đơn (nếu cổng hỗ trợ)
+    default void cancelPayment(Payment payment) {
+    }
+}
@@ -0,0 +1,129 @@
+package com.hometech.hometech.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+
+/**
+ * Tính tiền giỏ hàng / đơn hàng bằng số nguyên VND ({@code long}), dùng chung cho preview,
+ * checkout và thống kê doanh thu.
+ *
+ * <p>Entity vẫn lưu {@code double}; giá trị được làm tròn về đồng ({@link #toVnd(double)}) ở biên,
+ * sau đó mọi phép cộng/nhân đều là số nguyên (tràn số -> {@link ArithmeticException}).
+ * Voucher: giảm theo % (làm tròn half-up về đồng) cộng giảm cố định, không vượt quá tạm tính.
+ */
+@Service
+public class PricingEngine {
+
+    private static final long BASIS_POINTS = 10_000L;
+
+    public static long toVnd(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new ArithmeticException("Số tiền không hợp lệ: " + amount);
+        }
+        return Math.round(amount);
+    }
+
+    public static long lineTotal(long unitPrice, int quantity) {
+        return Math.multiplyExact(unitPrice, (long) quantity);
+    }
+
+    public static long lineTotal(double unitPrice, int quantity) {
+        return lineTotal(toVnd(unitPrice), quantity);
+    }
+
+    // Một lượt duyệt: thành tiền từng dòng, tạm tính, giảm giá và tổng cuối
+    public Quote quote(CartSnapshot cart, Discount discount) {
+        int size = cart.size();
+        long[] lineTotals = new long[size];
+        long subtotal = 0;
+        for (int i = 0; i < size; i++) {
+            long line = lineTotal(cart.unitPrices[i], cart.quantities[i]);
+            lineTotals[i] = line;
+            subtotal = Math.addExact(subtotal, line);
+        }
+        long discountAmount = discount != null ? discount.amountFor(subtotal) : 0;
+        return new Quote(lineTotals, subtotal, discountAmount, subtotal - discountAmount);
+    }
+
+    public Quote quote(CartSnapshot cart) {
+        return quote(cart, Discount.NONE);
+    }
+
+    /**
+     * Ảnh chụp giỏ hàng dạng mảng nguyên thủy (đơn giá VND, số lượng) — không boxing.
+     */
+    public static final class CartSnapshot {
+        private long[] unitPrices;
+        private int[] quantities;
+        private int size;
+
+        public CartSnapshot() {
+            this(8);
+        }
+
+        public CartSnapshot(int expectedLines) {
+            int capacity = Math.max(1, expectedLines);
+            this.unitPrices = new long[capacity];
+            this.quantities = new int[capacity];
+        }
+
+        public CartSnapshot add(long unitPrice, int quantity) {
+            if (unitPrice < 0) {
+                throw new IllegalArgumentException("Đơn giá không được âm");
+            }
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Số lượng phải lớn hơn 0");
+            }
+            if (size == unitPrices.length) {
+                unitPrices = Arrays.copyOf(unitPrices, size * 2);
+                quantities = Arrays.copyOf(quantities, size * 2);
+            }
+            unitPrices[size] = unitPrice;
+            quantities[size] = quantity;
+            size++;
+            return this;
+        }
+
+        public CartSnapshot add(double unitPrice, int quantity) {
+            return add(toVnd(unitPrice), quantity);
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Điều khoản giảm giá: phần trăm tính bằng basis point (1% = 100) và số tiền cố định (VND).
+     */
+    public record Discount(long percentBasisPoints, long fixedAmount) {
+
+        public static final Discount NONE = new Discount(0, 0);
+
+        public Discount {
+            if (percentBasisPoints < 0 || percentBasisPoints > BASIS_POINTS || fixedAmount < 0) {
+                throw new IllegalArgumentException("Giảm giá không hợp lệ");
+            }
+        }
+
+        // Chuyển từ các trường double của Voucher (percent có thể lẻ, VD 12.5%)
+        public static Discount of(Double percent, Double amount) {
+            long bp = percent != null ? Math.round(Math.max(0, Math.min(100, percent)) * 100) : 0;
+            long fixed = amount != null ? Math.max(0, toVnd(amount)) : 0;
+            return bp == 0 && fixed == 0 ? NONE : new Discount(bp, fixed);
+        }
+
+        public long amountFor(long subtotal) {
+            if (subtotal <= 0) {
+                return 0;
+            }
+            // half-up: (subtotal * bp + 5000) / 10000
+            long percentOff = Math.addExact(Math.multiplyExact(subtotal, percentBasisPoints), BASIS_POINTS / 2) / BASIS_POINTS;
+            return Math.min(subtotal, Math.addExact(percentOff, fixedAmount));
+        }
+    }
+
+    public record Quote(long[] lineTotals, long subtotal, long discount, long total) {
+    }
+}
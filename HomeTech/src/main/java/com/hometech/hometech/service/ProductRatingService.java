@@ -0,0 +1,195 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.ProductRatingRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.model.ProductRating;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Số sao của sản phẩm đọc từ bảng tổng hợp {@code product_rating} thay vì AVG trên bảng review.
+ *
+ * <p>{@link ReviewService} gọi {@link #reviewChanged} trong cùng transaction với thay đổi đánh giá
+ * (chỉ tính đánh giá đang hiển thị). Job {@link #rebuildAll()} chạy hằng đêm
+ * tính lại từ bảng review để sửa sai lệch nếu có; lúc tính lại dòng tổng hợp bị khóa nên đánh giá
+ * mới trong lúc đó chờ rồi cộng lên kết quả, không bị mất.
+ */
+@Service
+public class ProductRatingService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductRatingService.class);
+
+    private static final int REBUILD_PAGE = 500;
+    public static final int MAX_BATCH = 200;
+
+    private final ProductRatingRepository ratingRepository;
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public ProductRatingService(ProductRatingRepository ratingRepository,
+                                ProductRepository productRepository,
+                                PlatformTransactionManager transactionManager) {
+        this.ratingRepository = ratingRepository;
+        this.productRepository = productRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @param histogram số lượt 1..5 sao (phần tử 0 = 1 sao)
+     */
+    public record RatingSummary(Long productId, long count, double average, long[] histogram) {
+        static RatingSummary of(ProductRating row) {
+            double average = row.getRatingCount() == 0 ? 0.0 : (double) row.getRatingSum() / row.getRatingCount();
+            return new RatingSummary(row.getProductId(), row.getRatingCount(), average,
+                    new long[]{row.getStar1(), row.getStar2(), row.getStar3(), row.getStar4(), row.getStar5()});
+        }
+
+        static RatingSummary empty(Long productId) {
+            return new RatingSummary(productId, 0, 0.0, new long[5]);
+        }
+    }
+
+    /**
+     * Gọi sau khi đánh giá đã được thay đổi trong transaction hiện tại.
+     *
+     * @param ratingBefore số sao trước thay đổi nếu khi đó đánh giá đang hiển thị, null nếu không
+     * @param ratingAfter  số sao sau thay đổi nếu giờ đánh giá đang hiển thị, null nếu không (đã xóa/ẩn)
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reviewChanged(Long productId, Integer ratingBefore, Integer ratingAfter) {
+        if (productId == null) {
+            return;
+        }
+        Integer before = isValid(ratingBefore) ? ratingBefore : null;
+        Integer after = isValid(ratingAfter) ? ratingAfter : null;
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        long count = 0;
+        long sum = 0;
+        long[] stars = new long[5];
+        if (before != null) {
+            count--;
+            sum -= before;
+            stars[before - 1]--;
+        }
+        if (after != null) {
+            count++;
+            sum += after;
+            stars[after - 1]++;
+        }
+        ratingRepository.applyDelta(productId, count, sum,
+                stars[0], stars[1], stars[2], stars[3], stars[4], LocalDateTime.now());
+    }
+
+    private static boolean isValid(Integer rating) {
+        return rating != null && rating >= 1 && rating <= 5;
+    }
+
+    public RatingSummary getRating(Long productId) {
+        return ratingRepository.findById(productId)
+                .map(RatingSummary::of)
+                .orElseGet(() -> RatingSummary.empty(productId));
+    }
+
+    // Số sao cho cả trang danh sách trong một truy vấn, giữ nguyên thứ tự id truyền vào
+    public Map<Long, RatingSummary> getRatings(Collection<Long> productIds) {
+        if (productIds.size() > MAX_BATCH) {
+            throw new RuntimeException("Tối đa " + MAX_BATCH + " sản phẩm mỗi lần");
+        }
+        Map<Long, RatingSummary> found = new HashMap<>();
+        for (ProductRating row : ratingRepository.findAllById(productIds)) {
+            found.put(row.getProductId(), RatingSummary.of(row));
+        }
+        Map<Long, RatingSummary> result = new LinkedHashMap<>();
+        for (Long productId : productIds) {
+            result.put(productId, found.getOrDefault(productId, RatingSummary.empty(productId)));
+        }
+        return result;
+    }
+
+    // Lần chạy đầu (bảng trống) tính toàn bộ từ dữ liệu review hiện có
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (ratingRepository.count() == 0) {
+            rebuildAll();
+        }
+    }
+
+    @Scheduled(cron = "${review.rating.rebuild-cron:0 30 3 * * *}")
+    public void rebuildAll() {
+        long afterId = 0;
+        int products = 0;
+        while (true) {
+            List<Long> ids = productRepository.findIdsAfter(afterId, PageRequest.of(0, REBUILD_PAGE));
+            if (ids.isEmpty()) {
+                break;
+            }
+            transactionTemplate.executeWithoutResult(status -> rebuildProducts(ids));
+            products += ids.size();
+            afterId = ids.get(ids.size() - 1);
+        }
+        log.info("Rebuilt rating aggregates for {} products", products);
+    }
+
+    // Tính lại cho một nhóm sản phẩm (VD sau khi ẩn/xóa đánh giá hàng loạt): một lần cho cả lô
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recompute(Collection<Long> productIds) {
+        if (!productIds.isEmpty()) {
+            rebuildProducts(List.copyOf(productIds));
+        }
+    }
+
+    private void rebuildProducts(List<Long> productIds) {
+        // Khóa mọi dòng trước khi đếm: cộng dồn đã commit thì đã nằm trong số đếm, chưa commit thì chờ tới sau
+        ratingRepository.insertMissing(productIds);
+        Map<Long, ProductRating> rows = new HashMap<>();
+        for (ProductRating rating : ratingRepository.lockAll(productIds)) {
+            rating.setRatingCount(0);
+            rating.setRatingSum(0);
+            rating.setStar1(0);
+            rating.setStar2(0);
+            rating.setStar3(0);
+            rating.setStar4(0);
+            rating.setStar5(0);
+            rows.put(rating.getProductId(), rating);
+        }
+        for (Object[] row : ratingRepository.countVisibleByProductAndRating(productIds)) {
+            ProductRating rating = rows.get((Long) row[0]);
+            if (rating == null) {
+                continue;
+            }
+            int stars = ((Number) row[1]).intValue();
+            long count = (Long) row[2];
+            rating.setRatingCount(rating.getRatingCount() + count);
+            rating.setRatingSum(rating.getRatingSum() + count * stars);
+            switch (stars) {
+                case 1 -> rating.setStar1(count);
+                case 2 -> rating.setStar2(count);
+                case 3 -> rating.setStar3(count);
+                case 4 -> rating.setStar4(count);
+                default -> rating.setStar5(count);
+            }
+        }
+        LocalDateTime now = LocalDateTime.now();
+        rows.values().forEach(rating -> rating.setUpdatedAt(now));
+        ratingRepository.saveAll(rows.values());
+    }
+}
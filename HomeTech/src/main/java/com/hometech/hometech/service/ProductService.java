@@ -6,6 +6,7 @@ import com.hometech.hometech.model.Category;
 import com.hometech.hometech.model.Product;
 import com.hometech.hometech.model.ProductAttributeValue;
 import com.hometech.hometech.model.ProductVariant;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -17,10 +18,13 @@ public class ProductService {
 
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
+    private final CategoryDirectory categoryDirectory;
 
-    public ProductService(ProductRepository productRepository, CategoryRepository categoryRepository) {
+    public ProductService(ProductRepository productRepository, CategoryRepository categoryRepository,
+                          CategoryDirectory categoryDirectory) {
         this.productRepository = productRepository;
         this.categoryRepository = categoryRepository;
+        this.categoryDirectory = categoryDirectory;
     }
     public Product save(Product product) {
         // Gán quan hệ ngược cho attributeValues và variants nếu có
@@ -45,7 +49,9 @@ public class ProductService {
 
         // Tự động ẩn sản phẩm khi tồn kho = 0
         updateHiddenBasedOnStock(product);
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        categoryDirectory.productChanged(saved);
+        return saved;
     }
 
     /**
@@ -71,6 +77,11 @@ public class ProductService {
         return productRepository.findByHiddenFalse();
     }
 
+    // Một trang theo keyset id, dùng khi stream danh sách lớn
+    public List<Product> getPageAfter(long afterId, boolean includeHidden, int limit) {
+        return productRepository.findPageAfter(afterId, includeHidden, PageRequest.of(0, limit));
+    }
+
     // 🟢 Lấy sản phẩm theo ID
     public Product getById(long id) {
         return productRepository.findById(id).orElse(null);
@@ -82,6 +93,7 @@ public class ProductService {
 
         product.setHidden(false);
         productRepository.save(product);
+        categoryDirectory.productChanged(product);
         return true;
     }
 
@@ -91,13 +103,16 @@ public class ProductService {
         if (product == null) return null;
 
         product.setHidden(!product.isHidden());
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        categoryDirectory.productChanged(saved);
+        return saved;
     }
 
     public boolean deleteById(long productId) {
         Product product = productRepository.findById(productId).orElse(null);
         if (product == null) return false;
         productRepository.delete(product);
+        categoryDirectory.productRemoved(productId);
         return true;
     }
     // 🟢 Lấy sản phẩm theo danh mục (Category object)
@@ -132,15 +147,12 @@ public class ProductService {
 
     // 🟢 Lấy sản phẩm đang hoạt động theo tên danh mục
     public List<Product> getActiveProductsByCategoryName(String categoryName) {
-        Category category = categoryRepository.findAll().stream()
-                .filter(c -> c.getName().equalsIgnoreCase(categoryName))
-                .findFirst()
-                .orElse(null);
+        CategoryDirectory.CategoryView category = categoryDirectory.findByName(categoryName);
 
         if (category == null) {
             return Collections.emptyList();
         }
-        return productRepository.findByCategoryAndHidden(category, false);
+        return productRepository.findByCategoryAndHidden(categoryRepository.getReferenceById(category.id()), false);
     }
 
     // 🟢 Lấy sản phẩm mới thêm trong 7 ngày qua (chỉ active)
@@ -189,4 +201,9 @@ public class ProductService {
         return products.stream().filter(p -> !p.isHidden()).toList();
     }
 
+    // 🟢 N sản phẩm mới nhất đang bán (không nạp toàn bộ danh sách)
+    public List<Product> getNewestActive(int limit) {
+        return productRepository.findByHiddenFalseOrderByCreatedAtDesc(PageRequest.of(0, limit));
+    }
+
 }
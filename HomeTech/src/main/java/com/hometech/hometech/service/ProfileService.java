@@ -23,15 +23,18 @@ public class ProfileService {
     private final UserRepository userRepository;
     private final AddressRepository addressRepository;
     private final NotifyService notifyService;
+    private final AccountIdentityService accountIdentityService;
 
     public ProfileService(CustomerRepository customerRepository,
                           UserRepository userRepository,
                           AddressRepository addressRepository,
-                          NotifyService notifyService) {
+                          NotifyService notifyService,
+                          AccountIdentityService accountIdentityService) {
         this.customerRepository = customerRepository;
         this.userRepository = userRepository;
         this.addressRepository = addressRepository;
         this.notifyService = notifyService;
+        this.accountIdentityService = accountIdentityService;
     }
 
     // ===================================================================
@@ -51,6 +54,7 @@ public class ProfileService {
         Account account = customer.getAccount();
         if (dto.getEmail() != null && !dto.getEmail().isEmpty() && account != null) {
             account.setEmail(dto.getEmail());
+            accountIdentityService.invalidate(account.getId());
         }
 
         // Xử lý ảnh đại diện
@@ -185,22 +189,13 @@ public class ProfileService {
     // 🔍 HÀM HỖ TRỢ TRA CỨU
     // ===================================================================
     public Long getUserIdByUsername(String username) {
-        return customerRepository.findAll().stream()
-                .filter(c -> c.getAccount() != null &&
-                        (username.equals(c.getAccount().getUsername()) ||
-                                username.equals(c.getAccount().getEmail())))
-                .findFirst()
-                .map(Customer::getId)
-                .orElse(null);
+        AccountIdentityService.AccountIdentity account = accountIdentityService.resolve(username);
+        return account != null ? account.customerId() : null;
     }
 
     public Long getUserIdByEmail(String email) {
-        return customerRepository.findAll().stream()
-                .filter(c -> c.getAccount() != null &&
-                        email.equals(c.getAccount().getEmail()))
-                .findFirst()
-                .map(Customer::getId)
-                .orElse(null);
+        AccountIdentityService.AccountIdentity account = accountIdentityService.resolve(email);
+        return account != null && email.equals(account.email()) ? account.customerId() : null;
     }
 
     public String getEmailByUserId(Long userId) {
@@ -4,6 +4,7 @@ import com.hometech.hometech.Repository.OrderRepository;
 import com.hometech.hometech.enums.OrderStatus;
 import com.hometech.hometech.model.Order;
 import com.hometech.hometech.model.OrderItem;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
@@ -14,6 +15,8 @@ import java.time.temporal.TemporalAdjusters;
 import java.util.*;
 import java.util.stream.Collectors;
 
+// Chỉ RevenueRestController (lazy) dùng nên cũng được tạo khi cần
+@Lazy
 @Service
 public class RevenueService {
     private final OrderRepository orderRepository;
@@ -51,7 +54,7 @@ public class RevenueService {
         }
 
         // Calculate total revenue
-        double totalRevenue = calculateTotalRevenue(orders, categoryId, productId);
+        long totalRevenue = calculateTotalRevenue(orders, categoryId, productId);
         
         // Group revenue by time period
         List<Map<String, Object>> groupedData = groupRevenueByPeriod(orders, groupBy, categoryId, productId);
@@ -59,7 +62,7 @@ public class RevenueService {
         Map<String, Object> result = new HashMap<>();
         result.put("totalRevenue", totalRevenue);
         result.put("orderCount", orders.size());
-        result.put("averageOrderValue", orders.isEmpty() ? 0 : totalRevenue / orders.size());
+        result.put("averageOrderValue", orders.isEmpty() ? 0 : Math.round((double) totalRevenue / orders.size()));
         result.put("groupedData", groupedData);
         
         return result;
@@ -98,7 +101,7 @@ public class RevenueService {
                         }
 
                         Long productId = item.getProduct().getId();
-                        double itemRevenue = item.getPrice() * item.getQuantity();
+                        long itemRevenue = PricingEngine.lineTotal(item.getPrice(), item.getQuantity());
                         
                         productRevenueMap.computeIfAbsent(productId, k -> 
                             new ProductRevenue(
@@ -106,7 +109,7 @@ public class RevenueService {
                                 item.getProduct().getName(),
                                 item.getProduct().getCategory() != null ? 
                                     item.getProduct().getCategory().getName() : "N/A",
-                                0.0,
+                                0L,
                                 0
                             )
                         ).addRevenue(itemRevenue, item.getQuantity());
@@ -117,7 +120,7 @@ public class RevenueService {
 
         // Sort by revenue and get top 5
         return productRevenueMap.values().stream()
-                .sorted((a, b) -> Double.compare(b.revenue, a.revenue))
+                .sorted((a, b) -> Long.compare(b.revenue, a.revenue))
                 .limit(5)
                 .map(pr -> {
                     Map<String, Object> map = new HashMap<>();
@@ -152,8 +155,8 @@ public class RevenueService {
         });
     }
 
-    private double calculateTotalRevenue(List<Order> orders, Long categoryId, Long productId) {
-        double total = 0.0;
+    private long calculateTotalRevenue(List<Order> orders, Long categoryId, Long productId) {
+        long total = 0L;
         
         for (Order order : orders) {
             if (order.getItems() == null) continue;
@@ -171,7 +174,7 @@ public class RevenueService {
                     continue;
                 }
                 
-                total += item.getPrice() * item.getQuantity();
+                total = Math.addExact(total, PricingEngine.lineTotal(item.getPrice(), item.getQuantity()));
             }
         }
         
@@ -184,13 +187,13 @@ public class RevenueService {
             Long categoryId,
             Long productId
     ) {
-        Map<String, Double> periodRevenue = new TreeMap<>();
+        Map<String, Long> periodRevenue = new TreeMap<>();
         
         for (Order order : orders) {
             if (order.getCreatedAt() == null || order.getItems() == null) continue;
             
             String periodKey = getPeriodKey(order.getCreatedAt(), groupBy);
-            double orderRevenue = 0.0;
+            long orderRevenue = 0L;
             
             for (OrderItem item : order.getItems()) {
                 if (item.getProduct() == null) continue;
@@ -205,10 +208,10 @@ public class RevenueService {
                     continue;
                 }
                 
-                orderRevenue += item.getPrice() * item.getQuantity();
+                orderRevenue = Math.addExact(orderRevenue, PricingEngine.lineTotal(item.getPrice(), item.getQuantity()));
             }
             
-            periodRevenue.merge(periodKey, orderRevenue, Double::sum);
+            periodRevenue.merge(periodKey, orderRevenue, Long::sum);
         }
         
         return periodRevenue.entrySet().stream()
@@ -252,10 +255,10 @@ public class RevenueService {
         Long productId;
         String productName;
         String categoryName;
-        double revenue;
+        long revenue;
         int quantitySold;
 
-        ProductRevenue(Long productId, String productName, String categoryName, double revenue, int quantitySold) {
+        ProductRevenue(Long productId, String productName, String categoryName, long revenue, int quantitySold) {
             this.productId = productId;
             this.productName = productName;
             this.categoryName = categoryName;
@@ -263,7 +266,7 @@ public class RevenueService {
             this.quantitySold = quantitySold;
         }
 
-        void addRevenue(double amount, int quantity) {
+        void addRevenue(long amount, int quantity) {
             this.revenue += amount;
             this.quantitySold += quantity;
         }
@@ -0,0 +1,94 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.ReviewImageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Lưu ảnh đánh giá vào {@link ContentAddressedStore} riêng: chỉ nhận ảnh JPEG/PNG/WEBP/GIF,
+ * giới hạn dung lượng mỗi ảnh và số ảnh mỗi đánh giá. Gọi trước transaction ghi review.
+ * File của review ghi lỗi hoặc đã bị xóa được dọn định kỳ bởi {@link #deleteOrphans()}
+ * khi đã cũ hơn {@code review.image.orphan-min-age-hours}.
+ */
+@Service
+public class ReviewImageStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(ReviewImageStorage.class);
+    private static final Set<String> ALLOWED_TYPES = Set.of("image/jpeg", "image/png", "image/webp", "image/gif");
+
+    private final ContentAddressedStore store;
+    private final ReviewImageRepository reviewImageRepository;
+    private final long maxBytes;
+    private final int maxImages;
+    private final Duration orphanMinAge;
+
+    public ReviewImageStorage(ReviewImageRepository reviewImageRepository,
+                              @Value("${review.image.dir:data/review-images}") String rootDir,
+                              @Value("${review.image.max-bytes:5242880}") long maxBytes,
+                              @Value("${review.image.max-per-review:5}") int maxImages,
+                              @Value("${review.image.orphan-min-age-hours:24}") long orphanMinAgeHours) {
+        this.store = new ContentAddressedStore(rootDir,
+                "Ảnh vượt quá dung lượng cho phép (" + maxBytes / (1024 * 1024) + "MB)",
+                "Lỗi khi lưu ảnh đánh giá",
+                "Đường dẫn ảnh không hợp lệ");
+        this.reviewImageRepository = reviewImageRepository;
+        this.maxBytes = maxBytes;
+        this.maxImages = maxImages;
+        this.orphanMinAge = Duration.ofHours(orphanMinAgeHours);
+    }
+
+    public List<StoredImage> storeAll(List<MultipartFile> files) {
+        List<StoredImage> stored = new ArrayList<>();
+        if (files == null) {
+            return stored;
+        }
+        List<MultipartFile> nonEmpty = files.stream().filter(f -> f != null && !f.isEmpty()).toList();
+        if (nonEmpty.size() > maxImages) {
+            throw new RuntimeException("Mỗi đánh giá tối đa " + maxImages + " ảnh");
+        }
+        for (MultipartFile file : nonEmpty) {
+            stored.add(store(file));
+        }
+        return stored;
+    }
+
+    public StoredImage store(MultipartFile file) {
+        String contentType = file.getContentType() != null ? file.getContentType().toLowerCase(Locale.ROOT) : "";
+        if (!ALLOWED_TYPES.contains(contentType)) {
+            throw new RuntimeException("Chỉ hỗ trợ ảnh JPEG, PNG, WEBP hoặc GIF");
+        }
+        if (file.getSize() > maxBytes) {
+            throw new RuntimeException("Ảnh vượt quá dung lượng cho phép (" + maxBytes / (1024 * 1024) + "MB)");
+        }
+        ContentAddressedStore.Blob blob = store.write(file, maxBytes);
+        return new StoredImage(blob.path(), blob.hash(), blob.size(), contentType);
+    }
+
+    public Path resolve(String relativePath) {
+        return store.resolve(relativePath);
+    }
+
+    // Xóa file không còn ảnh đánh giá nào trỏ tới: review ghi lỗi sau khi lưu ảnh, hoặc review đã bị xóa
+    @Scheduled(cron = "${review.image.cleanup-cron:0 45 4 * * *}")
+    public int deleteOrphans() {
+        int deleted = store.deleteUnreferenced(orphanMinAge, reviewImageRepository::existsByFilePath);
+        if (deleted > 0) {
+            log.info("Deleted {} orphaned review image files", deleted);
+        }
+        return deleted;
+    }
+
+    public record StoredImage(String path, String hash, long size, String contentType) {
+    }
+}
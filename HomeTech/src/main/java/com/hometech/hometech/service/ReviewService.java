@@ -6,14 +6,22 @@ import com.hometech.hometech.model.Review;
 import com.hometech.hometech.model.ReviewImage;
 import com.hometech.hometech.Repository.CustomerRepository;
 import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.Repository.ReviewImageRepository;
 import com.hometech.hometech.Repository.ReviewRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -22,17 +30,32 @@ public class ReviewService {
     private final ReviewRepository reviewRepository;
     private final ProductRepository productRepository;
     private final CustomerRepository customerRepository;
+    private final ProductRatingService productRatingService;
+    private final ReviewImageRepository reviewImageRepository;
+
+    private static final int MAX_FEED_PAGE = 50;
+    private static final String IMAGE_URL_PREFIX = "/api/reviews/images/";
 
     public ReviewService(ReviewRepository reviewRepository,
                          ProductRepository productRepository,
-                         CustomerRepository customerRepository) {
+                         CustomerRepository customerRepository,
+                         ProductRatingService productRatingService,
+                         ReviewImageRepository reviewImageRepository) {
         this.reviewRepository = reviewRepository;
         this.productRepository = productRepository;
         this.customerRepository = customerRepository;
+        this.productRatingService = productRatingService;
+        this.reviewImageRepository = reviewImageRepository;
     }
 
     // Đánh giá sản phẩm (thêm mới hoặc cập nhật nếu tồn tại)ơ
-    public Review addOrUpdateReview(long productId, long customerId, int rating, String content, List<String> imageBase64List) {
+    @Transactional
+    public Review addOrUpdateReview(long productId, long customerId, int rating, String content,
+                                    List<ReviewImageStorage.StoredImage> storedImages) {
+        if (rating < 1 || rating > 5) {
+            throw new RuntimeException("Số sao đánh giá phải từ 1 đến 5");
+        }
+
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy sản phẩm với ID: " + productId));
 
@@ -41,6 +64,7 @@ public class ReviewService {
 
         Optional<Review> existingReviewOpt = reviewRepository.findByCustomerAndProduct(customer, product);
         Review review = existingReviewOpt.orElse(new Review());
+        Integer ratingBefore = existingReviewOpt.isPresent() && !review.isHidden() ? review.getRating() : null;
 
         if (existingReviewOpt.isPresent()) {
             // Kiểm tra thời gian sửa (chỉ cho phép sửa trong 7 ngày)
@@ -57,22 +81,27 @@ public class ReviewService {
         review.setRating(rating);
         review.setContent(content);
 
-        // Xóa ảnh cũ và thêm ảnh mới
+        // Xóa ảnh cũ và thêm ảnh mới (file đã được stream xuống đĩa trước transaction)
         review.getImages().clear();
-        if (imageBase64List != null && !imageBase64List.isEmpty()) {
-            for (String base64 : imageBase64List) {
-                byte[] imageData = Base64.getDecoder().decode(base64);
+        if (storedImages != null) {
+            for (ReviewImageStorage.StoredImage stored : storedImages) {
                 ReviewImage image = new ReviewImage();
-                image.setImageData(imageData);
+                image.setFilePath(stored.path());
+                image.setFileHash(stored.hash());
+                image.setFileSize(stored.size());
+                image.setContentType(stored.contentType());
                 image.setReview(review);
                 review.getImages().add(image);
             }
         }
 
-        return reviewRepository.save(review);
+        Review saved = reviewRepository.save(review);
+        productRatingService.reviewChanged(productId, ratingBefore, saved.isHidden() ? null : rating);
+        return saved;
     }
 
     // Hủy đánh giá (chỉ trong 30 phút sau khi tạo)
+    @Transactional
     public void deleteReview(long reviewId, long customerId) {
         Review review = reviewRepository.findById(reviewId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy đánh giá với ID: " + reviewId));
@@ -90,6 +119,9 @@ public class ReviewService {
         }
 
         reviewRepository.delete(review);
+        if (!review.isHidden()) {
+            productRatingService.reviewChanged(review.getProduct().getId(), review.getRating(), null);
+        }
     }
 
     // Xem đánh giá theo sản phẩm (chỉ hiển thị chưa ẩn)
@@ -99,27 +131,147 @@ public class ReviewService {
         return reviewRepository.findByProductAndHiddenFalse(product);
     }
 
+    public enum FeedSort {
+        NEWEST, HIGHEST, LOWEST, WITH_PHOTOS;
+
+        public static FeedSort parse(String value) {
+            if (value == null || value.isBlank()) {
+                return NEWEST;
+            }
+            try {
+                return FeedSort.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Kiểu sắp xếp không hợp lệ: " + value);
+            }
+        }
+    }
+
+    public record FeedItem(Long id, int rating, String content, LocalDateTime createdAt, LocalDateTime updatedAt,
+                           String customerName, List<String> images) {
+    }
+
+    // nextCursor = null khi đã hết
+    public record FeedPage(List<FeedItem> items, String nextCursor) {
+    }
+
+    /**
+     * Feed đánh giá đang hiển thị của sản phẩm, phân trang keyset: client gửi lại {@code nextCursor}
+     * của trang trước. Ảnh chỉ trả về URL ({@code /api/reviews/images/{id}}), không kèm dữ liệu.
+     */
+    public FeedPage getFeed(long productId, FeedSort sort, String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_FEED_PAGE));
+        // Lấy dư một dòng để biết còn trang sau không
+        PageRequest page = PageRequest.of(0, size + 1);
+        long[] position = decodeCursor(cursor, sort);
+        int cursorRating = (int) position[0];
+        long beforeId = position[1];
+
+        List<ReviewRepository.FeedRow> rows = switch (sort) {
+            case NEWEST -> reviewRepository.findFeedNewest(productId, beforeId, page);
+            case HIGHEST -> reviewRepository.findFeedHighest(productId, cursorRating, beforeId, page);
+            case LOWEST -> reviewRepository.findFeedLowest(productId, cursorRating, beforeId, page);
+            case WITH_PHOTOS -> reviewRepository.findFeedWithPhotos(productId, beforeId, page);
+        };
+
+        boolean hasMore = rows.size() > size;
+        if (hasMore) {
+            rows = rows.subList(0, size);
+        }
+
+        Map<Long, List<String>> imagesByReview = new HashMap<>();
+        if (!rows.isEmpty()) {
+            List<Long> reviewIds = rows.stream().map(ReviewRepository.FeedRow::getId).toList();
+            for (ReviewImageRepository.ImageRef image : reviewImageRepository.findRefsByReviewIds(reviewIds)) {
+                imagesByReview.computeIfAbsent(image.getReviewId(), id -> new ArrayList<>())
+                        .add(IMAGE_URL_PREFIX + image.getId());
+            }
+        }
+
+        List<FeedItem> items = new ArrayList<>(rows.size());
+        for (ReviewRepository.FeedRow row : rows) {
+            items.add(new FeedItem(row.getId(), row.getRating(), row.getContent(), row.getCreatedAt(),
+                    row.getUpdatedAt(), row.getCustomerName(),
+                    imagesByReview.getOrDefault(row.getId(), List.of())));
+        }
+
+        String nextCursor = null;
+        if (hasMore) {
+            ReviewRepository.FeedRow last = rows.get(rows.size() - 1);
+            nextCursor = encodeCursor(last.getRating(), last.getId());
+        }
+        return new FeedPage(items, nextCursor);
+    }
+
+    // Cursor "rating:id" dạng base64 url-safe; trang đầu bắt đầu từ id lớn nhất
+    private static String encodeCursor(int rating, long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((rating + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long[] decodeCursor(String cursor, FeedSort sort) {
+        if (cursor == null || cursor.isBlank()) {
+            int startRating = sort == FeedSort.LOWEST ? 0 : 6;
+            return new long[]{startRating, Long.MAX_VALUE};
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            return new long[]{Integer.parseInt(decoded.substring(0, separator)), Long.parseLong(decoded.substring(separator + 1))};
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Cursor không hợp lệ");
+        }
+    }
+
+    // Ảnh của đánh giá đang hiển thị (null nếu không có hoặc đánh giá bị ẩn)
+    public ReviewImageRepository.ImageRef getVisibleImage(long imageId) {
+        return reviewImageRepository.findVisibleRef(imageId).orElse(null);
+    }
+
+    public byte[] getLegacyImageData(long imageId) {
+        return reviewImageRepository.findLegacyData(imageId);
+    }
+
     // Ẩn đánh giá (cho admin)
+    @Transactional
     public void hideReview(long reviewId) {
         Review review = reviewRepository.findById(reviewId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy đánh giá với ID: " + reviewId));
+        if (review.isHidden()) {
+            return;
+        }
         review.setHidden(true);
         reviewRepository.save(review);
+        productRatingService.reviewChanged(review.getProduct().getId(), review.getRating(), null);
     }
     // hiện đánh giá (cho admin)
+    @Transactional
     public void showReview(long reviewId) {
         Review review = reviewRepository.findById(reviewId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy đánh giá với ID: " + reviewId));
+        if (!review.isHidden()) {
+            return;
+        }
         review.setHidden(false);
         reviewRepository.save(review);
+        productRatingService.reviewChanged(review.getProduct().getId(), null, review.getRating());
     }
 
+    // Đọc từ bảng tổng hợp, chỉ tính đánh giá đang hiển thị
     public double getAverageRating(long productId) {
-        return reviewRepository.getAverageRating(productId).orElse(0.0);
+        return productRatingService.getRating(productId).average();
+    }
+
+    public Map<Long, ProductRatingService.RatingSummary> getRatings(Collection<Long> productIds) {
+        return productRatingService.getRatings(productIds);
     }
 
     // Lấy tất cả đánh giá (cho admin)
     public List<Review> getAllReviews() {
         return reviewRepository.findAll();
     }
+
+    // Một trang theo keyset id, dùng khi stream toàn bộ đánh giá
+    public List<Review> getPageAfter(long afterId, int limit) {
+        return reviewRepository.findPageAfter(afterId, PageRequest.of(0, limit));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.BannerRepository;
+import com.hometech.hometech.Repository.FooterContentRepository;
+import com.hometech.hometech.enums.BannerType;
+import com.hometech.hometech.model.Banner;
+import com.hometech.hometech.model.FooterContent;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Banner đang hiển thị theo từng {@link BannerType} và footer đang hoạt động, tính sẵn một lần.
+ *
+ * <p>Đọc chỉ là lấy snapshot hiện tại và so với mốc lịch gần nhất ({@code startAt}/{@code endAt} gần nhất
+ * trong tương lai của các banner đang bật). Snapshot chỉ được tính lại khi qua mốc đó hoặc khi admin sửa
+ * banner/footer ({@link #invalidate()}), kể cả admin sửa trên node khác (phiên bản chung trong {@link CatalogVersions}).
+ */
+@Service
+public class SiteContentSnapshot {
+
+    private record Snapshot(Map<BannerType, List<Banner>> byType, List<Banner> all, FooterContent footer,
+                            LocalDateTime nextBoundary, long sharedVersion, String version) {
+        boolean isValidAt(LocalDateTime now, long currentSharedVersion) {
+            return sharedVersion == currentSharedVersion && (nextBoundary == null || now.isBefore(nextBoundary));
+        }
+    }
+
+    private final BannerRepository bannerRepository;
+    private final FooterContentRepository footerContentRepository;
+    private final CatalogVersions catalogVersions;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    // Tăng mỗi lần admin sửa; snapshot dựng từ dữ liệu cũ hơn thì không được lưu lại
+    private final AtomicLong generation = new AtomicLong();
+    private final Object rebuildLock = new Object();
+
+    public SiteContentSnapshot(BannerRepository bannerRepository, FooterContentRepository footerContentRepository,
+                               CatalogVersions catalogVersions) {
+        this.bannerRepository = bannerRepository;
+        this.footerContentRepository = footerContentRepository;
+        this.catalogVersions = catalogVersions;
+    }
+
+    // type = null: mọi loại banner
+    public List<Banner> getVisibleBanners(BannerType type) {
+        Snapshot snapshot = snapshot();
+        return type == null ? snapshot.all() : snapshot.byType().getOrDefault(type, List.of());
+    }
+
+    // null nếu chưa có footer nào đang hoạt động
+    public FooterContent getActiveFooter() {
+        return snapshot().footer();
+    }
+
+    // Phiên bản cho ETag của banner/footer: giống nhau trên mọi node có cùng dữ liệu, không truy vấn khi snapshot
+    // còn hiệu lực
+    public String version() {
+        return snapshot().version();
+    }
+
+    // Gọi sau khi banner/footer thay đổi; trong transaction thì xóa lại lần nữa sau commit
+    public void invalidate() {
+        catalogVersions.siteContentChanged();
+        evict();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict();
+                }
+            });
+        }
+    }
+
+    private void evict() {
+        generation.incrementAndGet();
+        current.set(null);
+    }
+
+    private Snapshot snapshot() {
+        LocalDateTime now = LocalDateTime.now();
+        long sharedVersion = catalogVersions.siteContentVersion();
+        Snapshot snapshot = current.get();
+        if (snapshot != null && snapshot.isValidAt(now, sharedVersion)) {
+            return snapshot;
+        }
+        // Chỉ một luồng tải lại; các luồng khác chờ rồi dùng kết quả đó
+        synchronized (rebuildLock) {
+            snapshot = current.get();
+            if (snapshot != null && snapshot.isValidAt(now, sharedVersion)) {
+                return snapshot;
+            }
+            long startGeneration = generation.get();
+            snapshot = load(now, sharedVersion);
+            if (generation.get() == startGeneration) {
+                current.set(snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    private Snapshot load(LocalDateTime now, long sharedVersion) {
+        Map<BannerType, List<Banner>> byType = new EnumMap<>(BannerType.class);
+        List<Banner> all = new ArrayList<>();
+        LocalDateTime nextBoundary = null;
+        for (Banner banner : bannerRepository.findAllByActiveTrueOrderByDisplayOrderAsc()) {
+            if (isWithinSchedule(banner, now)) {
+                all.add(banner);
+                byType.computeIfAbsent(banner.getType(), type -> new ArrayList<>()).add(banner);
+            }
+            nextBoundary = earliest(nextBoundary, nextBoundary(banner, now));
+        }
+        byType.replaceAll((type, banners) -> List.copyOf(banners));
+        FooterContent footer = footerContentRepository.findFirstByActiveTrueOrderByUpdatedAtDesc().orElse(null);
+        // Qua mốc lịch thì tập banner đang hiện đổi mà phiên bản chung không đổi: thêm mã của tập đó vào ETag
+        List<Long> visibleIds = new ArrayList<>(all.size() + 1);
+        all.forEach(banner -> visibleIds.add(banner.getId()));
+        visibleIds.add(footer == null ? null : footer.getId());
+        String version = sharedVersion + "." + Integer.toHexString(visibleIds.hashCode());
+        return new Snapshot(byType, List.copyOf(all), footer, nextBoundary, sharedVersion, version);
+    }
+
+    private static boolean isWithinSchedule(Banner banner, LocalDateTime now) {
+        if (banner.getStartAt() != null && banner.getStartAt().isAfter(now)) {
+            return false;
+        }
+        return banner.getEndAt() == null || !banner.getEndAt().isBefore(now);
+    }
+
+    // Thời điểm sớm nhất sau now mà trạng thái hiển thị của banner đổi
+    private static LocalDateTime nextBoundary(Banner banner, LocalDateTime now) {
+        if (banner.getStartAt() != null && banner.getStartAt().isAfter(now)) {
+            return banner.getStartAt();
+        }
+        if (banner.getEndAt() != null && !banner.getEndAt().isBefore(now)) {
+            // Còn hiển thị tới hết endAt, ẩn từ ngay sau đó
+            return banner.getEndAt().plusNanos(1);
+        }
+        return null;
+    }
+
+    private static LocalDateTime earliest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || a.isBefore(b) ? a : b;
+    }
+}
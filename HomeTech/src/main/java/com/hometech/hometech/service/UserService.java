@@ -15,10 +15,13 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final AccountRepository accountRepository;
+    private final AccountIdentityService accountIdentityService;
 
-    public UserService(UserRepository userRepository, AccountRepository accountRepository) {
+    public UserService(UserRepository userRepository, AccountRepository accountRepository,
+                       AccountIdentityService accountIdentityService) {
         this.userRepository = userRepository;
         this.accountRepository = accountRepository;
+        this.accountIdentityService = accountIdentityService;
     }
 
     // Lấy danh sách tất cả người dùng
@@ -38,12 +41,14 @@ public class UserService {
 
         account.setEnabled(enable);
         accountRepository.save(account);
+        accountIdentityService.invalidate(account.getId());
     }
     public void updateUserRole(Long id, RoleType roleName) {
         Account account = accountRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("User không tồn tại"));
         account.setRole(roleName);
         accountRepository.save(account);
+        accountIdentityService.invalidate(account.getId());
     }
     public User getById(long id) {
         Optional<User> userOpt = userRepository.findById(id);
@@ -1,12 +1,21 @@
 package com.hometech.hometech.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.hometech.hometech.config.HmacUtil;
 import com.hometech.hometech.config.VnPayConfig;
 import com.hometech.hometech.dto.VnPayCreateResponse;
 import com.hometech.hometech.dto.VnPayReturnResponse;
+import com.hometech.hometech.enums.PaymentMethod;
+import com.hometech.hometech.model.Payment;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -15,11 +24,29 @@ import java.util.*;
 
 
 @Service
-public class VnPayService {
+public class VnPayService implements PaymentStatusGateway {
+
+    private static final Logger log = LoggerFactory.getLogger(VnPayService.class);
 
     @Autowired
     private VnPayConfig config;
 
+    @Autowired
+    private OutboundGatewayRegistry gatewayRegistry;
+
+    // API truy vấn giao dịch (querydr) của VNPAY
+    @Value("${vnpay.api-url:https://sandbox.vnpayment.vn/merchant_webapi/api/transaction}")
+    private String apiUrl;
+
+    private OutboundGateway gateway;
+    private RestTemplate restTemplate;
+
+    @PostConstruct
+    void initGateway() {
+        gateway = gatewayRegistry.gateway("vnpay");
+        restTemplate = new RestTemplate(gateway.requestFactory());
+    }
+
     public VnPayCreateResponse createPaymentUrl(HttpServletRequest request, long amount, String orderInfo) {
         String vnp_Version     = "2.1.0";
         String vnp_Command     = "pay";
@@ -108,4 +135,69 @@ public class VnPayService {
                 Collections.unmodifiableMap(rawParams)
         );
     }
+
+    @Override
+    public String method() {
+        return PaymentMethod.VNPAY.name();
+    }
+
+    /**
+     * Truy vấn trạng thái giao dịch (vnp_Command=querydr).
+     * vnp_TransactionDate phải trùng vnp_CreateDate lúc tạo URL; txnRef chính là millis lúc tạo nên dựng lại được.
+     */
+    @Override
+    public RemoteStatus queryStatus(Payment payment) {
+        String txnRef = payment.getTxnRef();
+        if (!StringUtils.hasText(txnRef) || !txnRef.chars().allMatch(Character::isDigit)) {
+            // Chưa từng tạo URL thanh toán
+            return RemoteStatus.UNPAID;
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+            String requestId = Long.toString(System.nanoTime());
+            String version = "2.1.0";
+            String command = "querydr";
+            String transactionDate = format.format(new Date(Long.parseLong(txnRef)));
+            String createDate = format.format(new Date());
+            String ipAddr = "127.0.0.1";
+            String orderInfo = "Truy van giao dich " + txnRef;
+
+            String hashData = String.join("|", requestId, version, command, config.getTmnCode(), txnRef,
+                    transactionDate, createDate, ipAddr, orderInfo);
+
+            Map<String, String> body = new LinkedHashMap<>();
+            body.put("vnp_RequestId", requestId);
+            body.put("vnp_Version", version);
+            body.put("vnp_Command", command);
+            body.put("vnp_TmnCode", config.getTmnCode());
+            body.put("vnp_TxnRef", txnRef);
+            body.put("vnp_OrderInfo", orderInfo);
+            body.put("vnp_TransactionDate", transactionDate);
+            body.put("vnp_CreateDate", createDate);
+            body.put("vnp_IpAddr", ipAddr);
+            body.put("vnp_SecureHash", HmacUtil.hmacSHA512(config.getHashSecret(), hashData));
+
+            JsonNode response = gateway.execute(() -> restTemplate.postForObject(apiUrl, body, JsonNode.class));
+            String responseCode = response != null ? response.path("vnp_ResponseCode").asText("") : "";
+            if ("91".equals(responseCode)) {
+                // Không tìm thấy giao dịch: khách chưa thanh toán
+                return RemoteStatus.UNPAID;
+            }
+            if (!"00".equals(responseCode)) {
+                log.warn("VNPAY querydr for txnRef {} returned code {}", txnRef, responseCode);
+                return RemoteStatus.UNKNOWN;
+            }
+            String transactionStatus = response.path("vnp_TransactionStatus").asText("");
+            if ("00".equals(transactionStatus)) {
+                return RemoteStatus.PAID;
+            }
+            // 01: chưa hoàn tất, 02: lỗi; còn lại (đang xử lý/hoàn tiền...) để admin xem
+            return "01".equals(transactionStatus) || "02".equals(transactionStatus)
+                    ? RemoteStatus.UNPAID
+                    : RemoteStatus.UNKNOWN;
+        } catch (Exception e) {
+            log.warn("VNPAY querydr for txnRef {} failed: {}", txnRef, e.getMessage());
+            return RemoteStatus.UNKNOWN;
+        }
+    }
 }
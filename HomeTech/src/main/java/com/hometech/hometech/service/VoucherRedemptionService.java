@@ -0,0 +1,84 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.VoucherRedemptionRepository;
+import com.hometech.hometech.Repository.VoucherRepository;
+import com.hometech.hometech.model.Voucher;
+import com.hometech.hometech.model.VoucherRedemption;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Giữ / hoàn lượt dùng voucher.
+ *
+ * <p>Lượt dùng được tăng bằng một câu UPDATE có điều kiện ({@code used_count < usage_limit})
+ * nên không bao giờ vượt giới hạn dù nhiều đơn checkout song song, và khóa dòng voucher chỉ
+ * được giữ trong transaction ngắn của {@link #redeem} thay vì suốt quá trình tạo đơn.
+ * Giới hạn theo khách được kiểm tra sau khi đã giữ khóa dòng voucher nên cũng chính xác.
+ */
+@Service
+public class VoucherRedemptionService {
+
+    private final VoucherRepository voucherRepository;
+    private final VoucherRedemptionRepository redemptionRepository;
+
+    public VoucherRedemptionService(VoucherRepository voucherRepository,
+                                    VoucherRedemptionRepository redemptionRepository) {
+        this.voucherRepository = voucherRepository;
+        this.redemptionRepository = redemptionRepository;
+    }
+
+    @Transactional
+    public VoucherRedemption redeem(Voucher voucher, Long customerId) {
+        if (voucherRepository.tryIncrementUsage(voucher.getId()) == 0) {
+            throw new RuntimeException("Voucher đã đạt số lần sử dụng tối đa");
+        }
+
+        Integer perCustomerLimit = voucher.getPerCustomerLimit();
+        if (customerId != null && perCustomerLimit != null && perCustomerLimit > 0) {
+            long used = redemptionRepository.countByVoucherIdAndCustomerIdAndReleasedFalse(voucher.getId(), customerId);
+            if (used >= perCustomerLimit) {
+                // Ném lỗi -> rollback cả lượt vừa tăng ở trên
+                throw new RuntimeException("Bạn đã dùng hết lượt áp dụng voucher này");
+            }
+        }
+
+        VoucherRedemption redemption = new VoucherRedemption();
+        redemption.setVoucherId(voucher.getId());
+        redemption.setCustomerId(customerId);
+        redemption.setRedeemedAt(LocalDateTime.now());
+        return redemptionRepository.save(redemption);
+    }
+
+    @Transactional
+    public void attachOrder(VoucherRedemption redemption, Long orderId) {
+        redemptionRepository.attachOrder(redemption.getId(), orderId);
+        redemption.setOrderId(orderId);
+    }
+
+    // Bù trừ khi tạo đơn thất bại sau khi đã giữ lượt
+    @Transactional
+    public boolean release(VoucherRedemption redemption) {
+        if (redemptionRepository.markReleased(redemption.getId(), LocalDateTime.now()) == 0) {
+            return false;
+        }
+        voucherRepository.decrementUsage(redemption.getVoucherId());
+        redemption.setReleased(true);
+        return true;
+    }
+
+    // Hoàn lượt dùng khi đơn bị hủy; gọi nhiều lần vẫn chỉ hoàn một lần
+    @Transactional
+    public int releaseForOrder(Long orderId) {
+        List<VoucherRedemption> redemptions = redemptionRepository.findByOrderIdAndReleasedFalse(orderId);
+        int released = 0;
+        for (VoucherRedemption redemption : redemptions) {
+            if (release(redemption)) {
+                released++;
+            }
+        }
+        return released;
+    }
+}
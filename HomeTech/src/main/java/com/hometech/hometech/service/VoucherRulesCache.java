@@ -0,0 +1,260 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.VoucherRepository;
+import com.hometech.hometech.model.Voucher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cache luật voucher cho preview giá: toàn bộ voucher đang active (chưa hết hạn) được nạp vào
+ * một map bất biến theo mã, mỗi voucher được "biên dịch" sẵn thành danh sách điều kiện.
+ * Preview không cần đọc DB cho phần voucher.
+ *
+ * <p>Cache được nạp lại khi admin tạo/sửa/xóa voucher (kể cả trên node khác, qua phiên bản {@code vouchers}
+ * trong {@link CatalogVersions}), khi tới mốc startDate/endDate gần nhất, và định kỳ ({@code voucher.cache.refresh-seconds}) để cập nhật usedCount. usedCount trong cache
+ * chỉ dùng để hiển thị — giới hạn lượt thật sự do {@link VoucherRedemptionService} đảm bảo lúc checkout.
+ */
+@Service
+public class VoucherRulesCache {
+
+    private static final Logger log = LoggerFactory.getLogger(VoucherRulesCache.class);
+
+    private final VoucherRepository voucherRepository;
+    private final CatalogVersions catalogVersions;
+    private final long refreshIntervalMillis;
+
+    private volatile Snapshot snapshot;
+
+    public VoucherRulesCache(VoucherRepository voucherRepository, CatalogVersions catalogVersions,
+                             @Value("${voucher.cache.refresh-seconds:60}") long refreshSeconds) {
+        this.voucherRepository = voucherRepository;
+        this.catalogVersions = catalogVersions;
+        this.refreshIntervalMillis = refreshSeconds * 1000;
+    }
+
+    public VoucherRule find(String code) {
+        if (code == null) {
+            return null;
+        }
+        return current().byCode().get(normalizeCode(code));
+    }
+
+    // Các voucher áp dụng được cho tổng tiền, giảm nhiều nhất đứng trước
+    public List<VoucherRule> findApplicable(long subtotal) {
+        LocalDateTime now = LocalDateTime.now();
+        List<VoucherRule> result = new ArrayList<>();
+        for (VoucherRule rule : current().rules()) {
+            if (rule.rejectReason(subtotal, now) == null) {
+                result.add(rule);
+            }
+        }
+        result.sort(Comparator.comparingLong((VoucherRule r) -> r.discountFor(subtotal)).reversed());
+        return result;
+    }
+
+    public synchronized void refresh() {
+        // Đọc phiên bản trước khi nạp: voucher đổi trong lúc nạp sẽ làm lần kiểm tra sau nạp lại
+        long version = catalogVersions.vouchersVersion();
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, VoucherRule> byCode = new HashMap<>();
+        LocalDateTime nextBoundary = null;
+
+        for (Voucher voucher : voucherRepository.findAll()) {
+            if (!voucher.isActive() || voucher.getCode() == null) {
+                continue;
+            }
+            if (voucher.getEndDate() != null && voucher.getEndDate().isBefore(now)) {
+                continue;
+            }
+            byCode.put(normalizeCode(voucher.getCode()), VoucherRule.compile(voucher));
+
+            nextBoundary = earliestAfter(nextBoundary, voucher.getStartDate(), now);
+            nextBoundary = earliestAfter(nextBoundary, voucher.getEndDate(), now);
+        }
+
+        List<VoucherRule> rules = List.copyOf(byCode.values());
+        snapshot = new Snapshot(Map.copyOf(byCode), rules, nextBoundary, version, System.currentTimeMillis());
+        log.debug("Voucher rules cache loaded {} vouchers, next boundary {}", rules.size(), nextBoundary);
+    }
+
+    // Nạp lại khi voucher đổi ở node bất kỳ, khi qua mốc bắt đầu/kết thúc gần nhất hoặc khi tới chu kỳ làm mới
+    @Scheduled(fixedDelayString = "${voucher.cache.check-interval-ms:1000}")
+    public void refreshIfStale() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        boolean boundaryPassed = current.nextBoundary() != null
+                && !LocalDateTime.now().isBefore(current.nextBoundary());
+        boolean expired = System.currentTimeMillis() - current.loadedAt() >= refreshIntervalMillis;
+        boolean changed = catalogVersions.vouchersVersion() != current.version();
+        if (changed || boundaryPassed || expired) {
+            try {
+                refresh();
+            } catch (Exception e) {
+                log.warn("Could not refresh voucher rules cache: {}", e.getMessage());
+            }
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    refresh();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private static LocalDateTime earliestAfter(LocalDateTime currentMin, LocalDateTime candidate, LocalDateTime now) {
+        if (candidate == null || !candidate.isAfter(now)) {
+            return currentMin;
+        }
+        return currentMin == null || candidate.isBefore(currentMin) ? candidate : currentMin;
+    }
+
+    // Cách chuẩn hóa mã dùng chung cho cache, lưu voucher và tra DB (VoucherRepository.findByCode)
+    static String normalizeCode(String code) {
+        return code.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private record Snapshot(Map<String, VoucherRule> byCode, List<VoucherRule> rules,
+                            LocalDateTime nextBoundary, long version, long loadedAt) {
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean test(long subtotal, LocalDateTime now);
+    }
+
+    private record Check(Condition test, String message) {
+    }
+
+    /**
+     * Bản chụp bất biến của một voucher cùng các điều kiện đã biên dịch sẵn.
+     * Chỉ những điều kiện thực sự có (min order, giới hạn lượt, khung thời gian) mới được thêm vào.
+     */
+    public static final class VoucherRule {
+        private final Long id;
+        private final String code;
+        private final Double discountPercent;
+        private final Double discountAmount;
+        private final PricingEngine.Discount discount;
+        private final long minOrderValue;
+        private final Integer usageLimit;
+        private final int usedCount;
+        private final LocalDateTime startDate;
+        private final LocalDateTime endDate;
+        private final List<Check> checks;
+
+        private VoucherRule(Voucher voucher, List<Check> checks) {
+            this.id = voucher.getId();
+            this.code = voucher.getCode();
+            this.discountPercent = voucher.getDiscountPercent();
+            this.discountAmount = voucher.getDiscountAmount();
+            this.discount = PricingEngine.Discount.of(voucher.getDiscountPercent(), voucher.getDiscountAmount());
+            this.minOrderValue = voucher.getMinOrderValue() != null ? PricingEngine.toVnd(voucher.getMinOrderValue()) : 0;
+            this.usageLimit = voucher.getUsageLimit();
+            this.usedCount = voucher.getUsedCount() != null ? voucher.getUsedCount() : 0;
+            this.startDate = voucher.getStartDate();
+            this.endDate = voucher.getEndDate();
+            this.checks = List.copyOf(checks);
+        }
+
+        static VoucherRule compile(Voucher voucher) {
+            List<Check> checks = new ArrayList<>();
+
+            Integer limit = voucher.getUsageLimit();
+            int used = voucher.getUsedCount() != null ? voucher.getUsedCount() : 0;
+            if (limit != null && used >= limit) {
+                checks.add(new Check((subtotal, now) -> false, "Voucher đã hết lượt sử dụng"));
+            }
+
+            long min = voucher.getMinOrderValue() != null ? PricingEngine.toVnd(voucher.getMinOrderValue()) : 0;
+            if (min > 0) {
+                checks.add(new Check((subtotal, now) -> subtotal >= min, "Đơn hàng chưa đạt giá trị tối thiểu"));
+            }
+
+            LocalDateTime start = voucher.getStartDate();
+            LocalDateTime end = voucher.getEndDate();
+            if (start != null) {
+                checks.add(new Check((subtotal, now) -> !now.isBefore(start), "Voucher chưa đến thời gian áp dụng"));
+            }
+            if (end != null) {
+                checks.add(new Check((subtotal, now) -> !now.isAfter(end), "Voucher đã hết hạn"));
+            }
+
+            return new VoucherRule(voucher, checks);
+        }
+
+        // null nếu áp dụng được, ngược lại là lý do không áp dụng được
+        public String rejectReason(long subtotal, LocalDateTime now) {
+            for (Check check : checks) {
+                if (!check.test().test(subtotal, now)) {
+                    return check.message();
+                }
+            }
+            return null;
+        }
+
+        // Cùng cách tính với checkout (PricingEngine): % + số tiền cố định, không vượt quá tổng đơn
+        public long discountFor(long subtotal) {
+            return discount.amountFor(subtotal);
+        }
+
+        public PricingEngine.Discount getDiscount() {
+            return discount;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public Double getDiscountPercent() {
+            return discountPercent;
+        }
+
+        public Double getDiscountAmount() {
+            return discountAmount;
+        }
+
+        public long getMinOrderValue() {
+            return minOrderValue;
+        }
+
+        public Integer getUsageLimit() {
+            return usageLimit;
+        }
+
+        public int getUsedCount() {
+            return usedCount;
+        }
+
+        public LocalDateTime getStartDate() {
+            return startDate;
+        }
+
+        public LocalDateTime getEndDate() {
+            return endDate;
+        }
+    }
+}
@@ -1,19 +1,25 @@
 package com.hometech.hometech.service;
 
 import com.hometech.hometech.Repository.VoucherRepository;
+import com.hometech.hometech.dto.ApplicableVoucherDTO;
 import com.hometech.hometech.model.Voucher;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class VoucherService {
 
     private final VoucherRepository voucherRepository;
+    private final VoucherRulesCache voucherRulesCache;
+    private final CatalogVersions catalogVersions;
 
-    public VoucherService(VoucherRepository voucherRepository) {
+    public VoucherService(VoucherRepository voucherRepository, VoucherRulesCache voucherRulesCache,
+                          CatalogVersions catalogVersions) {
         this.voucherRepository = voucherRepository;
+        this.voucherRulesCache = voucherRulesCache;
+        this.catalogVersions = catalogVersions;
     }
 
 
@@ -21,18 +27,22 @@ public class VoucherService {
         if (voucher.getUsedCount() == null || voucher.getUsedCount() < 0) {
             voucher.setUsedCount(0);
         }
-        return voucherRepository.save(voucher);
+        voucher.setCode(checkedCode(voucher.getCode(), null));
+        Voucher saved = voucherRepository.save(voucher);
+        vouchersChanged();
+        return saved;
     }
 
     public Voucher update(Long id, Voucher updated) {
         Voucher voucher = voucherRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Voucher not found"));
 
-        voucher.setCode(updated.getCode());
+        voucher.setCode(checkedCode(updated.getCode(), id));
         voucher.setDiscountPercent(updated.getDiscountPercent());
         voucher.setDiscountAmount(updated.getDiscountAmount());
         voucher.setMinOrderValue(updated.getMinOrderValue());
         voucher.setUsageLimit(updated.getUsageLimit());
+        voucher.setPerCustomerLimit(updated.getPerCustomerLimit());
         voucher.setStartDate(updated.getStartDate());
         voucher.setEndDate(updated.getEndDate());
         voucher.setActive(updated.isActive());
@@ -40,65 +50,65 @@ public class VoucherService {
             voucher.setUsedCount(updated.getUsedCount());
         }
 
-        return voucherRepository.save(voucher);
+        Voucher saved = voucherRepository.save(voucher);
+        vouchersChanged();
+        return saved;
     }
 
     public void delete(Long id) {
         voucherRepository.deleteById(id);
+        vouchersChanged();
     }
 
     public List<Voucher> getAll() {
         return voucherRepository.findAll();
     }
 
-    public Voucher getByCode(String code) {
-        return voucherRepository.findByCode(code)
-                .orElseThrow(() -> new RuntimeException("Voucher không tồn tại"));
+    // Tất cả voucher áp dụng được cho một tổng đơn, đọc từ cache (không truy vấn DB)
+    public List<ApplicableVoucherDTO> getApplicableVouchers(double orderTotal) {
+        long total = PricingEngine.toVnd(orderTotal);
+        return voucherRulesCache.findApplicable(total).stream()
+                .map(rule -> {
+                    long discount = rule.discountFor(total);
+                    return new ApplicableVoucherDTO(
+                            rule.getId(),
+                            rule.getCode(),
+                            rule.getDiscountPercent(),
+                            rule.getDiscountAmount(),
+                            rule.getMinOrderValue(),
+                            rule.getEndDate(),
+                            discount,
+                            total - discount
+                    );
+                })
+                .collect(Collectors.toList());
     }
 
-    // ===================== APPLY VOUCHER =========================
-    public double applyVoucher(String code, double orderTotal) {
-        Voucher voucher = getByCode(code);
-
-        // Check active
-        if (!voucher.isActive()) {
-            throw new RuntimeException("Voucher đã bị khóa");
-        }
-
-        // Check date
-        LocalDateTime now = LocalDateTime.now();
-        if (now.isBefore(voucher.getStartDate()) || now.isAfter(voucher.getEndDate())) {
-            throw new RuntimeException("Voucher đã hết hạn");
-        }
-
-        // Check usage limit
-        if (voucher.getUsedCount() >= voucher.getUsageLimit()) {
-            throw new RuntimeException("Voucher đã đạt số lần sử dụng tối đa");
-        }
-
-        // Check minimum order value
-        if (orderTotal < voucher.getMinOrderValue()) {
-            throw new RuntimeException("Đơn hàng chưa đạt đủ điều kiện áp dụng");
-        }
-
-        // Calculate discount
-        double discount = 0;
-
-        if (voucher.getDiscountPercent() != null) {
-            discount = orderTotal * (voucher.getDiscountPercent() / 100);
+    public Voucher getByCode(String code) {
+        if (code == null || code.isBlank()) {
+            throw new RuntimeException("Voucher không tồn tại");
         }
+        return voucherRepository.findByCode(VoucherRulesCache.normalizeCode(code))
+                .orElseThrow(() -> new RuntimeException("Voucher không tồn tại"));
+    }
 
-        if (voucher.getDiscountAmount() != null) {
-            discount += voucher.getDiscountAmount();
+    // Lưu mã ở dạng chuẩn hóa; hai mã chỉ khác hoa/thường hoặc khoảng trắng bị coi là trùng
+    private String checkedCode(String code, Long currentId) {
+        if (code == null || code.isBlank()) {
+            throw new RuntimeException("Mã voucher không được để trống");
         }
+        String normalized = VoucherRulesCache.normalizeCode(code);
+        voucherRepository.findByCode(normalized)
+                .filter(existing -> !existing.getId().equals(currentId))
+                .ifPresent(existing -> {
+                    throw new RuntimeException("Mã voucher đã tồn tại");
+                });
+        return normalized;
+    }
 
-        // Ensure discount không vượt quá tổng đơn
-        discount = Math.min(discount, orderTotal);
-
-        // Increase usedCount after successful apply
-        voucher.setUsedCount(voucher.getUsedCount() + 1);
-        voucherRepository.save(voucher);
-
-        return orderTotal - discount;
+    // Node này nạp lại ngay; node khác nạp lại sau lần đồng bộ phiên bản kế tiếp
+    private void vouchersChanged() {
+        voucherRulesCache.refresh();
+        catalogVersions.vouchersChanged();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,233 @@
+package com.hometech.hometech.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hometech.hometech.Repository.BannerRepository;
+import com.hometech.hometech.Repository.CategoryRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.Repository.ProductVariantRepository;
+import com.hometech.hometech.controller.Api.ProductRestController;
+import com.hometech.hometech.controller.Api.SiteContentController;
+import com.hometech.hometech.enums.BannerType;
+import com.hometech.hometech.model.Banner;
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.Product;
+import com.hometech.hometech.service.BannerService;
+import com.hometech.hometech.service.CatalogVersions;
+import com.hometech.hometech.service.CategoryDirectory;
+import com.hometech.hometech.service.CategoryService;
+import com.hometech.hometech.service.FooterContentService;
+import com.hometech.hometech.service.HomePageService;
+import com.hometech.hometech.service.JsonListStreamer;
+import com.hometech.hometech.service.NotifyService;
+import com.hometech.hometech.service.ProductImageService;
+import com.hometech.hometech.service.ProductService;
+import com.hometech.hometech.service.SiteContentSnapshot;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.handler.WebRequestHandlerInterceptorAdapter;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * ETag lấy từ phiên bản đã đồng bộ vào bộ nhớ: If-None-Match trùng thì trả 304 mà không chạy câu SQL nào,
+ * ghi dữ liệu (kể cả lưu thẳng qua repository) thì ETag đổi sau lần đồng bộ kế tiếp, trên mọi node.
+ * Test chạy không bọc transaction để phiên bản được đánh dấu sau commit như khi chạy thật.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({CatalogVersions.class, CategoryDirectory.class, CategoryService.class, ProductService.class,
+        SiteContentSnapshot.class, BannerService.class, FooterContentService.class, HttpCacheInterceptor.class})
+class HttpCacheInterceptorTest {
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private BannerService bannerService;
+    @Autowired
+    private FooterContentService footerContentService;
+    @Autowired
+    private HttpCacheInterceptor httpCacheInterceptor;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private CatalogVersions catalogVersions;
+    @Autowired
+    private DataSource dataSource;
+
+    private MockMvc mockMvc;
+    private Statistics statistics;
+    private Category phones;
+
+    @BeforeEach
+    void setUp() {
+        ProductRestController productController = new ProductRestController(productService, categoryService,
+                mock(ProductImageService.class), mock(NotifyService.class), mock(ProductVariantRepository.class),
+                mock(HomePageService.class),
+                new JsonListStreamer(new ObjectMapper().registerModule(new JavaTimeModule()), entityManager,
+                        transactionManager, 100));
+        SiteContentController contentController = new SiteContentController(bannerService, footerContentService,
+                mock(HomePageService.class));
+        // Như spring.jpa.open-in-view=true khi chạy thật
+        OpenEntityManagerInViewInterceptor openInView = new OpenEntityManagerInViewInterceptor();
+        openInView.setEntityManagerFactory(entityManagerFactory);
+        mockMvc = MockMvcBuilders.standaloneSetup(productController, contentController)
+                .addInterceptors(new WebRequestHandlerInterceptorAdapter(openInView), httpCacheInterceptor)
+                .build();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        phones = new Category();
+        phones.setName("Điện thoại");
+        phones = categoryRepository.save(phones);
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAll();
+        categoryRepository.deleteAll();
+        bannerRepository.deleteAll();
+    }
+
+    @Test
+    void matchingProductEtagAnswers304WithoutSql() throws Exception {
+        Product phone = product("Phone X");
+
+        String etag = mockMvc.perform(get("/api/products/{id}", phone.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=30, public"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        statistics.clear();
+        mockMvc.perform(get("/api/products/{id}", phone.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void writesChangeOnlyTheAffectedEtags() throws Exception {
+        Product phone = product("Phone X");
+        Product other = product("Phone Y");
+        String phoneEtag = etag("/api/products/" + phone.getId());
+        String otherEtag = etag("/api/products/" + other.getId());
+        String listEtag = etag("/api/products");
+
+        // Lưu thẳng qua repository (như trừ kho trong OrderService) vẫn đổi ETag nhờ entity listener
+        Product changed = productRepository.findById(phone.getId()).orElseThrow();
+        changed.setPrice(9_990_000);
+        productRepository.save(changed);
+        catalogVersions.sync();
+
+        mockMvc.perform(get("/api/products/{id}", phone.getId()).header(HttpHeaders.IF_NONE_MATCH, phoneEtag))
+                .andExpect(status().isOk());
+        assertNotEquals(listEtag, etag("/api/products"));
+        assertEquals(otherEtag, etag("/api/products/" + other.getId()));
+
+        // JSON sản phẩm có danh mục: đổi tên danh mục thì mọi sản phẩm đều đổi ETag
+        Category renamed = categoryRepository.findById(phones.getId()).orElseThrow();
+        renamed.setName("Smartphone");
+        categoryRepository.save(renamed);
+        catalogVersions.sync();
+        assertNotEquals(otherEtag, etag("/api/products/" + other.getId()));
+    }
+
+    @Test
+    void bannerEtagFollowsAdminWrites() throws Exception {
+        Banner banner = new Banner();
+        banner.setTitle("Sale 11.11");
+        banner.setType(BannerType.BANNER);
+        banner.setImageUrl("/images/sale.png");
+        banner = bannerService.create(banner);
+        // Đồng bộ ngay: nếu không, lần sync định kỳ chạy giữa hai request sẽ đổi phiên bản
+        catalogVersions.sync();
+
+        String etag = etag("/api/content/banners");
+        statistics.clear();
+        mockMvc.perform(get("/api/content/banners").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, public"));
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        bannerService.toggleActive(banner.getId(), false);
+        mockMvc.perform(get("/api/content/banners").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void everyNodeComputesTheSameEtagAfterSync() throws Exception {
+        Product phone = product("Phone X");
+        // Node khác: cùng DB, bộ nhớ riêng
+        CatalogVersions otherNode = new CatalogVersions(dataSource);
+        otherNode.sync();
+        assertEquals("W/\"" + otherNode.productTag(phone.getId()) + "\"", etag("/api/products/" + phone.getId()));
+        String otherListTag = otherNode.catalogTag();
+
+        Product changed = productRepository.findById(phone.getId()).orElseThrow();
+        changed.setStock(4);
+        productRepository.save(changed);
+        catalogVersions.sync();
+
+        // Node khác chưa đồng bộ thì còn ETag cũ, đồng bộ xong thì khớp ETag của node đã ghi
+        assertEquals(otherListTag, otherNode.catalogTag());
+        otherNode.sync();
+        assertNotEquals(otherListTag, otherNode.catalogTag());
+        assertEquals("W/\"" + otherNode.catalogTag() + "\"", etag("/api/products"));
+        assertEquals("W/\"" + otherNode.productTag(phone.getId()) + "\"", etag("/api/products/" + phone.getId()));
+    }
+
+    private String etag(String path) throws Exception {
+        return mockMvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private Product product(String name) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(1_000_000);
+        product.setStock(5);
+        product.setCategory(phones);
+        product.setCreatedAt(LocalDateTime.now());
+        Product saved = productService.save(product);
+        catalogVersions.sync();
+        return saved;
+    }
+}
@@ -0,0 +1,125 @@
+package com.hometech.hometech.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Chỉ bước chưa ghi trong schema_migration được chạy, theo thứ tự phiên bản; bước hoãn hoặc lỗi được
+ * chạy lại lần sau; backfill theo lô phủ hết các dòng.
+ */
+class SchemaMigratorTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private final List<SchemaMigration> migrations = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbc = new JdbcTemplate(database);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void appliesPendingStepsOnceInVersionOrder() {
+        List<Integer> runs = new ArrayList<>();
+        migrations.add(new SchemaMigration(2, "second", context -> runs.add(2)));
+        migrations.add(new SchemaMigration(1, "first", context -> runs.add(1)));
+
+        SchemaMigrator migrator = migrator("apply");
+        migrator.migrateOnStartup();
+        assertEquals(List.of(1, 2), runs);
+        assertEquals(List.of(1, 2), jdbc.queryForList("SELECT version FROM schema_migration ORDER BY version", Integer.class));
+
+        // Lần khởi động sau: không bước nào chạy lại, chỉ thêm bước mới
+        migrations.add(new SchemaMigration(3, "third", context -> runs.add(3)));
+        SchemaMigrator.Result result = migrator("apply").migrate();
+        assertEquals(List.of(3), result.applied());
+        assertEquals(List.of(1, 2, 3), runs);
+    }
+
+    @Test
+    void deferredAndFailedStepsAreRetried() {
+        AtomicBoolean tableReady = new AtomicBoolean(false);
+        AtomicBoolean broken = new AtomicBoolean(true);
+        AtomicInteger laterRuns = new AtomicInteger();
+        migrations.add(new SchemaMigration(1, "needs table", context -> tableReady.get()));
+        migrations.add(new SchemaMigration(2, "fails once", context -> {
+            if (broken.get()) {
+                throw new IllegalStateException("boom");
+            }
+            return true;
+        }));
+        migrations.add(new SchemaMigration(3, "after failure", context -> laterRuns.incrementAndGet() > 0));
+
+        SchemaMigrator.Result first = migrator("apply").migrate();
+        assertEquals(List.of(1), first.deferred());
+        assertEquals(2, first.failedVersion());
+        assertEquals(0, laterRuns.get());
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM schema_migration", Integer.class));
+
+        tableReady.set(true);
+        broken.set(false);
+        SchemaMigrator.Result second = migrator("apply").migrate();
+        assertTrue(second.success());
+        assertEquals(List.of(1, 2, 3), second.applied());
+        assertTrue(migrator("apply").pending().isEmpty());
+    }
+
+    @Test
+    void validateModeOnlyReportsPendingSteps() {
+        AtomicInteger runs = new AtomicInteger();
+        migrations.add(new SchemaMigration(1, "first", context -> runs.incrementAndGet() > 0));
+
+        SchemaMigrator migrator = migrator("validate");
+        migrator.migrateOnStartup();
+        assertEquals(0, runs.get());
+        assertEquals(1, migrator.pending().size());
+    }
+
+    @Test
+    void updateInChunksCoversEveryRow() {
+        jdbc.execute("CREATE TABLE item (id BIGINT PRIMARY KEY, status INT, flag INT)");
+        for (long id = 1; id <= 2_345; id++) {
+            jdbc.update("INSERT INTO item (id, status, flag) VALUES (?, ?, 0)", id, id % 3);
+        }
+        List<Integer> chunkRows = new ArrayList<>();
+        migrations.add(new SchemaMigration(1, "backfill", context -> {
+            chunkRows.add(context.updateInChunks("item",
+                    "UPDATE item SET flag = 1 WHERE status <> ? AND id > ? AND id <= ?", 0));
+            return true;
+        }));
+
+        migrator("apply").migrate();
+        assertEquals(List.of(2_345 - 2_345 / 3), chunkRows);
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM item WHERE status <> 0 AND flag = 0", Integer.class));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM item WHERE status = 0 AND flag = 1", Integer.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private SchemaMigrator migrator(String mode) {
+        SchemaMigrations schemaMigrations = mock(SchemaMigrations.class);
+        when(schemaMigrations.all()).thenReturn(List.copyOf(migrations));
+        return new SchemaMigrator(database, schemaMigrations, mock(ObjectProvider.class), mode, 500, 0, 5);
+    }
+}
@@ -0,0 +1,130 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.AccountRepository;
+import com.hometech.hometech.Repository.AdminRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.enums.RoleType;
+import com.hometech.hometech.model.Account;
+import com.hometech.hometech.model.Admin;
+import com.hometech.hometech.model.Customer;
+import com.hometech.hometech.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tra cứu tài khoản theo username/email bằng một truy vấn, cache theo account id và xóa cache khi đổi thông tin.
+ */
+@DataJpaTest
+@Import(AccountIdentityService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AccountIdentityServiceTest {
+
+    @Autowired
+    private AccountIdentityService identityService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private AdminRepository adminRepository;
+
+    @AfterEach
+    void cleanUp() {
+        accountRepository.deleteAll();
+        customerRepository.deleteAll();
+        adminRepository.deleteAll();
+    }
+
+    private Account createAccount(User user, String username, String email, RoleType role) {
+        user.setFullName(username);
+        user.setCreatedAt(LocalDateTime.now());
+        Account account = new Account();
+        account.setUsername(username);
+        account.setEmail(email);
+        account.setPassword("{noop}secret");
+        account.setRole(role);
+        account.setEnabled(true);
+        account.setEmailVerified(true);
+        account.setUser(user);
+        user.setAccount(account);
+        // User.account cascade ALL -> lưu user là lưu luôn account
+        if (user instanceof Admin admin) {
+            adminRepository.save(admin);
+        } else {
+            customerRepository.save((Customer) user);
+        }
+        return accountRepository.findByUsername(username).orElseThrow();
+    }
+
+    @Test
+    void resolvesByUsernameOrEmailWithUserType() {
+        Account customer = createAccount(new Customer(), "alice", "alice@example.com", RoleType.USER);
+        Account admin = createAccount(new Admin(), "boss", "boss@example.com", RoleType.ADMIN);
+
+        AccountIdentityService.AccountIdentity byUsername = identityService.resolve("alice");
+        AccountIdentityService.AccountIdentity byEmail = identityService.resolve("alice@example.com");
+        assertEquals(customer.getId(), byUsername.accountId());
+        assertEquals(byUsername, byEmail);
+        assertEquals(customer.getUser().getId(), byUsername.customerId());
+        assertNull(byUsername.adminId());
+        assertFalse(byUsername.isAdmin());
+
+        AccountIdentityService.AccountIdentity boss = identityService.resolve("boss@example.com");
+        assertEquals(admin.getUser().getId(), boss.adminId());
+        assertEquals(admin.getUser().getId(), boss.userId());
+        assertNull(boss.customerId());
+        assertTrue(boss.isAdmin());
+
+        assertNull(identityService.resolve("nobody"));
+    }
+
+    @Test
+    void usernameMatchWinsOverAnotherAccountsEmail() {
+        Account owner = createAccount(new Customer(), "carol@example.com", "carol.real@example.com", RoleType.USER);
+        createAccount(new Customer(), "dave", "carol@example.com", RoleType.USER);
+
+        assertEquals(owner.getId(), identityService.resolve("carol@example.com").accountId());
+    }
+
+    @Test
+    void cachedUntilInvalidated() {
+        Account account = createAccount(new Customer(), "erin", "erin@example.com", RoleType.USER);
+        assertTrue(identityService.resolve("erin").enabled());
+
+        // Sửa thẳng DB, không qua service -> vẫn đọc từ cache
+        account.setEnabled(false);
+        account.setRole(RoleType.ADMIN);
+        accountRepository.save(account);
+        assertTrue(identityService.resolve("erin").enabled());
+
+        identityService.invalidate(account.getId());
+        AccountIdentityService.AccountIdentity fresh = identityService.resolve("erin");
+        assertFalse(fresh.enabled());
+        assertEquals(RoleType.ADMIN, fresh.role());
+    }
+
+    @Test
+    void oldEmailStopsResolvingAfterChange() {
+        Account account = createAccount(new Customer(), "frank", "frank@old.example.com", RoleType.USER);
+        assertNotNull(identityService.resolve("frank@old.example.com"));
+
+        account.setEmail("frank@new.example.com");
+        accountRepository.save(account);
+        identityService.invalidate(account.getId());
+
+        assertNull(identityService.resolve("frank@old.example.com"));
+        assertEquals(account.getId(), identityService.resolve("frank@new.example.com").accountId());
+    }
+}
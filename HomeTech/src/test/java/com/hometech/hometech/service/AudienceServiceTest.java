@@ -0,0 +1,209 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.AccountRepository;
+import com.hometech.hometech.Repository.AdminRepository;
+import com.hometech.hometech.Repository.CartRepository;
+import com.hometech.hometech.Repository.CategoryRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.Repository.FavoriteRepository;
+import com.hometech.hometech.Repository.OrderRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.enums.OrderStatus;
+import com.hometech.hometech.enums.RoleType;
+import com.hometech.hometech.model.Account;
+import com.hometech.hometech.model.Admin;
+import com.hometech.hometech.model.Cart;
+import com.hometech.hometech.model.CartItem;
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.Customer;
+import com.hometech.hometech.model.Favorite;
+import com.hometech.hometech.model.Order;
+import com.hometech.hometech.model.OrderItem;
+import com.hometech.hometech.model.Product;
+import com.hometech.hometech.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Phân khúc khách hàng tính bằng truy vấn keyset (trang nhỏ để đi qua nhiều trang).
+ */
+@DataJpaTest
+class AudienceServiceTest {
+
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private AdminRepository adminRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private CartRepository cartRepository;
+    @Autowired
+    private FavoriteRepository favoriteRepository;
+
+    private AudienceService audienceService;
+
+    private Category phones;
+    private Category laptops;
+    private Customer alice;
+    private Customer bob;
+    private Customer carol;
+    private Customer erin;
+
+    @BeforeEach
+    void setUp() {
+        audienceService = new AudienceService(customerRepository, accountRepository, 2, 120);
+
+        phones = category("Điện thoại");
+        laptops = category("Laptop");
+        Product phone = product("Phone X", phones);
+        Product laptop = product("Laptop Y", laptops);
+
+        alice = customer("alice", true, 500);
+        bob = customer("bob", true, 0);
+        carol = customer("carol", true, 50);
+        Customer dave = customer("dave", false, 900);
+        erin = customer("erin", true, 0);
+        createUser(new Admin(), "boss", true);
+
+        order(alice, phone, 10, OrderStatus.COMPLETED);
+        order(bob, phone, 200, OrderStatus.COMPLETED);
+        order(carol, phone, 5, OrderStatus.CANCELLED);
+        order(dave, phone, 3, OrderStatus.COMPLETED);
+        order(erin, laptop, 2, OrderStatus.CONFIRMED);
+
+        cart(bob, phone);
+        cart(erin, laptop);
+        favorite(carol, laptop);
+    }
+
+    @Test
+    void allCustomersSkipsDisabledAccountsAndAdmins() {
+        AudienceService.RecipientList all = audienceService.materialize(AudienceService.Segment.ALL_CUSTOMERS);
+
+        assertArrayEquals(ids(alice, bob, carol, erin), all.userIds());
+        assertEquals(4, audienceService.preview(null));
+        assertEquals(List.of("alice@example.com", "bob@example.com", "carol@example.com", "erin@example.com"),
+                audienceService.resolveEmails(all).stream().sorted().toList());
+    }
+
+    @Test
+    void filtersByPurchaseFavoriteCartAndLoyalty() {
+        AudienceService.Segment recentPhoneBuyers = new AudienceService.Segment(phones.getId(), null, null, null, null);
+        assertArrayEquals(ids(alice), audienceService.materialize(recentPhoneBuyers).userIds());
+
+        AudienceService.Segment yearlyPhoneBuyers = new AudienceService.Segment(phones.getId(), 365, null, null, null);
+        assertArrayEquals(ids(alice, bob), audienceService.materialize(yearlyPhoneBuyers).userIds());
+        assertEquals(2, audienceService.preview(new AudienceService.Segment(phones.getId(), 365, null, null, null)));
+
+        AudienceService.Segment cartAbandoners = new AudienceService.Segment(null, null, null, 7, null);
+        assertArrayEquals(ids(bob), audienceService.materialize(cartAbandoners).userIds());
+
+        AudienceService.Segment laptopFans = new AudienceService.Segment(null, null, laptops.getId(), null, null);
+        assertArrayEquals(ids(carol), audienceService.materialize(laptopFans).userIds());
+
+        AudienceService.Segment loyal = new AudienceService.Segment(null, null, null, null, 100);
+        assertArrayEquals(ids(alice), audienceService.materialize(loyal).userIds());
+
+        AudienceService.Segment loyalAbandoners = new AudienceService.Segment(null, null, null, 7, 100);
+        assertEquals(0, audienceService.preview(loyalAbandoners));
+    }
+
+    @Test
+    void equivalentSegmentsShareTheMaterializedList() {
+        AudienceService.RecipientList first = audienceService.materialize(
+                new AudienceService.Segment(phones.getId(), null, null, 0, null));
+        AudienceService.RecipientList second = audienceService.materialize(
+                new AudienceService.Segment(phones.getId(), 90, null, null, null));
+
+        assertSame(first, second);
+    }
+
+    private static long[] ids(Customer... customers) {
+        return Arrays.stream(customers).mapToLong(Customer::getId).sorted().toArray();
+    }
+
+    private Category category(String name) {
+        Category category = new Category();
+        category.setName(name);
+        return categoryRepository.save(category);
+    }
+
+    private Product product(String name, Category category) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(1_000_000);
+        product.setStock(10);
+        product.setCategory(category);
+        product.setCreatedAt(LocalDateTime.now());
+        return productRepository.save(product);
+    }
+
+    private Customer customer(String username, boolean enabled, int loyaltyPoints) {
+        Customer customer = new Customer();
+        customer.setLoyaltyPoints(loyaltyPoints);
+        return (Customer) createUser(customer, username, enabled);
+    }
+
+    private User createUser(User user, String username, boolean enabled) {
+        user.setFullName(username);
+        user.setCreatedAt(LocalDateTime.now());
+        Account account = new Account();
+        account.setUsername(username);
+        account.setEmail(username + "@example.com");
+        account.setPassword("{noop}secret");
+        account.setRole(user instanceof Admin ? RoleType.ADMIN : RoleType.USER);
+        account.setEnabled(enabled);
+        account.setUser(user);
+        user.setAccount(account);
+        return user instanceof Admin admin ? adminRepository.save(admin) : customerRepository.save((Customer) user);
+    }
+
+    private void order(Customer customer, Product product, int daysAgo, OrderStatus status) {
+        Order order = new Order();
+        order.setCustomer(customer);
+        order.setCreatedAt(LocalDateTime.now().minusDays(daysAgo));
+        order.setStatus(status);
+        order.setTotalAmount(product.getPrice());
+        OrderItem item = new OrderItem();
+        item.setOrder(order);
+        item.setProduct(product);
+        item.setQuantity(1);
+        item.setPrice(product.getPrice());
+        order.setItems(List.of(item));
+        orderRepository.save(order);
+    }
+
+    private void cart(Customer customer, Product product) {
+        Cart cart = new Cart();
+        cart.setCustomer(customer);
+        CartItem item = new CartItem();
+        item.setCart(cart);
+        item.setProduct(product);
+        item.setQuantity(1);
+        cart.setItems(List.of(item));
+        cartRepository.save(cart);
+    }
+
+    private void favorite(Customer customer, Product product) {
+        Favorite favorite = new Favorite();
+        favorite.setCustomer(customer);
+        favorite.setProduct(product);
+        favorite.setCreatedAt(LocalDateTime.now());
+        favoriteRepository.save(favorite);
+    }
+}
@@ -0,0 +1,181 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.CategoryRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.Repository.ProductRatingRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.Repository.ResponseRepository;
+import com.hometech.hometech.Repository.ReviewImageRepository;
+import com.hometech.hometech.Repository.ReviewRepository;
+import com.hometech.hometech.enums.RoleType;
+import com.hometech.hometech.model.Account;
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.Customer;
+import com.hometech.hometech.model.Product;
+import com.hometech.hometech.model.Review;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Kiểm duyệt hàng loạt chạy theo lô (lô 2 phần tử để đi qua nhiều lô), tính lại số sao
+ * và chỉ gửi một thông báo cho mỗi job.
+ */
+@DataJpaTest
+@Import({ReviewService.class, ProductRatingService.class})
+class BulkModerationServiceTest {
+
+    @Autowired
+    private ReviewService reviewService;
+    @Autowired
+    private ProductRatingService ratingService;
+    @Autowired
+    private ReviewRepository reviewRepository;
+    @Autowired
+    private ReviewImageRepository reviewImageRepository;
+    @Autowired
+    private ResponseRepository responseRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private ProductRatingRepository ratingRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private final NotifyService notifyService = mock(NotifyService.class);
+    private BulkModerationService moderationService;
+
+    private Category category;
+    private Product phone;
+    private Product laptop;
+    // Số sao 5, 1, 1, 4 cho phone; 1 cho laptop (đánh giá cuối)
+    private final List<Long> reviewIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        moderationService = new BulkModerationService(reviewRepository, reviewImageRepository, responseRepository,
+                productRepository, ratingRepository, ratingService, notifyService, mock(CategoryDirectory.class),
+                mock(CatalogVersions.class), mock(HomePageService.class), transactionManager, 2, 100);
+
+        category = new Category();
+        category.setName("Điện tử");
+        category = categoryRepository.save(category);
+        phone = product("Phone", 5);
+        laptop = product("Laptop", 0);
+
+        review(phone, "alice", 5, "Rất tốt");
+        review(phone, "bob", 1, "Spam mua hàng giá rẻ");
+        review(phone, "carol", 1, "SPAM link");
+        review(phone, "dave", 4, "Ổn");
+        review(laptop, "erin", 1, "spam");
+        flushAndClear();
+    }
+
+    @Test
+    void hidesByFilterAcrossChunksAndRecomputesRatings() {
+        BulkModerationService.JobStatus job = moderationService.moderateReviews(BulkModerationService.Action.HIDE, null,
+                new BulkModerationService.ReviewFilter(null, null, 2, "spam", null, null, false));
+
+        assertEquals(BulkModerationService.State.COMPLETED, job.state());
+        assertEquals(3, job.total());
+        assertEquals(3, job.processed());
+        assertEquals(3, job.affected());
+        verify(notifyService, times(1)).notifyAdmins(contains("3/3"), eq("BULK_MODERATION"), isNull());
+
+        flushAndClear();
+        assertEquals(4.5, ratingService.getRating(phone.getId()).average(), 1e-9);
+        assertEquals(0, ratingService.getRating(laptop.getId()).count());
+
+        // Ẩn lại đánh giá đã ẩn không tính là thay đổi
+        BulkModerationService.JobStatus again = moderationService.moderateReviews(BulkModerationService.Action.HIDE,
+                reviewIds.subList(1, 3), null);
+        assertEquals(0, again.affected());
+        assertEquals(2, again.processed());
+    }
+
+    @Test
+    void deletesReviewsById() {
+        BulkModerationService.JobStatus job = moderationService.moderateReviews(BulkModerationService.Action.DELETE,
+                List.of(reviewIds.get(3), reviewIds.get(0), reviewIds.get(0), 999_999L), null);
+
+        assertEquals(3, job.total());
+        assertEquals(2, job.affected());
+        flushAndClear();
+        assertFalse(reviewRepository.existsById(reviewIds.get(0)));
+        assertEquals(2, ratingService.getRating(phone.getId()).count());
+        assertEquals(1.0, ratingService.getRating(phone.getId()).average(), 1e-9);
+    }
+
+    @Test
+    void hidesOutOfStockProducts() {
+        product("Tablet", 0);
+        BulkModerationService.JobStatus job = moderationService.moderateProducts(BulkModerationService.Action.HIDE, null,
+                new BulkModerationService.ProductFilter(category.getId(), null, true, null));
+
+        assertEquals(2, job.affected());
+        flushAndClear();
+        assertTrue(productRepository.findById(laptop.getId()).orElseThrow().isHidden());
+        assertFalse(productRepository.findById(phone.getId()).orElseThrow().isHidden());
+    }
+
+    @Test
+    void rejectsEmptyRequest() {
+        assertThrows(RuntimeException.class, () -> moderationService.moderateReviews(BulkModerationService.Action.HIDE,
+                List.of(), new BulkModerationService.ReviewFilter(null, null, null, " ", null, null, null)));
+        assertThrows(RuntimeException.class, () -> BulkModerationService.Action.parse("archive"));
+        verifyNoInteractions(notifyService);
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private void review(Product product, String username, int rating, String content) {
+        Review review = reviewService.addOrUpdateReview(product.getId(), customer(username).getId(), rating, content, null);
+        reviewIds.add(review.getId());
+    }
+
+    private Product product(String name, int stock) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(1_000_000);
+        product.setStock(stock);
+        product.setCategory(category);
+        product.setCreatedAt(LocalDateTime.now());
+        return productRepository.save(product);
+    }
+
+    private Customer customer(String username) {
+        Customer customer = new Customer();
+        customer.setFullName(username);
+        customer.setCreatedAt(LocalDateTime.now());
+        Account account = new Account();
+        account.setUsername(username);
+        account.setEmail(username + "@example.com");
+        account.setPassword("{noop}secret");
+        account.setRole(RoleType.USER);
+        account.setEnabled(true);
+        account.setUser(customer);
+        customer.setAccount(account);
+        return customerRepository.save(customer);
+    }
+}
@@ -0,0 +1,148 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.CartItemRepository;
+import com.hometech.hometech.Repository.CartRepository;
+import com.hometech.hometech.Repository.CategoryRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.enums.RoleType;
+import com.hometech.hometech.model.Account;
+import com.hometech.hometech.model.Cart;
+import com.hometech.hometech.model.CartItem;
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.Customer;
+import com.hometech.hometech.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Thêm vào giỏ vượt tồn kho luôn bị từ chối, dù dòng đã nằm trong giỏ trong bộ nhớ hay chỉ có trong DB
+ * (do node khác tạo); số lượng đã lưu giữ nguyên.
+ */
+@DataJpaTest
+@Import({CartService.class, CartSessionStore.class})
+class CartServiceTest {
+
+    @MockitoBean
+    private NotifyService notifyService;
+
+    @Autowired
+    private CartService cartService;
+    @Autowired
+    private CartRepository cartRepository;
+    @Autowired
+    private CartItemRepository cartItemRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Customer customer;
+    private Cart cart;
+    private Category category;
+
+    @BeforeEach
+    void setUp() {
+        category = new Category();
+        category.setName("Điện thoại");
+        category = categoryRepository.save(category);
+
+        customer = new Customer();
+        customer.setFullName("an");
+        customer.setCreatedAt(LocalDateTime.now());
+        Account account = new Account();
+        account.setUsername("an");
+        account.setEmail("an@example.com");
+        account.setPassword("{noop}secret");
+        account.setRole(RoleType.USER);
+        account.setEnabled(true);
+        account.setUser(customer);
+        customer.setAccount(account);
+        customer = customerRepository.save(customer);
+
+        cart = new Cart();
+        cart.setCustomer(customer);
+        cart = cartRepository.save(cart);
+        customer.setCart(cart);
+    }
+
+    @Test
+    void lineAlreadyInMemoryIsRejectedAboveStock() {
+        Product phone = product("Phone X", 5);
+        line(phone, 4);
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> cartService.addProduct(customer.getId(), phone.getId(), 2, null));
+        assertEquals("Số lượng vượt quá tồn kho", error.getMessage());
+        assertEquals(4, storedQuantity(phone));
+    }
+
+    @Test
+    void lineOnlyInDatabaseFollowsTheSameRule() {
+        // Nạp giỏ vào bộ nhớ trước, sau đó "node khác" tạo dòng thẳng trong DB
+        assertTrue(cartService.getCartItemsByUserId(customer.getId()).isEmpty());
+        Product phone = product("Phone Y", 4);
+        line(phone, 3);
+
+        CartItem added = cartService.addProduct(customer.getId(), phone.getId(), 1, null);
+        assertEquals(4, added.getQuantity());
+        assertEquals(4, storedQuantity(phone));
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> cartService.addProduct(customer.getId(), phone.getId(), 1, null));
+        assertEquals("Số lượng vượt quá tồn kho", error.getMessage());
+        assertEquals(4, storedQuantity(phone));
+        assertEquals(1, cartItemRepository.findByCart(cart).size());
+    }
+
+    @Test
+    void newLineIsInsertedWithinStock() {
+        Product phone = product("Phone Z", 2);
+
+        CartItem added = cartService.addProduct(customer.getId(), phone.getId(), 2, null);
+        assertNotNull(added.getId());
+        assertEquals(2, storedQuantity(phone));
+
+        Product other = product("Phone W", 1);
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> cartService.addProduct(customer.getId(), other.getId(), 2, null));
+        assertEquals("Số lượng vượt quá tồn kho", error.getMessage());
+    }
+
+    private int storedQuantity(Product product) {
+        entityManager.flush();
+        entityManager.clear();
+        return cartItemRepository.findLine(cart.getId(), product.getId(), null).orElseThrow().getQuantity();
+    }
+
+    private void line(Product product, int quantity) {
+        CartItem item = new CartItem();
+        item.setCart(cart);
+        item.setProduct(product);
+        item.setQuantity(quantity);
+        cartItemRepository.saveAndFlush(item);
+    }
+
+    private Product product(String name, int stock) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(1_000_000);
+        product.setStock(stock);
+        product.setCategory(category);
+        product.setCreatedAt(LocalDateTime.now());
+        return productRepository.save(product);
+    }
+}
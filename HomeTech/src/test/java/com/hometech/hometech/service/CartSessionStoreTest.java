@@ -0,0 +1,204 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.CartItemRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.model.Cart;
+import com.hometech.hometech.model.CartItem;
+import com.hometech.hometech.model.Customer;
+import com.hometech.hometech.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * So sánh write-behind và write-through trên H2: cùng một chuỗi thao tác giỏ hàng,
+ * đếm số câu lệnh thực sự ghi xuống bảng cart_item. Thay đổi nằm trong transaction bị rollback
+ * không được coi là đã ghi. Giỏ bị đẩy khỏi LRU mà ghi lỗi thì được giữ lại để ghi sau, không mất thay đổi.
+ */
+class CartSessionStoreTest {
+
+    private static final int OPERATIONS = 500;
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbc;
+    private CustomerRepository customerRepository;
+    private CartItemRepository cartItemRepository;
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbc = new JdbcTemplate(db);
+        jdbc.execute("CREATE TABLE cart_item (id BIGINT PRIMARY KEY, cart_id BIGINT, product_id BIGINT, variant_id BIGINT, quantity INT)");
+        jdbc.update("INSERT INTO cart_item (id, cart_id, product_id, variant_id, quantity) VALUES (1, 1, 10, NULL, 1)");
+
+        Cart cart = new Cart();
+        cart.setId(1L);
+        Customer customer = new Customer();
+        customer.setId(7L);
+        customer.setCart(cart);
+        Product product = new Product();
+        product.setId(10L);
+        CartItem line = new CartItem();
+        line.setId(1L);
+        line.setCart(cart);
+        line.setProduct(product);
+        line.setQuantity(1);
+
+        customerRepository = mock(CustomerRepository.class);
+        cartItemRepository = mock(CartItemRepository.class);
+        Customer other = new Customer();
+        other.setId(8L);
+        when(customerRepository.findById(7L)).thenReturn(Optional.of(customer));
+        when(customerRepository.findById(8L)).thenReturn(Optional.of(other));
+        when(cartItemRepository.findByCart(any())).thenReturn(List.of(line));
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    private CartSessionStore newStore(String mode) {
+        return newStore(mode, 100);
+    }
+
+    private CartSessionStore newStore(String mode, int maxCarts) {
+        return new CartSessionStore(customerRepository, cartItemRepository, db,
+                new DataSourceTransactionManager(db), mode, maxCarts, 900);
+    }
+
+    private void runIncrements(CartSessionStore store) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            store.withCart(7L, session -> {
+                CartItem item = session.findItem(1L).orElseThrow();
+                session.setQuantity(item, item.getQuantity() + 1);
+                return null;
+            });
+        }
+        store.flush(7L);
+    }
+
+    @Test
+    void writeBehindCoalescesUpdatesIntoSingleStatement() {
+        CartSessionStore store = newStore("write-behind");
+
+        runIncrements(store);
+
+        assertEquals(OPERATIONS + 1, jdbc.queryForObject("SELECT quantity FROM cart_item WHERE id = 1", Integer.class));
+        assertEquals(1L, store.getStats().get("flushedStatements"));
+        // Chỉ nạp giỏ từ DB một lần cho cả chuỗi thao tác
+        verify(cartItemRepository, times(1)).findByCart(any());
+    }
+
+    @Test
+    void writeThroughWritesEveryOperation() {
+        CartSessionStore store = newStore("write-through");
+
+        runIncrements(store);
+
+        assertEquals(OPERATIONS + 1, jdbc.queryForObject("SELECT quantity FROM cart_item WHERE id = 1", Integer.class));
+        assertEquals((long) OPERATIONS, store.getStats().get("flushedStatements"));
+    }
+
+    @Test
+    void flushInsideRolledBackTransactionIsRetried() {
+        CartSessionStore store = newStore("write-behind");
+        store.withCart(7L, session -> {
+            session.setQuantity(session.findItem(1L).orElseThrow(), 3);
+            return null;
+        });
+
+        // Checkout gọi flush trong transaction của nó rồi thất bại
+        TransactionTemplate checkout = new TransactionTemplate(new DataSourceTransactionManager(db));
+        checkout.executeWithoutResult(status -> {
+            store.flush(7L);
+            assertEquals(3, jdbc.queryForObject("SELECT quantity FROM cart_item WHERE id = 1", Integer.class));
+            status.setRollbackOnly();
+        });
+        assertEquals(1, jdbc.queryForObject("SELECT quantity FROM cart_item WHERE id = 1", Integer.class));
+        assertEquals(1, store.getStats().get("dirtyCarts"));
+
+        store.flushDirtyCarts();
+        assertEquals(3, jdbc.queryForObject("SELECT quantity FROM cart_item WHERE id = 1", Integer.class));
+    }
+
+    @Test
+    void lineAddedInRolledBackTransactionNeverReachesTheSession() {
+        CartSessionStore store = newStore("write-behind");
+        CartItem added = new CartItem();
+        added.setId(2L);
+        added.setQuantity(1);
+
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(db));
+        transaction.executeWithoutResult(status -> {
+            store.withCart(7L, session -> {
+                session.addPersisted(added);
+                return null;
+            });
+            status.setRollbackOnly();
+        });
+        assertEquals(List.of(1L), store.withCart(7L, session -> session.getItems().stream().map(CartItem::getId).toList()));
+
+        transaction.executeWithoutResult(status -> store.withCart(7L, session -> {
+            session.addPersisted(added);
+            return null;
+        }));
+        assertEquals(List.of(1L, 2L), store.withCart(7L, session -> session.getItems().stream().map(CartItem::getId).toList()));
+    }
+
+    @Test
+    void failedEvictionFlushKeepsChangesWithoutFailingTheOtherCustomer() {
+        CartSessionStore store = newStore("write-behind", 1);
+        store.withCart(7L, session -> {
+            session.setQuantity(session.findItem(1L).orElseThrow(), 4);
+            return null;
+        });
+
+        // DB tạm lỗi đúng lúc khách 8 đẩy giỏ của khách 7 khỏi LRU
+        jdbc.execute("ALTER TABLE cart_item RENAME TO cart_item_offline");
+        assertDoesNotThrow(() -> store.withCart(8L, session -> session.getItems().size()));
+        jdbc.execute("ALTER TABLE cart_item_offline RENAME TO cart_item");
+
+        assertEquals(1, jdbc.queryForObject("SELECT quantity FROM cart_item WHERE id = 1", Integer.class));
+        assertEquals(2, store.size());
+        assertEquals(1, store.getStats().get("dirtyCarts"));
+        // Giỏ được giữ lại trong bộ nhớ, không nạp lại bản cũ từ DB
+        assertEquals(4, (int) store.withCart(7L, session -> session.findItem(1L).orElseThrow().getQuantity()));
+
+        store.flushDirtyCarts();
+        assertEquals(4, jdbc.queryForObject("SELECT quantity FROM cart_item WHERE id = 1", Integer.class));
+    }
+
+    @Test
+    void removedLineIsDeletedOnFlushAndDiscardDropsPendingChanges() {
+        CartSessionStore store = newStore("write-behind");
+
+        store.withCart(7L, session -> {
+            session.remove(session.findItem(1L).orElseThrow());
+            return null;
+        });
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM cart_item", Integer.class));
+
+        store.flushDirtyCarts();
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM cart_item", Integer.class));
+
+        store.discard(7L);
+        assertEquals(0, store.size());
+    }
+}
@@ -0,0 +1,201 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.CategoryAttributeRepository;
+import com.hometech.hometech.Repository.CategoryRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.CategoryAttribute;
+import com.hometech.hometech.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Danh bạ danh mục cộng/trừ số sản phẩm theo từng lần ghi, chỉ sau khi transaction commit.
+ * Ghi từ node khác được nhận qua lần đồng bộ {@link CatalogVersions}, cùng lúc với ETag.
+ * Test chạy không bọc transaction để các callback sau commit thực sự được gọi.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({CatalogVersions.class, CategoryDirectory.class, CategoryService.class, CategoryAttributeService.class,
+        ProductService.class})
+class CategoryDirectoryTest {
+
+    @Autowired
+    private CategoryDirectory directory;
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private CategoryAttributeService attributeService;
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private CategoryAttributeRepository attributeRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private CatalogVersions catalogVersions;
+    @Autowired
+    private DataSource dataSource;
+
+    private Category phones;
+    private Category laptops;
+    private Product phone;
+
+    @BeforeEach
+    void setUp() {
+        phones = category("Điện thoại");
+        laptops = category("Laptop");
+        phone = product("Phone X", phones, 5);
+        product("Phone Y", phones, 3);
+        product("Phone Z", phones, 0);
+        directory.rebuild();
+        catalogVersions.sync();
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAll();
+        attributeRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    @Test
+    void loadsCountsAndCaseInsensitiveNameIndex() {
+        assertCounts(phones, 3, 2);
+        assertCounts(laptops, 0, 0);
+        assertEquals(phones.getId(), categoryService.getByName("  ĐIỆN THOẠI ").id());
+        assertNull(categoryService.getByName("Máy giặt"));
+        assertEquals(List.of(phones.getId(), laptops.getId()),
+                categoryService.getAll().stream().map(CategoryDirectory.CategoryView::id).toList());
+    }
+
+    @Test
+    void productWritesAdjustCountsIncrementally() {
+        Product laptop = product("Laptop A", laptops, 2);
+        // Như request thật (open-in-view): đọc rồi lưu lại trong cùng session để attributeValues còn tải được
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.executeWithoutResult(status -> productService.save(productService.getById(laptop.getId())));
+        assertCounts(laptops, 1, 1);
+
+        productService.toggleHidden(laptop.getId());
+        assertCounts(laptops, 1, 0);
+
+        // Chuyển danh mục: trừ bên cũ, cộng bên mới
+        template.executeWithoutResult(status -> {
+            Product moved = productService.getById(phone.getId());
+            moved.setCategory(laptops);
+            productService.save(moved);
+        });
+        assertCounts(phones, 2, 1);
+        assertCounts(laptops, 2, 1);
+
+        productService.deleteById(phone.getId());
+        assertCounts(laptops, 1, 0);
+    }
+
+    @Test
+    void writesOnAnotherNodeAreAppliedOnSync() {
+        // "Node khác": sửa DB không qua directory của node này, rồi tăng phiên bản chung
+        CatalogVersions otherNode = new CatalogVersions(dataSource);
+        new JdbcTemplate(dataSource).update("UPDATE product SET hidden = TRUE WHERE id = ?", phone.getId());
+        otherNode.productsChanged(List.of(phone.getId()));
+        otherNode.sync();
+        assertCounts(phones, 3, 2);
+
+        catalogVersions.sync();
+        assertCounts(phones, 3, 1);
+
+        // Danh mục mới lưu thẳng qua repository (directory của node này không được báo)
+        Category tablets = category("Máy tính bảng");
+        otherNode.categoryChanged();
+        otherNode.sync();
+        assertNull(directory.get(tablets.getId()));
+        catalogVersions.sync();
+        assertNotNull(directory.get(tablets.getId()));
+    }
+
+    @Test
+    void rolledBackWritesAreNotApplied() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.executeWithoutResult(status -> {
+            productService.toggleHidden(phone.getId());
+            status.setRollbackOnly();
+        });
+        assertCounts(phones, 3, 2);
+
+        template.executeWithoutResult(status -> productService.toggleHidden(phone.getId()));
+        assertCounts(phones, 3, 1);
+    }
+
+    @Test
+    void categoryAndAttributeWritesReloadTheCategory() {
+        CategoryAttribute ram = new CategoryAttribute();
+        ram.setName("RAM");
+        ram.setCode("ram");
+        attributeService.createForCategory(laptops.getId(), ram);
+        assertEquals(List.of("RAM"), directory.get(laptops.getId()).attributes().stream()
+                .map(CategoryDirectory.AttributeView::name).toList());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Category category = categoryRepository.findById(laptops.getId()).orElseThrow();
+            category.setName("Máy tính xách tay");
+            categoryService.save(category);
+        });
+        assertNull(categoryService.getByName("laptop"));
+        assertEquals(laptops.getId(), categoryService.getByName("máy tính xách tay").id());
+        assertEquals(1, directory.get(laptops.getId()).attributes().size());
+
+        Category tablets = new Category();
+        tablets.setName("Tablet");
+        categoryService.save(tablets);
+        assertCounts(tablets, 0, 0);
+
+        categoryService.delete(tablets.getId());
+        assertNull(categoryService.getView(tablets.getId()));
+    }
+
+    private void assertCounts(Category category, long total, long active) {
+        CategoryDirectory.CategoryView view = categoryService.getView(category.getId());
+        assertEquals(total, view.totalProducts());
+        assertEquals(active, view.activeProducts());
+        assertEquals(total, categoryService.countProductsInCategory(category.getId()));
+        assertEquals(active, categoryService.countActiveProductsInCategory(category.getId()));
+    }
+
+    private Category category(String name) {
+        Category category = new Category();
+        category.setName(name);
+        return categoryRepository.save(category);
+    }
+
+    // Lưu thẳng qua repository (không báo directory); hết hàng thì ẩn như ProductService
+    private Product product(String name, Category category, int stock) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(1_000_000);
+        product.setStock(stock);
+        product.setHidden(stock <= 0);
+        product.setCategory(category);
+        product.setCreatedAt(LocalDateTime.now());
+        return productRepository.save(product);
+    }
+}
@@ -0,0 +1,95 @@
+package com.hometech.hometech.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Kho content-addressed: nội dung trùng chỉ lưu một bản, chặn theo số byte thực đọc được,
+ * không để lại file tạm và không cho đường dẫn thoát khỏi thư mục gốc. Lần dọn chỉ xóa file cũ
+ * không còn được tham chiếu; upload trùng nội dung làm mới file nên không bị xóa nhầm.
+ */
+class ContentAddressedStoreTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void sameContentIsStoredOnce() throws Exception {
+        ContentAddressedStore store = store();
+        byte[] content = "xin chào".getBytes(StandardCharsets.UTF_8);
+
+        ContentAddressedStore.Blob first = store.write(new MockMultipartFile("file", "a.txt", "text/plain", content), 100);
+        ContentAddressedStore.Blob second = store.write(new MockMultipartFile("file", "b.txt", "text/plain", content), 100);
+
+        assertEquals(first.path(), second.path());
+        assertEquals(content.length, first.size());
+        assertEquals(first.hash().substring(0, 2) + "/" + first.hash(), first.path());
+        assertArrayEquals(content, Files.readAllBytes(store.resolve(first.path())));
+        assertEquals(0, countFiles(root.resolve("tmp")));
+    }
+
+    @Test
+    void contentOverLimitIsRejectedAndTempFileRemoved() throws Exception {
+        ContentAddressedStore store = store();
+        MockMultipartFile file = new MockMultipartFile("file", "big.bin", "application/octet-stream", new byte[101]);
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> store.write(file, 100));
+        assertEquals("quá lớn", error.getMessage());
+        assertEquals(0, countFiles(root.resolve("tmp")));
+    }
+
+    @Test
+    void pathOutsideRootIsRejected() {
+        ContentAddressedStore store = store();
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> store.resolve("../secret"));
+        assertEquals("sai đường dẫn", error.getMessage());
+    }
+
+    @Test
+    void sweepSparesReusedContentAndRemovesStaleTempFiles() throws Exception {
+        ContentAddressedStore store = store();
+        byte[] content = "đính kèm".getBytes(StandardCharsets.UTF_8);
+        ContentAddressedStore.Blob blob = store.write(new MockMultipartFile("file", "a.txt", "text/plain", content), 100);
+        Path stored = store.resolve(blob.path());
+        Path staleTmp = Files.createFile(root.resolve("tmp").resolve("upload-dead.part"));
+        FileTime old = FileTime.from(Instant.now().minus(Duration.ofDays(2)));
+        Files.setLastModifiedTime(stored, old);
+        Files.setLastModifiedTime(staleTmp, old);
+
+        // Upload trùng nội dung (tin nhắn mới sắp trỏ tới file cũ)
+        store.write(new MockMultipartFile("file", "b.txt", "text/plain", content), 100);
+
+        assertEquals(1, store.deleteUnreferenced(Duration.ofDays(1), path -> false));
+        assertTrue(Files.exists(stored));
+        assertFalse(Files.exists(staleTmp));
+
+        Files.setLastModifiedTime(stored, old);
+        assertEquals(0, store.deleteUnreferenced(Duration.ofDays(1), blob.path()::equals));
+        assertEquals(1, store.deleteUnreferenced(Duration.ofDays(1), path -> false));
+        assertFalse(Files.exists(stored));
+    }
+
+    private ContentAddressedStore store() {
+        return new ContentAddressedStore(root.toString(), "quá lớn", "lỗi ghi", "sai đường dẫn");
+    }
+
+    private static long countFiles(Path dir) throws Exception {
+        if (!Files.exists(dir)) {
+            return 0;
+        }
+        try (var files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
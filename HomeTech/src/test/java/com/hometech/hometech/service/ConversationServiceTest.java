@@ -0,0 +1,196 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.ChatMessageRepository;
+import com.hometech.hometech.Repository.ConversationRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.dto.ChatHistoryPage;
+import com.hometech.hometech.dto.ChatMessagePayload;
+import com.hometech.hometech.dto.ConversationInboxPage;
+import com.hometech.hometech.enums.RoleType;
+import com.hometech.hometech.enums.SenderType;
+import com.hometech.hometech.model.Account;
+import com.hometech.hometech.model.Conversation;
+import com.hometech.hometech.model.Customer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Inbox admin phân trang keyset theo (lastMessageAt, id): đi hết các trang thì gặp mỗi cuộc trò chuyện
+ * đúng một lần, kể cả cuộc chưa có tin nhắn và các cuộc trùng thời điểm.
+ * Lịch sử chat lùi theo cursor (sentAt, id) và đồng bộ delta theo id cũng không bỏ sót/lặp tin nào.
+ * File đính kèm của lần gửi lỗi (không tin nhắn nào trỏ tới) được dọn khi đã đủ cũ.
+ */
+@DataJpaTest
+@Import(ConversationService.class)
+class ConversationServiceTest {
+
+    @Autowired
+    private ConversationService conversationService;
+    @Autowired
+    private ConversationRepository conversationRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @TempDir
+    Path attachmentDir;
+
+    @Test
+    void pagesVisitEveryConversationOnceInOrder() {
+        LocalDateTime base = LocalDateTime.now().minusDays(1).withNano(0);
+        Conversation oldest = conversation("an", base.plusMinutes(1));
+        Conversation tieLow = conversation("binh", base.plusMinutes(2));
+        Conversation tieHigh = conversation("chi", base.plusMinutes(2));
+        Conversation latestMessage = conversation("dung", base.plusMinutes(3));
+        // Chưa có tin nhắn nào: xếp theo lúc tạo (mới nhất)
+        Conversation empty = conversation("giang", null);
+
+        List<Long> visited = new ArrayList<>();
+        LocalDateTime before = null;
+        Long beforeId = null;
+        int pages = 0;
+        while (true) {
+            ConversationInboxPage page = conversationService.getAdminInboxPage(before, beforeId, 2);
+            pages++;
+            page.getItems().forEach(item -> visited.add(item.getId()));
+            if (!page.isHasMore()) {
+                break;
+            }
+            before = page.getNextBefore();
+            beforeId = page.getNextBeforeId();
+            assertNotNull(before);
+        }
+
+        assertEquals(3, pages);
+        assertEquals(List.of(empty.getId(), latestMessage.getId(), tieHigh.getId(), tieLow.getId(), oldest.getId()),
+                visited);
+    }
+
+    @Test
+    void newConversationWithoutMessagesGetsCreatedAtAsLastMessageAt() {
+        Conversation empty = conversation("huong", null);
+
+        Conversation stored = conversationRepository.findById(empty.getId()).orElseThrow();
+        assertNotNull(stored.getLastMessageAt());
+        assertEquals(stored.getCreatedAt(), stored.getLastMessageAt());
+    }
+
+    @Test
+    void historyPagesBackwardsOverEveryMessageOnce() {
+        Conversation conversation = conversation("khanh", null);
+        List<Long> sent = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sent.add(conversationService.sendMessage(conversation.getId(),
+                    i % 2 == 0 ? SenderType.CUSTOMER : SenderType.ADMIN, 1L, "tin " + i, null).getId());
+        }
+
+        List<Long> visited = new ArrayList<>();
+        ChatHistoryPage page = conversationService.getMessageHistory(conversation.getId(), null, null, 2);
+        int pages = 1;
+        assertEquals(sent.get(4), page.getLatestId());
+        while (true) {
+            // Mỗi trang theo thứ tự cũ -> mới, ghép vào đầu danh sách đã xem
+            visited.addAll(0, page.getItems().stream().map(ChatMessagePayload::getId).toList());
+            if (!page.isHasMore()) {
+                break;
+            }
+            page = conversationService.getMessageHistory(conversation.getId(),
+                    page.getNextBefore(), page.getNextBeforeId(), 2);
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(sent, visited);
+    }
+
+    @Test
+    void sinceReturnsOnlyNewerMessagesInOrder() {
+        Conversation conversation = conversation("lan", null);
+        Long first = conversationService.sendMessage(conversation.getId(), SenderType.CUSTOMER, 1L, "a", null).getId();
+        Long second = conversationService.sendMessage(conversation.getId(), SenderType.ADMIN, 1L, "b", null).getId();
+        Long third = conversationService.sendMessage(conversation.getId(), SenderType.CUSTOMER, 1L, "c", null).getId();
+
+        ChatHistoryPage delta = conversationService.getMessagesSince(conversation.getId(), first, 1);
+        assertEquals(List.of(second), delta.getItems().stream().map(ChatMessagePayload::getId).toList());
+        assertTrue(delta.isHasMore());
+
+        delta = conversationService.getMessagesSince(conversation.getId(), delta.getLatestId(), 10);
+        assertEquals(List.of(third), delta.getItems().stream().map(ChatMessagePayload::getId).toList());
+        assertFalse(delta.isHasMore());
+
+        // Không có tin mới: latestId giữ nguyên để client gọi lại
+        ChatHistoryPage empty = conversationService.getMessagesSince(conversation.getId(), third, 10);
+        assertTrue(empty.getItems().isEmpty());
+        assertEquals(third, empty.getLatestId());
+    }
+
+    @Test
+    void orphanedAttachmentsAreDeletedOnlyWhenOldEnough() throws Exception {
+        ChatAttachmentStorage storage = new ChatAttachmentStorage(chatMessageRepository, attachmentDir.toString(), 1024, 24);
+        Conversation conversation = conversation("minh", null);
+
+        ChatAttachmentStorage.StoredAttachment attached = storage.store(file("hóa đơn"));
+        conversationService.sendMessage(conversation.getId(), SenderType.CUSTOMER, 1L, "", attached);
+        // Gửi tin lỗi sau khi đã ghi file: không tin nhắn nào trỏ tới
+        ChatAttachmentStorage.StoredAttachment orphan = storage.store(file("ảnh lỗi"));
+        ChatAttachmentStorage.StoredAttachment recentOrphan = storage.store(file("vừa tải lên"));
+
+        backdate(storage.resolve(attached.path()));
+        backdate(storage.resolve(orphan.path()));
+
+        assertEquals(1, storage.deleteOrphans());
+        assertTrue(Files.exists(storage.resolve(attached.path())));
+        assertFalse(Files.exists(storage.resolve(orphan.path())));
+        assertTrue(Files.exists(storage.resolve(recentOrphan.path())), "file mới có thể đang chờ transaction commit");
+    }
+
+    private static MockMultipartFile file(String content) {
+        return new MockMultipartFile("file", "a.txt", "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void backdate(Path file) throws Exception {
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(2, ChronoUnit.DAYS)));
+    }
+
+    private Conversation conversation(String username, LocalDateTime lastMessageAt) {
+        Conversation conversation = new Conversation();
+        conversation.setCustomer(customer(username));
+        conversation = conversationRepository.saveAndFlush(conversation);
+        if (lastMessageAt != null) {
+            conversationRepository.recordCustomerMessage(conversation.getId(), "Xin chào", lastMessageAt);
+        }
+        return conversation;
+    }
+
+    private Customer customer(String username) {
+        Customer customer = new Customer();
+        customer.setFullName(username);
+        customer.setCreatedAt(LocalDateTime.now());
+        Account account = new Account();
+        account.setUsername(username);
+        account.setEmail(username + "@example.com");
+        account.setPassword("{noop}secret");
+        account.setRole(RoleType.USER);
+        account.setEnabled(true);
+        account.setUser(customer);
+        customer.setAccount(account);
+        return customerRepository.save(customer);
+    }
+}
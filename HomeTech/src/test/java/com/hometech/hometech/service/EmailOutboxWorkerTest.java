@@ -0,0 +1,270 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.EmailCampaignRepository;
+import com.hometech.hometech.Repository.EmailOutboxRepository;
+import com.hometech.hometech.enums.EmailOutboxStatus;
+import com.hometech.hometech.model.EmailCampaign;
+import com.hometech.hometech.model.EmailOutboxMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Gửi outbox qua một SMTP server giả lập cục bộ (kiểu GreenMail): đếm số kết nối, ghi lại thư nhận được,
+ * từ chối vĩnh viễn địa chỉ "bounce" (550) và tạm thời địa chỉ "busy" (451).
+ */
+@DataJpaTest
+@Import({EmailOutbox.class, EmailOutboxWorker.class, EmailOutboxWorkerTest.SmtpConfig.class})
+@TestPropertySource(properties = {
+        "mail.outbox.workers=0",
+        "mail.outbox.rate-per-second=0",
+        "mail.outbox.max-messages-per-connection=10",
+        "mail.outbox.max-attempts=3",
+        "mail.outbox.from=noreply@hometech.vn"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmailOutboxWorkerTest {
+
+    static final LocalSmtpServer SMTP = LocalSmtpServer.start();
+
+    @TestConfiguration
+    static class SmtpConfig {
+        @Bean
+        JavaMailSenderImpl javaMailSender() {
+            JavaMailSenderImpl sender = new JavaMailSenderImpl();
+            sender.setHost("127.0.0.1");
+            sender.setPort(SMTP.port());
+            return sender;
+        }
+    }
+
+    @Autowired
+    private EmailOutbox outbox;
+
+    @Autowired
+    private EmailOutboxWorker worker;
+
+    @Autowired
+    private EmailOutboxRepository outboxRepository;
+
+    @Autowired
+    private EmailCampaignRepository campaignRepository;
+
+    @Autowired
+    private JavaMailSenderImpl mailSender;
+
+    @BeforeEach
+    void resetServer() {
+        SMTP.reset();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        outboxRepository.deleteAll();
+        campaignRepository.deleteAll();
+    }
+
+    @Test
+    void campaignIsDeliveredOverReusedConnectionsAfterTransactionalMail() throws Exception {
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            recipients.add("customer" + i + "@example.com");
+        }
+        recipients.add("CUSTOMER0@example.com");
+        recipients.add("bounce@example.com");
+        EmailCampaign campaign = outbox.createCampaign("Khuyến mãi cuối năm", "<p>Giảm 20%</p>", recipients, "admin");
+        outbox.enqueue("new.user@example.com", "Xác thực tài khoản HomeTech", "<p>verify</p>", "VERIFICATION");
+
+        assertEquals(26, campaign.getRecipientCount());
+        assertEquals(27, worker.drainAll(LocalDateTime.now()));
+
+        // 26 thư được nhận, tối đa 10 thư mỗi kết nối
+        assertEquals(26, SMTP.delivered().size());
+        assertEquals(3, SMTP.connections());
+        // Email giao dịch được gửi trước email marketing
+        assertEquals("new.user@example.com", SMTP.delivered().get(0));
+
+        Map<String, Object> progress = outbox.getCampaignProgress(campaign.getId());
+        assertEquals(26L, progress.get("total"));
+        assertEquals(25L, progress.get("sent"));
+        assertEquals(1L, progress.get("failed"));
+        assertEquals(0L, progress.get("pending"));
+        assertEquals(true, progress.get("completed"));
+
+        EmailOutboxMessage bounced = outboxRepository.findAll().stream()
+                .filter(m -> m.getRecipient().startsWith("bounce")).findFirst().orElseThrow();
+        assertEquals(1, bounced.getAttempts());
+        assertNotNull(bounced.getLastError());
+    }
+
+    @Test
+    void temporaryRejectionIsRetriedWithBackoffUntilMaxAttempts() throws Exception {
+        outbox.enqueue("busy@example.com", "Đặt lại mật khẩu HomeTech", "<p>reset</p>", "PASSWORD_RESET");
+
+        LocalDateTime now = LocalDateTime.now();
+        worker.drainAll(now);
+        EmailOutboxMessage message = outboxRepository.findAll().get(0);
+        assertEquals(EmailOutboxStatus.PENDING, message.getState());
+        assertEquals(1, message.getAttempts());
+        assertTrue(message.getNextAttemptAt().isAfter(now));
+
+        // Chưa tới hạn thử lại
+        assertEquals(0, worker.drainAll(now));
+
+        worker.drainAll(now.plusDays(1));
+        worker.drainAll(now.plusDays(2));
+        message = outboxRepository.findAll().get(0);
+        assertEquals(EmailOutboxStatus.FAILED, message.getState());
+        assertEquals(3, message.getAttempts());
+        assertTrue(SMTP.delivered().isEmpty());
+    }
+
+    @Test
+    void sendRateIsLimitedAcrossTheWorker() throws Exception {
+        EmailOutboxWorker limited = new EmailOutboxWorker(outboxRepository, mailSender, "noreply@hometech.vn",
+                0, 50, 100, 40.0, 3, 30, 3600, 300, 5000);
+        for (int i = 0; i < 10; i++) {
+            outbox.enqueue("rate" + i + "@example.com", "s", "<p>b</p>", "VERIFICATION");
+        }
+
+        long start = System.nanoTime();
+        assertEquals(10, limited.drainAll(LocalDateTime.now()));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // 40 thư/giây -> 10 thư cần ít nhất ~225ms
+        assertTrue(elapsedMs >= 200, "expected rate limiting, took " + elapsedMs + "ms");
+        assertEquals(10, SMTP.delivered().size());
+        assertEquals(1, SMTP.connections());
+    }
+
+    /**
+     * SMTP server tối giản đủ cho Jakarta Mail: EHLO, MAIL, RCPT, DATA, RSET, NOOP, QUIT.
+     */
+    static final class LocalSmtpServer {
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connections = new AtomicInteger();
+        private final List<String> delivered = new CopyOnWriteArrayList<>();
+
+        private LocalSmtpServer(ServerSocket serverSocket) {
+            this.serverSocket = serverSocket;
+        }
+
+        static LocalSmtpServer start() {
+            try {
+                LocalSmtpServer server = new LocalSmtpServer(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()));
+                Thread acceptor = new Thread(server::acceptLoop, "local-smtp");
+                acceptor.setDaemon(true);
+                acceptor.start();
+                return server;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        int connections() {
+            return connections.get();
+        }
+
+        List<String> delivered() {
+            return delivered;
+        }
+
+        void reset() {
+            connections.set(0);
+            delivered.clear();
+        }
+
+        private void acceptLoop() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    Thread session = new Thread(() -> handle(socket), "local-smtp-session");
+                    session.setDaemon(true);
+                    session.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void handle(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 OutputStream out = socket.getOutputStream()) {
+                reply(out, "220 localhost ESMTP");
+                List<String> recipients = new ArrayList<>();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.toUpperCase();
+                    if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                        reply(out, "250 localhost");
+                    } else if (command.startsWith("MAIL FROM")) {
+                        recipients.clear();
+                        reply(out, "250 OK");
+                    } else if (command.startsWith("RCPT TO")) {
+                        String address = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                        if (address.startsWith("bounce")) {
+                            reply(out, "550 5.1.1 No such user");
+                        } else if (address.startsWith("busy")) {
+                            reply(out, "451 4.3.0 Try again later");
+                        } else {
+                            recipients.add(address);
+                            reply(out, "250 OK");
+                        }
+                    } else if (command.equals("DATA")) {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            // bỏ qua nội dung thư
+                        }
+                        delivered.addAll(recipients);
+                        reply(out, "250 OK queued");
+                    } else if (command.equals("QUIT")) {
+                        reply(out, "221 Bye");
+                        return;
+                    } else {
+                        // RSET, NOOP, ...
+                        reply(out, "250 OK");
+                    }
+                }
+            } catch (IOException ignored) {
+                // client đóng kết nối
+            }
+        }
+
+        private static void reply(OutputStream out, String line) throws IOException {
+            out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.hometech.hometech.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verify ID token với một JWKS endpoint giả lập cục bộ (JDK HttpServer) đóng vai Google:
+ * tự sinh cặp key RSA, ký token RS256 và trả JWKS kèm {@code Cache-Control: max-age}.
+ * Thời gian đi theo {@link MutableClock}, lượt tải key chạy đồng bộ trên luồng gọi và gateway có hạn chờ rộng,
+ * nên kết quả không phụ thuộc tốc độ máy khi cả bộ test chạy cùng lúc.
+ */
+class GoogleVerifierServiceTest {
+
+    private static final String CLIENT_ID = "hometech-web.apps.googleusercontent.com";
+    private static final long MAX_AGE_SECONDS = 100;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private final AtomicInteger jwksHits = new AtomicInteger();
+    private final AtomicReference<String> jwksBody = new AtomicReference<>();
+    private final AtomicInteger jwksStatus = new AtomicInteger(200);
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-12-11T10:00:00Z"));
+    private KeyPair currentKey;
+    private GoogleJwksCache cache;
+    private GoogleVerifierService verifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        currentKey = newKeyPair();
+        publish(Map.of("key-1", currentKey));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/oauth2/v3/certs", exchange -> {
+            jwksHits.incrementAndGet();
+            byte[] bytes = jwksBody.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Cache-Control", "public, max-age=" + MAX_AGE_SECONDS + ", must-revalidate");
+            exchange.sendResponseHeaders(jwksStatus.get(), bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+
+        OutboundGateway gateway = new OutboundGateway("google", Duration.ofSeconds(10), Duration.ofSeconds(10), 4,
+                Duration.ofSeconds(10), 5, Duration.ofSeconds(30));
+        cache = new GoogleJwksCache(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/oauth2/v3/certs"),
+                gateway, new ObjectMapper(), clock, Duration.ofHours(1), 0.8, Duration.ofSeconds(30), Runnable::run);
+        verifier = new GoogleVerifierService(CLIENT_ID, cache, clock, 300);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.shutdown();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void concurrentColdStartFetchesKeysOnceThenVerifiesOffline() throws Exception {
+        String token = sign("key-1", currentKey, CLIENT_ID, clock.instant().plusSeconds(3600));
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<GoogleIdToken.Payload>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return verifier.verifyToken(token);
+            }));
+        }
+        start.countDown();
+        for (Future<GoogleIdToken.Payload> future : futures) {
+            assertEquals("user@example.com", future.get(10, TimeUnit.SECONDS).getEmail());
+        }
+        pool.shutdown();
+        assertEquals(1, jwksHits.get());
+
+        for (int i = 0; i < 100; i++) {
+            verifier.verifyToken(token);
+        }
+        assertEquals(1, jwksHits.get());
+    }
+
+    @Test
+    void keysAreRefreshedAheadOfExpiryInTheBackground() throws Exception {
+        verifier.verifyToken(sign("key-1", currentKey, CLIENT_ID, clock.instant().plusSeconds(3600)));
+        assertEquals(1, jwksHits.get());
+
+        // Đã qua 80% max-age: vẫn verify bằng key cũ, đồng thời tải lại (ở đây chạy đồng bộ)
+        clock.advance(Duration.ofSeconds(85));
+        verifier.verifyToken(sign("key-1", currentKey, CLIENT_ID, clock.instant().plusSeconds(3600)));
+        assertEquals(clock.instant(), cache.getStats().get("fetchedAt"));
+        assertEquals(2, jwksHits.get());
+
+        // Sau khi tải lại, mốc hết hạn được tính lại nên không cần chờ tải thêm
+        clock.advance(Duration.ofSeconds(30));
+        verifier.verifyToken(sign("key-1", currentKey, CLIENT_ID, clock.instant().plusSeconds(3600)));
+        assertEquals(2, jwksHits.get());
+        assertEquals(1L, verifier.getStats().get("backgroundRefreshes"));
+    }
+
+    @Test
+    void rotatedKeyIsPickedUpOnUnknownKid() throws Exception {
+        verifier.verifyToken(sign("key-1", currentKey, CLIENT_ID, clock.instant().plusSeconds(3600)));
+
+        KeyPair rotated = newKeyPair();
+        publish(Map.of("key-1", currentKey, "key-2", rotated));
+        String token = sign("key-2", rotated, CLIENT_ID, clock.instant().plusSeconds(3600));
+
+        // Vừa tải xong: kid lạ không được kích hoạt tải lại liên tục
+        assertThrows(IllegalArgumentException.class, () -> verifier.verifyToken(token));
+        assertEquals(1, jwksHits.get());
+
+        clock.advance(Duration.ofSeconds(31));
+        assertEquals("user@example.com", verifier.verifyToken(token).getEmail());
+        assertEquals(2, jwksHits.get());
+    }
+
+    @Test
+    void rejectsForgedExpiredAndForeignTokens() throws Exception {
+        Instant inAnHour = clock.instant().plusSeconds(3600);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> verifier.verifyToken(sign("key-1", newKeyPair(), CLIENT_ID, inAnHour)));
+        assertThrows(IllegalArgumentException.class,
+                () -> verifier.verifyToken(sign("key-1", currentKey, "another-app.apps.googleusercontent.com", inAnHour)));
+        assertThrows(IllegalArgumentException.class,
+                () -> verifier.verifyToken(sign("key-1", currentKey, CLIENT_ID, clock.instant().minusSeconds(600))));
+    }
+
+    @Test
+    void keepsServingCachedKeysWhenRefreshFails() throws Exception {
+        verifier.verifyToken(sign("key-1", currentKey, CLIENT_ID, clock.instant().plusSeconds(3600)));
+
+        jwksStatus.set(503);
+        clock.advance(Duration.ofSeconds(MAX_AGE_SECONDS + 10));
+        assertEquals("user@example.com",
+                verifier.verifyToken(sign("key-1", currentKey, CLIENT_ID, clock.instant().plusSeconds(3600))).getEmail());
+        assertEquals(1L, verifier.getStats().get("fetchFailures"));
+    }
+
+    private static KeyPair newKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private void publish(Map<String, KeyPair> keys) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        StringBuilder json = new StringBuilder("{\"keys\":[");
+        keys.forEach((kid, pair) -> {
+            RSAPublicKey publicKey = (RSAPublicKey) pair.getPublic();
+            if (json.charAt(json.length() - 1) == '}') {
+                json.append(',');
+            }
+            json.append("{\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"kid\":\"").append(kid)
+                    .append("\",\"n\":\"").append(encoder.encodeToString(unsigned(publicKey.getModulus())))
+                    .append("\",\"e\":\"").append(encoder.encodeToString(unsigned(publicKey.getPublicExponent())))
+                    .append("\"}");
+        });
+        jwksBody.set(json.append("]}").toString());
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0 && bytes.length > 1) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return bytes;
+    }
+
+    private String sign(String kid, KeyPair keyPair, String audience, Instant expiresAt) throws Exception {
+        JsonWebSignature.Header header = new JsonWebSignature.Header();
+        header.setAlgorithm("RS256");
+        header.setType("JWT");
+        header.setKeyId(kid);
+
+        GoogleIdToken.Payload payload = new GoogleIdToken.Payload();
+        payload.setIssuer("https://accounts.google.com");
+        payload.setAudience(audience);
+        payload.setSubject("1234567890");
+        payload.setEmail("user@example.com");
+        payload.setIssuedAtTimeSeconds(expiresAt.getEpochSecond() - 3600);
+        payload.setExpirationTimeSeconds(expiresAt.getEpochSecond());
+        return JsonWebSignature.signUsingRsaSha256(keyPair.getPrivate(), GsonFactory.getDefaultInstance(), header, payload);
+    }
+
+    private static final class MutableClock extends Clock {
+        private final AtomicReference<Instant> now;
+
+        private MutableClock(Instant start) {
+            this.now = new AtomicReference<>(start);
+        }
+
+        void advance(Duration duration) {
+            now.updateAndGet(instant -> instant.plus(duration));
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now.get();
+        }
+    }
+}
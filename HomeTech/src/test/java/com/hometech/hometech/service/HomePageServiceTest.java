@@ -0,0 +1,98 @@
+package com.hometech.hometech.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hometech.hometech.enums.BannerType;
+import com.hometech.hometech.model.Banner;
+import com.hometech.hometech.model.FooterContent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Trang chủ ghép từ nhiều nguồn, cache theo TTL và chỉ dựng lại một lần khi nhiều request đến cùng lúc.
+ */
+class HomePageServiceTest {
+
+    private final BannerService bannerService = mock(BannerService.class);
+    private final FooterContentService footerContentService = mock(FooterContentService.class);
+    private final CategoryDirectory categoryDirectory = mock(CategoryDirectory.class);
+    private final ProductService productService = mock(ProductService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private HomePageService homePageService;
+
+    @BeforeEach
+    void setUp() {
+        homePageService = new HomePageService(bannerService, footerContentService, categoryDirectory, productService,
+                objectMapper, mock(PlatformTransactionManager.class), 300, 2000, 12);
+
+        Banner banner = new Banner();
+        banner.setTitle("Sale 11.11");
+        when(bannerService.getActiveBanners(BannerType.BANNER)).thenAnswer(invocation -> {
+            Thread.sleep(100);
+            return List.of(banner);
+        });
+        when(bannerService.getActiveBanners(BannerType.SLIDER)).thenReturn(List.of());
+        FooterContent footer = new FooterContent();
+        footer.setHotline("1900 636 555");
+        when(footerContentService.getActiveFooter()).thenReturn(footer);
+        when(categoryDirectory.getAll()).thenReturn(List.of());
+        when(productService.getTop10BestSellingProducts()).thenReturn(List.of());
+        when(productService.getNewestActive(12)).thenReturn(List.of());
+        when(productService.getProductsAddedInLast7Days()).thenReturn(List.of());
+    }
+
+    @Test
+    void assemblesAllSectionsIntoOneEnvelope() throws Exception {
+        JsonNode payload = objectMapper.readTree(homePageService.getHomePage());
+
+        assertTrue(payload.get("success").asBoolean());
+        JsonNode data = payload.get("data");
+        assertEquals("Sale 11.11", data.get("banners").get(0).get("title").asText());
+        assertEquals("1900 636 555", data.get("footer").get("hotline").asText());
+        for (String section : List.of("sliders", "categories", "topSelling", "newest", "newThisWeek")) {
+            assertTrue(data.get(section).isArray(), section);
+        }
+    }
+
+    @Test
+    void concurrentRequestsShareOneBuildUntilInvalidated() throws Exception {
+        List<Future<byte[]>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 20; i++) {
+                results.add(executor.submit(homePageService::getHomePage));
+            }
+        }
+        byte[] first = results.get(0).get();
+        for (Future<byte[]> result : results) {
+            assertSame(first, result.get());
+        }
+        assertSame(first, homePageService.getHomePage());
+        verify(bannerService, times(1)).getActiveBanners(BannerType.BANNER);
+
+        homePageService.invalidate();
+        assertNotSame(first, homePageService.getHomePage());
+        verify(bannerService, times(2)).getActiveBanners(BannerType.BANNER);
+        assertEquals(2L, homePageService.getStats().get("builds"));
+    }
+
+    @Test
+    void failedSectionFailsTheRequestWithoutCaching() {
+        when(productService.getTop10BestSellingProducts()).thenThrow(new RuntimeException("DB down"));
+
+        RuntimeException error = assertThrows(RuntimeException.class, homePageService::getHomePage);
+        assertEquals("Không tải được dữ liệu trang chủ", error.getMessage());
+        assertEquals(false, homePageService.getStats().get("cached"));
+    }
+}
@@ -0,0 +1,178 @@
+package com.hometech.hometech.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hometech.hometech.Repository.CategoryRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.dto.ApiResponse;
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.Product;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Danh sách lớn được ghi theo từng lô: body giống hệt cách cũ (nạp hết rồi serialize một Map),
+ * nhưng persistence context chỉ giữ một lô tại một thời điểm. Envelope dạng record cấp phát không nhiều hơn
+ * HashMap (đo bằng ThreadMXBean; dự án không dùng JMH). Lô lỗi giữa chừng không bao giờ cho ra một body hợp lệ.
+ */
+@DataJpaTest
+class JsonListStreamerTest {
+
+    private static final int PRODUCTS = 1_000;
+    private static final int CHUNK = 100;
+
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private JsonListStreamer streamer;
+
+    @BeforeEach
+    void setUp() {
+        streamer = new JsonListStreamer(objectMapper, entityManager, transactionManager, CHUNK);
+
+        Category category = new Category();
+        category.setName("Điện thoại");
+        categoryRepository.save(category);
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product();
+            product.setName("Sản phẩm " + i);
+            product.setDescription("Mô tả sản phẩm " + i);
+            product.setPrice(1_000_000 + i);
+            product.setStock(i % 7);
+            product.setHidden(i % 7 == 0);
+            product.setCategory(category);
+            product.setCreatedAt(LocalDateTime.now());
+            products.add(product);
+        }
+        productRepository.saveAll(products);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void streamsTheSameBodyWhileHoldingOneChunkAtATime() throws Exception {
+        // Cách cũ: nạp toàn bộ, bọc trong HashMap rồi serialize một lần
+        List<Product> all = productRepository.findAll();
+        int managedBefore = managedEntities();
+        Map<String, Object> envelope = new HashMap<>();
+        envelope.put("success", true);
+        envelope.put("message", "Lấy tất cả sản phẩm thành công");
+        envelope.put("data", all);
+        envelope.put("error", null);
+        ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+        objectMapper.writeValue(buffered, envelope);
+        entityManager.clear();
+
+        // Cách mới: ghi từng lô, ghi nhận số entity còn trong persistence context trước mỗi lô
+        List<Integer> managedAtChunkStart = new ArrayList<>();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        streamer.write(response, "Lấy tất cả sản phẩm thành công", true, (afterId, limit) -> {
+            managedAtChunkStart.add(managedEntities());
+            return productRepository.findPageAfter(afterId, true, PageRequest.of(0, limit));
+        }, Product::getId);
+
+        assertEquals(objectMapper.readTree(buffered.toByteArray()), objectMapper.readTree(response.getContentAsByteArray()));
+        assertEquals("application/json", response.getContentType().split(";")[0]);
+        assertTrue(managedBefore >= PRODUCTS);
+        assertEquals(PRODUCTS / CHUNK + 1, managedAtChunkStart.size());
+        assertTrue(managedAtChunkStart.stream().allMatch(count -> count == 0), managedAtChunkStart.toString());
+    }
+
+    @Test
+    void failingChunkNeverProducesAWellFormedBody() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        List<Long> afterIds = new ArrayList<>();
+
+        RuntimeException error = assertThrows(RuntimeException.class, () ->
+                streamer.write(response, "Lấy tất cả sản phẩm thành công", true, (afterId, limit) -> {
+                    afterIds.add(afterId);
+                    if (afterIds.size() == 3) {
+                        throw new IllegalStateException("mất kết nối DB");
+                    }
+                    return productRepository.findPageAfter(afterId, true, PageRequest.of(0, limit));
+                }, Product::getId));
+
+        assertEquals("mất kết nối DB", error.getMessage());
+        byte[] body = response.getContentAsByteArray();
+        // Chưa byte nào được gửi (tầng trên còn trả được 500) hoặc body bị cắt ngang, không phải JSON hoàn chỉnh
+        if (body.length > 0) {
+            assertThrows(Exception.class, () -> objectMapper.readTree(body));
+        } else {
+            assertFalse(response.isCommitted());
+        }
+    }
+
+    @Test
+    void typedEnvelopeAllocatesLessThanHashMap() throws Exception {
+        List<String> data = List.of("a", "b", "c");
+        int iterations = 20_000;
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(256);
+        for (int i = 0; i < iterations; i++) {
+            // Làm nóng serializer của cả hai kiểu
+            sink.reset();
+            objectMapper.writeValue(sink, mapEnvelope(data));
+            sink.reset();
+            objectMapper.writeValue(sink, new ApiResponse<>(true, "OK", data, null));
+        }
+
+        long before = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            sink.reset();
+            objectMapper.writeValue(sink, mapEnvelope(data));
+        }
+        long mapPerRequest = (allocatedBytes() - before) / iterations;
+
+        before = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            sink.reset();
+            objectMapper.writeValue(sink, new ApiResponse<>(true, "OK", data, null));
+        }
+        long recordPerRequest = (allocatedBytes() - before) / iterations;
+
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsBytes(mapEnvelope(data))),
+                objectMapper.readTree(objectMapper.writeValueAsBytes(new ApiResponse<>(true, "OK", data, null))));
+        assertTrue(recordPerRequest <= mapPerRequest, recordPerRequest + " B > " + mapPerRequest + " B");
+    }
+
+    private static Map<String, Object> mapEnvelope(Object data) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("success", true);
+        map.put("message", "OK");
+        map.put("data", data);
+        map.put("error", null);
+        return map;
+    }
+
+    private int managedEntities() {
+        return entityManager.unwrap(Session.class).getStatistics().getEntityCount();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,205 @@
+package com.hometech.hometech.service;
+
+import com.google.api.client.http.GenericUrl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Chạy OutboundGateway với một upstream giả lập cục bộ (JDK HttpServer) có endpoint chậm, lỗi 5xx và 4xx.
+ */
+class OutboundGatewayTest {
+
+    private HttpServer server;
+    private ExecutorService serverPool;
+    private String baseUrl;
+    private final AtomicInteger failHits = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            respond(exchange, 200, "ok");
+        });
+        server.createContext("/slow", exchange -> {
+            sleep(Long.parseLong(exchange.getRequestURI().getQuery().substring("ms=".length())));
+            respond(exchange, 200, "slow");
+        });
+        server.createContext("/fail", exchange -> {
+            failHits.incrementAndGet();
+            respond(exchange, 503, "unavailable");
+        });
+        server.createContext("/bad-request", exchange -> respond(exchange, 400, "bad"));
+        serverPool = Executors.newCachedThreadPool();
+        server.setExecutor(serverPool);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        serverPool.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private OutboundGateway gateway(long readTimeoutMs, int maxConcurrent, int failureThreshold, long openMs) {
+        return new OutboundGateway("stub", Duration.ofMillis(500), Duration.ofMillis(readTimeoutMs), maxConcurrent,
+                Duration.ZERO, failureThreshold, Duration.ofMillis(openMs));
+    }
+
+    private String get(OutboundGateway gateway, RestTemplate rest, String path) {
+        return gateway.execute(() -> rest.getForObject(baseUrl + path, String.class));
+    }
+
+    @Test
+    void slowUpstreamIsCutOffAtReadTimeout() {
+        OutboundGateway gateway = gateway(300, 4, 5, 30_000);
+        RestTemplate rest = new RestTemplate(gateway.requestFactory());
+
+        long start = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> get(gateway, rest, "/slow?ms=3000"));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMs < 2_000, "call should give up near the 300ms read timeout, took " + elapsedMs + "ms");
+        assertEquals(1L, gateway.getStats().get("timeouts"));
+        assertEquals(1L, gateway.getStats().get("failures"));
+    }
+
+    @Test
+    void consecutiveFailuresOpenTheCircuitThenHalfOpenRecovers() {
+        OutboundGateway gateway = gateway(1_000, 4, 3, 300);
+        RestTemplate rest = new RestTemplate(gateway.requestFactory());
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(HttpServerErrorException.class, () -> get(gateway, rest, "/fail"));
+        }
+        assertEquals(OutboundGateway.State.OPEN, gateway.getState());
+
+        // Mạch mở: bị từ chối ngay, không chạm tới upstream
+        assertThrows(OutboundGateway.UnavailableException.class, () -> get(gateway, rest, "/fail"));
+        assertEquals(3, failHits.get());
+        assertEquals(1L, gateway.getStats().get("rejectedByBreaker"));
+
+        sleep(400);
+        assertEquals("ok", get(gateway, rest, "/ok"));
+        assertEquals(OutboundGateway.State.CLOSED, gateway.getState());
+    }
+
+    @Test
+    void failedHalfOpenTrialReopensTheCircuit() {
+        OutboundGateway gateway = gateway(1_000, 4, 1, 200);
+        RestTemplate rest = new RestTemplate(gateway.requestFactory());
+
+        assertThrows(HttpServerErrorException.class, () -> get(gateway, rest, "/fail"));
+        sleep(250);
+        assertThrows(HttpServerErrorException.class, () -> get(gateway, rest, "/fail"));
+        assertEquals(OutboundGateway.State.OPEN, gateway.getState());
+    }
+
+    @Test
+    void clientErrorsDoNotTripTheBreaker() {
+        OutboundGateway gateway = gateway(1_000, 4, 2, 30_000);
+        RestTemplate rest = new RestTemplate(gateway.requestFactory());
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(HttpClientErrorException.class, () -> get(gateway, rest, "/bad-request"));
+        }
+        assertEquals(OutboundGateway.State.CLOSED, gateway.getState());
+        assertEquals(0L, gateway.getStats().get("failures"));
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondTheConcurrencyLimit() throws Exception {
+        OutboundGateway gateway = gateway(5_000, 2, 5, 30_000);
+        RestTemplate rest = new RestTemplate(gateway.requestFactory());
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch started = new CountDownLatch(2);
+
+        Future<?> first = pool.submit(() -> gateway.execute(() -> {
+            started.countDown();
+            return rest.getForObject(baseUrl + "/slow?ms=800", String.class);
+        }));
+        Future<?> second = pool.submit(() -> gateway.execute(() -> {
+            started.countDown();
+            return rest.getForObject(baseUrl + "/slow?ms=800", String.class);
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertThrows(OutboundGateway.UnavailableException.class, () -> get(gateway, rest, "/ok"));
+        assertEquals(1L, gateway.getStats().get("rejectedByBulkhead"));
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        pool.shutdown();
+        assertEquals("ok", get(gateway, rest, "/ok"));
+    }
+
+    @Test
+    void connectionsAreKeptAliveAndReused() {
+        OutboundGateway gateway = gateway(1_000, 4, 5, 30_000);
+        RestTemplate rest = new RestTemplate(gateway.requestFactory());
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("ok", get(gateway, rest, "/ok"));
+        }
+        assertTrue(clientPorts.size() <= 2, "expected pooled connections, saw " + clientPorts.size());
+    }
+
+    @Test
+    void googleClientTransportGoesThroughTheGateway() throws Exception {
+        OutboundGateway gateway = gateway(300, 4, 5, 30_000);
+        OutboundHttpTransport transport = new OutboundHttpTransport(gateway);
+
+        String body = transport.createRequestFactory()
+                .buildGetRequest(new GenericUrl(baseUrl + "/ok"))
+                .execute()
+                .parseAsString();
+        assertEquals("ok", body);
+
+        assertThrows(IOException.class, () -> transport.createRequestFactory()
+                .buildGetRequest(new GenericUrl(baseUrl + "/slow?ms=3000"))
+                .execute());
+        assertEquals(2L, gateway.getStats().get("calls"));
+        assertEquals(1L, gateway.getStats().get("timeouts"));
+    }
+}
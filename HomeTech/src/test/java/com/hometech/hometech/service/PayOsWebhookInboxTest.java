@@ -0,0 +1,280 @@
+package com.hometech.hometech.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hometech.hometech.Repository.OrderRepository;
+import com.hometech.hometech.Repository.PayOsWebhookEventRepository;
+import com.hometech.hometech.Repository.PaymentRepository;
+import com.hometech.hometech.config.HmacUtil;
+import com.hometech.hometech.config.PayOsProperties;
+import com.hometech.hometech.enums.OrderStatus;
+import com.hometech.hometech.enums.WebhookEventStatus;
+import com.hometech.hometech.model.Order;
+import com.hometech.hometech.model.PayOsWebhookEvent;
+import com.hometech.hometech.model.Payment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Phát lại webhook PayOS qua một "PayOS giả lập" cục bộ (ký payload bằng cùng checksum key):
+ * gửi trùng, gửi song song, gửi sai thứ tự — payment/order chỉ chuyển trạng thái đúng một lần.
+ */
+@DataJpaTest
+@Import({PayOsWebhookInbox.class, PayOsService.class, OutboundGatewayRegistry.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PayOsWebhookInboxTest {
+
+    private static final String CHECKSUM_KEY = "local-checksum-key";
+    private static final long ORDER_CODE = 1765400001L;
+
+    @MockitoBean
+    private PayOsProperties payOsProperties;
+
+    @MockitoBean
+    private NotifyService notifyService;
+
+    @Autowired
+    private PayOsWebhookInbox inbox;
+
+    @Autowired
+    private PayOsWebhookEventRepository eventRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private LocalPayOs payOs;
+    private Order order;
+
+    @BeforeEach
+    void setUp() {
+        when(payOsProperties.getChecksumKey()).thenReturn(CHECKSUM_KEY);
+        payOs = new LocalPayOs(objectMapper, CHECKSUM_KEY);
+
+        order = new Order();
+        order.setStatus(OrderStatus.WAITING_CONFIRMATION);
+        order.setCreatedAt(LocalDateTime.now());
+        order.setTotalAmount(250_000);
+        order = orderRepository.save(order);
+        createPayment(order, ORDER_CODE);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        eventRepository.deleteAll();
+        paymentRepository.deleteAll();
+        orderRepository.deleteAll();
+    }
+
+    private Payment createPayment(Order forOrder, long orderCode) {
+        Payment payment = new Payment();
+        payment.setOrder(forOrder);
+        payment.setMethod("PAYOS");
+        payment.setAmount(250_000);
+        payment.setStatus("AWAITING_PAYMENT");
+        payment.setTxnRef(String.valueOf(orderCode));
+        return paymentRepository.save(payment);
+    }
+
+    // Chạy processor như scheduler, bỏ qua backoff bằng cách nhìn "tương lai"
+    private void drain() {
+        inbox.processDue(LocalDateTime.now().plusDays(1));
+    }
+
+    @Test
+    void retriedDeliveriesAreStoredAndAppliedOnce() throws Exception {
+        String delivery = payOs.paid(ORDER_CODE, 250_000, "FT25121100001");
+
+        // PayOS timeout -> gửi lại nhiều lần, một phần song song
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<PayOsWebhookInbox.Receipt>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return inbox.accept(delivery);
+            }));
+        }
+        start.countDown();
+        int accepted = 0;
+        for (Future<PayOsWebhookInbox.Receipt> future : futures) {
+            PayOsWebhookInbox.Receipt receipt = future.get(30, TimeUnit.SECONDS);
+            assertTrue(receipt == PayOsWebhookInbox.Receipt.ACCEPTED || receipt == PayOsWebhookInbox.Receipt.DUPLICATE);
+            if (receipt == PayOsWebhookInbox.Receipt.ACCEPTED) {
+                accepted++;
+            }
+        }
+        pool.shutdown();
+
+        assertEquals(1, accepted);
+        assertEquals(1, eventRepository.count());
+
+        drain();
+        // Gửi lại sau khi đã xử lý vẫn là trùng
+        assertEquals(PayOsWebhookInbox.Receipt.DUPLICATE, inbox.accept(delivery));
+        drain();
+
+        Payment payment = paymentRepository.findByTxnRef(String.valueOf(ORDER_CODE)).orElseThrow();
+        assertEquals("SUCCESS", payment.getStatus());
+        assertEquals(OrderStatus.CONFIRMED, orderRepository.findById(order.getId()).orElseThrow().getStatus());
+        assertEquals(1, eventRepository.countByState(WebhookEventStatus.PROCESSED));
+        verify(notifyService, never()).notifyAdmins(anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    void forgedSignatureIsRejectedWithoutStoring() {
+        String forged = payOs.tamperAmount(payOs.paid(ORDER_CODE, 250_000, "FT25121100002"), 1_000);
+
+        assertEquals(PayOsWebhookInbox.Receipt.INVALID_SIGNATURE, inbox.accept(forged));
+        assertEquals(PayOsWebhookInbox.Receipt.MALFORMED, inbox.accept("not json"));
+        assertEquals(0, eventRepository.count());
+    }
+
+    @Test
+    void lateIntermediateEventDoesNotDowngradePaidPayment() {
+        assertEquals(PayOsWebhookInbox.Receipt.ACCEPTED, inbox.accept(payOs.paid(ORDER_CODE, 250_000, "FT25121100003")));
+        drain();
+        assertEquals(PayOsWebhookInbox.Receipt.ACCEPTED, inbox.accept(payOs.withStatus(ORDER_CODE, "PENDING")));
+        drain();
+
+        assertEquals("SUCCESS", paymentRepository.findByTxnRef(String.valueOf(ORDER_CODE)).orElseThrow().getStatus());
+        assertEquals(2, eventRepository.countByState(WebhookEventStatus.PROCESSED));
+    }
+
+    @Test
+    void missingPaymentIsRetriedWithBackoff() {
+        // Webhook đến trước khi payment của mã đơn này được lưu
+        long orderCode = ORDER_CODE + 1;
+        inbox.accept(payOs.paid(orderCode, 250_000, "FT25121100004"));
+
+        LocalDateTime now = LocalDateTime.now();
+        assertEquals(0, inbox.processDue(now));
+        PayOsWebhookEvent first = eventRepository.findAll().get(0);
+        assertEquals(WebhookEventStatus.PENDING, first.getState());
+        assertEquals(1, first.getAttempts());
+        assertTrue(first.getNextAttemptAt().isAfter(now));
+        assertNotNull(first.getLastError());
+
+        // Chưa tới hạn thử lại -> không xử lý
+        assertEquals(0, inbox.processDue(now));
+        assertEquals(1, eventRepository.findAll().get(0).getAttempts());
+
+        // Tới hạn mà payment vẫn chưa có -> thử lại, khoảng chờ dài hơn lần trước
+        LocalDateTime due = first.getNextAttemptAt();
+        inbox.processDue(due);
+        PayOsWebhookEvent second = eventRepository.findAll().get(0);
+        assertEquals(WebhookEventStatus.PENDING, second.getState());
+        assertEquals(2, second.getAttempts());
+        assertTrue(Duration.between(due, second.getNextAttemptAt())
+                .compareTo(Duration.between(now, first.getNextAttemptAt())) > 0);
+
+        Order lateOrder = new Order();
+        lateOrder.setStatus(OrderStatus.WAITING_CONFIRMATION);
+        lateOrder.setCreatedAt(LocalDateTime.now());
+        lateOrder.setTotalAmount(250_000);
+        createPayment(orderRepository.save(lateOrder), orderCode);
+        inbox.processDue(second.getNextAttemptAt());
+        assertEquals(WebhookEventStatus.PROCESSED, eventRepository.findAll().get(0).getState());
+        assertEquals("SUCCESS", paymentRepository.findByTxnRef(String.valueOf(orderCode)).orElseThrow().getStatus());
+    }
+
+    @Test
+    void paymentTransitionRules() {
+        assertEquals("SUCCESS", PayOsWebhookInbox.targetPaymentStatus("AWAITING_PAYMENT", "PAID"));
+        assertNull(PayOsWebhookInbox.targetPaymentStatus("SUCCESS", "PAID"));
+        assertNull(PayOsWebhookInbox.targetPaymentStatus("SUCCESS", "CANCELLED"));
+        assertEquals("REFUNDED", PayOsWebhookInbox.targetPaymentStatus("SUCCESS", "REFUNDED"));
+        assertNull(PayOsWebhookInbox.targetPaymentStatus("REFUNDED", "PAID"));
+    }
+
+    /**
+     * PayOS giả lập: dựng payload webhook giống PayOS thật và ký bằng checksum key.
+     */
+    static final class LocalPayOs {
+        private final ObjectMapper objectMapper;
+        private final String checksumKey;
+
+        LocalPayOs(ObjectMapper objectMapper, String checksumKey) {
+            this.objectMapper = objectMapper;
+            this.checksumKey = checksumKey;
+        }
+
+        // Webhook thanh toán thành công: không có "status", code = "00"
+        String paid(long orderCode, long amount, String reference) {
+            ObjectNode data = objectMapper.createObjectNode();
+            data.put("orderCode", orderCode);
+            data.put("amount", amount);
+            data.put("description", "Thanh toan don hang");
+            data.put("accountNumber", "0123456789");
+            data.put("reference", reference);
+            data.put("transactionDateTime", "2025-12-11 10:15:00");
+            data.put("currency", "VND");
+            data.put("paymentLinkId", "link-" + orderCode);
+            data.put("code", "00");
+            data.put("desc", "success");
+            data.putNull("counterAccountName");
+            return sign(data);
+        }
+
+        String withStatus(long orderCode, String status) {
+            ObjectNode data = objectMapper.createObjectNode();
+            data.put("orderCode", orderCode);
+            data.put("paymentLinkId", "link-" + orderCode);
+            data.put("status", status);
+            return sign(data);
+        }
+
+        String tamperAmount(String delivery, long amount) {
+            try {
+                ObjectNode root = (ObjectNode) objectMapper.readTree(delivery);
+                ((ObjectNode) root.get("data")).put("amount", amount);
+                return objectMapper.writeValueAsString(root);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private String sign(ObjectNode data) {
+            ObjectNode root = objectMapper.createObjectNode();
+            root.put("code", "00");
+            root.put("desc", "success");
+            root.put("success", true);
+            root.set("data", data);
+            root.put("signature", HmacUtil.hmacSHA256(checksumKey, PayOsService.buildWebhookChecksumData(data)));
+            try {
+                return objectMapper.writeValueAsString(root);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.OrderRepository;
+import com.hometech.hometech.Repository.PaymentRepository;
+import com.hometech.hometech.enums.OrderStatus;
+import com.hometech.hometech.model.Order;
+import com.hometech.hometech.model.Payment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Job đối soát với cổng thanh toán giả lập: trả lời PAID / UNPAID / UNKNOWN theo kịch bản cho từng txnRef.
+ */
+class PaymentReconciliationServiceTest {
+
+    private PaymentRepository paymentRepository;
+    private OrderRepository orderRepository;
+    private OrderService orderService;
+    private StubGateway gateway;
+    private PaymentReconciliationService service;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository = mock(PaymentRepository.class);
+        orderRepository = mock(OrderRepository.class);
+        orderService = mock(OrderService.class);
+        gateway = new StubGateway();
+        service = new PaymentReconciliationService(paymentRepository, orderRepository, orderService,
+                List.of(gateway), new NoOpTransactionManager(), 30, 2);
+    }
+
+    private static Payment payment(long id, long orderId, String txnRef) {
+        Order order = new Order();
+        order.setId(orderId);
+        order.setStatus(OrderStatus.WAITING_CONFIRMATION);
+        Payment payment = new Payment();
+        payment.setId(id);
+        payment.setMethod("PAYOS");
+        payment.setStatus("AWAITING_PAYMENT");
+        payment.setTxnRef(txnRef);
+        payment.setOrder(order);
+        return payment;
+    }
+
+    @Test
+    void scansInKeysetBatchesAndActsOnGatewayAnswer() {
+        Payment abandoned = payment(1, 101, "A");
+        Payment paidWithoutWebhook = payment(2, 102, "B");
+        Payment gatewayDown = payment(3, 103, "C");
+        gateway.answers("A", PaymentStatusGateway.RemoteStatus.UNPAID, PaymentStatusGateway.RemoteStatus.UNPAID);
+        gateway.answers("B", PaymentStatusGateway.RemoteStatus.PAID);
+        gateway.answers("C", PaymentStatusGateway.RemoteStatus.UNKNOWN);
+
+        when(paymentRepository.findStaleAwaiting(any(), any(), any(), eq(0L), any()))
+                .thenReturn(List.of(abandoned, paidWithoutWebhook));
+        when(paymentRepository.findStaleAwaiting(any(), any(), any(), eq(2L), any()))
+                .thenReturn(List.of(gatewayDown));
+        when(orderService.expireAwaitingPayment(101L, "AWAITING_PAYMENT")).thenReturn(Map.of(7L, 3, 8L, 1));
+        when(paymentRepository.transitionStatus(eq(2L), eq("AWAITING_PAYMENT"), eq("SUCCESS"), any(), any(), any()))
+                .thenReturn(1);
+
+        LocalDateTime now = LocalDateTime.of(2025, 12, 11, 12, 0);
+        assertEquals(1, service.reconcile(now));
+
+        // Chỉ quét đơn cũ hơn TTL
+        verify(paymentRepository).findStaleAwaiting(any(), any(), eq(now.minusMinutes(30)), eq(0L), any());
+        verify(orderService).expireAwaitingPayment(101L, "AWAITING_PAYMENT");
+        verify(orderService, never()).expireAwaitingPayment(eq(102L), any());
+        verify(orderService, never()).expireAwaitingPayment(eq(103L), any());
+        verify(orderRepository).transitionStatus(102L, OrderStatus.WAITING_CONFIRMATION, OrderStatus.CONFIRMED);
+        assertEquals(List.of("A"), gateway.cancelled);
+
+        Map<String, Object> stats = service.getStats();
+        assertEquals(3L, stats.get("scanned"));
+        assertEquals(1L, stats.get("expiredOrders"));
+        assertEquals(1L, stats.get("recoveredPaid"));
+        assertEquals(1L, stats.get("undetermined"));
+        assertEquals(4L, stats.get("restockedUnits"));
+        assertEquals(Map.of(7L, 3L, 8L, 1L), stats.get("topRestockedProducts"));
+    }
+
+    @Test
+    void paymentCompletedWhileCancellingIsNotExpired() {
+        Payment racing = payment(1, 101, "A");
+        // Lần hỏi đầu chưa trả, sau khi hủy link thì cổng báo đã trả
+        gateway.answers("A", PaymentStatusGateway.RemoteStatus.UNPAID, PaymentStatusGateway.RemoteStatus.PAID);
+        when(paymentRepository.findStaleAwaiting(any(), any(), any(), eq(0L), any())).thenReturn(List.of(racing));
+        when(paymentRepository.transitionStatus(eq(1L), any(), eq("SUCCESS"), any(), any(), any())).thenReturn(1);
+
+        assertEquals(0, service.reconcile(LocalDateTime.now()));
+        verify(orderService, never()).expireAwaitingPayment(anyLong(), any());
+    }
+
+    @Test
+    void orderCancelledElsewhereIsNotCounted() {
+        Payment payment = payment(1, 101, "A");
+        gateway.answers("A", PaymentStatusGateway.RemoteStatus.UNPAID, PaymentStatusGateway.RemoteStatus.UNPAID);
+        when(paymentRepository.findStaleAwaiting(any(), any(), any(), eq(0L), any())).thenReturn(List.of(payment));
+        when(orderService.expireAwaitingPayment(101L, "AWAITING_PAYMENT")).thenReturn(null);
+
+        assertEquals(0, service.reconcile(LocalDateTime.now()));
+        assertEquals(0L, service.getStats().get("expiredOrders"));
+    }
+
+    private static final class StubGateway implements PaymentStatusGateway {
+        private final Map<String, Deque<RemoteStatus>> script = new HashMap<>();
+        private final List<String> cancelled = new ArrayList<>();
+
+        void answers(String txnRef, RemoteStatus... statuses) {
+            script.put(txnRef, new ArrayDeque<>(List.of(statuses)));
+        }
+
+        @Override
+        public String method() {
+            return "PAYOS";
+        }
+
+        @Override
+        public RemoteStatus queryStatus(Payment payment) {
+            Deque<RemoteStatus> answers = script.get(payment.getTxnRef());
+            return answers.size() > 1 ? answers.poll() : answers.peek();
+        }
+
+        @Override
+        public void cancelPayment(Payment payment) {
+            cancelled.add(payment.getTxnRef());
+        }
+    }
+
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, org.springframework.transaction.TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
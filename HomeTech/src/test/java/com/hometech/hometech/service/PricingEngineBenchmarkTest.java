@@ -0,0 +1,99 @@
+package com.hometech.hometech.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Đo PricingEngine so với vòng lặp double cũ (tổng tiền và giảm giá tính bằng double) trên cùng một lô giỏ hàng.
+ * Không chạy trong {@code mvn test} mặc định; chạy riêng: {@code mvn -Pbenchmark test -Dtest=PricingEngineBenchmarkTest}.
+ * Kết quả (ns/giỏ) ghi ra log, chỉ dùng để so sánh tương đối trên cùng một máy.
+ */
+@Tag("benchmark")
+class PricingEngineBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PricingEngineBenchmarkTest.class);
+
+    private static final int CARTS = 2_000;
+    private static final int LINES = 10;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private final PricingEngine engine = new PricingEngine();
+
+    @Test
+    void engineAgainstDoubleLoop() {
+        Random random = new Random(1);
+        PricingEngine.CartSnapshot[] snapshots = new PricingEngine.CartSnapshot[CARTS];
+        double[][] prices = new double[CARTS][LINES];
+        int[][] quantities = new int[CARTS][LINES];
+        for (int i = 0; i < CARTS; i++) {
+            snapshots[i] = new PricingEngine.CartSnapshot(LINES);
+            for (int j = 0; j < LINES; j++) {
+                prices[i][j] = 1_000 + random.nextInt(10_000_000);
+                quantities[i][j] = 1 + random.nextInt(5);
+                snapshots[i].add(prices[i][j], quantities[i][j]);
+            }
+        }
+        PricingEngine.Discount discount = PricingEngine.Discount.of(10.0, 20_000.0);
+
+        // Giá nguyên nhỏ nên tổng double chính xác: hai cách phải ra cùng tạm tính
+        for (int i = 0; i < CARTS; i++) {
+            assertEquals((long) doubleSubtotal(prices[i], quantities[i]), engine.quote(snapshots[i], discount).subtotal());
+        }
+
+        // Làm nóng JIT cho cả hai cách trước khi đo
+        long engineSink = runEngine(snapshots, discount, WARMUP_ROUNDS);
+        double doubleSink = runDoubleLoop(prices, quantities, WARMUP_ROUNDS);
+
+        long start = System.nanoTime();
+        engineSink += runEngine(snapshots, discount, MEASURED_ROUNDS);
+        long engineNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        doubleSink += runDoubleLoop(prices, quantities, MEASURED_ROUNDS);
+        long doubleNanos = System.nanoTime() - start;
+
+        // Dùng kết quả để JIT không bỏ vòng lặp
+        assertTrue(engineSink > 0 && doubleSink > 0);
+        double carts = (double) MEASURED_ROUNDS * CARTS;
+        log.info("Pricing benchmark: engine {} ns/cart, double loop {} ns/cart ({} carts x {} lines)",
+                String.format("%.1f", engineNanos / carts), String.format("%.1f", doubleNanos / carts), CARTS, LINES);
+    }
+
+    private long runEngine(PricingEngine.CartSnapshot[] snapshots, PricingEngine.Discount discount, int rounds) {
+        long sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (PricingEngine.CartSnapshot snapshot : snapshots) {
+                sink += engine.quote(snapshot, discount).total();
+            }
+        }
+        return sink;
+    }
+
+    // Cách tính cũ: cộng double rồi trừ giảm giá (10% + 20.000đ, không vượt tạm tính)
+    private static double runDoubleLoop(double[][] prices, int[][] quantities, int rounds) {
+        double sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < prices.length; i++) {
+                double subtotal = doubleSubtotal(prices[i], quantities[i]);
+                double discount = Math.min(subtotal * 0.1 + 20_000, subtotal);
+                sink += subtotal - discount;
+            }
+        }
+        return sink;
+    }
+
+    private static double doubleSubtotal(double[] prices, int[] quantities) {
+        double subtotal = 0;
+        for (int j = 0; j < prices.length; j++) {
+            subtotal += prices[j] * quantities[j];
+        }
+        return subtotal;
+    }
+}
@@ -0,0 +1,140 @@
+package com.hometech.hometech.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Kiểm tra tính chất (property-based, sinh ngẫu nhiên có seed cố định) cho phần làm tròn
+ * của PricingEngine, so với kết quả tính chính xác bằng BigDecimal.
+ */
+class PricingEngineTest {
+
+    private static final int SAMPLES = 20_000;
+
+    private final PricingEngine engine = new PricingEngine();
+
+    private PricingEngine.CartSnapshot randomCart(Random random) {
+        int lines = 1 + random.nextInt(12);
+        PricingEngine.CartSnapshot cart = new PricingEngine.CartSnapshot(2);
+        for (int i = 0; i < lines; i++) {
+            // Giá VND thực tế: 1.000đ -> 100.000.000đ
+            long price = 1_000L + (long) (random.nextDouble() * 100_000_000L);
+            cart.add(price, 1 + random.nextInt(20));
+        }
+        return cart;
+    }
+
+    @Test
+    void lineTotalsSumExactlyToSubtotal() {
+        Random random = new Random(42);
+        for (int n = 0; n < SAMPLES; n++) {
+            PricingEngine.CartSnapshot cart = randomCart(random);
+            PricingEngine.Quote quote = engine.quote(cart);
+
+            long sum = 0;
+            for (long line : quote.lineTotals()) {
+                sum += line;
+            }
+            assertEquals(quote.subtotal(), sum);
+            assertEquals(quote.subtotal(), quote.total());
+            assertEquals(0, quote.discount());
+        }
+    }
+
+    @Test
+    void percentDiscountRoundsHalfUpLikeBigDecimal() {
+        Random random = new Random(7);
+        for (int n = 0; n < SAMPLES; n++) {
+            long subtotal = random.nextLong(1, 5_000_000_000L);
+            // % có thể lẻ tới 2 chữ số thập phân, VD 12.35%
+            double percent = random.nextInt(10_001) / 100.0;
+
+            long actual = PricingEngine.Discount.of(percent, null).amountFor(subtotal);
+            long expected = BigDecimal.valueOf(subtotal)
+                    .multiply(BigDecimal.valueOf(percent))
+                    .divide(BigDecimal.valueOf(100), 0, RoundingMode.HALF_UP)
+                    .longValueExact();
+
+            assertEquals(expected, actual, () -> "subtotal=" + subtotal + " percent=" + percent);
+        }
+    }
+
+    @Test
+    void discountNeverExceedsSubtotalAndIsMonotonic() {
+        Random random = new Random(2024);
+        for (int n = 0; n < SAMPLES; n++) {
+            PricingEngine.Discount discount = PricingEngine.Discount.of(
+                    random.nextBoolean() ? random.nextDouble() * 100 : null,
+                    random.nextBoolean() ? (double) random.nextInt(2_000_000) : null);
+            long subtotal = random.nextLong(0, 50_000_000L);
+            long larger = subtotal + random.nextLong(0, 1_000_000L);
+
+            long d1 = discount.amountFor(subtotal);
+            long d2 = discount.amountFor(larger);
+
+            assertTrue(d1 >= 0 && d1 <= subtotal);
+            assertTrue(d2 >= d1, "discount must not decrease when subtotal grows");
+        }
+    }
+
+    @Test
+    void percentAndFixedAmountStackAndAreCappedAtSubtotal() {
+        PricingEngine.CartSnapshot cart = new PricingEngine.CartSnapshot()
+                .add(199_900.0, 3)
+                .add(49_990.0, 1);
+
+        PricingEngine.Quote quote = engine.quote(cart, PricingEngine.Discount.of(10.0, 50_000.0));
+
+        assertEquals(649_690L, quote.subtotal());
+        assertEquals(64_969L + 50_000L, quote.discount());
+        assertEquals(649_690L - 114_969L, quote.total());
+
+        PricingEngine.Quote capped = engine.quote(cart, PricingEngine.Discount.of(50.0, 1_000_000.0));
+        assertEquals(capped.subtotal(), capped.discount());
+        assertEquals(0L, capped.total());
+    }
+
+    @Test
+    void doublePricesAreRoundedToWholeDong() {
+        assertEquals(100_000L, PricingEngine.toVnd(99_999.5));
+        assertEquals(99_999L, PricingEngine.toVnd(99_999.4999));
+        // Sai số dấu phẩy động của đơn giá không bị nhân lên theo số lượng
+        assertEquals(60_000L, PricingEngine.lineTotal(19_999.999999999996, 3));
+        assertThrows(ArithmeticException.class, () -> PricingEngine.toVnd(Double.NaN));
+    }
+
+    @Test
+    void overflowIsRejectedInsteadOfWrapping() {
+        PricingEngine.CartSnapshot cart = new PricingEngine.CartSnapshot()
+                .add(Long.MAX_VALUE / 2, 3);
+        assertThrows(ArithmeticException.class, () -> engine.quote(cart));
+    }
+
+    @Test
+    void largeBatchMatchesDoubleLoopSubtotals() {
+        // Giá nguyên nhỏ: tổng double chính xác, dùng để đối chiếu với engine trên nhiều giỏ ngẫu nhiên
+        Random random = new Random(1);
+        PricingEngine.Discount discount = PricingEngine.Discount.of(10.0, 20_000.0);
+        for (int i = 0; i < 2_000; i++) {
+            int lines = 10;
+            PricingEngine.CartSnapshot snapshot = new PricingEngine.CartSnapshot(lines);
+            double subtotal = 0;
+            for (int j = 0; j < lines; j++) {
+                double price = 1_000 + random.nextInt(10_000_000);
+                int quantity = 1 + random.nextInt(5);
+                snapshot.add(price, quantity);
+                subtotal += price * quantity;
+            }
+
+            PricingEngine.Quote quote = engine.quote(snapshot, discount);
+            assertEquals((long) subtotal, quote.subtotal());
+            assertEquals(quote.subtotal() - quote.discount(), quote.total());
+            assertTrue(quote.discount() > 0 && quote.discount() <= quote.subtotal());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.CategoryRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.Repository.ProductRatingRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.enums.RoleType;
+import com.hometech.hometech.model.Account;
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.Customer;
+import com.hometech.hometech.model.Product;
+import com.hometech.hometech.model.ProductRating;
+import com.hometech.hometech.model.Review;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bảng tổng hợp sao được cộng/trừ theo từng thao tác đánh giá và khớp với lần tính lại toàn bộ.
+ */
+@DataJpaTest
+@Import({ReviewService.class, ProductRatingService.class})
+class ProductRatingServiceTest {
+
+    @Autowired
+    private ReviewService reviewService;
+    @Autowired
+    private ProductRatingService ratingService;
+    @Autowired
+    private ProductRatingRepository ratingRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Product phone;
+    private Product laptop;
+    private Customer alice;
+    private Customer bob;
+
+    @BeforeEach
+    void setUp() {
+        Category category = new Category();
+        category.setName("Điện tử");
+        category = categoryRepository.save(category);
+        phone = product("Phone", category);
+        laptop = product("Laptop", category);
+        alice = customer("alice");
+        bob = customer("bob");
+    }
+
+    @Test
+    void aggregateFollowsReviewLifecycle() {
+        reviewService.addOrUpdateReview(phone.getId(), alice.getId(), 5, "Tuyệt", null);
+        Review bobs = reviewService.addOrUpdateReview(phone.getId(), bob.getId(), 3, "Tạm", null);
+        assertSummary(phone.getId(), 2, 4.0, 0, 0, 1, 0, 1);
+
+        // Sửa số sao: trừ số cũ, cộng số mới
+        reviewService.addOrUpdateReview(phone.getId(), alice.getId(), 4, "Khá", null);
+        assertSummary(phone.getId(), 2, 3.5, 0, 0, 1, 1, 0);
+
+        reviewService.hideReview(bobs.getId());
+        reviewService.hideReview(bobs.getId());
+        assertSummary(phone.getId(), 1, 4.0, 0, 0, 0, 1, 0);
+
+        reviewService.showReview(bobs.getId());
+        assertSummary(phone.getId(), 2, 3.5, 0, 0, 1, 1, 0);
+
+        reviewService.deleteReview(bobs.getId(), bob.getId());
+        assertSummary(phone.getId(), 1, 4.0, 0, 0, 0, 1, 0);
+        assertEquals(4.0, reviewService.getAverageRating(phone.getId()));
+    }
+
+    @Test
+    void batchLookupKeepsRequestedOrderAndFillsMissingProducts() {
+        reviewService.addOrUpdateReview(laptop.getId(), alice.getId(), 2, "Nóng máy", null);
+        flushAndClear();
+
+        Map<Long, ProductRatingService.RatingSummary> ratings =
+                reviewService.getRatings(List.of(laptop.getId(), phone.getId(), 999_999L));
+
+        assertEquals(List.of(laptop.getId(), phone.getId(), 999_999L), List.copyOf(ratings.keySet()));
+        assertEquals(1, ratings.get(laptop.getId()).count());
+        assertEquals(0, ratings.get(phone.getId()).count());
+        assertArrayEquals(new long[5], ratings.get(999_999L).histogram());
+    }
+
+    @Test
+    void rebuildRepairsDrift() {
+        reviewService.addOrUpdateReview(phone.getId(), alice.getId(), 5, "Tuyệt", null);
+        reviewService.addOrUpdateReview(phone.getId(), bob.getId(), 1, "Lỗi", null);
+        flushAndClear();
+
+        ProductRating drifted = ratingRepository.findById(phone.getId()).orElseThrow();
+        drifted.setRatingCount(10);
+        drifted.setStar5(0);
+        ratingRepository.save(drifted);
+        flushAndClear();
+
+        ratingService.rebuildAll();
+        assertSummary(phone.getId(), 2, 3.0, 1, 0, 0, 0, 1);
+        assertSummary(laptop.getId(), 0, 0.0, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    void missingAggregateIsCreatedFromAllVisibleReviews() {
+        reviewService.addOrUpdateReview(phone.getId(), alice.getId(), 5, "Tuyệt", null);
+        flushAndClear();
+        // Dòng tổng hợp mất (VD bảng mới tạo): đánh giá tiếp theo tạo lại từ bảng review, gồm cả đánh giá cũ
+        ratingRepository.deleteById(phone.getId());
+        flushAndClear();
+
+        reviewService.addOrUpdateReview(phone.getId(), bob.getId(), 2, "Chậm", null);
+        assertSummary(phone.getId(), 2, 3.5, 0, 1, 0, 0, 1);
+
+        // Đã có dòng: câu lệnh đó chỉ cộng dồn
+        reviewService.addOrUpdateReview(phone.getId(), bob.getId(), 4, "Ổn", null);
+        assertSummary(phone.getId(), 2, 4.5, 0, 0, 0, 1, 1);
+    }
+
+    @Test
+    void rejectsRatingOutsideOneToFive() {
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> reviewService.addOrUpdateReview(phone.getId(), alice.getId(), 6, "?", null));
+        assertEquals("Số sao đánh giá phải từ 1 đến 5", error.getMessage());
+    }
+
+    private void assertSummary(Long productId, long count, double average, long... histogram) {
+        flushAndClear();
+        ProductRatingService.RatingSummary summary = ratingService.getRating(productId);
+        assertEquals(count, summary.count());
+        assertEquals(average, summary.average(), 1e-9);
+        assertArrayEquals(histogram, summary.histogram());
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private Product product(String name, Category category) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(1_000_000);
+        product.setCategory(category);
+        product.setCreatedAt(LocalDateTime.now());
+        return productRepository.save(product);
+    }
+
+    private Customer customer(String username) {
+        Customer customer = new Customer();
+        customer.setFullName(username);
+        customer.setCreatedAt(LocalDateTime.now());
+        Account account = new Account();
+        account.setUsername(username);
+        account.setEmail(username + "@example.com");
+        account.setPassword("{noop}secret");
+        account.setRole(RoleType.USER);
+        account.setEnabled(true);
+        account.setUser(customer);
+        customer.setAccount(account);
+        return customerRepository.save(customer);
+    }
+}
@@ -0,0 +1,181 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.CategoryRepository;
+import com.hometech.hometech.Repository.CustomerRepository;
+import com.hometech.hometech.Repository.ProductRepository;
+import com.hometech.hometech.Repository.ReviewImageRepository;
+import com.hometech.hometech.enums.RoleType;
+import com.hometech.hometech.model.Account;
+import com.hometech.hometech.model.Category;
+import com.hometech.hometech.model.Customer;
+import com.hometech.hometech.model.Product;
+import com.hometech.hometech.model.Review;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Feed đánh giá phân trang keyset theo từng kiểu sắp xếp; ảnh chỉ trả về URL.
+ * File ảnh không còn đánh giá nào trỏ tới được dọn khi đã đủ cũ.
+ */
+@DataJpaTest
+@Import({ReviewService.class, ProductRatingService.class})
+class ReviewFeedTest {
+
+    @Autowired
+    private ReviewService reviewService;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private ReviewImageRepository reviewImageRepository;
+
+    @TempDir
+    Path imageDir;
+
+    private Product product;
+    // id đánh giá theo thứ tự tạo; số sao 5, 3, 5, 1, 4, 3
+    private final List<Long> reviewIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Category category = new Category();
+        category.setName("Điện tử");
+        category = categoryRepository.save(category);
+        product = new Product();
+        product.setName("Phone");
+        product.setCategory(category);
+        product.setCreatedAt(LocalDateTime.now());
+        product = productRepository.save(product);
+
+        int[] ratings = {5, 3, 5, 1, 4, 3};
+        for (int i = 0; i < ratings.length; i++) {
+            Customer customer = customer("user" + i);
+            List<ReviewImageStorage.StoredImage> images = i % 2 == 0
+                    ? List.of(new ReviewImageStorage.StoredImage("ab/ab" + i, "ab" + i, 10, "image/png"))
+                    : null;
+            Review review = reviewService.addOrUpdateReview(product.getId(), customer.getId(), ratings[i], "Đánh giá " + i, images);
+            reviewIds.add(review.getId());
+        }
+        // Đánh giá bị ẩn không xuất hiện trong feed
+        Review hidden = reviewService.addOrUpdateReview(product.getId(), customer("hidden").getId(), 5, "Spam", null);
+        reviewService.hideReview(hidden.getId());
+    }
+
+    @Test
+    void newestPagesBackwardsById() {
+        assertEquals(ids(5, 4, 3, 2, 1, 0), collect(ReviewService.FeedSort.NEWEST));
+    }
+
+    @Test
+    void highestAndLowestBreakTiesByNewestFirst() {
+        assertEquals(ids(2, 0, 4, 5, 1, 3), collect(ReviewService.FeedSort.HIGHEST));
+        assertEquals(ids(3, 5, 1, 4, 2, 0), collect(ReviewService.FeedSort.LOWEST));
+    }
+
+    @Test
+    void withPhotosReturnsImageUrlsOnly() {
+        ReviewService.FeedPage page = reviewService.getFeed(product.getId(), ReviewService.FeedSort.WITH_PHOTOS, null, 10);
+
+        assertEquals(ids(4, 2, 0), page.items().stream().map(ReviewService.FeedItem::id).toList());
+        assertNull(page.nextCursor());
+        String url = page.items().get(0).images().get(0);
+        assertTrue(url.startsWith("/api/reviews/images/"));
+
+        Long imageId = Long.valueOf(url.substring(url.lastIndexOf('/') + 1));
+        assertEquals("ab/ab4", reviewService.getVisibleImage(imageId).getFilePath());
+    }
+
+    @Test
+    void rejectsInvalidSortAndCursor() {
+        assertThrows(RuntimeException.class, () -> ReviewService.FeedSort.parse("random"));
+        assertEquals(ReviewService.FeedSort.WITH_PHOTOS, ReviewService.FeedSort.parse("with-photos"));
+        assertThrows(RuntimeException.class,
+                () -> reviewService.getFeed(product.getId(), ReviewService.FeedSort.NEWEST, "not a cursor", 2));
+    }
+
+    @Test
+    void unreferencedImagesAreDeletedOnlyWhenOldEnough() throws Exception {
+        ReviewImageStorage storage = new ReviewImageStorage(reviewImageRepository, imageDir.toString(), 1024, 5, 24);
+        long customerId = customer("photo").getId();
+
+        ReviewImageStorage.StoredImage replaced = storage.store(png("ảnh cũ"));
+        reviewService.addOrUpdateReview(product.getId(), customerId, 4, "Lần đầu", List.of(replaced));
+        // Sửa đánh giá thay ảnh: file cũ không còn ai trỏ tới
+        ReviewImageStorage.StoredImage kept = storage.store(png("ảnh mới"));
+        reviewService.addOrUpdateReview(product.getId(), customerId, 5, "Đã sửa", List.of(kept));
+        // Ghi đánh giá lỗi ngay sau khi lưu ảnh
+        ReviewImageStorage.StoredImage recentOrphan = storage.store(png("vừa tải lên"));
+
+        backdate(storage.resolve(replaced.path()));
+        backdate(storage.resolve(kept.path()));
+
+        assertEquals(1, storage.deleteOrphans());
+        assertFalse(Files.exists(storage.resolve(replaced.path())));
+        assertTrue(Files.exists(storage.resolve(kept.path())));
+        assertTrue(Files.exists(storage.resolve(recentOrphan.path())), "file mới có thể đang chờ transaction commit");
+    }
+
+    private static MockMultipartFile png(String content) {
+        return new MockMultipartFile("images", "a.png", "image/png", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void backdate(Path file) throws Exception {
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(2, ChronoUnit.DAYS)));
+    }
+
+    // Đi hết feed với trang 2 phần tử
+    private List<Long> collect(ReviewService.FeedSort sort) {
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            ReviewService.FeedPage page = reviewService.getFeed(product.getId(), sort, cursor, 2);
+            assertTrue(page.items().size() <= 2);
+            page.items().forEach(item -> seen.add(item.id()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return seen;
+    }
+
+    private List<Long> ids(int... indexes) {
+        List<Long> result = new ArrayList<>();
+        for (int index : indexes) {
+            result.add(reviewIds.get(index));
+        }
+        return result;
+    }
+
+    private Customer customer(String username) {
+        Customer customer = new Customer();
+        customer.setFullName(username);
+        customer.setCreatedAt(LocalDateTime.now());
+        Account account = new Account();
+        account.setUsername(username);
+        account.setEmail(username + "@example.com");
+        account.setPassword("{noop}secret");
+        account.setRole(RoleType.USER);
+        account.setEnabled(true);
+        account.setUser(customer);
+        customer.setAccount(account);
+        return customerRepository.save(customer);
+    }
+}
@@ -0,0 +1,108 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.BannerRepository;
+import com.hometech.hometech.Repository.FooterContentRepository;
+import com.hometech.hometech.enums.BannerType;
+import com.hometech.hometech.model.Banner;
+import com.hometech.hometech.model.FooterContent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Banner hiển thị được tính sẵn theo lịch, chỉ tính lại khi qua mốc startAt/endAt hoặc khi admin sửa.
+ */
+@DataJpaTest
+@Import({SiteContentSnapshot.class, CatalogVersions.class, BannerService.class, FooterContentService.class})
+class SiteContentSnapshotTest {
+
+    @Autowired
+    private BannerService bannerService;
+    @Autowired
+    private FooterContentService footerContentService;
+    @Autowired
+    private BannerRepository bannerRepository;
+    @Autowired
+    private FooterContentRepository footerContentRepository;
+
+    @Test
+    void filtersBySchedulePerType() {
+        LocalDateTime now = LocalDateTime.now();
+        Banner always = banner("Luôn hiện", BannerType.BANNER, 2, null, null);
+        Banner first = banner("Đầu tiên", BannerType.BANNER, 1, now.minusDays(1), now.plusDays(1));
+        banner("Sắp tới", BannerType.BANNER, 0, now.plusHours(1), null);
+        banner("Đã hết", BannerType.BANNER, 0, null, now.minusMinutes(1));
+        Banner slider = banner("Slider", BannerType.SLIDER, 0, null, null);
+
+        assertEquals(List.of(first.getId(), always.getId()), ids(bannerService.getActiveBanners(BannerType.BANNER)));
+        assertEquals(List.of(slider.getId()), ids(bannerService.getActiveBanners(BannerType.SLIDER)));
+        assertEquals(3, bannerService.getActiveBanners(null).size());
+    }
+
+    @Test
+    void recomputesAtScheduleBoundaryWithoutAdminWrite() throws InterruptedException {
+        Banner flash = banner("Flash sale", BannerType.BANNER, 0, null, LocalDateTime.now().plusNanos(300_000_000));
+        assertEquals(List.of(flash.getId()), ids(bannerService.getActiveBanners(BannerType.BANNER)));
+
+        Thread.sleep(400);
+        assertTrue(bannerService.getActiveBanners(BannerType.BANNER).isEmpty());
+    }
+
+    @Test
+    void readsServeTheSnapshotUntilAnAdminWrite() {
+        Banner banner = banner("Khuyến mãi", BannerType.BANNER, 0, null, null);
+        assertEquals(1, bannerService.getActiveBanners(BannerType.BANNER).size());
+
+        // Sửa thẳng DB (không qua service) thì snapshot chưa biết
+        Banner direct = bannerRepository.findById(banner.getId()).orElseThrow();
+        direct.setActive(false);
+        bannerRepository.saveAndFlush(direct);
+        assertEquals(1, bannerService.getActiveBanners(BannerType.BANNER).size());
+
+        bannerService.toggleActive(banner.getId(), false);
+        assertTrue(bannerService.getActiveBanners(BannerType.BANNER).isEmpty());
+    }
+
+    @Test
+    void upsertKeepsExactlyOneActiveFooter() {
+        FooterContent defaultFooter = footerContentService.getActiveFooter();
+        assertNotNull(defaultFooter.getId());
+
+        FooterContent payload = new FooterContent();
+        payload.setHotline("1800 1234");
+        payload.setActive(true);
+        // Không truyền id: cập nhật footer đang hoạt động
+        footerContentService.upsert(payload);
+
+        FooterContent another = new FooterContent();
+        another.setHotline("1800 5678");
+        another.setActive(true);
+        another.setId(footerContentRepository.save(new FooterContent()).getId());
+        FooterContent saved = footerContentService.upsert(another);
+
+        assertEquals(saved.getId(), footerContentService.getActiveFooter().getId());
+        assertEquals("1800 5678", footerContentService.getActiveFooter().getHotline());
+        assertEquals(1, footerContentRepository.findAll().stream().filter(FooterContent::isActive).count());
+    }
+
+    private Banner banner(String title, BannerType type, int displayOrder, LocalDateTime startAt, LocalDateTime endAt) {
+        Banner banner = new Banner();
+        banner.setTitle(title);
+        banner.setType(type);
+        banner.setImageUrl("/images/" + displayOrder + ".png");
+        banner.setDisplayOrder(displayOrder);
+        banner.setStartAt(startAt);
+        banner.setEndAt(endAt);
+        return bannerService.create(banner);
+    }
+
+    private static List<Long> ids(List<Banner> banners) {
+        return banners.stream().map(Banner::getId).toList();
+    }
+}
@@ -0,0 +1,128 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.VoucherRedemptionRepository;
+import com.hometech.hometech.Repository.VoucherRepository;
+import com.hometech.hometech.model.Voucher;
+import com.hometech.hometech.model.VoucherRedemption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test: nhiều luồng checkout cùng lúc với một mã voucher,
+ * số lượt giữ thành công phải đúng bằng usageLimit.
+ */
+@DataJpaTest
+@Import(VoucherRedemptionService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class VoucherRedemptionServiceTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private VoucherRedemptionService redemptionService;
+
+    @Autowired
+    private VoucherRepository voucherRepository;
+
+    @Autowired
+    private VoucherRedemptionRepository redemptionRepository;
+
+    @AfterEach
+    void cleanUp() {
+        redemptionRepository.deleteAll();
+        voucherRepository.deleteAll();
+    }
+
+    private Voucher newVoucher(String code, int usageLimit, Integer perCustomerLimit) {
+        Voucher voucher = new Voucher();
+        voucher.setCode(code);
+        voucher.setDiscountPercent(10.0);
+        voucher.setMinOrderValue(0.0);
+        voucher.setUsageLimit(usageLimit);
+        voucher.setPerCustomerLimit(perCustomerLimit);
+        voucher.setUsedCount(0);
+        voucher.setStartDate(LocalDateTime.now().minusDays(1));
+        voucher.setEndDate(LocalDateTime.now().plusDays(1));
+        return voucherRepository.save(voucher);
+    }
+
+    private int redeemConcurrently(Voucher voucher, int attempts, boolean sameCustomer) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < attempts; i++) {
+            long customerId = sameCustomer ? 1L : i + 1L;
+            futures.add(pool.submit(() -> {
+                start.await();
+                try {
+                    redemptionService.redeem(voucher, customerId);
+                    succeeded.incrementAndGet();
+                } catch (RuntimeException expected) {
+                    // hết lượt
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        return succeeded.get();
+    }
+
+    @Test
+    void parallelRedemptionsNeverExceedUsageLimit() throws Exception {
+        Voucher voucher = newVoucher("FIRST50", 50, null);
+
+        int succeeded = redeemConcurrently(voucher, 400, false);
+
+        assertEquals(50, succeeded);
+        assertEquals(50, voucherRepository.findById(voucher.getId()).orElseThrow().getUsedCount());
+        assertEquals(50, redemptionRepository.count());
+    }
+
+    @Test
+    void perCustomerLimitHoldsUnderParallelLoad() throws Exception {
+        Voucher voucher = newVoucher("ONCE", 100, 1);
+
+        int succeeded = redeemConcurrently(voucher, 40, true);
+
+        assertEquals(1, succeeded);
+        assertEquals(1, voucherRepository.findById(voucher.getId()).orElseThrow().getUsedCount());
+    }
+
+    @Test
+    void cancellingOrderReleasesUsageExactlyOnce() {
+        Voucher voucher = newVoucher("CANCEL", 1, null);
+        VoucherRedemption redemption = redemptionService.redeem(voucher, 7L);
+        redemptionService.attachOrder(redemption, 99L);
+
+        assertThrows(RuntimeException.class, () -> redemptionService.redeem(voucher, 8L));
+
+        assertEquals(1, redemptionService.releaseForOrder(99L));
+        assertEquals(0, redemptionService.releaseForOrder(99L));
+        assertEquals(0, voucherRepository.findById(voucher.getId()).orElseThrow().getUsedCount());
+
+        // Lượt đã hoàn có thể được khách khác dùng
+        assertNotNull(redemptionService.redeem(voucher, 8L));
+    }
+}
@@ -0,0 +1,95 @@
+package com.hometech.hometech.service;
+
+import com.hometech.hometech.Repository.VoucherRepository;
+import com.hometech.hometech.model.Voucher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cache luật voucher: tra mã không phân biệt hoa/thường và khoảng trắng giống hệt tra DB,
+ * và nạp lại khi voucher đổi ở node khác (qua phiên bản chung trong {@link CatalogVersions}).
+ * Test chạy không bọc transaction để phiên bản được đánh dấu sau commit như khi chạy thật.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({VoucherRulesCache.class, VoucherService.class, CatalogVersions.class})
+class VoucherRulesCacheTest {
+
+    @Autowired
+    private VoucherRulesCache voucherRulesCache;
+    @Autowired
+    private VoucherService voucherService;
+    @Autowired
+    private VoucherRepository voucherRepository;
+    @Autowired
+    private CatalogVersions catalogVersions;
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void cleanUp() {
+        voucherRepository.deleteAll();
+    }
+
+    @Test
+    void codeLookupIsNormalizedInCacheAndDatabase() {
+        Voucher created = voucherService.create(voucher(" sale10 "));
+        assertEquals("SALE10", created.getCode());
+
+        VoucherRulesCache.VoucherRule rule = voucherRulesCache.find("Sale10 ");
+        assertNotNull(rule);
+        assertEquals(created.getId(), rule.getId());
+        assertEquals(created.getId(), voucherService.getByCode(" sale10").getId());
+
+        assertNull(voucherRulesCache.find("SALE20"));
+        RuntimeException error = assertThrows(RuntimeException.class, () -> voucherService.getByCode("SALE20"));
+        assertEquals("Voucher không tồn tại", error.getMessage());
+
+        RuntimeException duplicate = assertThrows(RuntimeException.class, () -> voucherService.create(voucher("SALE10")));
+        assertEquals("Mã voucher đã tồn tại", duplicate.getMessage());
+    }
+
+    @Test
+    void changeOnAnotherNodeReloadsCacheAfterSync() {
+        voucherService.create(voucher("FREESHIP"));
+        catalogVersions.sync();
+        voucherRulesCache.refreshIfStale();
+        assertNotNull(voucherRulesCache.find("freeship"));
+        assertNull(voucherRulesCache.find("WELCOME"));
+
+        // "Node khác": ghi voucher rồi tăng phiên bản qua CatalogVersions của chính nó
+        CatalogVersions otherNode = new CatalogVersions(dataSource);
+        voucherRepository.save(voucher("WELCOME"));
+        otherNode.vouchersChanged();
+        otherNode.sync();
+
+        voucherRulesCache.refreshIfStale();
+        assertNull(voucherRulesCache.find("welcome"), "chưa đồng bộ phiên bản thì cache chưa nạp lại");
+
+        catalogVersions.sync();
+        voucherRulesCache.refreshIfStale();
+        assertNotNull(voucherRulesCache.find("welcome"));
+    }
+
+    private static Voucher voucher(String code) {
+        Voucher voucher = new Voucher();
+        voucher.setCode(code);
+        voucher.setDiscountPercent(10.0);
+        voucher.setDiscountAmount(0.0);
+        voucher.setMinOrderValue(0.0);
+        voucher.setActive(true);
+        voucher.setStartDate(LocalDateTime.now().minusDays(1));
+        voucher.setEndDate(LocalDateTime.now().plusDays(30));
+        return voucher;
+    }
+}
@@ -10,6 +10,8 @@ function ChatManagement({ initialUserId }) {
   const [messages, setMessages] = useState([]);
   const [input, setInput] = useState('');
   const [loadingConversations, setLoadingConversations] = useState(false);
+  const [inboxCursor, setInboxCursor] = useState(null);
+  const [loadingMoreConversations, setLoadingMoreConversations] = useState(false);
   const [loadingMessages, setLoadingMessages] = useState(false);
   const [error, setError] = useState('');
 
@@ -32,12 +34,13 @@ function ChatManagement({ initialUserId }) {
       setLoadingConversations(true);
       setError('');
       try {
-        const data = await chatAPI.getAdminConversations();
-        const list = Array.isArray(data) ? data : data?.data || [];
-        const sorted = [...list].sort(
-          (a, b) => new Date(b.lastMessageAt || 0) - new Date(a.lastMessageAt || 0),
-        );
+        // Trang đầu của inbox, đã sắp xếp theo tin nhắn mới nhất
+        const page = await chatAPI.getAdminInbox();
+        const sorted = page?.items || [];
         setConversations(sorted);
+        setInboxCursor(
+          page?.hasMore ? { before: page.nextBefore, beforeId: page.nextBeforeId } : null,
+        );
 
         if (initialUserId) {
           const target = sorted.find(
@@ -100,6 +103,28 @@ function ChatManagement({ initialUserId }) {
     // eslint-disable-next-line react-hooks/exhaustive-deps
   }, [initialUserId]);
 
+  const loadMoreConversations = async () => {
+    if (!inboxCursor || loadingMoreConversations) return;
+    setLoadingMoreConversations(true);
+    try {
+      const page = await chatAPI.getAdminInbox(inboxCursor);
+      const items = page?.items || [];
+      setConversations((prev) => {
+        // Cuộc trò chuyện được thêm qua initialUserId có thể đã nằm trong danh sách
+        const known = new Set(prev.map((c) => c.id));
+        return [...prev, ...items.filter((c) => !known.has(c.id))];
+      });
+      setInboxCursor(
+        page?.hasMore ? { before: page.nextBefore, beforeId: page.nextBeforeId } : null,
+      );
+    } catch (e) {
+      console.error('Failed to load more conversations', e);
+      setError('Không thể tải thêm cuộc trò chuyện.');
+    } finally {
+      setLoadingMoreConversations(false);
+    }
+  };
+
   const connectWebSocket = (conversationId) => {
     if (!conversationId) return;
 
@@ -174,6 +199,7 @@ function ChatManagement({ initialUserId }) {
       const list = Array.isArray(data) ? data : data?.data || [];
       setMessages(list);
       connectWebSocket(conversation.id);
+      chatAPI.markAsReadForAdmin(conversation.id).catch(() => {});
     } catch (e) {
       console.error('Failed to load messages', e);
       setError('Không thể tải tin nhắn.');
@@ -245,6 +271,16 @@ function ChatManagement({ initialUserId }) {
                 </button>
               );
             })}
+          {!loadingConversations && inboxCursor && (
+            <button
+              type="button"
+              className={styles.loadMore}
+              onClick={loadMoreConversations}
+              disabled={loadingMoreConversations}
+            >
+              {loadingMoreConversations ? 'Đang tải...' : 'Xem thêm'}
+            </button>
+          )}
         </div>
       </div>
 
@@ -714,9 +714,17 @@ export const userAPI = {
     return response.data;
   },
 
+  // Backend nhận multipart: các trường thường + part "images" (File) cho từng ảnh
   createReview: async (productId, customerId, rating, content, images = []) => {
-    const response = await api.post('/reviews', images || [], {
-      params: { productId, customerId, rating, content }
+    const formData = new FormData();
+    formData.append('productId', productId);
+    formData.append('customerId', customerId);
+    formData.append('rating', rating);
+    formData.append('content', content);
+    (images || []).forEach((image) => formData.append('images', image));
+
+    const response = await api.post('/reviews', formData, {
+      headers: { 'Content-Type': 'multipart/form-data' },
     });
     return response.data;
   },
@@ -756,6 +764,14 @@ export const userAPI = {
     return response.data;
   },
 
+  // Voucher áp dụng được cho tổng tiền giỏ hàng
+  getApplicableVouchers: async (total) => {
+    const response = await api.get('/vouchers/applicable', {
+      params: { total },
+    });
+    return response.data;
+  },
+
   getOrdersByStatus: async (userId, status) => {
     const response = await api.get(`/orders/user/${userId}/status/${status}`);
     return response.data;
@@ -844,8 +860,14 @@ export const chatAPI = {
     const response = await api.get(`/chat/conversations/${conversationId}/messages`);
     return response.data;
   },
-  getAdminConversations: async () => {
-    const response = await api.get('/chat/conversations/admin');
+  // Lịch sử chat phân trang: { before, beforeId, limit } để tải trang cũ hơn, { since } để đồng bộ khi reconnect
+  getConversationHistory: async (conversationId, params = {}) => {
+    const response = await api.get(`/chat/conversations/${conversationId}/history`, { params });
+    return response.data;
+  },
+  // Inbox admin phân trang: { before, beforeId, limit } lấy từ nextBefore/nextBeforeId của trang trước
+  getAdminInbox: async (params = {}) => {
+    const response = await api.get('/chat/conversations/admin/inbox', { params });
     return response.data;
   },
   sendMessage: async (conversationId, content, file = null) => {
@@ -867,6 +889,10 @@ export const chatAPI = {
     const response = await api.post('/chat/mark-read');
     return response.data;
   },
+  markAsReadForAdmin: async (conversationId) => {
+    const response = await api.post(`/chat/conversations/${conversationId}/mark-read`);
+    return response.data;
+  },
   getOrCreateAdminConversationForUser: async (userId) => {
     // Backend mapping: @GetMapping("/admin/customer/{userId}/conversation") under @RequestMapping("/api/chat")
     const response = await api.get(`/chat/admin/customer/${userId}/conversation`);